@@ -0,0 +1,35 @@
+/*
+ * Copyright (c) 2014. Jordan Williams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.jordanwilliams.heftydb.cache;
+
+/**
+ * Controls which blocks are admitted to a TableBlockCache once it is full.
+ */
+public enum CachePolicy {
+
+    /**
+     * Admits every block and evicts the least recently used one.
+     */
+    LRU,
+
+    /**
+     * Admits a block only if it has been accessed more often recently than the least recently used block that it
+     * would evict. A scan or a burst of one off reads then can not flush blocks that are read again and again.
+     */
+    TINY_LFU
+}
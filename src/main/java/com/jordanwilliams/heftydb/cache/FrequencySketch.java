@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2014. Jordan Williams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.jordanwilliams.heftydb.cache;
+
+/**
+ * Estimates how often keys have been accessed recently, for use by a TinyLFU cache admission policy. Counts are
+ * kept in a count-min sketch of 4 bit counters behind a doorkeeper bloom filter, which absorbs the many keys that are
+ * only seen once. Once the number of recorded accesses reaches ten times the expected number of entries, every count
+ * is halved so that keys which are no longer popular fade out.
+ * <p/>
+ * Updates are not synchronized. A lost update under contention only makes an estimate slightly low.
+ */
+public class FrequencySketch {
+
+    private static final long[] SEEDS = new long[]{0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL,
+            0xcbf29ce484222325L};
+    private static final long RESET_MASK = 0x7777777777777777L;
+    private static final int MAX_COUNT = 15;
+    private static final int SAMPLE_FACTOR = 10;
+
+    private final long[] table;
+    private final long[] doorkeeper;
+    private final int sampleSize;
+
+    private int additions;
+
+    public FrequencySketch(int expectedEntries) {
+        int tableSize = Integer.highestOneBit(Math.max(expectedEntries - 1, 63)) << 1;
+        this.table = new long[tableSize];
+        this.doorkeeper = new long[tableSize / 8];
+        this.sampleSize = tableSize * SAMPLE_FACTOR;
+    }
+
+    public void increment(long key) {
+        long hash = spread(key);
+
+        if (additions++ >= sampleSize) {
+            reset();
+        }
+
+        if (!doorkeeperContains(hash)) {
+            doorkeeperPut(hash);
+            return;
+        }
+
+        for (int i = 0; i < SEEDS.length; i++) {
+            incrementAt(hash, i);
+        }
+    }
+
+    public int frequency(long key) {
+        long hash = spread(key);
+        int frequency = MAX_COUNT;
+
+        for (int i = 0; i < SEEDS.length; i++) {
+            frequency = Math.min(frequency, countAt(hash, i));
+        }
+
+        return frequency + (doorkeeperContains(hash) ? 1 : 0);
+    }
+
+    private void incrementAt(long hash, int seedIndex) {
+        long counterHash = counterHash(hash, seedIndex);
+        int index = (int) (counterHash >>> 32) & (table.length - 1);
+        int shift = ((int) counterHash & 15) << 2;
+
+        if (((table[index] >>> shift) & MAX_COUNT) < MAX_COUNT) {
+            table[index] += 1L << shift;
+        }
+    }
+
+    private int countAt(long hash, int seedIndex) {
+        long counterHash = counterHash(hash, seedIndex);
+        int index = (int) (counterHash >>> 32) & (table.length - 1);
+        int shift = ((int) counterHash & 15) << 2;
+        return (int) ((table[index] >>> shift) & MAX_COUNT);
+    }
+
+    private boolean doorkeeperContains(long hash) {
+        int bits = doorkeeper.length << 6;
+        int first = (int) hash & (bits - 1);
+        int second = (int) (hash >>> 32) & (bits - 1);
+        return (doorkeeper[first >>> 6] & (1L << first)) != 0 && (doorkeeper[second >>> 6] & (1L << second)) != 0;
+    }
+
+    private void doorkeeperPut(long hash) {
+        int bits = doorkeeper.length << 6;
+        int first = (int) hash & (bits - 1);
+        int second = (int) (hash >>> 32) & (bits - 1);
+        doorkeeper[first >>> 6] |= 1L << first;
+        doorkeeper[second >>> 6] |= 1L << second;
+    }
+
+    private void reset() {
+        for (int i = 0; i < table.length; i++) {
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+
+        for (int i = 0; i < doorkeeper.length; i++) {
+            doorkeeper[i] = 0;
+        }
+
+        additions = 0;
+    }
+
+    private static long counterHash(long hash, int seedIndex) {
+        return spread(hash + SEEDS[seedIndex]);
+    }
+
+    private static long spread(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return key;
+    }
+}
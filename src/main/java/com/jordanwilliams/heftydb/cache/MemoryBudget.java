@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2014. Jordan Williams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jordanwilliams.heftydb.cache;
+
+import com.codahale.metrics.Gauge;
+import com.jordanwilliams.heftydb.metrics.Metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A single limit on the off-heap memory used by the bloom filters, index blocks and data blocks of every Table.
+ * <p/>
+ * The memory is split into tiers in order of priority. A tier may use whatever the tiers above it leave of the
+ * budget, so once the budget is exceeded the lowest tier is evicted first. Filters and root index blocks are pinned,
+ * and a filter that does not fit in the budget is paged in from its file on demand instead.
+ */
+public class MemoryBudget {
+
+    public enum Tier {
+        FILTER, INDEX, DATA
+    }
+
+    private final long maxSize;
+    private final AtomicLong[] sizes = new AtomicLong[Tier.values().length];
+
+    /**
+     * @param maxSize the maximum size of every tier together, or zero for no limit
+     */
+    public MemoryBudget(long maxSize) {
+        this.maxSize = maxSize;
+
+        for (int i = 0; i < sizes.length; i++) {
+            sizes[i] = new AtomicLong();
+        }
+    }
+
+    public MemoryBudget(long maxSize, Metrics metrics) {
+        this(maxSize);
+
+        for (final Tier tier : Tier.values()) {
+            String name = tier.toString().toLowerCase();
+
+            metrics.gauge("budget." + name + ".size", new Gauge<Long>() {
+                @Override
+                public Long getValue() {
+                    return size(tier);
+                }
+            });
+
+            metrics.gauge("budget." + name + ".limit", new Gauge<Long>() {
+                @Override
+                public Long getValue() {
+                    return limit(tier);
+                }
+            });
+        }
+
+        metrics.gauge("budget.utilizationRate", new Gauge<Double>() {
+            @Override
+            public Double getValue() {
+                return isLimited() ? totalSize() / (double) MemoryBudget.this.maxSize : 0;
+            }
+        });
+    }
+
+    public boolean isLimited() {
+        return maxSize > 0;
+    }
+
+    /**
+     * Returns the memory that a tier may use, which is whatever the tiers above it leave of the budget.
+     */
+    public long limit(Tier tier) {
+        if (!isLimited()) {
+            return Long.MAX_VALUE;
+        }
+
+        long limit = maxSize;
+
+        for (int i = 0; i < tier.ordinal(); i++) {
+            limit -= sizes[i].get();
+        }
+
+        return Math.max(limit, 0);
+    }
+
+    /**
+     * Reserves memory for a pinned block only if the tier has room for it.
+     */
+    public boolean tryReserve(Tier tier, long size) {
+        AtomicLong tierSize = sizes[tier.ordinal()];
+
+        while (true) {
+            long current = tierSize.get();
+
+            if (current + size > limit(tier)) {
+                return false;
+            }
+
+            if (tierSize.compareAndSet(current, current + size)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Accounts for memory that a tier has to hold whether or not the budget has room for it.
+     */
+    public void reserve(Tier tier, long size) {
+        sizes[tier.ordinal()].addAndGet(size);
+    }
+
+    public void release(Tier tier, long size) {
+        sizes[tier.ordinal()].addAndGet(-size);
+    }
+
+    public long size(Tier tier) {
+        return sizes[tier.ordinal()].get();
+    }
+
+    public long totalSize() {
+        long totalSize = 0;
+
+        for (AtomicLong size : sizes) {
+            totalSize += size.get();
+        }
+
+        return totalSize;
+    }
+}
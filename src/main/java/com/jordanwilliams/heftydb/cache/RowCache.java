@@ -0,0 +1,309 @@
+/*
+ * Copyright (c) 2014. Jordan Williams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jordanwilliams.heftydb.cache;
+
+import com.codahale.metrics.Gauge;
+import com.jordanwilliams.heftydb.data.Key;
+import com.jordanwilliams.heftydb.data.Tuple;
+import com.jordanwilliams.heftydb.metrics.Metrics;
+import com.jordanwilliams.heftydb.offheap.MemoryAllocator;
+import com.jordanwilliams.heftydb.offheap.MemoryOwner;
+import com.jordanwilliams.heftydb.offheap.MemoryPointer;
+import com.jordanwilliams.heftydb.util.MurmurHash3;
+import com.jordanwilliams.heftydb.util.Sizes;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caches the latest Tuple of recently read keys off-heap, so that a point read of a hot key does not have to consult
+ * any Table. Keys are matched by their bytes, and each segment of the cache evicts its rows in least recently used
+ * order once it holds more than its share of the maximum size.
+ * <p/>
+ * A row is only valid until the key is written again, so every write invalidates the row of its key. A read that
+ * misses takes a version from the key's segment before it consults the Tables, and its result is only cached if no
+ * write has invalidated the segment since then and if none of the writes to the segment are newer than the snapshot
+ * that it read from.
+ */
+public class RowCache {
+
+    /**
+     * The bytes of a key with a well mixed hash, since the hash of a ByteBuffer spreads keys that differ in a few
+     * trailing bytes poorly.
+     */
+    private static class RowKey {
+
+        private final byte[] data;
+        private final int hash;
+
+        private RowKey(ByteBuffer key) {
+            this.data = new byte[key.capacity()];
+            buffer(key).get(data);
+            this.hash = (int) MurmurHash3.MurmurHash3_x64_64(data);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return this == o || (o instanceof RowKey && Arrays.equals(data, ((RowKey) o).data));
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private class Segment {
+
+        private final long capacity;
+        private final LinkedHashMap<RowKey, MemoryPointer> rows = new LinkedHashMap<RowKey,
+                MemoryPointer>(16, 0.75f, true);
+
+        private long size;
+        private long version;
+        private long maxWrittenSnapshotId;
+
+        private Segment(long capacity) {
+            this.capacity = capacity;
+        }
+
+        private synchronized Tuple get(RowKey key, long snapshotId) {
+            MemoryPointer row = rows.get(key);
+
+            if (row == null) {
+                return null;
+            }
+
+            ByteBuffer rowBuffer = row.directBuffer();
+
+            //A snapshot older than the cached Tuple has to be read from the Tables
+            if (rowBuffer.getLong(Sizes.INT_SIZE + rowBuffer.getInt(0)) > snapshotId) {
+                return null;
+            }
+
+            rowBuffer.rewind();
+            Tuple tuple = Tuple.SERIALIZER.deserialize(rowBuffer);
+            rowBuffer.rewind();
+            return tuple;
+        }
+
+        private synchronized long version() {
+            return version;
+        }
+
+        private synchronized void put(RowKey key, Tuple tuple, long readSnapshotId, long readVersion) {
+            if (readVersion != version || readSnapshotId < maxWrittenSnapshotId) {
+                return;
+            }
+
+            int rowSize = Tuple.SERIALIZER.size(tuple);
+
+            if (rowSize + key.data.length > capacity) {
+                return;
+            }
+
+            MemoryPointer row = MemoryAllocator.allocate(rowSize, MemoryOwner.ROW_CACHE);
+            serialize(tuple, row.directBuffer());
+
+            remove(key);
+            rows.put(key, row);
+            add(key.data.length + rowSize);
+
+            Iterator<Map.Entry<RowKey, MemoryPointer>> eldest = rows.entrySet().iterator();
+
+            while (size > capacity) {
+                Map.Entry<RowKey, MemoryPointer> entry = eldest.next();
+                eldest.remove();
+                release(entry.getKey(), entry.getValue());
+            }
+        }
+
+        private synchronized void invalidate(RowKey key, long snapshotId) {
+            version++;
+            maxWrittenSnapshotId = Math.max(maxWrittenSnapshotId, snapshotId);
+            remove(key);
+        }
+
+        private synchronized void clear(long snapshotId) {
+            version++;
+            maxWrittenSnapshotId = Math.max(maxWrittenSnapshotId, snapshotId);
+
+            for (Map.Entry<RowKey, MemoryPointer> entry : rows.entrySet()) {
+                release(entry.getKey(), entry.getValue());
+            }
+
+            rows.clear();
+        }
+
+        private void remove(RowKey key) {
+            MemoryPointer row = rows.remove(key);
+
+            if (row != null) {
+                release(key, row);
+            }
+        }
+
+        private void release(RowKey key, MemoryPointer row) {
+            add(-(key.data.length + row.size()));
+            row.release();
+        }
+
+        private void add(long rowSize) {
+            size += rowSize;
+            totalSize.addAndGet(rowSize);
+        }
+    }
+
+    private static final int SEGMENT_SHIFT = 4;
+    private static final int SEGMENT_COUNT = 1 << SEGMENT_SHIFT;
+
+    private final Segment[] segments;
+    private final long maxSize;
+    private final AtomicLong totalSize = new AtomicLong();
+
+    /**
+     * @param maxSize the maximum size of the cached rows, or zero to disable the cache
+     */
+    public RowCache(long maxSize) {
+        this.maxSize = maxSize;
+        this.segments = new Segment[maxSize > 0 ? SEGMENT_COUNT : 0];
+
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = new Segment(maxSize / segments.length);
+        }
+    }
+
+    public RowCache(long maxSize, Metrics metrics) {
+        this(maxSize);
+
+        metrics.gauge("cache.row.entrySize", new Gauge<Long>() {
+            @Override
+            public Long getValue() {
+                return totalSize.get();
+            }
+        });
+
+        metrics.gauge("cache.row.utilizationRate", new Gauge<Double>() {
+            @Override
+            public Double getValue() {
+                return maxSize == 0 ? 0 : totalSize.doubleValue() / (double) maxSize;
+            }
+        });
+    }
+
+    public boolean isEnabled() {
+        return segments.length > 0;
+    }
+
+    /**
+     * Returns the cached Tuple of a key, if it is the latest Tuple visible at the snapshot of the key.
+     */
+    public Tuple get(Key key) {
+        if (!isEnabled()) {
+            return null;
+        }
+
+        RowKey rowKey = new RowKey(key.data());
+        return segment(rowKey).get(rowKey, key.snapshotId());
+    }
+
+    /**
+     * Returns the version that a read of a key has to pass back when it caches the Tuple that it found.
+     */
+    public long version(Key key) {
+        if (!isEnabled()) {
+            return 0;
+        }
+
+        return segment(new RowKey(key.data())).version();
+    }
+
+    /**
+     * Caches the latest Tuple of a key that was read at the snapshot of the key, unless the key's segment has been
+     * invalidated since the read took its version.
+     */
+    public void put(Key key, Tuple tuple, long version) {
+        if (!isEnabled()) {
+            return;
+        }
+
+        RowKey rowKey = new RowKey(key.data());
+        segment(rowKey).put(rowKey, tuple, key.snapshotId(), version);
+    }
+
+    /**
+     * Must be called once a written Tuple is visible to reads.
+     */
+    public void invalidate(Key key) {
+        if (!isEnabled()) {
+            return;
+        }
+
+        RowKey rowKey = new RowKey(key.data());
+        segment(rowKey).invalidate(rowKey, key.snapshotId());
+    }
+
+    /**
+     * Drops every cached row, for changes that may affect any key such as a range delete or a bulk load.
+     */
+    public void invalidateAll(long snapshotId) {
+        for (Segment segment : segments) {
+            segment.clear(snapshotId);
+        }
+    }
+
+    public void clear() {
+        invalidateAll(0);
+    }
+
+    public long totalEntrySize() {
+        return totalSize.get();
+    }
+
+    /**
+     * Segments are chosen by the high bits of the hash, since the map of each segment uses the low bits.
+     */
+    private Segment segment(RowKey key) {
+        return segments[key.hash >>> (Integer.SIZE - SEGMENT_SHIFT)];
+    }
+
+    /**
+     * Writes a Tuple in the format of Tuple.SERIALIZER without moving the buffers of the Tuple, which other readers
+     * of a MemoryTable may share.
+     */
+    private static void serialize(Tuple tuple, ByteBuffer rowBuffer) {
+        ByteBuffer key = buffer(tuple.key().data());
+        ByteBuffer value = buffer(tuple.value().data());
+
+        rowBuffer.putInt(key.remaining());
+        rowBuffer.put(key);
+        rowBuffer.putLong(tuple.key().snapshotId());
+        rowBuffer.putInt(value.remaining());
+        rowBuffer.put(value);
+        rowBuffer.rewind();
+    }
+
+    private static ByteBuffer buffer(ByteBuffer buffer) {
+        ByteBuffer duplicate = buffer.duplicate();
+        duplicate.rewind();
+        return duplicate;
+    }
+}
@@ -16,112 +16,337 @@
 
 package com.jordanwilliams.heftydb.cache;
 
-import com.googlecode.concurrentlinkedhashmap.ConcurrentLinkedHashMap;
-import com.googlecode.concurrentlinkedhashmap.EvictionListener;
 import com.googlecode.concurrentlinkedhashmap.Weigher;
 import com.jordanwilliams.heftydb.offheap.Offheap;
 
 import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * A cache designed for concurrent access to Offheap data blocks keyed off of a particular Table.
+ * A cache designed for concurrent access to Offheap data blocks keyed off of a particular Table. The cache is split
+ * into segments, each of which is guarded by its own lock and evicts its blocks in least recently used order, and
+ * the CachePolicy decides whether a new block may evict one at all.
+ * <p/>
+ * Blocks are found by their table id and offset without boxing either, so a lookup allocates nothing. Each segment
+ * also links together the blocks of every table from a head node that is kept in the same hash table, so invalidating
+ * a table only visits the blocks that it has cached.
+ * <p/>
+ * The blocks of the cache count against a tier of a MemoryBudget, and the cache shrinks to whatever the tiers above
+ * it, and the memory pinned in its own tier, leave of the budget.
  * @param <T>
  */
 public class TableBlockCache<T extends Offheap> {
 
-    public static class Entry {
+    private static class Node<T> {
 
-        private final Long tableId;
-        private final Long offset;
+        private final long tableId;
+        private final long offset;
 
-        private Entry(Long tableId, Long offset) {
+        private T block;
+        private int weight;
+        private Node<T> hashNext;
+        private Node<T> lruPrev;
+        private Node<T> lruNext;
+        private Node<T> tablePrev;
+        private Node<T> tableNext;
+
+        private Node(long tableId, long offset) {
             this.tableId = tableId;
             this.offset = offset;
         }
+    }
+
+    private class Segment {
+
+        private final long capacity;
+        private final Node<T> lru = new Node<T>(-1, -1);
+
+        private Node<T>[] buckets = newBuckets(INITIAL_BUCKETS);
+        private int count;
+        private long weight;
+
+        private Segment(long capacity) {
+            this.capacity = capacity;
+            lru.lruPrev = lru;
+            lru.lruNext = lru;
+        }
+
+        private synchronized T get(long tableId, long offset, long hash) {
+            Node<T> node = find(tableId, offset, hash);
+
+            if (node == null) {
+                return null;
+            }
+
+            unlinkLru(node);
+            linkLru(node);
+
+            return node.block.memory().retain() ? node.block : null;
+        }
+
+        private synchronized void put(long tableId, long offset, long hash, T block) {
+            int blockWeight = weigher.weightOf(block);
+            long capacity = capacity();
+
+            if (blockWeight > capacity) {
+                return;
+            }
+
+            Node<T> node = find(tableId, offset, hash);
+
+            if (node == null && frequencySketch != null && weight + blockWeight > capacity && !admit(tableId,
+                    offset)) {
+                rejectedAdmissions.incrementAndGet();
+                return;
+            }
+
+            if (!block.memory().retain()) {
+                return;
+            }
+
+            if (node == null) {
+                node = new Node<T>(tableId, offset);
+                linkHash(node, hash);
+                linkTable(node);
+            } else {
+                unlinkLru(node);
+                releaseBlock(node);
+            }
+
+            node.block = block;
+            node.weight = blockWeight;
+            weight += blockWeight;
+            totalSize.addAndGet(block.memory().size());
+            budget.reserve(tier, block.memory().size());
+            linkLru(node);
+
+            while (weight > capacity) {
+                remove(lru.lruPrev);
+            }
+        }
+
+        private synchronized void invalidate(long tableId) {
+            Node<T> head = find(tableId, TABLE_HEAD, hash(tableId, TABLE_HEAD));
+
+            if (head == null) {
+                return;
+            }
+
+            //Removing the last block of the table also removes its head
+            Node<T> node = head.tableNext;
+
+            while (node != null) {
+                Node<T> next = node.tableNext;
+                remove(node);
+                node = next;
+            }
+        }
+
+        private synchronized void clear() {
+            while (lru.lruPrev != lru) {
+                remove(lru.lruPrev);
+            }
+        }
 
-        public Long tableId() {
-            return tableId;
+        private long capacity() {
+            return Math.min(capacity, cacheLimit() / segments.length);
         }
 
-        public Long offset() {
-            return offset;
+        /**
+         * A block that fits in the free space of the segment is always admitted. Otherwise it has to have been
+         * accessed more often than the block it would evict.
+         */
+        private boolean admit(long tableId, long offset) {
+            Node<T> victim = lru.lruPrev;
+
+            if (victim == lru) {
+                return true;
+            }
+
+            return frequencySketch.frequency(sketchKey(tableId, offset)) > frequencySketch.frequency(sketchKey
+                    (victim.tableId, victim.offset));
         }
 
-        @Override
-        public boolean equals(Object o) {
-            if (this == o) return true;
-            if (o == null || getClass() != o.getClass()) return false;
+        private Node<T> find(long tableId, long offset, long hash) {
+            Node<T> node = buckets[bucket(hash, buckets.length)];
+
+            while (node != null && (node.tableId != tableId || node.offset != offset)) {
+                node = node.hashNext;
+            }
 
-            Entry entry = (Entry) o;
+            return node;
+        }
 
-            if (offset != null ? !offset.equals(entry.offset) : entry.offset != null) return false;
-            if (tableId != null ? !tableId.equals(entry.tableId) : entry.tableId != null) return false;
+        private void remove(Node<T> node) {
+            unlinkHash(node);
+            unlinkLru(node);
+            unlinkTable(node);
+            releaseBlock(node);
+        }
 
-            return true;
+        private void releaseBlock(Node<T> node) {
+            weight -= node.weight;
+            totalSize.addAndGet(-(node.block.memory().size()));
+            budget.release(tier, node.block.memory().size());
+            node.block.memory().release();
+            node.block = null;
         }
 
-        @Override
-        public int hashCode() {
-            int result = tableId != null ? tableId.hashCode() : 0;
-            result = 31 * result + (offset != null ? offset.hashCode() : 0);
-            return result;
+        private void linkHash(Node<T> node, long hash) {
+            if (count >= buckets.length - buckets.length / 4) {
+                resize();
+            }
+
+            int bucket = bucket(hash, buckets.length);
+            node.hashNext = buckets[bucket];
+            buckets[bucket] = node;
+            count++;
         }
 
-        @Override
-        public String toString() {
-            return "Entry{" +
-                    "tableId=" + tableId +
-                    ", offset=" + offset +
-                    '}';
+        private void unlinkHash(Node<T> node) {
+            int bucket = bucket(hash(node.tableId, node.offset), buckets.length);
+            Node<T> current = buckets[bucket];
+
+            if (current == node) {
+                buckets[bucket] = node.hashNext;
+            } else {
+                while (current.hashNext != node) {
+                    current = current.hashNext;
+                }
+
+                current.hashNext = node.hashNext;
+            }
+
+            node.hashNext = null;
+            count--;
+        }
+
+        private void resize() {
+            Node<T>[] resized = newBuckets(buckets.length * 2);
+
+            for (Node<T> node : buckets) {
+                while (node != null) {
+                    Node<T> next = node.hashNext;
+                    int bucket = bucket(hash(node.tableId, node.offset), resized.length);
+                    node.hashNext = resized[bucket];
+                    resized[bucket] = node;
+                    node = next;
+                }
+            }
+
+            buckets = resized;
+        }
+
+        private void linkLru(Node<T> node) {
+            node.lruPrev = lru;
+            node.lruNext = lru.lruNext;
+            lru.lruNext.lruPrev = node;
+            lru.lruNext = node;
+        }
+
+        private void unlinkLru(Node<T> node) {
+            node.lruPrev.lruNext = node.lruNext;
+            node.lruNext.lruPrev = node.lruPrev;
+        }
+
+        private void linkTable(Node<T> node) {
+            long headHash = hash(node.tableId, TABLE_HEAD);
+            Node<T> head = find(node.tableId, TABLE_HEAD, headHash);
+
+            if (head == null) {
+                head = new Node<T>(node.tableId, TABLE_HEAD);
+                linkHash(head, headHash);
+            }
+
+            node.tablePrev = head;
+            node.tableNext = head.tableNext;
+
+            if (head.tableNext != null) {
+                head.tableNext.tablePrev = node;
+            }
+
+            head.tableNext = node;
+        }
+
+        private void unlinkTable(Node<T> node) {
+            Node<T> prev = node.tablePrev;
+            prev.tableNext = node.tableNext;
+
+            if (node.tableNext != null) {
+                node.tableNext.tablePrev = prev;
+            }
+
+            if (prev.offset == TABLE_HEAD && prev.tableNext == null) {
+                unlinkHash(prev);
+            }
+
+            node.tablePrev = null;
+            node.tableNext = null;
         }
     }
 
-    private static final int CONCURRENCY_LEVEL = 64;
+    private static final int MAX_SEGMENTS = 64;
+    private static final int MIN_SEGMENT_ENTRIES = 64;
+    private static final int DEFAULT_ENTRY_SIZE = 4096;
+    private static final int INITIAL_BUCKETS = 16;
+    //The offset of the node that heads the list of blocks of a table, which no block can have
+    private static final long TABLE_HEAD = -1;
 
-    private final ConcurrentLinkedHashMap<Entry, T> cache;
+    private final Segment[] segments;
     private final long maxSize;
+    private final Weigher<T> weigher;
+    private final CachePolicy policy;
+    private final FrequencySketch frequencySketch;
+    private final MemoryBudget budget;
+    private final MemoryBudget.Tier tier;
     private final AtomicLong totalSize = new AtomicLong();
+    private final AtomicLong rejectedAdmissions = new AtomicLong();
 
     public TableBlockCache(long maxSize, Weigher<T> weigher) {
-        cache = new ConcurrentLinkedHashMap.Builder<Entry, T>().concurrencyLevel(CONCURRENCY_LEVEL).weigher(weigher)
-                .listener(new EvictionListener<Entry, T>() {
-            @Override
-            public void onEviction(Entry key, T value) {
-                totalSize.addAndGet(-(value.memory().size()));
-                value.memory().release();
-            }
-        }).maximumWeightedCapacity(maxSize).build();
-        this.maxSize = maxSize;
+        this(maxSize, 0, CachePolicy.LRU, weigher);
     }
 
-    public T get(long tableId, long offset) {
-        T block = cache.get((new Entry(tableId, offset)));
+    /**
+     * @param expectedEntrySize the typical size of a block, which is used to decide how many segments the cache is
+     *                          split into and to size the frequency sketch of policies that need one
+     */
+    public TableBlockCache(long maxSize, int expectedEntrySize, CachePolicy policy, Weigher<T> weigher) {
+        this(maxSize, expectedEntrySize, policy, new MemoryBudget(0), MemoryBudget.Tier.DATA, weigher);
+    }
 
-        if (block == null) {
-            return null;
-        }
+    @SuppressWarnings("unchecked")
+    public TableBlockCache(long maxSize, int expectedEntrySize, CachePolicy policy, MemoryBudget budget,
+                           MemoryBudget.Tier tier, Weigher<T> weigher) {
+        long expectedEntries = maxSize / (expectedEntrySize > 0 ? expectedEntrySize : DEFAULT_ENTRY_SIZE);
+        int segmentCount = Integer.highestOneBit((int) Math.max(Math.min(expectedEntries / MIN_SEGMENT_ENTRIES,
+                MAX_SEGMENTS), 1));
+
+        this.segments = (Segment[]) new TableBlockCache<?>.Segment[segmentCount];
 
-        if (!block.memory().retain()) {
-            return null;
+        for (int i = 0; i < segmentCount; i++) {
+            segments[i] = new Segment(maxSize / segmentCount);
         }
 
-        return block;
+        this.maxSize = maxSize;
+        this.weigher = weigher;
+        this.policy = policy;
+        this.budget = budget;
+        this.tier = tier;
+        this.frequencySketch = policy == CachePolicy.TINY_LFU ? new FrequencySketch((int) Math.min(maxSize /
+                Math.max(expectedEntrySize, 1), Integer.MAX_VALUE / 16)) : null;
     }
 
-    public void put(long tableId, long offset, T block) {
-        Entry entry = new Entry(tableId, offset);
-
-        if (!block.memory().retain()) {
-            return;
+    public T get(long tableId, long offset) {
+        if (frequencySketch != null) {
+            frequencySketch.increment(sketchKey(tableId, offset));
         }
 
-        T existingBlock = cache.put(entry, block);
-
-        if (existingBlock != null) {
-            existingBlock.memory().release();
-        }
+        long hash = hash(tableId, offset);
+        return segment(hash).get(tableId, offset, hash);
+    }
 
-        totalSize.addAndGet(block.memory().size());
+    public void put(long tableId, long offset, T block) {
+        long hash = hash(tableId, offset);
+        segment(hash).put(tableId, offset, hash, block);
     }
 
     public long totalEntrySize() {
@@ -132,19 +357,59 @@ public class TableBlockCache<T extends Offheap> {
         return totalSize.doubleValue() / (double) maxSize;
     }
 
-    public void invalidate(long tableId) {
-        for (Entry entry : cache.keySet()) {
-            if (entry.tableId() == tableId) {
-                T existingBlock = cache.remove(entry);
+    public CachePolicy policy() {
+        return policy;
+    }
 
-                if (existingBlock != null) {
-                    existingBlock.memory().release();
-                }
-            }
+    public MemoryBudget budget() {
+        return budget;
+    }
+
+    public long rejectedAdmissions() {
+        return rejectedAdmissions.get();
+    }
+
+    public void invalidate(long tableId) {
+        for (Segment segment : segments) {
+            segment.invalidate(tableId);
         }
     }
 
     public void clear() {
-        cache.clear();
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    /**
+     * The share of the tier that the cache may fill, which leaves out memory that others have reserved in the same
+     * tier, such as the root index blocks that each Index pins.
+     */
+    private long cacheLimit() {
+        long pinned = Math.max(budget.size(tier) - totalSize.get(), 0);
+        return Math.max(budget.limit(tier) - pinned, 0);
+    }
+
+    private Segment segment(long hash) {
+        return segments[(int) (hash >>> 32) & (segments.length - 1)];
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> Node<T>[] newBuckets(int size) {
+        return (Node<T>[]) new Node<?>[size];
+    }
+
+    private static int bucket(long hash, int bucketCount) {
+        return (int) hash & (bucketCount - 1);
+    }
+
+    private static long hash(long tableId, long offset) {
+        long hash = sketchKey(tableId, offset);
+        hash = (hash ^ (hash >>> 33)) * 0xff51afd7ed558ccdL;
+        return hash ^ (hash >>> 33);
+    }
+
+    private static long sketchKey(long tableId, long offset) {
+        return tableId * 0x9e3779b97f4a7c15L + offset;
     }
 }
@@ -0,0 +1,248 @@
+/*
+ * Copyright (c) 2014. Jordan Williams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jordanwilliams.heftydb.compact;
+
+import com.codahale.metrics.Meter;
+import com.google.common.util.concurrent.AbstractFuture;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.util.Iterator;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs CompactionTasks in order of their score on a fixed number of worker threads, which all take their next task
+ * from a single queue of pending tasks. A running task yields at its next checkpoint whenever a pending task has a
+ * higher score and no worker is idle, by running that task to completion on its own thread before it continues.
+ * <p/>
+ * A preempted task keeps its partly written output table open, along with its reserved table id and its input tables,
+ * which stay marked as compacting, so the memory and open files of the preempting task add to its own. Preemption is
+ * therefore only one level deep: a task that runs in place of a preempted one is not preempted itself.
+ */
+public class CompactionScheduler {
+
+    private static final int CHECKPOINT_INTERVAL = 4096;
+
+    private static final ThreadLocal<Job> currentJob = new ThreadLocal<Job>();
+
+    private class Job extends AbstractFuture<CompactionStats> implements Comparable<Job> {
+
+        private final Callable<CompactionStats> body;
+        private final double score;
+        private final long sequence;
+        private boolean preempting;
+
+        private Job(Callable<CompactionStats> body, double score) {
+            this.body = body;
+            this.score = score;
+            this.sequence = sequenceNumber.incrementAndGet();
+        }
+
+        private void run() {
+            if (isCancelled()) {
+                return;
+            }
+
+            Job preemptedJob = currentJob.get();
+            currentJob.set(this);
+
+            try {
+                set(body.call());
+            } catch (Throwable t) {
+                setException(t);
+            } finally {
+                if (preemptedJob == null) {
+                    currentJob.remove();
+                } else {
+                    currentJob.set(preemptedJob);
+                }
+            }
+        }
+
+        @Override
+        public int compareTo(Job other) {
+            int compared = Double.compare(other.score, score);
+            return compared != 0 ? compared : Long.compare(sequence, other.sequence);
+        }
+    }
+
+    private class Worker implements Runnable {
+
+        @Override
+        public void run() {
+            try {
+                Job job = takeJob();
+
+                while (job != null) {
+                    try {
+                        job.run();
+                    } finally {
+                        finishJob();
+                    }
+
+                    job = takeJob();
+                }
+            } catch (InterruptedException e) {
+                //The scheduler is closed
+            }
+        }
+    }
+
+    private class CheckpointIterator<T> implements Iterator<T> {
+
+        private final Iterator<T> delegate;
+        private int count;
+
+        private CheckpointIterator(Iterator<T> delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return delegate.hasNext();
+        }
+
+        @Override
+        public T next() {
+            if (++count % CHECKPOINT_INTERVAL == 0) {
+                checkpoint();
+            }
+
+            return delegate.next();
+        }
+
+        @Override
+        public void remove() {
+            delegate.remove();
+        }
+    }
+
+    private final int threads;
+    private final ThreadPoolExecutor executor;
+    private final PriorityQueue<Job> pendingJobs = new PriorityQueue<Job>();
+    private final AtomicLong sequenceNumber = new AtomicLong();
+    private final Meter preemptions;
+    private int runningJobs;
+    private boolean closed;
+
+    public CompactionScheduler(int threads, Meter preemptions) {
+        this.threads = threads;
+        this.preemptions = preemptions;
+        this.executor = new ThreadPoolExecutor(threads, threads, Long.MAX_VALUE, TimeUnit.DAYS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactoryBuilder().setNameFormat("Compaction task " +
+                "thread %d").build());
+
+        for (int i = 0; i < threads; i++) {
+            executor.execute(new Worker());
+        }
+    }
+
+    public ListenableFuture<CompactionStats> submit(CompactionTask task, Callable<CompactionStats> body) {
+        Job job = new Job(body, task.score());
+
+        synchronized (this) {
+            if (closed) {
+                job.cancel(false);
+                return job;
+            }
+
+            pendingJobs.add(job);
+            notifyAll();
+        }
+
+        return job;
+    }
+
+    /**
+     * Wraps an Iterator so that a compaction consuming it reaches a preemption checkpoint periodically.
+     */
+    public <T> Iterator<T> checkpointed(Iterator<T> iterator) {
+        return new CheckpointIterator<T>(iterator);
+    }
+
+    /**
+     * Runs the pending task with the highest score on the calling thread if it outscores the calling task and no
+     * worker is idle to take it. The calling task continues once that task completes.
+     */
+    public void checkpoint() {
+        Job job = currentJob.get();
+
+        if (job == null || job.preempting) {
+            return;
+        }
+
+        Job preemptingJob;
+
+        synchronized (this) {
+            Job pending = pendingJobs.peek();
+
+            if (pending == null || pending.score <= job.score || runningJobs < threads) {
+                return;
+            }
+
+            preemptingJob = pendingJobs.poll();
+        }
+
+        preemptions.mark();
+        preemptingJob.preempting = true;
+        preemptingJob.run();
+    }
+
+    public synchronized int runningCount() {
+        return runningJobs;
+    }
+
+    public void close() {
+        synchronized (this) {
+            closed = true;
+
+            for (Job job : pendingJobs) {
+                job.cancel(false);
+            }
+
+            pendingJobs.clear();
+            notifyAll();
+        }
+
+        executor.shutdownNow();
+    }
+
+    /**
+     * Blocks until a task is pending, and returns null once the scheduler is closed.
+     */
+    private synchronized Job takeJob() throws InterruptedException {
+        while (pendingJobs.isEmpty()) {
+            if (closed) {
+                return null;
+            }
+
+            wait();
+        }
+
+        runningJobs++;
+        return pendingJobs.poll();
+    }
+
+    private synchronized void finishJob() {
+        runningJobs--;
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2014. Jordan Williams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jordanwilliams.heftydb.compact;
+
+/**
+ * Summarizes the work done by a single finished CompactionTask.
+ */
+public class CompactionStats {
+
+    private final long bytesIn;
+    private final long bytesOut;
+    private final long tuplesIn;
+    private final long tuplesOut;
+
+    public CompactionStats(long bytesIn, long bytesOut, long tuplesIn, long tuplesOut) {
+        this.bytesIn = bytesIn;
+        this.bytesOut = bytesOut;
+        this.tuplesIn = tuplesIn;
+        this.tuplesOut = tuplesOut;
+    }
+
+    public long bytesIn() {
+        return bytesIn;
+    }
+
+    public long bytesOut() {
+        return bytesOut;
+    }
+
+    public long tuplesIn() {
+        return tuplesIn;
+    }
+
+    public long tuplesOut() {
+        return tuplesOut;
+    }
+
+    public long tuplesDropped() {
+        return tuplesIn - tuplesOut;
+    }
+
+    @Override
+    public String toString() {
+        return "CompactionStats{" +
+                "bytesIn=" + bytesIn +
+                ", bytesOut=" + bytesOut +
+                ", tuplesIn=" + tuplesIn +
+                ", tuplesOut=" + tuplesOut +
+                ", tuplesDropped=" + tuplesDropped() +
+                '}';
+    }
+}
@@ -16,6 +16,7 @@
 
 package com.jordanwilliams.heftydb.compact;
 
+import com.jordanwilliams.heftydb.data.KeyComparator;
 import com.jordanwilliams.heftydb.state.Tables;
 import com.jordanwilliams.heftydb.table.Table;
 
@@ -31,9 +32,15 @@ public class CompactionTables {
 
     private final Set<Long> alreadyCompactedTables = new HashSet<Long>();
     private final Tables tables;
+    private final KeyComparator keyComparator;
 
-    public CompactionTables(Tables tables) {
+    public CompactionTables(Tables tables, KeyComparator keyComparator) {
         this.tables = tables;
+        this.keyComparator = keyComparator;
+    }
+
+    public KeyComparator keyComparator() {
+        return keyComparator;
     }
 
     public List<Table> eligibleTables() {
@@ -58,4 +65,61 @@ public class CompactionTables {
     public void markAsCompacted(Table table){
         alreadyCompactedTables.add(table.id());
     }
+
+    public void markAsEligible(Table table) {
+        alreadyCompactedTables.remove(table.id());
+    }
+
+    /**
+     * Builds a task that compacts the provided tables into the provided level. Tables that overlap neither another input
+     * nor a table already at that level are moved there instead of rewritten. Moves are only planned alongside a merge
+     * of at least two tables, so every task leaves fewer tables behind and moved tables can not fill the next level
+     * with tables that are only moved again.
+     */
+    public CompactionTask compactionTask(List<Table> inputTables, int level) {
+        List<Table> targetLevelTables = new ArrayList<Table>();
+        List<Table> mergedTables = new ArrayList<Table>();
+        List<Table> movedTables = new ArrayList<Table>();
+
+        tables.readLock();
+
+        try {
+            for (Table table : tables) {
+                if (table.isPersistent() && table.level() == level && !inputTables.contains(table)) {
+                    targetLevelTables.add(table);
+                }
+            }
+        } finally {
+            tables.readUnlock();
+        }
+
+        for (Table table : inputTables) {
+            if (table.minKey() == null || overlapsAny(table, inputTables) || overlapsAny(table, targetLevelTables)) {
+                mergedTables.add(table);
+            } else {
+                movedTables.add(table);
+            }
+        }
+
+        if (mergedTables.size() < 2) {
+            return new CompactionTask(inputTables, level);
+        }
+
+        return new CompactionTask(mergedTables, movedTables, level);
+    }
+
+    private boolean overlapsAny(Table table, List<Table> others) {
+        for (Table other : others) {
+            if (other.id() == table.id() || other.minKey() == null) {
+                continue;
+            }
+
+            if (keyComparator.compare(table.minKey(), other.maxKey()) <= 0 && keyComparator.compare(other.minKey(),
+                    table.maxKey()) <= 0) {
+                return true;
+            }
+        }
+
+        return false;
+    }
 }
@@ -19,6 +19,7 @@ package com.jordanwilliams.heftydb.compact;
 import com.jordanwilliams.heftydb.table.Table;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -26,19 +27,13 @@ import java.util.List;
  */
 public class CompactionTask {
 
-    public enum Priority {
-        HIGH, NORMAL
-    }
-
     public static class Builder {
 
         private final List<Table> tables = new ArrayList<Table>();
         private final int level;
-        private final Priority priority;
 
-        public Builder(int level, Priority priority) {
+        public Builder(int level) {
             this.level = level;
-            this.priority = priority;
         }
 
         public void add(Table table) {
@@ -46,30 +41,64 @@ public class CompactionTask {
         }
 
         public CompactionTask build() {
-            return new CompactionTask(tables, level, priority);
+            return new CompactionTask(tables, level);
         }
     }
 
     private final List<Table> tables;
+    private final List<Table> movedTables;
     private final int level;
-    private final Priority priority;
 
-    public CompactionTask(List<Table> tables, int level, Priority priority) {
+    public CompactionTask(List<Table> tables, List<Table> movedTables, int level) {
         this.tables = tables;
+        this.movedTables = movedTables;
         this.level = level;
-        this.priority = priority;
     }
 
+    public CompactionTask(List<Table> tables, int level) {
+        this(tables, Collections.<Table>emptyList(), level);
+    }
+
+    /**
+     * The tables that are merged and rewritten into a new table at the target level.
+     */
     public List<Table> tables() {
         return tables;
     }
 
+    /**
+     * The tables that are moved to the target level without being rewritten.
+     */
+    public List<Table> movedTables() {
+        return movedTables;
+    }
+
+    public List<Table> allTables() {
+        List<Table> allTables = new ArrayList<Table>(tables);
+        allTables.addAll(movedTables);
+        return allTables;
+    }
+
     public int level() {
         return level;
     }
 
-    public Priority priority() {
-        return priority;
+    public long bytesRewritten() {
+        long bytes = 0;
+
+        for (Table table : tables) {
+            bytes += table.size();
+        }
+
+        return bytes;
+    }
+
+    /**
+     * Estimates the value of running this task as the read amplification it relieves per byte that it rewrites.
+     * Merging n tables into one removes n - 1 tables from the read path of every key they share.
+     */
+    public double score() {
+        return (tables.size() - 1) / (double) Math.max(bytesRewritten(), 1);
     }
 
     @Override
@@ -80,8 +109,8 @@ public class CompactionTask {
         CompactionTask that = (CompactionTask) o;
 
         if (level != that.level) return false;
-        if (priority != that.priority) return false;
         if (tables != null ? !tables.equals(that.tables) : that.tables != null) return false;
+        if (movedTables != null ? !movedTables.equals(that.movedTables) : that.movedTables != null) return false;
 
         return true;
     }
@@ -89,8 +118,8 @@ public class CompactionTask {
     @Override
     public int hashCode() {
         int result = tables != null ? tables.hashCode() : 0;
+        result = 31 * result + (movedTables != null ? movedTables.hashCode() : 0);
         result = 31 * result + level;
-        result = 31 * result + (priority != null ? priority.hashCode() : 0);
         return result;
     }
 
@@ -98,8 +127,9 @@ public class CompactionTask {
     public String toString() {
         return "CompactionTask{" +
                 "tables=" + tables +
+                ", movedTables=" + movedTables +
                 ", level=" + level +
-                ", priority=" + priority +
+                ", score=" + score() +
                 '}';
     }
 }
@@ -18,8 +18,13 @@ package com.jordanwilliams.heftydb.compact;
 
 import com.codahale.metrics.Timer;
 import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.jordanwilliams.heftydb.compact.planner.CompactionPlanner;
+import com.jordanwilliams.heftydb.compact.planner.RangeCompactionPlanner;
+import com.jordanwilliams.heftydb.data.KeyComparator;
+import com.jordanwilliams.heftydb.data.RangeTombstone;
 import com.jordanwilliams.heftydb.data.Tuple;
 import com.jordanwilliams.heftydb.db.Config;
 import com.jordanwilliams.heftydb.io.Throttle;
@@ -27,26 +32,33 @@ import com.jordanwilliams.heftydb.metrics.Metrics;
 import com.jordanwilliams.heftydb.read.CompactionTupleIterator;
 import com.jordanwilliams.heftydb.read.MergingIterator;
 import com.jordanwilliams.heftydb.state.Caches;
+import com.jordanwilliams.heftydb.state.Manifest;
 import com.jordanwilliams.heftydb.state.Paths;
+import com.jordanwilliams.heftydb.state.RangeTombstones;
 import com.jordanwilliams.heftydb.state.Snapshots;
 import com.jordanwilliams.heftydb.state.Tables;
 import com.jordanwilliams.heftydb.table.Table;
 import com.jordanwilliams.heftydb.table.file.FileTable;
 import com.jordanwilliams.heftydb.table.file.FileTableWriter;
+import com.jordanwilliams.heftydb.table.file.LazyFileTable;
 import com.jordanwilliams.heftydb.util.CloseableIterator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.channels.ClosedChannelException;
 import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.Callable;
 import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
@@ -56,7 +68,42 @@ public class Compactor {
 
     private static final Logger logger = LoggerFactory.getLogger(Compactor.class);
 
-    private class Task implements Runnable {
+    private static class CountingIterator implements CloseableIterator<Tuple> {
+
+        private final Iterator<Tuple> delegate;
+        private long count;
+
+        private CountingIterator(Iterator<Tuple> delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return delegate.hasNext();
+        }
+
+        @Override
+        public Tuple next() {
+            Tuple next = delegate.next();
+            count++;
+            return next;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void close() throws IOException {
+        }
+
+        public long count() {
+            return count;
+        }
+    }
+
+    private class Task implements Callable<CompactionStats> {
 
         private final CompactionTask compactionTask;
         private final Throttle throttle;
@@ -67,43 +114,140 @@ public class Compactor {
         }
 
         @Override
-        public void run() {
+        public CompactionStats call() {
             try {
                 Timer.Context watch = metrics.timer("compactor.taskExecution").time();
                 List<CloseableIterator<Tuple>> tableIterators = new ArrayList<CloseableIterator<Tuple>>();
                 long tupleCount = 0;
-                long nextTableId = tables.nextId();
+                long nextTableId = tables.reserveId();
+                long minSnapshotId = snapshots.minimumRetainedId();
+                List<RangeTombstone> tombstones = new ArrayList<RangeTombstone>(rangeTombstones.all());
+                long minTableId = Long.MAX_VALUE;
+                long bytesIn = 0;
+                long bytesOut = 0;
+                long deletedTuples = 0;
+
+                List<Table> mergedTables = new ArrayList<Table>(compactionTask.tables());
+
+                for (Table table : compactionTask.movedTables()) {
+                    //A table that a RangeTombstone can be applied to has to be rewritten to drop the deleted Tuples
+                    if (hasApplicableTombstone(table, tombstones, minSnapshotId)) {
+                        mergedTables.add(table);
+                    } else {
+                        moveTable(table);
+                    }
+                }
+
+                if (mergedTables.isEmpty()) {
+                    watch.stop();
+                    return new CompactionStats(0, 0, 0, 0);
+                }
+
+                for (Table table : mergedTables) {
+                    minTableId = Math.min(minTableId, table.id());
+                    bytesIn += table.size();
+
+                    if (isDeleted(table, tombstones, minSnapshotId)) {
+                        deletedTuples += table.tupleCount();
+                        continue;
+                    }
 
-                for (Table table : compactionTask.tables()) {
                     tableIterators.add(new CloseableIterator.Wrapper<Tuple>(table.iterator()));
                     tupleCount += table.tupleCount();
                 }
 
-                Iterator<Tuple> compactionIterator = new CompactionTupleIterator(snapshots.minimumRetainedId(),
-                        new MergingIterator<Tuple>
-                        (tableIterators));
+                CountingIterator sourceIterator = new CountingIterator(new MergingIterator<Tuple>(Tuple.comparator
+                        (keyComparator), false, tableIterators));
+                CountingIterator compactionIterator = new CountingIterator(compactionScheduler.checkpointed(new
+                        CompactionTupleIterator(minSnapshotId, tombstones, keyComparator, sourceIterator)));
+                List<Table> compactedTables = new ArrayList<Table>();
+
+                if (compactionIterator.hasNext()) {
+                    FileTableWriter.Task writerTask = new FileTableWriter.Task.Builder().tableId(nextTableId).config
+                            (config).paths(paths).level(compactionTask.level()).tupleCount(tupleCount).source
+                            (compactionIterator).throttle(throttle).build();
 
-                FileTableWriter.Task writerTask = new FileTableWriter.Task.Builder().tableId(nextTableId).config
-                        (config).paths(paths).level(compactionTask.level()).tupleCount(tupleCount).source
-                        (compactionIterator).throttle(throttle).build();
+                    writerTask.run();
 
-                writerTask.run();
+                    Table compactedTable = FileTable.open(nextTableId, paths, caches.recordBlockCache(), caches
+                            .indexBlockCache(), keyComparator, config.checksumVerification(), config.readMode(),
+                            metrics);
+                    bytesOut = compactedTable.size();
+                    compactedTables.add(compactedTable);
 
-                tables.add(FileTable.open(nextTableId, paths, caches.recordBlockCache(), caches.indexBlockCache(),
-                        metrics));
+                    //Tombstones that could not be applied yet now cover Tuples in the new table
+                    List<RangeTombstone> retainedTombstones = new ArrayList<RangeTombstone>();
 
-                removeObsoleteTables(compactionTask.tables());
+                    for (RangeTombstone tombstone : tombstones) {
+                        if (tombstone.snapshotId() > minSnapshotId) {
+                            retainedTombstones.add(tombstone);
+                        }
+                    }
+
+                    rangeTombstones.rewritten(retainedTombstones, minTableId, nextTableId);
+                }
+
+                replaceTables(compactedTables, mergedTables);
+                rangeTombstones.removeObsolete(tables);
 
                 watch.stop();
+
+                return new CompactionStats(bytesIn, bytesOut, sourceIterator.count() + deletedTuples,
+                        compactionIterator.count());
             } catch (ClosedChannelException e) {
                 logger.debug("Compaction terminated without finishing " + compactionId);
+                return new CompactionStats(0, 0, 0, 0);
             } catch (IOException e) {
                 throw new RuntimeException(e);
             }
         }
 
-        private void removeObsoleteTables(List<Table> toRemove) throws IOException {
-            tables.removeAll(toRemove);
+        private boolean hasApplicableTombstone(Table table, List<RangeTombstone> tombstones, long minSnapshotId) {
+            for (RangeTombstone tombstone : tombstones) {
+                if (tombstone.snapshotId() <= minSnapshotId && tombstone.overlaps(table.minKey(), table.maxKey(),
+                        keyComparator)) {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+
+        private void moveTable(Table table) throws IOException {
+            logger.debug("Moving table " + table.id() + " to level " + compactionTask.level());
+
+            //Only the Manifest records the new level, so a published table file is never changed
+            Manifest.Entry movedEntry = new Manifest.Entry(table.id(), compactionTask.level(), table.tupleCount(),
+                    table.size(), table.maxSnapshotId(), table.minKey(), table.maxKey());
+            Table movedTable = new LazyFileTable(movedEntry, paths, caches.recordBlockCache(), caches
+                    .indexBlockCache(), keyComparator, config.checksumVerification(), config.readMode(), metrics);
+            tables.swap(movedTable, table);
+            table.close();
+
+            synchronized (Compactor.this) {
+                compactionTables.markAsEligible(movedTable);
+            }
+
+            metrics.meter("compactor.trivialMoves").mark();
+        }
+
+        private boolean isDeleted(Table table, List<RangeTombstone> tombstones, long minSnapshotId) {
+            if (table.minKey() == null) {
+                return false;
+            }
+
+            for (RangeTombstone tombstone : tombstones) {
+                if (tombstone.snapshotId() <= minSnapshotId && tombstone.snapshotId() > table.maxSnapshotId() &&
+                        tombstone.contains(table.minKey(), table.maxKey(), keyComparator)) {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+
+        private void replaceTables(List<Table> toAdd, List<Table> toRemove) throws IOException {
+            tables.replace(toAdd, toRemove);
 
             for (Table table : toRemove) {
                 table.close();
@@ -119,41 +263,36 @@ public class Compactor {
     private final Config config;
     private final Paths paths;
     private final Tables tables;
+    private final RangeTombstones rangeTombstones;
     private final CompactionTables compactionTables;
     private final Caches caches;
     private final ThreadPoolExecutor compactionExecutor;
-    private final ThreadPoolExecutor compactionTaskExecutor;
-    private final ThreadPoolExecutor highPriorityCompactionTaskExecutor;
+    private final CompactionScheduler compactionScheduler;
+    private final AtomicBoolean evaluationPending = new AtomicBoolean();
     private final CompactionPlanner compactionPlanner;
     private final Metrics metrics;
     private final AtomicInteger compactionId = new AtomicInteger();
     private final Snapshots snapshots;
+    private final KeyComparator keyComparator;
 
-    public Compactor(Config config, Paths paths, Tables tables, Caches caches, CompactionStrategy compactionStrategy,
-                     Metrics metrics, Snapshots snapshots) {
+    public Compactor(Config config, Paths paths, Tables tables, RangeTombstones rangeTombstones, Caches caches,
+                     CompactionStrategy compactionStrategy, Metrics metrics, Snapshots snapshots) {
         this.config = config;
         this.paths = paths;
         this.tables = tables;
-        this.compactionTables = new CompactionTables(tables);
+        this.rangeTombstones = rangeTombstones;
+        this.keyComparator = config.keyComparator();
+        this.compactionTables = new CompactionTables(tables, keyComparator);
         this.caches = caches;
         this.metrics = metrics;
         this.snapshots = snapshots;
 
-        this.compactionExecutor = new ThreadPoolExecutor(config.tableCompactionThreads(), config.tableCompactionThreads(),
-                Long.MAX_VALUE, TimeUnit.DAYS, new LinkedBlockingQueue<Runnable>(config.tableCompactionThreads()),
-                new ThreadFactoryBuilder().setNameFormat("Compaction thread %d").build(), new ThreadPoolExecutor.CallerRunsPolicy());
-
-        int compactionTaskThreads = Math.max(config.tableCompactionThreads() / 2, 1);
+        this.compactionExecutor = new ThreadPoolExecutor(1, 1, Long.MAX_VALUE, TimeUnit.DAYS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactoryBuilder().setNameFormat("Compaction thread %d")
+                .build(), new ThreadPoolExecutor.DiscardPolicy());
 
-        this.compactionTaskExecutor = new ThreadPoolExecutor(compactionTaskThreads, compactionTaskThreads, Long.MAX_VALUE,
-                TimeUnit.DAYS, new LinkedBlockingQueue<Runnable>(config.tableCompactionThreads()),
-                new ThreadFactoryBuilder().setNameFormat("Compaction task thread %d").build(),
-                new ThreadPoolExecutor.CallerRunsPolicy());
-
-        this.highPriorityCompactionTaskExecutor = new ThreadPoolExecutor(compactionTaskThreads, compactionTaskThreads,
-                Long.MAX_VALUE, TimeUnit.DAYS, new LinkedBlockingQueue<Runnable>(config.tableCompactionThreads()),
-                new ThreadFactoryBuilder().setNameFormat("High priority " +
-                "compaction task thread %d").build(), new ThreadPoolExecutor.CallerRunsPolicy());
+        this.compactionScheduler = new CompactionScheduler(config.tableCompactionThreads(),
+                metrics.meter("compactor.preemptions"));
 
         this.compactionPlanner = compactionStrategy.initialize(compactionTables);
 
@@ -165,58 +304,82 @@ public class Compactor {
         });
     }
 
-    public synchronized void evaluateCompaction() {
-        if (compactionPlanner.needsCompaction()) {
-            scheduleCompaction();
+    /**
+     * Checks whether compaction is needed on the compaction thread. Repeated calls made before that check runs are
+     * coalesced, so table change handlers never plan or run compactions themselves.
+     */
+    public void evaluateCompaction() {
+        if (!evaluationPending.compareAndSet(false, true)) {
+            return;
         }
+
+        compactionExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                evaluationPending.set(false);
+
+                synchronized (Compactor.this) {
+                    if (compactionPlanner.needsCompaction()) {
+                        scheduleCompaction();
+                    }
+                }
+            }
+        });
+    }
+
+    public synchronized Future<List<CompactionStats>> scheduleCompaction() {
+        return scheduleCompaction(compactionPlanner);
     }
 
-    public synchronized Future<?> scheduleCompaction() {
+    /**
+     * Compacts every table that overlaps the key range [start, end) into a single table.
+     */
+    public synchronized Future<List<CompactionStats>> compactRange(ByteBuffer start, ByteBuffer end) {
+        return scheduleCompaction(new RangeCompactionPlanner(compactionTables, start, end));
+    }
+
+    private Future<List<CompactionStats>> scheduleCompaction(CompactionPlanner planner) {
         final int id = compactionId.incrementAndGet();
         logger.debug("Starting compaction " + id);
 
-        CompactionPlan compactionPlan = compactionPlanner.planCompaction();
+        CompactionPlan compactionPlan = planner.planCompaction();
 
         if (compactionPlan == null) {
             logger.debug("No compaction tasks present " + id);
             logger.debug("Finishing compaction " + id);
-            return Futures.immediateFuture(null);
+            return Futures.immediateFuture(Collections.<CompactionStats>emptyList());
         }
 
-        final List<Future<?>> taskFutures = new ArrayList<Future<?>>();
+        List<ListenableFuture<CompactionStats>> taskFutures = new ArrayList<ListenableFuture<CompactionStats>>();
         Throttle compactionThrottle = new Throttle(config.maxCompactionRate());
 
         for (CompactionTask task : compactionPlan) {
             logger.debug("Compaction " + id + "  task : " + task);
 
-            for (Table table : task.tables()){
+            for (Table table : task.allTables()){
                 compactionTables.markAsCompacted(table);
             }
 
-            ThreadPoolExecutor taskExecutor = task.priority().equals(CompactionTask.Priority.HIGH) ?
-                    highPriorityCompactionTaskExecutor : compactionTaskExecutor;
-
-            taskFutures.add(taskExecutor.submit(new Task(task, compactionThrottle)));
+            taskFutures.add(compactionScheduler.submit(task, new Task(task, compactionThrottle)));
         }
 
-        metrics.histogram("compactor.concurrentTasks").update(highPriorityCompactionTaskExecutor.getActiveCount() +
-                compactionTaskExecutor.getActiveCount());
+        metrics.histogram("compactor.concurrentTasks").update(compactionScheduler.runningCount());
+
+        ListenableFuture<List<CompactionStats>> compactionFuture = Futures.allAsList(taskFutures);
 
-        return compactionExecutor.submit(new Runnable() {
+        compactionFuture.addListener(new Runnable() {
             @Override
             public void run() {
-                for (Future<?> taskFuture : taskFutures){
-                    Futures.getUnchecked(taskFuture);
-                }
-
                 logger.debug("Finishing compaction " + id);
             }
-        });
+        }, MoreExecutors.sameThreadExecutor());
+
+        return compactionFuture;
     }
 
     public void close() throws IOException {
         compactionExecutor.shutdownNow();
-        compactionTaskExecutor.shutdownNow();
+        compactionScheduler.close();
     }
 
     @Override
@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2014. Jordan Williams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jordanwilliams.heftydb.compact;
+
+import com.jordanwilliams.heftydb.compact.planner.CompactionPlanner;
+import com.jordanwilliams.heftydb.compact.planner.TimeWindowCompactionPlanner;
+
+/**
+ * A CompactionStrategy for append-mostly data that groups tables into windows of write order and only ever compacts
+ * tables from the same window together. Write order is measured in snapshot ids, so a window spans a fixed number of
+ * writes.
+ */
+public class TimeWindowCompactionStrategy implements CompactionStrategy {
+
+    private final long windowSize;
+
+    public TimeWindowCompactionStrategy(long windowSize) {
+        if (windowSize <= 0) {
+            throw new IllegalArgumentException("Window size must be positive");
+        }
+
+        this.windowSize = windowSize;
+    }
+
+    public long windowSize() {
+        return windowSize;
+    }
+
+    @Override
+    public CompactionPlanner initialize(CompactionTables tables) {
+        return new TimeWindowCompactionPlanner(tables, windowSize);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        TimeWindowCompactionStrategy that = (TimeWindowCompactionStrategy) o;
+
+        return windowSize == that.windowSize;
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) (windowSize ^ (windowSize >>> 32));
+    }
+
+    @Override
+    public String toString() {
+        return "TimeWindowCompactionStrategy{" +
+                "windowSize=" + windowSize +
+                '}';
+    }
+}
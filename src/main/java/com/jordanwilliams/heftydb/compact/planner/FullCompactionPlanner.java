@@ -36,7 +36,7 @@ public class FullCompactionPlanner implements CompactionPlanner {
 
     @Override
     public CompactionPlan planCompaction() {
-        CompactionTask.Builder taskBuilder = new CompactionTask.Builder(2, CompactionTask.Priority.NORMAL);
+        CompactionTask.Builder taskBuilder = new CompactionTask.Builder(2);
 
         List<Table> eligibleTables = tables.eligibleTables();
 
@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2014. Jordan Williams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jordanwilliams.heftydb.compact.planner;
+
+import com.jordanwilliams.heftydb.compact.CompactionPlan;
+import com.jordanwilliams.heftydb.compact.CompactionTables;
+import com.jordanwilliams.heftydb.compact.CompactionTask;
+import com.jordanwilliams.heftydb.data.KeyComparator;
+import com.jordanwilliams.heftydb.table.Table;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Compacts every table whose key range overlaps [start, end) into a single table. Tables are always merged whole, as
+ * rewriting only part of a table would leave the rest of it behind in a table that still has to be read.
+ */
+public class RangeCompactionPlanner implements CompactionPlanner {
+
+    private final CompactionTables tables;
+    private final ByteBuffer start;
+    private final ByteBuffer end;
+
+    public RangeCompactionPlanner(CompactionTables tables, ByteBuffer start, ByteBuffer end) {
+        this.tables = tables;
+        this.start = start;
+        this.end = end;
+    }
+
+    @Override
+    public CompactionPlan planCompaction() {
+        List<Table> overlappingTables = overlappingTables();
+
+        if (overlappingTables.isEmpty()) {
+            return new CompactionPlan(Collections.<CompactionTask>emptyList());
+        }
+
+        int maxLevel = 0;
+
+        for (Table table : overlappingTables) {
+            maxLevel = Math.max(maxLevel, table.level());
+        }
+
+        return new CompactionPlan(new CompactionTask(overlappingTables, maxLevel + 1));
+    }
+
+    @Override
+    public boolean needsCompaction() {
+        return !overlappingTables().isEmpty();
+    }
+
+    private List<Table> overlappingTables() {
+        List<Table> overlappingTables = new ArrayList<Table>();
+        KeyComparator keyComparator = tables.keyComparator();
+
+        for (Table table : tables.eligibleTables()) {
+            if (table.minKey() != null && keyComparator.compare(table.minKey(), end) < 0 && keyComparator.compare(table
+                    .maxKey(), start) >= 0) {
+                overlappingTables.add(table);
+            }
+        }
+
+        return overlappingTables;
+    }
+}
@@ -28,7 +28,8 @@ import java.util.SortedMap;
 import java.util.TreeMap;
 
 /**
- * Compacts tables into groups with overlapping key ranges once there are 10 tables at a particular size.
+ * Compacts tables into groups with overlapping key ranges once there are 5 tables at a particular size. Tables that
+ * overlap none of the others are moved to the next size rather than rewritten.
  */
 public class SizeTieredCompactionPlanner implements CompactionPlanner {
 
@@ -48,8 +49,7 @@ public class SizeTieredCompactionPlanner implements CompactionPlanner {
         for (Map.Entry<Integer, List<Table>> entry : leveledTables.entrySet()) {
             if (entry.getValue().size() >= MAX_LEVEL_TABLES) {
                 int level = entry.getKey();
-                compactionTasks.add(new CompactionTask(entry.getValue(), level + 1, level < 3 ? CompactionTask
-                        .Priority.HIGH : CompactionTask.Priority.NORMAL));
+                compactionTasks.add(tables.compactionTask(entry.getValue(), level + 1));
             }
         }
 
@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2014. Jordan Williams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jordanwilliams.heftydb.compact.planner;
+
+import com.jordanwilliams.heftydb.compact.CompactionPlan;
+import com.jordanwilliams.heftydb.compact.CompactionTables;
+import com.jordanwilliams.heftydb.compact.CompactionTask;
+import com.jordanwilliams.heftydb.table.Table;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Assigns each table to the window containing its newest snapshot id. Tables in the newest window are compacted
+ * size-tiered as they accumulate, and every older window is compacted down to a single table. Tables from different
+ * windows are never merged, so old windows are never rewritten along with new data.
+ */
+public class TimeWindowCompactionPlanner implements CompactionPlanner {
+
+    private static final int MAX_LEVEL_TABLES = 5;
+
+    private final CompactionTables tables;
+    private final long windowSize;
+
+    public TimeWindowCompactionPlanner(CompactionTables tables, long windowSize) {
+        this.tables = tables;
+        this.windowSize = windowSize;
+    }
+
+    @Override
+    public CompactionPlan planCompaction() {
+        SortedMap<Long, List<Table>> windowedTables = windowedTables();
+        List<CompactionTask> compactionTasks = new ArrayList<CompactionTask>();
+
+        if (windowedTables.isEmpty()) {
+            return new CompactionPlan(compactionTasks);
+        }
+
+        long newestWindow = windowedTables.lastKey();
+
+        for (Map.Entry<Long, List<Table>> entry : windowedTables.entrySet()) {
+            if (entry.getKey() == newestWindow) {
+                compactionTasks.addAll(newestWindowTasks(entry.getValue()));
+            } else if (entry.getValue().size() > 1) {
+                compactionTasks.add(new CompactionTask(entry.getValue(), maxLevel(entry.getValue()) + 1));
+            }
+        }
+
+        return new CompactionPlan(compactionTasks);
+    }
+
+    @Override
+    public boolean needsCompaction() {
+        SortedMap<Long, List<Table>> windowedTables = windowedTables();
+
+        if (windowedTables.isEmpty()) {
+            return false;
+        }
+
+        long newestWindow = windowedTables.lastKey();
+
+        for (Map.Entry<Long, List<Table>> entry : windowedTables.entrySet()) {
+            if (entry.getKey() == newestWindow) {
+                if (!newestWindowTasks(entry.getValue()).isEmpty()) {
+                    return true;
+                }
+            } else if (entry.getValue().size() > 1) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private List<CompactionTask> newestWindowTasks(List<Table> windowTables) {
+        SortedMap<Integer, List<Table>> leveledTables = new TreeMap<Integer, List<Table>>();
+        List<CompactionTask> compactionTasks = new ArrayList<CompactionTask>();
+
+        for (Table table : windowTables) {
+            List<Table> levelTables = leveledTables.get(table.level());
+
+            if (levelTables == null) {
+                levelTables = new ArrayList<Table>();
+                leveledTables.put(table.level(), levelTables);
+            }
+
+            levelTables.add(table);
+        }
+
+        for (Map.Entry<Integer, List<Table>> entry : leveledTables.entrySet()) {
+            if (entry.getValue().size() >= MAX_LEVEL_TABLES) {
+                compactionTasks.add(tables.compactionTask(entry.getValue(), entry.getKey() + 1));
+            }
+        }
+
+        return compactionTasks;
+    }
+
+    private SortedMap<Long, List<Table>> windowedTables() {
+        SortedMap<Long, List<Table>> tableMap = new TreeMap<Long, List<Table>>();
+
+        for (Table table : tables.eligibleTables()) {
+            long window = table.maxSnapshotId() / windowSize;
+            List<Table> windowTables = tableMap.get(window);
+
+            if (windowTables == null) {
+                windowTables = new ArrayList<Table>();
+                tableMap.put(window, windowTables);
+            }
+
+            windowTables.add(table);
+        }
+
+        return tableMap;
+    }
+
+    private static int maxLevel(List<Table> tables) {
+        int maxLevel = 0;
+
+        for (Table table : tables) {
+            maxLevel = Math.max(maxLevel, table.level());
+        }
+
+        return maxLevel;
+    }
+}
@@ -17,6 +17,7 @@
 package com.jordanwilliams.heftydb.data;
 
 import java.nio.ByteBuffer;
+import java.util.Comparator;
 
 /**
  * Encapsulates a database Key. Contains both a ByteBuffer with the Key data as well as a long that represents the
@@ -46,7 +47,11 @@ public class Key implements Comparable<Key> {
 
     @Override
     public int compareTo(Key o) {
-        int compared = data.compareTo(o.data);
+        return compareTo(o, KeyComparators.BYTEWISE);
+    }
+
+    public int compareTo(Key o, KeyComparator keyComparator) {
+        int compared = keyComparator.compare(data, o.data);
 
         if (compared != 0) {
             return compared;
@@ -55,6 +60,15 @@ public class Key implements Comparable<Key> {
         return Long.compare(snapshotId, o.snapshotId);
     }
 
+    public static Comparator<Key> comparator(final KeyComparator keyComparator) {
+        return new Comparator<Key>() {
+            @Override
+            public int compare(Key key1, Key key2) {
+                return key1.compareTo(key2, keyComparator);
+            }
+        };
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -0,0 +1,33 @@
+/*
+ * Copyright (c) 2014. Jordan Williams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jordanwilliams.heftydb.data;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Defines the order of Key data in a database. The id of a KeyComparator is stored in every table it orders, so it
+ * must never change once data has been written with it.
+ */
+public interface KeyComparator {
+
+    public int id();
+
+    public int compare(ByteBuffer key1, ByteBuffer key2);
+
+    public int compare(long address, int size, ByteBuffer key);
+
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright (c) 2014. Jordan Williams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jordanwilliams.heftydb.data;
+
+import com.google.common.primitives.UnsignedLongs;
+import com.jordanwilliams.heftydb.offheap.JVMUnsafe;
+import sun.misc.Unsafe;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Contains built in KeyComparators. Both compare keys 8 bytes at a time as big-endian unsigned words, and only fall
+ * back to single bytes for the tail of a key.
+ */
+public enum KeyComparators implements KeyComparator {
+
+    /**
+     * Compares keys as sequences of signed bytes, which is the order of ByteBuffer.compareTo. Flipping the sign bit
+     * of every byte maps signed order onto unsigned order, so the same word comparison applies.
+     */
+    BYTEWISE(0, 0x8080808080808080L),
+
+    /**
+     * Compares keys as sequences of unsigned bytes, which orders big-endian unsigned integers numerically.
+     */
+    UNSIGNED_LEXICOGRAPHIC(1, 0);
+
+    private static final Unsafe unsafe = JVMUnsafe.unsafe;
+    private static final long BYTE_ARRAY_OFFSET = unsafe.arrayBaseOffset(byte[].class);
+    private static final boolean LITTLE_ENDIAN = ByteOrder.nativeOrder().equals(ByteOrder.LITTLE_ENDIAN);
+
+    private final int id;
+    private final long mask;
+
+    KeyComparators(int id, long mask) {
+        this.id = id;
+        this.mask = mask;
+    }
+
+    @Override
+    public int id() {
+        return id;
+    }
+
+    @Override
+    public int compare(ByteBuffer key1, ByteBuffer key2) {
+        if (!key1.hasArray() || !key2.hasArray()) {
+            return compareBytes(key1, key2, (int) mask & 0xFF);
+        }
+
+        return compareWords(key1.array(), arrayOffset(key1), key1.remaining(), key2.array(), arrayOffset(key2),
+                key2.remaining(), mask);
+    }
+
+    @Override
+    public int compare(long address, int size, ByteBuffer key) {
+        if (!key.hasArray()) {
+            return compareBytes(address, size, key, (int) mask & 0xFF);
+        }
+
+        return compareWords(null, address, size, key.array(), arrayOffset(key), key.remaining(), mask);
+    }
+
+    /**
+     * Compares two runs of bytes that are each addressed by a base object and an offset, as Unsafe does, so that
+     * either one can be a byte array or off-heap memory. XORing every byte with the mask before comparing turns
+     * unsigned order into signed order.
+     */
+    private static int compareWords(Object base1, long offset1, int size1, Object base2, long offset2, int size2,
+                                    long mask) {
+        int compareCount = Math.min(size1, size2);
+        int wordBytes = compareCount & ~7;
+
+        for (int i = 0; i < wordBytes; i += 8) {
+            long word1 = unsafe.getLong(base1, offset1 + i);
+            long word2 = unsafe.getLong(base2, offset2 + i);
+
+            if (word1 != word2) {
+                if (LITTLE_ENDIAN) {
+                    word1 = Long.reverseBytes(word1);
+                    word2 = Long.reverseBytes(word2);
+                }
+
+                return UnsignedLongs.compare(word1 ^ mask, word2 ^ mask);
+            }
+        }
+
+        int byteMask = (int) mask & 0xFF;
+
+        for (int i = wordBytes; i < compareCount; i++) {
+            int compared = ((unsafe.getByte(base1, offset1 + i) ^ byteMask) & 0xFF) - ((unsafe.getByte(base2,
+                    offset2 + i) ^ byteMask) & 0xFF);
+
+            if (compared != 0) {
+                return compared;
+            }
+        }
+
+        return size1 - size2;
+    }
+
+    private static int compareBytes(ByteBuffer key1, ByteBuffer key2, int byteMask) {
+        int position1 = key1.position();
+        int position2 = key2.position();
+        int size1 = key1.remaining();
+        int size2 = key2.remaining();
+        int compareCount = Math.min(size1, size2);
+
+        for (int i = 0; i < compareCount; i++) {
+            int compared = ((key1.get(position1 + i) ^ byteMask) & 0xFF) - ((key2.get(position2 + i) ^ byteMask) &
+                    0xFF);
+
+            if (compared != 0) {
+                return compared;
+            }
+        }
+
+        return size1 - size2;
+    }
+
+    private static int compareBytes(long address, int size, ByteBuffer key, int byteMask) {
+        int keyPosition = key.position();
+        int keySize = key.remaining();
+        int compareCount = Math.min(size, keySize);
+
+        for (int i = 0; i < compareCount; i++) {
+            int compared = ((unsafe.getByte(address + i) ^ byteMask) & 0xFF) - ((key.get(keyPosition + i) ^
+                    byteMask) & 0xFF);
+
+            if (compared != 0) {
+                return compared;
+            }
+        }
+
+        return size - keySize;
+    }
+
+    private static long arrayOffset(ByteBuffer buffer) {
+        return BYTE_ARRAY_OFFSET + buffer.arrayOffset() + buffer.position();
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) 2014. Jordan Williams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jordanwilliams.heftydb.data;
+
+import com.jordanwilliams.heftydb.util.ByteBuffers;
+import com.jordanwilliams.heftydb.util.Serializer;
+import com.jordanwilliams.heftydb.util.Sizes;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Deletes every version of every key in the range [start, end) that is older than the snapshot id of the
+ * RangeTombstone. The mark is the id of the newest table that may still hold a Tuple the RangeTombstone covers.
+ */
+public class RangeTombstone {
+
+    public static Serializer<RangeTombstone> SERIALIZER = new Serializer<RangeTombstone>() {
+        @Override
+        public int size(RangeTombstone tombstone) {
+            int size = 0;
+
+            //Range
+            size += Sizes.INT_SIZE;
+            size += tombstone.start.capacity();
+            size += Sizes.INT_SIZE;
+            size += tombstone.end.capacity();
+
+            //Snapshot and mark
+            size += Sizes.LONG_SIZE;
+            size += Sizes.LONG_SIZE;
+
+            return size;
+        }
+
+        @Override
+        public void serialize(RangeTombstone tombstone, ByteBuffer buffer) {
+            //Range
+            buffer.putInt(tombstone.start.capacity());
+            buffer.put(tombstone.start.duplicate());
+            buffer.putInt(tombstone.end.capacity());
+            buffer.put(tombstone.end.duplicate());
+
+            //Snapshot and mark
+            buffer.putLong(tombstone.snapshotId);
+            buffer.putLong(tombstone.mark);
+        }
+
+        @Override
+        public RangeTombstone deserialize(ByteBuffer buffer) {
+            //Range
+            ByteBuffer start = ByteBuffer.allocate(buffer.getInt());
+            buffer.get(start.array());
+            ByteBuffer end = ByteBuffer.allocate(buffer.getInt());
+            buffer.get(end.array());
+
+            //Snapshot and mark
+            long snapshotId = buffer.getLong();
+            long mark = buffer.getLong();
+
+            return new RangeTombstone(start, end, snapshotId, mark);
+        }
+    };
+
+    private final ByteBuffer start;
+    private final ByteBuffer end;
+    private final long snapshotId;
+    private final long mark;
+
+    public RangeTombstone(ByteBuffer start, ByteBuffer end, long snapshotId, long mark) {
+        this.start = start;
+        this.end = end;
+        this.snapshotId = snapshotId;
+        this.mark = mark;
+    }
+
+    public ByteBuffer start() {
+        return start;
+    }
+
+    public ByteBuffer end() {
+        return end;
+    }
+
+    public long snapshotId() {
+        return snapshotId;
+    }
+
+    public long mark() {
+        return mark;
+    }
+
+    public RangeTombstone withMark(long mark) {
+        return new RangeTombstone(start, end, snapshotId, mark);
+    }
+
+    public boolean contains(ByteBuffer key, KeyComparator keyComparator) {
+        return keyComparator.compare(start, key) <= 0 && keyComparator.compare(key, end) < 0;
+    }
+
+    public boolean contains(ByteBuffer minKey, ByteBuffer maxKey, KeyComparator keyComparator) {
+        return keyComparator.compare(start, minKey) <= 0 && keyComparator.compare(maxKey, end) < 0;
+    }
+
+    public boolean overlaps(ByteBuffer minKey, ByteBuffer maxKey, KeyComparator keyComparator) {
+        return keyComparator.compare(start, maxKey) <= 0 && keyComparator.compare(minKey, end) < 0;
+    }
+
+    public boolean covers(Key key, KeyComparator keyComparator) {
+        return key.snapshotId() < snapshotId && contains(key.data(), keyComparator);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        RangeTombstone that = (RangeTombstone) o;
+
+        if (snapshotId != that.snapshotId) return false;
+        if (mark != that.mark) return false;
+        if (!start.equals(that.start)) return false;
+        if (!end.equals(that.end)) return false;
+
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = start.hashCode();
+        result = 31 * result + end.hashCode();
+        result = 31 * result + (int) (snapshotId ^ (snapshotId >>> 32));
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "RangeTombstone{" +
+                "start=" + ByteBuffers.toString(start) +
+                ", end=" + ByteBuffers.toString(end) +
+                ", snapshotId=" + snapshotId +
+                ", mark=" + mark +
+                '}';
+    }
+}
@@ -20,6 +20,7 @@ import com.jordanwilliams.heftydb.util.Serializer;
 import com.jordanwilliams.heftydb.util.Sizes;
 
 import java.nio.ByteBuffer;
+import java.util.Comparator;
 
 /**
  * A wrapper class that groups a Key and Value together.
@@ -108,6 +109,15 @@ public class Tuple implements Comparable<Tuple> {
         return key.compareTo(o.key);
     }
 
+    public static Comparator<Tuple> comparator(final KeyComparator keyComparator) {
+        return new Comparator<Tuple>() {
+            @Override
+            public int compare(Tuple tuple1, Tuple tuple2) {
+                return tuple1.key().compareTo(tuple2.key(), keyComparator);
+            }
+        };
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
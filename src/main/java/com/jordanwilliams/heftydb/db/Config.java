@@ -16,8 +16,14 @@
 
 package com.jordanwilliams.heftydb.db;
 
+import com.jordanwilliams.heftydb.cache.CachePolicy;
 import com.jordanwilliams.heftydb.compact.CompactionStrategies;
 import com.jordanwilliams.heftydb.compact.CompactionStrategy;
+import com.jordanwilliams.heftydb.data.KeyComparator;
+import com.jordanwilliams.heftydb.data.KeyComparators;
+import com.jordanwilliams.heftydb.io.ChecksumVerification;
+import com.jordanwilliams.heftydb.io.ReadMode;
+import com.jordanwilliams.heftydb.table.memory.SortedTupleMaps;
 
 import java.nio.file.Path;
 
@@ -31,6 +37,8 @@ public class Config {
         //Default config values
         private CompactionStrategy compactionStrategy = CompactionStrategies.SIZE_TIERED_COMPACTION_STRATEGY;
         private int memoryTableSize = 8192000;
+        private SortedTupleMaps memoryTableMap = SortedTupleMaps.SKIP_LIST_TUPLE_MAP;
+        private KeyComparator keyComparator = KeyComparators.BYTEWISE;
         private int tableBlockSize = 16384;
         private int indexBlockSize = 65536;
         private int tableWriterThreads = 4;
@@ -39,6 +47,13 @@ public class Config {
         private long indexCacheSize = 32000000;
         private long maxCompactionRate = 32768000;
         private long maxWriteRate = 32768000;
+        private long bulkLoadTableSize = 64000000;
+        private ChecksumVerification checksumVerification = ChecksumVerification.CACHE_MISSES;
+        private int recycledLogCount = 4;
+        private ReadMode readMode = ReadMode.BUFFERED;
+        private CachePolicy cachePolicy = CachePolicy.TINY_LFU;
+        private long rowCacheSize = 0;
+        private long memoryBudget = 0;
         private boolean printMetrics = false;
         private Path tableDirectory;
         private Path logDirectory;
@@ -48,6 +63,16 @@ public class Config {
             return this;
         }
 
+        public Builder memoryTableMap(SortedTupleMaps memoryTableMap) {
+            this.memoryTableMap = memoryTableMap;
+            return this;
+        }
+
+        public Builder keyComparator(KeyComparator keyComparator) {
+            this.keyComparator = keyComparator;
+            return this;
+        }
+
         public Builder tableBlockSize(int tableBlockSize) {
             this.tableBlockSize = tableBlockSize;
             return this;
@@ -114,15 +139,53 @@ public class Config {
             return this;
         }
 
+        public Builder bulkLoadTableSize(long bulkLoadTableSize) {
+            this.bulkLoadTableSize = bulkLoadTableSize;
+            return this;
+        }
+
+        public Builder checksumVerification(ChecksumVerification checksumVerification) {
+            this.checksumVerification = checksumVerification;
+            return this;
+        }
+
+        public Builder recycledLogCount(int recycledLogCount) {
+            this.recycledLogCount = recycledLogCount;
+            return this;
+        }
+
+        public Builder readMode(ReadMode readMode) {
+            this.readMode = readMode;
+            return this;
+        }
+
+        public Builder cachePolicy(CachePolicy cachePolicy) {
+            this.cachePolicy = cachePolicy;
+            return this;
+        }
+
+        public Builder rowCacheSize(long rowCacheSize) {
+            this.rowCacheSize = rowCacheSize;
+            return this;
+        }
+
+        public Builder memoryBudget(long memoryBudget) {
+            this.memoryBudget = memoryBudget;
+            return this;
+        }
+
         public Config build() {
-            return new Config(compactionStrategy, memoryTableSize, tableBlockSize, indexBlockSize,
-                    tableWriterThreads, tableCompactionThreads, tableCacheSize, indexCacheSize, printMetrics,
-                    tableDirectory, logDirectory, maxCompactionRate, maxWriteRate);
+            return new Config(compactionStrategy, memoryTableSize, memoryTableMap, keyComparator, tableBlockSize,
+                    indexBlockSize, tableWriterThreads, tableCompactionThreads, tableCacheSize, indexCacheSize,
+                    printMetrics, tableDirectory, logDirectory, maxCompactionRate, maxWriteRate, bulkLoadTableSize,
+                    checksumVerification, recycledLogCount, readMode, cachePolicy, rowCacheSize, memoryBudget);
         }
     }
 
     private final CompactionStrategy compactionStrategy;
     private final int memoryTableSize;
+    private final SortedTupleMaps memoryTableMap;
+    private final KeyComparator keyComparator;
     private final int tableBlockSize;
     private final int indexBlockSize;
     private final int tableWriterThreads;
@@ -134,13 +197,24 @@ public class Config {
     private final Path logDirectory;
     private final long maxCompactionRate;
     private final long maxWriteRate;
-
-    public Config(CompactionStrategy compactionStrategy, int memoryTableSize, int tableBlockSize, int indexBlockSize,
-                  int tableWriterThreads, int tableCompactionThreads, long tableCacheSize, long indexCacheSize,
-                  boolean printMetrics, Path tableDirectory, Path logDirectory, long maxCompactionRate,
-                  long maxWriteRate) {
+    private final long bulkLoadTableSize;
+    private final ChecksumVerification checksumVerification;
+    private final int recycledLogCount;
+    private final ReadMode readMode;
+    private final CachePolicy cachePolicy;
+    private final long rowCacheSize;
+    private final long memoryBudget;
+
+    public Config(CompactionStrategy compactionStrategy, int memoryTableSize, SortedTupleMaps memoryTableMap,
+                  KeyComparator keyComparator, int tableBlockSize, int indexBlockSize, int tableWriterThreads,
+                  int tableCompactionThreads, long tableCacheSize, long indexCacheSize, boolean printMetrics,
+                  Path tableDirectory, Path logDirectory, long maxCompactionRate, long maxWriteRate,
+                  long bulkLoadTableSize, ChecksumVerification checksumVerification, int recycledLogCount,
+                  ReadMode readMode, CachePolicy cachePolicy, long rowCacheSize, long memoryBudget) {
         this.compactionStrategy = compactionStrategy;
         this.memoryTableSize = memoryTableSize;
+        this.memoryTableMap = memoryTableMap;
+        this.keyComparator = keyComparator;
         this.tableBlockSize = tableBlockSize;
         this.indexBlockSize = indexBlockSize;
         this.tableWriterThreads = tableWriterThreads;
@@ -152,6 +226,13 @@ public class Config {
         this.logDirectory = logDirectory;
         this.maxCompactionRate = maxCompactionRate;
         this.maxWriteRate = maxWriteRate;
+        this.bulkLoadTableSize = bulkLoadTableSize;
+        this.checksumVerification = checksumVerification;
+        this.recycledLogCount = recycledLogCount;
+        this.readMode = readMode;
+        this.cachePolicy = cachePolicy;
+        this.rowCacheSize = rowCacheSize;
+        this.memoryBudget = memoryBudget;
     }
 
     public CompactionStrategy compactionStrategy() {
@@ -162,6 +243,14 @@ public class Config {
         return memoryTableSize;
     }
 
+    public SortedTupleMaps memoryTableMap() {
+        return memoryTableMap;
+    }
+
+    public KeyComparator keyComparator() {
+        return keyComparator;
+    }
+
     public int tableBlockSize() {
         return tableBlockSize;
     }
@@ -206,6 +295,51 @@ public class Config {
         return maxWriteRate;
     }
 
+    public long bulkLoadTableSize() {
+        return bulkLoadTableSize;
+    }
+
+    public ChecksumVerification checksumVerification() {
+        return checksumVerification;
+    }
+
+    /**
+     * The number of flushed commit log files kept for reuse by new logs. When this is zero, every log is written to
+     * a new file that grows as records are appended.
+     */
+    public int recycledLogCount() {
+        return recycledLogCount;
+    }
+
+    public ReadMode readMode() {
+        return readMode;
+    }
+
+    /**
+     * The admission policy of the table and index block caches.
+     */
+    public CachePolicy cachePolicy() {
+        return cachePolicy;
+    }
+
+    /**
+     * The maximum size of the row cache, which keeps the latest Tuple of recently read keys. The row cache is
+     * disabled when this is zero. Keys are matched by their bytes, so it should only be enabled with a KeyComparator
+     * under which only identical keys are equal.
+     */
+    public long rowCacheSize() {
+        return rowCacheSize;
+    }
+
+    /**
+     * The maximum off-heap memory of the bloom filters, index blocks and table blocks together, or zero for no
+     * limit beyond the sizes of the caches. Filters are kept first and index blocks next, and filters that do not fit
+     * are read from their files on demand.
+     */
+    public long memoryBudget() {
+        return memoryBudget;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -268,6 +402,13 @@ public class Config {
                 ", logDirectory=" + logDirectory +
                 ", maxCompactionRate=" + maxCompactionRate +
                 ", maxWriteRate=" + maxWriteRate +
+                ", bulkLoadTableSize=" + bulkLoadTableSize +
+                ", checksumVerification=" + checksumVerification +
+                ", recycledLogCount=" + recycledLogCount +
+                ", readMode=" + readMode +
+                ", cachePolicy=" + cachePolicy +
+                ", rowCacheSize=" + rowCacheSize +
+                ", memoryBudget=" + memoryBudget +
                 '}';
     }
 }
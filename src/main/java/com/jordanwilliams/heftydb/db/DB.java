@@ -16,10 +16,13 @@
 
 package com.jordanwilliams.heftydb.db;
 
+import com.jordanwilliams.heftydb.compact.CompactionStats;
 import com.jordanwilliams.heftydb.util.CloseableIterator;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.List;
 import java.util.concurrent.Future;
 
 /**
@@ -37,6 +40,12 @@ public interface DB {
 
     public Snapshot delete(ByteBuffer key) throws IOException;
 
+    public Snapshot deleteRange(ByteBuffer startKey, ByteBuffer endKey) throws IOException;
+
+    public Snapshot bulkLoad(Iterator<Record> records) throws IOException;
+
+    public Snapshot bulkLoad(List<? extends Iterator<Record>> sources) throws IOException;
+
     public CloseableIterator<Record> ascendingIterator(Snapshot snapshot) throws IOException;
 
     public CloseableIterator<Record> ascendingIterator(ByteBuffer key, Snapshot snapshot) throws IOException;
@@ -45,6 +54,16 @@ public interface DB {
 
     public CloseableIterator<Record> descendingIterator(ByteBuffer key, Snapshot snapshot) throws IOException;
 
+    public CloseableIterator<Record> ascendingIterator(Snapshot snapshot, ReadOptions options) throws IOException;
+
+    public CloseableIterator<Record> ascendingIterator(ByteBuffer key, Snapshot snapshot, ReadOptions options)
+            throws IOException;
+
+    public CloseableIterator<Record> descendingIterator(Snapshot snapshot, ReadOptions options) throws IOException;
+
+    public CloseableIterator<Record> descendingIterator(ByteBuffer key, Snapshot snapshot, ReadOptions options)
+            throws IOException;
+
     public void retainSnapshot(Snapshot snapshot);
 
     public void releaseSnapshot(Snapshot snapshot);
@@ -54,4 +73,6 @@ public interface DB {
     public void logMetrics();
 
     public Future<?> compact() throws IOException;
+
+    public Future<List<CompactionStats>> compactRange(ByteBuffer startKey, ByteBuffer endKey) throws IOException;
 }
@@ -16,15 +16,20 @@
 
 package com.jordanwilliams.heftydb.db;
 
+import com.jordanwilliams.heftydb.cache.MemoryBudget;
+import com.jordanwilliams.heftydb.cache.RowCache;
 import com.jordanwilliams.heftydb.data.Tuple;
 import com.jordanwilliams.heftydb.index.IndexBlock;
 import com.jordanwilliams.heftydb.metrics.Metrics;
 import com.jordanwilliams.heftydb.state.Caches;
+import com.jordanwilliams.heftydb.state.Manifest;
 import com.jordanwilliams.heftydb.state.Paths;
+import com.jordanwilliams.heftydb.state.RangeTombstones;
 import com.jordanwilliams.heftydb.table.MutableTable;
 import com.jordanwilliams.heftydb.table.Table;
 import com.jordanwilliams.heftydb.table.file.FileTable;
 import com.jordanwilliams.heftydb.table.file.FileTableWriter;
+import com.jordanwilliams.heftydb.table.file.LazyFileTable;
 import com.jordanwilliams.heftydb.table.file.TupleBlock;
 import com.jordanwilliams.heftydb.table.memory.MemoryTable;
 import com.jordanwilliams.heftydb.write.CommitLog;
@@ -32,6 +37,7 @@ import com.jordanwilliams.heftydb.write.CommitLog;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Set;
 
@@ -50,30 +56,78 @@ public class DBInitializer {
         this.config = config;
         this.metrics = metrics;
         this.paths = new Paths(config.tableDirectory(), config.logDirectory());
-        this.caches = new Caches(new TupleBlock.Cache(config.tableCacheSize(), metrics),
-                new IndexBlock.Cache(config.indexCacheSize(), metrics));
+        MemoryBudget budget = new MemoryBudget(config.memoryBudget(), metrics);
+        this.caches = new Caches(new TupleBlock.Cache(config.tableCacheSize(), config.tableBlockSize(),
+                config.cachePolicy(), budget, metrics), new IndexBlock.Cache(config.indexCacheSize(),
+                config.indexBlockSize(), config.cachePolicy(), budget, metrics), new RowCache(config.rowCacheSize(),
+                metrics));
     }
 
     public DBState initialize() throws IOException {
-        deleteTempTables();
-        writeTablesFromLogs();
-        List<Table> tables = loadTables();
-        return new DBState(tables, config, paths, caches, maxSnapshotId);
+        deleteRecycledLogs();
+        Manifest manifest = Manifest.exists(paths) ? openManifest() : createManifest();
+        writeTablesFromLogs(manifest);
+        List<Table> tables = loadTables(manifest);
+        RangeTombstones rangeTombstones = RangeTombstones.read(paths);
+        maxSnapshotId = Math.max(rangeTombstones.maxSnapshotId(), maxSnapshotId);
+        //Reads at older snapshots than the data already written must not fill the row cache
+        caches.rowCache().invalidateAll(maxSnapshotId);
+        DBState state = new DBState(tables, manifest, rangeTombstones, config, paths, caches, maxSnapshotId);
+        rangeTombstones.removeObsolete(state.tables());
+        return state;
     }
 
-    private List<Table> loadTables() throws IOException {
+    /**
+     * Tables are built from their Manifest entries, and only open their files once they are read.
+     */
+    private List<Table> loadTables(Manifest manifest) {
         List<Table> tables = new ArrayList<Table>();
-        Set<Long> tableIds = paths.tableFileIds();
 
-        for (Long id : tableIds) {
-            Table table = FileTable.open(id, paths, caches.recordBlockCache(), caches.indexBlockCache(), metrics);
-            maxSnapshotId = Math.max(table.maxSnapshotId(), maxSnapshotId);
-            tables.add(table);
+        for (Manifest.Entry entry : manifest.entries()) {
+            maxSnapshotId = Math.max(entry.maxSnapshotId(), maxSnapshotId);
+            tables.add(new LazyFileTable(entry, paths, caches.recordBlockCache(), caches.indexBlockCache(),
+                    config.keyComparator(), config.checksumVerification(), config.readMode(), metrics));
         }
 
         return tables;
     }
 
+    private Manifest openManifest() throws IOException {
+        Manifest manifest = Manifest.open(paths);
+
+        if (manifest.keyComparatorId() != config.keyComparator().id()) {
+            manifest.close();
+            throw new IOException("Database was written with key comparator " + manifest.keyComparatorId() + " but " +
+                    "is being opened with key comparator " + config.keyComparator().id());
+        }
+
+        return manifest;
+    }
+
+    /**
+     * Builds a Manifest for a database that was written without one from the table files in its directory. This is
+     * the only time the table directory is listed, as the Manifest tracks every table file from then on.
+     */
+    private Manifest createManifest() throws IOException {
+        deleteTempTables();
+
+        List<Manifest.Entry> entries = new ArrayList<Manifest.Entry>();
+
+        for (Long id : paths.tableFileIds()) {
+            entries.add(manifestEntry(id));
+        }
+
+        return Manifest.create(paths, config.keyComparator().id(), entries);
+    }
+
+    private Manifest.Entry manifestEntry(long tableId) throws IOException {
+        Table table = FileTable.open(tableId, paths, caches.recordBlockCache(), caches.indexBlockCache(),
+                config.keyComparator(), config.checksumVerification(), config.readMode(), metrics);
+        Manifest.Entry entry = new Manifest.Entry(table);
+        table.close();
+        return entry;
+    }
+
     private void deleteTempTables() throws IOException {
         Set<Long> tempIds = paths.tempTableFileIds();
 
@@ -84,7 +138,13 @@ public class DBInitializer {
         }
     }
 
-    private void writeTablesFromLogs() throws IOException {
+    private void deleteRecycledLogs() throws IOException {
+        for (Long id : paths.recycledLogFileIds()) {
+            Files.deleteIfExists(paths.recycledLogPath(id));
+        }
+    }
+
+    private void writeTablesFromLogs(Manifest manifest) throws IOException {
         Set<Long> logIds = paths.logFileIds();
 
         for (Long id : logIds) {
@@ -92,18 +152,26 @@ public class DBInitializer {
             Table memoryTable = readTable(log);
             log.close();
 
+            //Files left by a flush that did not finish would otherwise be appended to
+            Files.deleteIfExists(paths.tempPath(id));
+            Files.deleteIfExists(paths.indexPath(id));
+            Files.deleteIfExists(paths.filterPath(id));
+
             FileTableWriter.Task tableWriterTask = new FileTableWriter.Task.Builder().tableId(id).config(config)
                     .paths(paths).level(1).tupleCount(memoryTable.tupleCount()).source(memoryTable.ascendingIterator
                             (Long.MAX_VALUE)).build();
 
             tableWriterTask.run();
+            memoryTable.close();
+            manifest.edit(Collections.singletonList(manifestEntry(id)), Collections.singletonList(id));
 
             Files.deleteIfExists(paths.logPath(id));
         }
     }
 
     private Table readTable(CommitLog log) {
-        MutableTable memoryTable = new MemoryTable(log.tableId());
+        MutableTable memoryTable = new MemoryTable(log.tableId(), config.memoryTableMap().create(config
+                .keyComparator()));
 
         for (Tuple tuple : log) {
             memoryTable.put(tuple);
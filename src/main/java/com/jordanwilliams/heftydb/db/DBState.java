@@ -16,13 +16,17 @@
 
 package com.jordanwilliams.heftydb.db;
 
+import com.jordanwilliams.heftydb.data.RangeTombstone;
 import com.jordanwilliams.heftydb.state.Caches;
+import com.jordanwilliams.heftydb.state.Manifest;
 import com.jordanwilliams.heftydb.state.Paths;
+import com.jordanwilliams.heftydb.state.RangeTombstones;
 import com.jordanwilliams.heftydb.state.Snapshots;
 import com.jordanwilliams.heftydb.state.Tables;
 import com.jordanwilliams.heftydb.table.Table;
 
 import java.util.Collection;
+import java.util.Collections;
 
 /**
  * Represents the state of a database.
@@ -30,19 +34,27 @@ import java.util.Collection;
 public class DBState {
 
     private final Tables tables;
+    private final RangeTombstones rangeTombstones;
     private final Snapshots snapshots;
     private final Config config;
     private final Paths paths;
     private final Caches caches;
 
-    public DBState(Collection<Table> tables, Config config, Paths paths, Caches caches, long currentSnapshotId) {
+    public DBState(Collection<Table> tables, Manifest manifest, RangeTombstones rangeTombstones, Config config,
+                   Paths paths, Caches caches, long currentSnapshotId) {
         this.snapshots = new Snapshots(currentSnapshotId);
-        this.tables = new Tables(tables);
+        this.tables = new Tables(tables, manifest);
+        this.rangeTombstones = rangeTombstones;
         this.config = config;
         this.paths = paths;
         this.caches = caches;
     }
 
+    public DBState(Collection<Table> tables, Config config, Paths paths, Caches caches, long currentSnapshotId) {
+        this(tables, null, new RangeTombstones(paths, Collections.<RangeTombstone>emptyList()), config, paths,
+                caches, currentSnapshotId);
+    }
+
     public Paths paths() {
         return paths;
     }
@@ -51,6 +63,10 @@ public class DBState {
         return tables;
     }
 
+    public RangeTombstones rangeTombstones() {
+        return rangeTombstones;
+    }
+
     public Snapshots snapshots() {
         return snapshots;
     }
@@ -18,6 +18,7 @@ package com.jordanwilliams.heftydb.db;
 
 import com.codahale.metrics.Meter;
 import com.codahale.metrics.Timer;
+import com.jordanwilliams.heftydb.compact.CompactionStats;
 import com.jordanwilliams.heftydb.compact.Compactor;
 import com.jordanwilliams.heftydb.data.Key;
 import com.jordanwilliams.heftydb.data.Tuple;
@@ -25,13 +26,18 @@ import com.jordanwilliams.heftydb.metrics.Metrics;
 import com.jordanwilliams.heftydb.read.TableReader;
 import com.jordanwilliams.heftydb.state.Caches;
 import com.jordanwilliams.heftydb.state.Paths;
+import com.jordanwilliams.heftydb.state.RangeTombstones;
 import com.jordanwilliams.heftydb.state.Snapshots;
 import com.jordanwilliams.heftydb.state.Tables;
 import com.jordanwilliams.heftydb.util.CloseableIterator;
+import com.jordanwilliams.heftydb.write.BulkLoader;
 import com.jordanwilliams.heftydb.write.TableWriter;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
 import java.util.concurrent.Future;
 
 /**
@@ -74,8 +80,10 @@ public class HeftyDB implements DB {
     }
 
     private final TableWriter tableWriter;
+    private final BulkLoader bulkLoader;
     private final TableReader tableReader;
     private final Compactor compactor;
+    private final RangeTombstones rangeTombstones;
     private final Snapshots snapshots;
     private final Metrics metrics;
 
@@ -86,11 +94,16 @@ public class HeftyDB implements DB {
     private final Meter readRate;
     private final Meter scanRate;
 
-    private HeftyDB(Config config, Paths paths, Tables tables, Snapshots snapshots, Caches caches, Metrics metrics) {
+    private HeftyDB(Config config, Paths paths, Tables tables, RangeTombstones rangeTombstones, Snapshots snapshots,
+                    Caches caches, Metrics metrics) {
         this.snapshots = snapshots;
-        this.tableWriter = new TableWriter(config, paths, tables, snapshots, caches, metrics);
-        this.tableReader = new TableReader(tables, metrics);
-        this.compactor = new Compactor(config, paths, tables, caches, config.compactionStrategy(), metrics, snapshots);
+        this.rangeTombstones = rangeTombstones;
+        this.tableWriter = new TableWriter(config, paths, tables, rangeTombstones, snapshots, caches, metrics);
+        this.bulkLoader = new BulkLoader(config, paths, tables, rangeTombstones, snapshots, caches, metrics);
+        this.tableReader = new TableReader(tables, rangeTombstones, caches.rowCache(), config.keyComparator(),
+                metrics);
+        this.compactor = new Compactor(config, paths, tables, rangeTombstones, caches, config.compactionStrategy(),
+                metrics, snapshots);
         this.metrics = metrics;
 
         this.writeTimer = metrics.timer("write");
@@ -126,26 +139,72 @@ public class HeftyDB implements DB {
         return write(key, null, false);
     }
 
+    @Override
+    public Snapshot deleteRange(ByteBuffer startKey, ByteBuffer endKey) throws IOException {
+        Timer.Context watch = writeTimer.time();
+        Snapshot snapshot = tableWriter.deleteRange(startKey, endKey);
+        watch.stop();
+        writeRate.mark(startKey.capacity() + endKey.capacity());
+        return snapshot;
+    }
+
+    @Override
+    public Snapshot bulkLoad(Iterator<Record> records) throws IOException {
+        return bulkLoad(Collections.singletonList(records));
+    }
+
+    @Override
+    public Snapshot bulkLoad(List<? extends Iterator<Record>> sources) throws IOException {
+        Timer.Context watch = metrics.timer("write.bulkLoad").time();
+        Snapshot snapshot = bulkLoader.load(sources);
+        watch.stop();
+        return snapshot;
+    }
+
     @Override
     public CloseableIterator<Record> ascendingIterator(Snapshot snapshot) throws IOException {
-        return new InstrumentedScanIterator(new Record.TupleIterator(tableReader.ascendingIterator(snapshot.id())));
+        return ascendingIterator(snapshot, ReadOptions.DEFAULT);
     }
 
     @Override
     public CloseableIterator<Record> ascendingIterator(ByteBuffer key, Snapshot snapshot) throws IOException {
-        return new InstrumentedScanIterator(new Record.TupleIterator(tableReader.ascendingIterator(new Key(key,
-                snapshot.id()), snapshot.id())));
+        return ascendingIterator(key, snapshot, ReadOptions.DEFAULT);
     }
 
     @Override
     public CloseableIterator<Record> descendingIterator(Snapshot snapshot) throws IOException {
-        return new InstrumentedScanIterator(new Record.TupleIterator(tableReader.descendingIterator(snapshot.id())));
+        return descendingIterator(snapshot, ReadOptions.DEFAULT);
     }
 
     @Override
     public CloseableIterator<Record> descendingIterator(ByteBuffer key, Snapshot snapshot) throws IOException {
+        return descendingIterator(key, snapshot, ReadOptions.DEFAULT);
+    }
+
+    @Override
+    public CloseableIterator<Record> ascendingIterator(Snapshot snapshot, ReadOptions options) throws IOException {
+        return new InstrumentedScanIterator(new Record.TupleIterator(tableReader.ascendingIterator(snapshot.id(),
+                options)));
+    }
+
+    @Override
+    public CloseableIterator<Record> ascendingIterator(ByteBuffer key, Snapshot snapshot, ReadOptions options)
+            throws IOException {
+        return new InstrumentedScanIterator(new Record.TupleIterator(tableReader.ascendingIterator(new Key(key,
+                snapshot.id()), snapshot.id(), options)));
+    }
+
+    @Override
+    public CloseableIterator<Record> descendingIterator(Snapshot snapshot, ReadOptions options) throws IOException {
+        return new InstrumentedScanIterator(new Record.TupleIterator(tableReader.descendingIterator(snapshot.id(),
+                options)));
+    }
+
+    @Override
+    public CloseableIterator<Record> descendingIterator(ByteBuffer key, Snapshot snapshot, ReadOptions options)
+            throws IOException {
         return new InstrumentedScanIterator(new Record.TupleIterator(tableReader.descendingIterator(new Key(key,
-                snapshot.id()), snapshot.id())));
+                snapshot.id()), snapshot.id(), options)));
     }
 
     @Override
@@ -163,6 +222,7 @@ public class HeftyDB implements DB {
         metrics.close();
         compactor.close();
         tableWriter.close();
+        rangeTombstones.close();
         tableReader.close();
     }
 
@@ -176,6 +236,12 @@ public class HeftyDB implements DB {
         return compactor.scheduleCompaction();
     }
 
+    @Override
+    public synchronized Future<List<CompactionStats>> compactRange(ByteBuffer startKey, ByteBuffer endKey) throws
+            IOException {
+        return compactor.compactRange(startKey, endKey);
+    }
+
     private Snapshot write(ByteBuffer key, ByteBuffer value, boolean fsync) throws IOException {
         Timer.Context watch = writeTimer.time();
         Snapshot snapshot = tableWriter.write(key, value, fsync);
@@ -198,6 +264,7 @@ public class HeftyDB implements DB {
     public static DB open(Config config) throws IOException {
         Metrics metrics = new Metrics(config);
         DBState state = new DBInitializer(config, metrics).initialize();
-        return new HeftyDB(state.config(), state.paths(), state.tables(), state.snapshots(), state.caches(), metrics);
+        return new HeftyDB(state.config(), state.paths(), state.tables(), state.rangeTombstones(), state.snapshots(),
+                state.caches(), metrics);
     }
 }
@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2014. Jordan Williams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jordanwilliams.heftydb.db;
+
+/**
+ * Controls how an iterator reads the blocks of the Table files it scans. By default a scan neither consults nor
+ * populates the table block cache, so that a large scan does not evict the blocks that point reads depend on.
+ * <p/>
+ * A scan can also read blocks ahead of the ones it is decoding on a pool of I/O threads, which keeps a scan of data
+ * that is not cached from waiting on each block in turn. This matters most for descending scans, which the
+ * operating system's own readahead does not help.
+ */
+public class ReadOptions {
+
+    public static class Builder {
+
+        private boolean useCache = false;
+        private boolean fillCache = false;
+        private int readaheadBlocks = 0;
+
+        public Builder useCache(boolean useCache) {
+            this.useCache = useCache;
+            return this;
+        }
+
+        public Builder fillCache(boolean fillCache) {
+            this.fillCache = fillCache;
+            return this;
+        }
+
+        public Builder readaheadBlocks(int readaheadBlocks) {
+            this.readaheadBlocks = readaheadBlocks;
+            return this;
+        }
+
+        public ReadOptions build() {
+            return new ReadOptions(useCache, fillCache, readaheadBlocks);
+        }
+    }
+
+    public static final ReadOptions DEFAULT = new ReadOptions(false, false);
+
+    private final boolean useCache;
+    private final boolean fillCache;
+    private final int readaheadBlocks;
+
+    public ReadOptions(boolean useCache, boolean fillCache, int readaheadBlocks) {
+        if (readaheadBlocks < 0) {
+            throw new IllegalArgumentException("Readahead must not be negative");
+        }
+
+        this.useCache = useCache;
+        this.fillCache = fillCache;
+        this.readaheadBlocks = readaheadBlocks;
+    }
+
+    public ReadOptions(boolean useCache, boolean fillCache) {
+        this(useCache, fillCache, 0);
+    }
+
+    /**
+     * Whether blocks are looked up in the table block cache before they are read from disk.
+     */
+    public boolean useCache() {
+        return useCache;
+    }
+
+    /**
+     * Whether blocks read from disk are offered to the table block cache.
+     */
+    public boolean fillCache() {
+        return fillCache;
+    }
+
+    /**
+     * The most blocks of each Table file that are read ahead of the scan, or 0 to read each block only when the scan
+     * reaches it. The number of blocks read ahead starts at one and grows as the scan goes on, so that a short scan
+     * does not read many blocks that it never uses.
+     */
+    public int readaheadBlocks() {
+        return readaheadBlocks;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+
+        ReadOptions that = (ReadOptions) o;
+
+        return useCache == that.useCache && fillCache == that.fillCache && readaheadBlocks == that.readaheadBlocks;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = useCache ? 1 : 0;
+        result = 31 * result + (fillCache ? 1 : 0);
+        result = 31 * result + readaheadBlocks;
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "ReadOptions{" +
+                "useCache=" + useCache +
+                ", fillCache=" + fillCache +
+                ", readaheadBlocks=" + readaheadBlocks +
+                '}';
+    }
+}
@@ -17,13 +17,20 @@
 package com.jordanwilliams.heftydb.index;
 
 import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Timer;
+import com.jordanwilliams.heftydb.cache.MemoryBudget;
 import com.jordanwilliams.heftydb.data.Key;
-import com.jordanwilliams.heftydb.io.ImmutableChannelFile;
+import com.jordanwilliams.heftydb.data.KeyComparator;
+import com.jordanwilliams.heftydb.data.KeyComparators;
+import com.jordanwilliams.heftydb.io.BlockChecksum;
+import com.jordanwilliams.heftydb.io.ChecksumVerification;
 import com.jordanwilliams.heftydb.io.ImmutableFile;
+import com.jordanwilliams.heftydb.io.ReadMode;
 import com.jordanwilliams.heftydb.metrics.CacheHitGauge;
 import com.jordanwilliams.heftydb.metrics.Metrics;
 import com.jordanwilliams.heftydb.offheap.SortedByteMap;
 import com.jordanwilliams.heftydb.offheap.MemoryAllocator;
+import com.jordanwilliams.heftydb.offheap.MemoryOwner;
 import com.jordanwilliams.heftydb.offheap.MemoryPointer;
 import com.jordanwilliams.heftydb.state.Paths;
 
@@ -41,21 +48,31 @@ public class Index {
     private final long tableId;
     private final ImmutableFile indexFile;
     private final IndexBlock.Cache cache;
+    private final KeyComparator keyComparator;
+    private final ChecksumVerification checksumVerification;
     private final Metrics metrics;
+    private final Timer checksumVerificationTimer;
     private final IndexBlock rootIndexBlock;
 
     private final Histogram indexSearchLevels;
     private final CacheHitGauge indexCacheHitRate;
 
-    private Index(long tableId, ImmutableFile indexFile, IndexBlock.Cache cache, Metrics metrics) throws IOException {
+    private Index(long tableId, ImmutableFile indexFile, IndexBlock.Cache cache, KeyComparator keyComparator,
+                  ChecksumVerification checksumVerification, Metrics metrics) throws IOException {
         this.tableId = tableId;
         this.indexFile = indexFile;
         this.cache = cache;
+        this.keyComparator = keyComparator;
+        this.checksumVerification = checksumVerification;
         this.metrics = metrics;
+        this.checksumVerificationTimer = metrics.timer("index.checksumVerification");
         long rootBlockOffset = indexFile.readLong(indexFile.size() - ROOT_INDEX_BLOCK_OFFSET);
         int rootBlockSize = indexFile.readInt(indexFile.size() - ROOT_INDEX_BLOCK_SIZE_OFFSET);
         this.rootIndexBlock = readIndexBlock(rootBlockOffset, rootBlockSize);
 
+        //The root block is pinned, so it counts against the budget for as long as the Index is open
+        cache.budget().reserve(MemoryBudget.Tier.INDEX, rootIndexBlock.memory().size());
+
         this.indexSearchLevels = metrics.histogram("index.searchLevels");
         this.indexCacheHitRate = metrics.hitGauge("index.cacheHitRate");
     }
@@ -78,6 +95,7 @@ public class Index {
     }
 
     public void close() throws IOException {
+        cache.budget().release(MemoryBudget.Tier.INDEX, rootIndexBlock.memory().size());
         rootIndexBlock.memory().release();
         indexFile.close();
         cache.clear();
@@ -90,27 +108,66 @@ public class Index {
         if (indexBlock == null) {
             indexBlock = readIndexBlock(blockOffset, blockSize);
             cache.put(tableId, blockOffset, indexBlock);
+        } else if (checksumVerification.verifyCacheHits()) {
+            try {
+                verifyChecksum(indexBlock.memory(), blockOffset);
+            } catch (IOException e) {
+                indexBlock.memory().release();
+                throw e;
+            }
         }
 
         return indexBlock;
     }
 
     private IndexBlock readIndexBlock(long blockOffset, int blockSize) throws IOException {
-        MemoryPointer indexPointer = MemoryAllocator.allocate(blockSize);
+        MemoryPointer indexPointer = MemoryAllocator.allocate(blockSize, MemoryOwner.INDEX_CACHE);
 
         try {
             ByteBuffer indexBuffer = indexPointer.directBuffer();
             indexFile.read(indexBuffer, blockOffset);
             indexBuffer.rewind();
-            return new IndexBlock(new SortedByteMap(indexPointer));
+
+            if (checksumVerification.verifyReads()) {
+                verifyChecksum(indexPointer, blockOffset);
+            }
+
+            return new IndexBlock(new SortedByteMap(indexPointer, keyComparator));
         } catch (IOException e) {
             indexPointer.release();
             throw e;
         }
     }
 
+    private void verifyChecksum(MemoryPointer indexPointer, long blockOffset) throws IOException {
+        Timer.Context watch = checksumVerificationTimer.time();
+        boolean matches = BlockChecksum.matches(indexPointer.directBuffer());
+        watch.stop();
+
+        if (!matches) {
+            throw new IOException("Index block at offset " + blockOffset + " of table " + tableId + " failed its " +
+                    "checksum");
+        }
+    }
+
+    public static Index open(long tableId, Paths paths, IndexBlock.Cache cache, KeyComparator keyComparator,
+                             ChecksumVerification checksumVerification, ReadMode readMode, Metrics metrics)
+            throws IOException {
+        ImmutableFile indexFile = readMode.open(paths.indexPath(tableId));
+        return new Index(tableId, indexFile, cache, keyComparator, checksumVerification, metrics);
+    }
+
+    public static Index open(long tableId, Paths paths, IndexBlock.Cache cache, KeyComparator keyComparator,
+                             ChecksumVerification checksumVerification, Metrics metrics) throws IOException {
+        return open(tableId, paths, cache, keyComparator, checksumVerification, ReadMode.BUFFERED, metrics);
+    }
+
+    public static Index open(long tableId, Paths paths, IndexBlock.Cache cache, KeyComparator keyComparator,
+                             Metrics metrics) throws IOException {
+        return open(tableId, paths, cache, keyComparator, ChecksumVerification.CACHE_MISSES, metrics);
+    }
+
     public static Index open(long tableId, Paths paths, IndexBlock.Cache cache, Metrics metrics) throws IOException {
-        ImmutableFile indexFile = ImmutableChannelFile.open(paths.indexPath(tableId));
-        return new Index(tableId, indexFile, cache, metrics);
+        return open(tableId, paths, cache, KeyComparators.BYTEWISE, metrics);
     }
 }
@@ -18,6 +18,8 @@ package com.jordanwilliams.heftydb.index;
 
 import com.codahale.metrics.Gauge;
 import com.googlecode.concurrentlinkedhashmap.Weigher;
+import com.jordanwilliams.heftydb.cache.CachePolicy;
+import com.jordanwilliams.heftydb.cache.MemoryBudget;
 import com.jordanwilliams.heftydb.cache.TableBlockCache;
 import com.jordanwilliams.heftydb.data.Key;
 import com.jordanwilliams.heftydb.data.Value;
@@ -43,12 +45,21 @@ public class IndexBlock implements Iterable<IndexRecord>, Offheap {
         private final TableBlockCache<IndexBlock> cache;
 
         public Cache(long maxSize, Metrics metrics) {
-            cache = new TableBlockCache<IndexBlock>(maxSize, new Weigher<IndexBlock>() {
-                @Override
-                public int weightOf(IndexBlock indexRecord) {
-                    return indexRecord.memory().size();
-                }
-            });
+            this(maxSize, 0, CachePolicy.LRU, metrics);
+        }
+
+        public Cache(long maxSize, int expectedBlockSize, CachePolicy policy, Metrics metrics) {
+            this(maxSize, expectedBlockSize, policy, new MemoryBudget(0), metrics);
+        }
+
+        public Cache(long maxSize, int expectedBlockSize, CachePolicy policy, MemoryBudget budget, Metrics metrics) {
+            cache = new TableBlockCache<IndexBlock>(maxSize, expectedBlockSize, policy, budget, MemoryBudget.Tier.INDEX,
+                    new Weigher<IndexBlock>() {
+                        @Override
+                        public int weightOf(IndexBlock indexRecord) {
+                            return indexRecord.memory().size();
+                        }
+                    });
 
             metrics.gauge("cache.indexBlock.entrySize", new Gauge<Long>() {
                 @Override
@@ -63,6 +74,20 @@ public class IndexBlock implements Iterable<IndexRecord>, Offheap {
                     return cache.utilizationRate();
                 }
             });
+
+            metrics.gauge("cache.indexBlock.policy", new Gauge<String>() {
+                @Override
+                public String getValue() {
+                    return cache.policy().toString();
+                }
+            });
+
+            metrics.gauge("cache.indexBlock.rejectedAdmissions", new Gauge<Long>() {
+                @Override
+                public Long getValue() {
+                    return cache.rejectedAdmissions();
+                }
+            });
         }
 
         public IndexBlock get(long tableId, long offset) {
@@ -77,6 +102,10 @@ public class IndexBlock implements Iterable<IndexRecord>, Offheap {
             cache.invalidate(tableId);
         }
 
+        public MemoryBudget budget() {
+            return cache.budget();
+        }
+
         public void clear() {
             cache.clear();
         }
@@ -18,6 +18,7 @@ package com.jordanwilliams.heftydb.index;
 
 import com.jordanwilliams.heftydb.io.AppendChannelFile;
 import com.jordanwilliams.heftydb.io.AppendFile;
+import com.jordanwilliams.heftydb.io.BlockChecksum;
 import com.jordanwilliams.heftydb.state.Paths;
 
 import java.io.IOException;
@@ -93,14 +94,20 @@ public class IndexWriter {
         indexFile.close();
     }
 
+    public void abort() throws IOException {
+        indexFile.close();
+    }
+
     private IndexRecord writeIndexBlock(IndexBlock indexBlock) throws IOException {
         ByteBuffer indexBlockBuffer = indexBlock.memory().directBuffer();
         indexBlockBuffer.rewind();
+        int checksum = BlockChecksum.compute(indexBlockBuffer);
 
         long indexBlockOffset = indexFile.append(indexBlockBuffer);
+        indexFile.appendInt(checksum);
 
         IndexRecord metaIndexRecord = new IndexRecord(indexBlock.startRecord().startKey(), indexBlockOffset,
-                indexBlockBuffer.capacity(), false);
+                indexBlockBuffer.capacity() + BlockChecksum.SIZE, false);
         indexBlock.memory().release();
         return metaIndexRecord;
     }
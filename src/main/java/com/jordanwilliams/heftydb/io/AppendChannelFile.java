@@ -18,6 +18,7 @@ package com.jordanwilliams.heftydb.io;
 
 import com.jordanwilliams.heftydb.offheap.JVMUnsafe;
 import com.jordanwilliams.heftydb.offheap.MemoryAllocator;
+import com.jordanwilliams.heftydb.offheap.MemoryOwner;
 import com.jordanwilliams.heftydb.offheap.MemoryPointer;
 import com.jordanwilliams.heftydb.util.Sizes;
 
@@ -48,7 +49,7 @@ public class AppendChannelFile implements AppendFile {
 
     private AppendChannelFile(FileChannel channel, int appendBufferSize) {
         this.channel = channel;
-        this.appendBuffer = MemoryAllocator.allocate(appendBufferSize);
+        this.appendBuffer = MemoryAllocator.allocate(appendBufferSize, MemoryOwner.IO_BUFFER);
     }
 
     @Override
@@ -96,6 +97,12 @@ public class AppendChannelFile implements AppendFile {
         channel.force(true);
     }
 
+    @Override
+    public synchronized void syncData() throws IOException {
+        flushAppendBuffer();
+        channel.force(false);
+    }
+
     @Override
     public synchronized void close() throws IOException {
         if (channel.isOpen()) {
@@ -34,4 +34,10 @@ public interface AppendFile extends Closeable {
     public long size() throws IOException;
 
     public void sync() throws IOException;
+
+    /**
+     * Flushes the contents of the file without its metadata. This is only durable if no write since the last full
+     * sync has changed the size of the file.
+     */
+    public void syncData() throws IOException;
 }
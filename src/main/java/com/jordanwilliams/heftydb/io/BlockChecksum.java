@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) 2014. Jordan Williams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.jordanwilliams.heftydb.io;
+
+import com.jordanwilliams.heftydb.util.Sizes;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.zip.CRC32C;
+
+/**
+ * Computes and verifies the CRC32C checksums that trail each block in table and index files. The checksum is counted
+ * in the block size that is stored in the file, so a block read from disk carries its checksum in its last four bytes.
+ */
+public class BlockChecksum {
+
+    public static final int SIZE = Sizes.INT_SIZE;
+
+    /**
+     * Returns the checksum of the bytes between the position and limit of the buffer without consuming them.
+     */
+    public static int compute(ByteBuffer buffer) {
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.duplicate());
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Returns whether the last four bytes of the block are the checksum of the bytes that precede them.
+     */
+    public static boolean matches(ByteBuffer block) {
+        ByteBuffer contents = block.duplicate().order(ByteOrder.BIG_ENDIAN);
+        int checksumOffset = contents.capacity() - SIZE;
+
+        if (checksumOffset < 0) {
+            return false;
+        }
+
+        int checksum = contents.getInt(checksumOffset);
+        contents.clear();
+        contents.limit(checksumOffset);
+
+        return compute(contents) == checksum;
+    }
+}
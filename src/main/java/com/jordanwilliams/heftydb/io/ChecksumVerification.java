@@ -0,0 +1,52 @@
+/*
+ * Copyright (c) 2014. Jordan Williams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.jordanwilliams.heftydb.io;
+
+/**
+ * Controls which table and index block reads have their checksums verified.
+ */
+public enum ChecksumVerification {
+
+    /**
+     * Verifies every block, including blocks that are served from a cache.
+     */
+    ALWAYS(true, true),
+
+    /**
+     * Verifies blocks as they are read from disk. Blocks served from a cache were verified when they were read.
+     */
+    CACHE_MISSES(true, false),
+
+    NEVER(false, false);
+
+    private final boolean verifyReads;
+    private final boolean verifyCacheHits;
+
+    ChecksumVerification(boolean verifyReads, boolean verifyCacheHits) {
+        this.verifyReads = verifyReads;
+        this.verifyCacheHits = verifyCacheHits;
+    }
+
+    public boolean verifyReads() {
+        return verifyReads;
+    }
+
+    public boolean verifyCacheHits() {
+        return verifyCacheHits;
+    }
+}
@@ -0,0 +1,259 @@
+/*
+ * Copyright (c) 2014. Jordan Williams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.jordanwilliams.heftydb.io;
+
+import com.jordanwilliams.heftydb.offheap.MemoryAllocator;
+import com.jordanwilliams.heftydb.offheap.MemoryOwner;
+import com.jordanwilliams.heftydb.offheap.MemoryPointer;
+import com.jordanwilliams.heftydb.util.Sizes;
+import com.sun.nio.file.ExtendedOpenOption;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * A read only file that bypasses the operating system's page cache. Direct reads have to start and end on the
+ * block boundaries of the file system and land in aligned memory, so each read is done into an aligned off-heap
+ * buffer and the requested bytes are copied out of it. Each thread reuses one such buffer, and reads that fall within
+ * the part of the file it last read are served from it. Reads of a primitive read ahead, so that the size prefix of
+ * a block is read together with the block that follows it.
+ */
+public class DirectChannelFile implements ImmutableFile {
+
+    private static final int READ_AHEAD_SIZE = 65536;
+    private static final int READ_BUFFER_SIZE = 262144;
+
+    /**
+     * The aligned buffer of a thread, along with the part of a file that it holds.
+     */
+    private static class ReadBuffer {
+
+        private final Thread thread = Thread.currentThread();
+
+        private MemoryPointer pointer;
+        private DirectChannelFile file;
+        private long filePosition;
+        private long fileEnd;
+
+        private ByteBuffer clear(int alignment) {
+            file = null;
+
+            if (pointer == null || pointer.address() % alignment != 0) {
+                free();
+                pointer = MemoryAllocator.allocateAligned(Math.max(READ_BUFFER_SIZE, alignment), alignment,
+                        MemoryOwner.IO_BUFFER);
+            }
+
+            ByteBuffer buffer = pointer.directBuffer();
+            buffer.clear();
+            return buffer;
+        }
+
+        private boolean holds(DirectChannelFile file, long position, int length) {
+            return this.file == file && position >= filePosition && position + length <= fileEnd;
+        }
+
+        private void free() {
+            if (pointer != null) {
+                pointer.free();
+                pointer = null;
+            }
+        }
+    }
+
+    private static final List<ReadBuffer> readBuffers = new ArrayList<ReadBuffer>();
+
+    private static final ThreadLocal<ReadBuffer> readBuffer = new ThreadLocal<ReadBuffer>() {
+        @Override
+        protected ReadBuffer initialValue() {
+            ReadBuffer buffer = new ReadBuffer();
+
+            synchronized (readBuffers) {
+                //The buffers of threads that have exited are freed as new threads start reading
+                Iterator<ReadBuffer> buffers = readBuffers.iterator();
+
+                while (buffers.hasNext()) {
+                    ReadBuffer next = buffers.next();
+
+                    if (!next.thread.isAlive()) {
+                        next.free();
+                        buffers.remove();
+                    }
+                }
+
+                readBuffers.add(buffer);
+            }
+
+            return buffer;
+        }
+    };
+
+    private static final ThreadLocal<ByteBuffer> primitiveBuffer = new ThreadLocal<ByteBuffer>() {
+        @Override
+        protected ByteBuffer initialValue() {
+            return ByteBuffer.allocate(Sizes.LONG_SIZE);
+        }
+    };
+
+    private final FileChannel channel;
+    private final int alignment;
+
+    private DirectChannelFile(FileChannel channel, int alignment) {
+        this.channel = channel;
+        this.alignment = alignment;
+    }
+
+    @Override
+    public long read(ByteBuffer bufferToRead, long position) throws IOException {
+        return read(bufferToRead, position, bufferToRead.remaining());
+    }
+
+    @Override
+    public int readInt(long position) throws IOException {
+        ByteBuffer intBuffer = primitiveBuffer(Sizes.INT_SIZE);
+        read(intBuffer, position, READ_AHEAD_SIZE);
+        intBuffer.rewind();
+        return intBuffer.getInt();
+    }
+
+    @Override
+    public long readLong(long position) throws IOException {
+        ByteBuffer longBuffer = primitiveBuffer(Sizes.LONG_SIZE);
+        read(longBuffer, position, READ_AHEAD_SIZE);
+        longBuffer.rewind();
+        return longBuffer.getLong();
+    }
+
+    @Override
+    public long size() throws IOException {
+        return channel.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Reads into bufferToRead from the buffer of the current thread, after filling it with at least readLength bytes
+     * of the file if it does not already hold the requested bytes.
+     */
+    private long read(ByteBuffer bufferToRead, long position, int readLength) throws IOException {
+        int length = bufferToRead.remaining();
+
+        if (length == 0) {
+            return 0;
+        }
+
+        long alignedPosition = position - position % alignment;
+        int readOffset = (int) (position - alignedPosition);
+        int alignedLength = alignedSize(readOffset + length);
+
+        if (alignedLength > READ_BUFFER_SIZE) {
+            return readUnbuffered(bufferToRead, alignedPosition, readOffset, alignedLength);
+        }
+
+        ReadBuffer buffer = readBuffer.get();
+
+        if (!buffer.holds(this, position, length)) {
+            ByteBuffer alignedBuffer = buffer.clear(alignment);
+            alignedBuffer.limit(Math.max(alignedLength, Math.min(alignedSize(readOffset + readLength),
+                    alignedBuffer.capacity())));
+            readAligned(alignedBuffer, alignedPosition);
+
+            buffer.file = this;
+            buffer.filePosition = alignedPosition;
+            buffer.fileEnd = alignedPosition + alignedBuffer.position();
+        }
+
+        int bufferOffset = (int) (position - buffer.filePosition);
+        int copyLength = (int) Math.min(length, buffer.fileEnd - position);
+
+        if (copyLength <= 0) {
+            return -1;
+        }
+
+        ByteBuffer alignedBuffer = buffer.pointer.directBuffer();
+        alignedBuffer.limit(bufferOffset + copyLength);
+        alignedBuffer.position(bufferOffset);
+        bufferToRead.put(alignedBuffer);
+
+        return copyLength;
+    }
+
+    /**
+     * Reads that are larger than the buffer of a thread get an aligned buffer of their own.
+     */
+    private long readUnbuffered(ByteBuffer bufferToRead, long alignedPosition, int readOffset, int alignedLength)
+            throws IOException {
+        MemoryPointer alignedPointer = MemoryAllocator.allocateAligned(alignedLength, alignment, MemoryOwner
+                .IO_BUFFER);
+
+        try {
+            ByteBuffer alignedBuffer = alignedPointer.directBuffer();
+            readAligned(alignedBuffer, alignedPosition);
+
+            int readLength = Math.min(bufferToRead.remaining(), alignedBuffer.position() - readOffset);
+
+            if (readLength <= 0) {
+                return -1;
+            }
+
+            alignedBuffer.limit(readOffset + readLength);
+            alignedBuffer.position(readOffset);
+            bufferToRead.put(alignedBuffer);
+
+            return readLength;
+        } finally {
+            alignedPointer.free();
+        }
+    }
+
+    private void readAligned(ByteBuffer alignedBuffer, long alignedPosition) throws IOException {
+        //A short read means the end of the file, after which the position is no longer aligned
+        while (alignedBuffer.hasRemaining() && alignedBuffer.position() % alignment == 0) {
+            if (channel.read(alignedBuffer, alignedPosition + alignedBuffer.position()) <= 0) {
+                break;
+            }
+        }
+    }
+
+    private int alignedSize(int size) {
+        return (size + alignment - 1) / alignment * alignment;
+    }
+
+    private static ByteBuffer primitiveBuffer(int size) {
+        ByteBuffer buffer = primitiveBuffer.get();
+        buffer.rewind();
+        buffer.limit(size);
+        return buffer;
+    }
+
+    public static ImmutableFile open(Path path) throws IOException {
+        int alignment = (int) Files.getFileStore(path).getBlockSize();
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, ExtendedOpenOption.DIRECT);
+        return new DirectChannelFile(channel, alignment);
+    }
+}
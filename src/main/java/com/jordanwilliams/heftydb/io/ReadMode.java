@@ -0,0 +1,52 @@
+/*
+ * Copyright (c) 2014. Jordan Williams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.jordanwilliams.heftydb.io;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Controls how table and index files are read.
+ */
+public enum ReadMode {
+
+    /**
+     * Reads go through the operating system's page cache, so blocks that miss the block caches may still be served
+     * from memory.
+     */
+    BUFFERED {
+        @Override
+        public ImmutableFile open(Path path) throws IOException {
+            return ImmutableChannelFile.open(path);
+        }
+    },
+
+    /**
+     * Reads bypass the page cache, which leaves the block caches as the only cache of table data. Blocks are not
+     * cached twice, compaction does not evict hot pages, and the memory used for caching is bounded by the cache
+     * sizes. Requires a file system that supports direct I/O.
+     */
+    DIRECT {
+        @Override
+        public ImmutableFile open(Path path) throws IOException {
+            return DirectChannelFile.open(path);
+        }
+    };
+
+    public abstract ImmutableFile open(Path path) throws IOException;
+}
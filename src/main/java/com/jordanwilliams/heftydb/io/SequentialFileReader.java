@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2014. Jordan Williams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.jordanwilliams.heftydb.io;
+
+import com.jordanwilliams.heftydb.offheap.MemoryAllocator;
+import com.jordanwilliams.heftydb.offheap.MemoryOwner;
+import com.jordanwilliams.heftydb.offheap.MemoryPointer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Reads an ImmutableFile from front to back through a large off-heap buffer. Each call returns a view of the buffer
+ * instead of a copy, so many small reads cost one positional read of the file per buffer fill.
+ */
+public class SequentialFileReader implements Closeable {
+
+    private final ImmutableFile file;
+    private final long fileSize;
+    private final MemoryPointer bufferPointer;
+    private final ByteBuffer buffer;
+
+    private long bufferFileOffset;
+
+    public SequentialFileReader(ImmutableFile file, long startOffset, int bufferSize) throws IOException {
+        this.file = file;
+        this.fileSize = file.size();
+        this.bufferPointer = MemoryAllocator.allocate(bufferSize, MemoryOwner.IO_BUFFER);
+        this.buffer = bufferPointer.directBuffer();
+        this.bufferFileOffset = startOffset;
+
+        buffer.limit(0);
+    }
+
+    /**
+     * Returns a view of the next length bytes of the file, or of every remaining byte if the file ends sooner. The
+     * view is only valid until the next call.
+     */
+    public ByteBuffer read(int length) throws IOException {
+        if (buffer.remaining() < length) {
+            fill();
+        }
+
+        ByteBuffer view = buffer.slice();
+        view.limit(Math.min(length, buffer.remaining()));
+        buffer.position(buffer.position() + view.limit());
+
+        return view;
+    }
+
+    public long position() {
+        return bufferFileOffset + buffer.position();
+    }
+
+    public boolean hasRemaining() {
+        return position() < fileSize;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!bufferPointer.isFree()) {
+            bufferPointer.free();
+        }
+    }
+
+    private void fill() throws IOException {
+        bufferFileOffset += buffer.position();
+        buffer.clear();
+        buffer.limit((int) Math.min(buffer.capacity(), Math.max(fileSize - bufferFileOffset, 0)));
+
+        while (buffer.hasRemaining()) {
+            if (file.read(buffer, bufferFileOffset + buffer.position()) < 0) {
+                break;
+            }
+        }
+
+        buffer.flip();
+    }
+}
@@ -116,6 +116,7 @@ public class Metrics {
         metrics.register(metricName("read.tablesConsulted"), new Histogram(new UniformReservoir()));
         metrics.register(metricName("read.bloomFilterFalsePositiveRate"), new CacheHitGauge());
         metrics.register(metricName("read.recordNotFoundRate"), new CacheHitGauge());
+        metrics.register(metricName("read.rowCacheHitRate"), new CacheHitGauge());
 
         //FileTable
         metrics.register(metricName("table.cacheHitRate"), new CacheHitGauge());
@@ -127,6 +128,8 @@ public class Metrics {
         //Compactor
         metrics.register(metricName("compactor.concurrentTasks"), new Histogram(new UniformReservoir()));
         metrics.register(metricName("compactor.taskExecution"), new Timer(new UniformReservoir()));
+        metrics.register(metricName("compactor.preemptions"), new Meter());
+        metrics.register(metricName("compactor.trivialMoves"), new Meter());
     }
 
     private static String metricName(String name) {
@@ -33,7 +33,7 @@ public class BitSet implements Offheap {
 
         public Builder(long bitCount, int paddingBytes) {
             this.usableBytes = memoryOffset(bitCount) + Sizes.LONG_SIZE;
-            this.pointer = MemoryAllocator.allocateAndZero(usableBytes + paddingBytes);
+            this.pointer = MemoryAllocator.allocateAndZero(usableBytes + paddingBytes, MemoryOwner.FILTER);
             this.directBuffer = pointer.directBuffer();
         }
 
@@ -75,9 +75,7 @@ public class BitSet implements Offheap {
     }
 
     public boolean get(long index) {
-        int offset = memoryOffset(index);
-        long currentValue = directBuffer.getLong(offset);
-        return (currentValue & (1L << index)) != 0;
+        return isSet(directBuffer.getLong(memoryOffset(index)), index);
     }
 
     public int usableBytes() {
@@ -93,7 +91,18 @@ public class BitSet implements Offheap {
         return pointer;
     }
 
-    private static int memoryOffset(long bitIndex) {
+    /**
+     * Returns the offset of the word that holds a bit, so that a bit set can be read from other memory, such as a
+     * file, with the same layout.
+     */
+    public static int memoryOffset(long bitIndex) {
         return (int) (bitIndex >> ADDRESS_BITS_PER_WORD) * Sizes.LONG_SIZE;
     }
+
+    /**
+     * Returns whether a bit is set in the word that memoryOffset locates for it.
+     */
+    public static boolean isSet(long word, long bitIndex) {
+        return (word & (1L << bitIndex)) != 0;
+    }
 }
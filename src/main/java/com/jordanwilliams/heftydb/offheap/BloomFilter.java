@@ -40,18 +40,10 @@ public class BloomFilter implements Offheap {
         }
 
         public void put(Key key) {
-            long hash64 = MurmurHash3.MurmurHash3_x64_64(key.data().array());
-            int hash1 = (int) hash64;
-            int hash2 = (int) (hash64 >>> 32);
+            long hash = hash(key);
 
             for (int i = 1; i <= hashFunctionCount; i++) {
-                int nextHash = hash1 + i * hash2;
-
-                if (nextHash < 0) {
-                    nextHash = ~nextHash;
-                }
-
-                bitSetBuilder.set(nextHash % bitSetBuilder.bitCount(), true);
+                bitSetBuilder.set(probe(hash, i, bitSetBuilder.bitCount()), true);
             }
         }
 
@@ -87,16 +79,10 @@ public class BloomFilter implements Offheap {
     }
 
     public boolean mightContain(Key key) {
-        long hash64 = MurmurHash3.MurmurHash3_x64_64(key.data().array());
-        int hash1 = (int) hash64;
-        int hash2 = (int) (hash64 >>> 32);
+        long hash = hash(key);
 
         for (int i = 1; i <= hashFunctionCount; i++) {
-            int nextHash = hash1 + i * hash2;
-            if (nextHash < 0) {
-                nextHash = ~nextHash;
-            }
-            if (!bitSet.get(nextHash % bitSet.bitCount())) {
+            if (!bitSet.get(probe(hash, i, bitSet.bitCount()))) {
                 return false;
             }
         }
@@ -104,6 +90,27 @@ public class BloomFilter implements Offheap {
         return true;
     }
 
+    /**
+     * Returns the hash of a key that its probe positions are derived from.
+     */
+    public static long hash(Key key) {
+        return MurmurHash3.MurmurHash3_x64_64(key.data().array());
+    }
+
+    /**
+     * Returns the index of the bit that the probe'th hash function, counting from 1, maps a key with the given hash
+     * to in a filter of bitCount bits.
+     */
+    public static long probe(long hash, int probe, long bitCount) {
+        int nextHash = (int) hash + probe * (int) (hash >>> 32);
+
+        if (nextHash < 0) {
+            nextHash = ~nextHash;
+        }
+
+        return nextHash % bitCount;
+    }
+
     @Override
     public MemoryPointer memory() {
         return pointer;
@@ -0,0 +1,30 @@
+/*
+ * Copyright (c) 2014. Jordan Williams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jordanwilliams.heftydb.offheap;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Creates the DirectByteBuffers through which off-heap memory is read and written.
+ */
+public interface MemoryAccess {
+
+    /**
+     * Returns a native order buffer over size bytes of memory starting at address. The buffer does not own the
+     * memory, and its reads and writes are bounds checked against size.
+     */
+    public ByteBuffer buffer(long address, int size);
+}
@@ -17,46 +17,70 @@
 package com.jordanwilliams.heftydb.offheap;
 
 import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
 import com.codahale.metrics.JmxReporter;
 import com.codahale.metrics.MetricRegistry;
 import com.jordanwilliams.heftydb.offheap.allocator.Allocator;
+import com.jordanwilliams.heftydb.offheap.allocator.ArenaAllocator;
+import com.jordanwilliams.heftydb.offheap.allocator.PoolingAllocator;
+import com.jordanwilliams.heftydb.offheap.allocator.SlabAllocator;
 import com.jordanwilliams.heftydb.offheap.allocator.UnsafeAllocator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import sun.misc.Unsafe;
 
-import java.lang.reflect.Field;
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
-
 /**
  * A class that allocates off-heap memory and returns reference counted pointers to these blocks of memory.
+ * <p/>
+ * Memory comes from an UnsafeAllocator by default. Setting the system property heftydb.allocator to slab selects a
+ * SlabAllocator instead, which pools blocks by size class rather than calling malloc and free for each of them.
+ * Setting it to arena selects an ArenaAllocator, which carves the slabs out of huge page aligned regions, split into
+ * the number of arenas given by the system property heftydb.allocator.arenas.
+ * <p/>
+ * The memory in use is broken down by the MemoryOwner that each allocation is made for. Setting the system property
+ * heftydb.memoryTracking to true also records where every live pointer was allocated and reports pointers that are
+ * garbage collected without being released, see MemoryTracker.
+ * <p/>
+ * The DirectByteBuffer of each pointer is built by an UnsafeMemoryAccess by default. Setting the system property
+ * heftydb.memoryAccess to segment builds them through the Foreign Memory API instead, see SegmentMemoryAccess, which
+ * is also used when the JDK does not allow the internals of java.nio.Buffer to be accessed.
  */
 public class MemoryAllocator {
 
+    private static final Logger logger = LoggerFactory.getLogger(MemoryAllocator.class);
     private static final Unsafe unsafe = JVMUnsafe.unsafe;
-    private static final Allocator allocator = new UnsafeAllocator();
-    private static final Class<?> directByteBufferClass;
-    private static final long addressOffset;
-    private static final long capacityOffset;
-    private static final long limitOffset;
+    private static final String ALLOCATOR_PROPERTY = "heftydb.allocator";
+    private static final String ARENAS_PROPERTY = "heftydb.allocator.arenas";
+    private static final String TRACKING_PROPERTY = "heftydb.memoryTracking";
+    private static final String ACCESS_PROPERTY = "heftydb.memoryAccess";
+
+    private static final Allocator allocator = allocator(System.getProperty(ALLOCATOR_PROPERTY));
+    private static final MemoryTracker tracker = Boolean.getBoolean(TRACKING_PROPERTY) ? new MemoryTracker() : null;
+    private static final MemoryAccess memoryAccess = memoryAccess("segment".equals(System.getProperty
+            (ACCESS_PROPERTY)));
 
     private static final MetricRegistry metrics = new MetricRegistry();
     private static final JmxReporter jmxReporter;
     private static final Counter offHeapMemoryCounter;
+    private static final Counter[] ownerCounters = new Counter[MemoryOwner.values().length];
 
     static {
         try {
-            Class<?> bufferClass = Class.forName("java.nio.Buffer");
-            Field address = bufferClass.getDeclaredField("address");
-            Field capacity = bufferClass.getDeclaredField("capacity");
-            Field limit = bufferClass.getDeclaredField("limit");
-
-            addressOffset = unsafe.objectFieldOffset(address);
-            capacityOffset = unsafe.objectFieldOffset(capacity);
-            limitOffset = unsafe.objectFieldOffset(limit);
-            directByteBufferClass = Class.forName("java.nio.DirectByteBuffer");
-
             //Metrics
             offHeapMemoryCounter = metrics.counter("offHeapMemory");
+
+            for (MemoryOwner owner : MemoryOwner.values()) {
+                ownerCounters[owner.ordinal()] = metrics.counter("offHeapMemory." + metricName(owner));
+            }
+
+            if (tracker != null) {
+                registerTrackerMetrics();
+            }
+
+            if (allocator instanceof PoolingAllocator) {
+                registerSlabMetrics((PoolingAllocator) allocator);
+            }
+
             jmxReporter = JmxReporter.forRegistry(metrics).inDomain("HeftyDB").build();
             jmxReporter.start();
         } catch (Exception e) {
@@ -65,27 +89,39 @@ public class MemoryAllocator {
     }
 
     public static MemoryPointer wrap(long address, int size) {
-        return new MemoryPointer(address, size, rawDirectBuffer(address, size));
+        return new MemoryPointer(address, size, memoryAccess.buffer(address, size));
     }
 
-    public static MemoryPointer allocate(int size) {
+    public static MemoryPointer allocate(int size, MemoryOwner owner) {
         if (size < 0) {
             throw new IllegalArgumentException();
         }
 
         long address = allocator.allocate(size);
-        offHeapMemoryCounter.inc(size);
-        return new MemoryPointer(address, size, rawDirectBuffer(address, size));
+        count(size, owner);
+        return track(new MemoryPointer(address, size, memoryAccess.buffer(address, size), address, size, owner));
     }
 
-    public static MemoryPointer allocateAndZero(int size) {
-        MemoryPointer pointer = allocate(size);
+    public static MemoryPointer allocate(int size) {
+        return allocate(size, MemoryOwner.OTHER);
+    }
+
+    public static MemoryPointer allocateAndZero(int size, MemoryOwner owner) {
+        MemoryPointer pointer = allocate(size, owner);
         zeroMemory(pointer);
         return pointer;
     }
 
+    public static MemoryPointer allocateAndZero(int size) {
+        return allocateAndZero(size, MemoryOwner.OTHER);
+    }
+
+    public static MemoryPointer allocate(int size, int align, MemoryOwner owner) {
+        return allocate(pageAlignedSize(size, align), owner);
+    }
+
     public static MemoryPointer allocate(int size, int align) {
-        return allocate(pageAlignedSize(size, align));
+        return allocate(size, align, MemoryOwner.OTHER);
     }
 
     public static MemoryPointer allocateAndZero(int size, int align) {
@@ -94,9 +130,134 @@ public class MemoryAllocator {
         return pointer;
     }
 
-    public static void deallocate(long address, int size) {
-        allocator.deallocate(address);
-        offHeapMemoryCounter.dec(size);
+    /**
+     * Allocates memory whose address is a multiple of align, which must be a power of two. Note that
+     * allocate(int, int) only rounds the size of an allocation up to a multiple of align.
+     */
+    public static MemoryPointer allocateAligned(int size, int align, MemoryOwner owner) {
+        if (size < 0 || Integer.bitCount(align) != 1) {
+            throw new IllegalArgumentException();
+        }
+
+        int allocationSize = size + align - 1;
+        long allocationAddress = allocator.allocate(allocationSize);
+        long address = (allocationAddress + align - 1) & -align;
+        count(allocationSize, owner);
+        return track(new MemoryPointer(address, size, memoryAccess.buffer(address, size), allocationAddress,
+                allocationSize, owner));
+    }
+
+    public static MemoryPointer allocateAligned(int size, int align) {
+        return allocateAligned(size, align, MemoryOwner.OTHER);
+    }
+
+    /**
+     * Returns the memory that is allocated for an owner and not yet freed.
+     */
+    public static long ownedMemory(MemoryOwner owner) {
+        return ownerCounters[owner.ordinal()].getCount();
+    }
+
+    /**
+     * @return the backend that builds the DirectByteBuffers of pointers
+     */
+    public static MemoryAccess memoryAccess() {
+        return memoryAccess;
+    }
+
+    /**
+     * @return the tracker of live pointers, or null if memory tracking is disabled
+     */
+    public static MemoryTracker tracker() {
+        return tracker;
+    }
+
+    static void free(MemoryPointer pointer, long allocationAddress, int allocationSize) {
+        if (tracker != null && !tracker.untrack(allocationAddress)) {
+            return;
+        }
+
+        deallocate(allocationAddress, allocationSize, pointer.owner());
+    }
+
+    private static void deallocate(long address, int size, MemoryOwner owner) {
+        allocator.deallocate(address, size);
+        count(-size, owner);
+    }
+
+    private static void count(long size, MemoryOwner owner) {
+        offHeapMemoryCounter.inc(size);
+        ownerCounters[owner.ordinal()].inc(size);
+    }
+
+    private static MemoryPointer track(MemoryPointer pointer) {
+        if (tracker != null) {
+            tracker.track(pointer, pointer.allocationAddress(), pointer.allocationSize(), pointer.owner());
+        }
+
+        return pointer;
+    }
+
+    private static void registerTrackerMetrics() {
+        metrics.register("offHeapMemory.leaks", new Gauge<Long>() {
+            @Override
+            public Long getValue() {
+                return tracker.leakCount();
+            }
+        });
+
+        metrics.register("offHeapMemory.leakedBytes", new Gauge<Long>() {
+            @Override
+            public Long getValue() {
+                return tracker.leakedBytes();
+            }
+        });
+
+        metrics.register("offHeapMemory.doubleFrees", new Gauge<Long>() {
+            @Override
+            public Long getValue() {
+                return tracker.doubleFreeCount();
+            }
+        });
+    }
+
+    /**
+     * Turns BLOCK_CACHE into blockCache.
+     */
+    private static String metricName(MemoryOwner owner) {
+        StringBuilder name = new StringBuilder();
+
+        for (String word : owner.toString().toLowerCase().split("_")) {
+            name.append(name.length() == 0 ? word : Character.toUpperCase(word.charAt(0)) + word.substring(1));
+        }
+
+        return name.toString();
+    }
+
+    private static void registerSlabMetrics(final PoolingAllocator slabAllocator) {
+        metrics.register("offHeapMemory.reserved", new Gauge<Long>() {
+            @Override
+            public Long getValue() {
+                return slabAllocator.reservedBytes();
+            }
+        });
+
+        //The share of the reserved memory that is not holding requested bytes, whether free or lost to rounding
+        metrics.register("offHeapMemory.fragmentation", new Gauge<Double>() {
+            @Override
+            public Double getValue() {
+                long reserved = slabAllocator.reservedBytes();
+                return reserved == 0 ? 0 : 1 - offHeapMemoryCounter.getCount() / (double) reserved;
+            }
+        });
+
+        metrics.register("offHeapMemory.poolOccupancy", new Gauge<Double>() {
+            @Override
+            public Double getValue() {
+                long slabBytes = slabAllocator.slabBytes();
+                return slabBytes == 0 ? 0 : slabAllocator.pooledBytes() / (double) slabBytes;
+            }
+        });
     }
 
     private static void zeroMemory(MemoryPointer pointer) {
@@ -113,15 +274,46 @@ public class MemoryAllocator {
         return pageCount * pageSize;
     }
 
-    private static ByteBuffer rawDirectBuffer(long address, int size) {
+    private static Allocator allocator(String name) {
+        if ("slab".equals(name)) {
+            return new SlabAllocator();
+        }
+
+        if ("arena".equals(name)) {
+            return new ArenaAllocator(Integer.getInteger(ARENAS_PROPERTY, 1));
+        }
+
+        return new UnsafeAllocator();
+    }
+
+    /**
+     * Picks the preferred backend, falling back to the other one if the preferred one is not supported by the JDK.
+     */
+    private static MemoryAccess memoryAccess(boolean preferSegments) {
+        if (preferSegments) {
+            if (SegmentMemoryAccess.isAvailable()) {
+                return segmentMemoryAccess();
+            }
+
+            logger.warn("The Foreign Memory API is not available, falling back to Unsafe for off-heap access");
+        }
+
         try {
-            ByteBuffer newBuffer = (ByteBuffer) unsafe.allocateInstance(directByteBufferClass);
-            unsafe.putLong(newBuffer, addressOffset, address);
-            unsafe.putInt(newBuffer, capacityOffset, size);
-            unsafe.putInt(newBuffer, limitOffset, size);
-            newBuffer.order(ByteOrder.nativeOrder());
-            return newBuffer;
+            return new UnsafeMemoryAccess();
         } catch (Exception e) {
+            if (!SegmentMemoryAccess.isAvailable()) {
+                throw new RuntimeException(e);
+            }
+
+            logger.warn("Falling back to the Foreign Memory API for off-heap access", e);
+            return segmentMemoryAccess();
+        }
+    }
+
+    private static MemoryAccess segmentMemoryAccess() {
+        try {
+            return new SegmentMemoryAccess();
+        } catch (ReflectiveOperationException e) {
             throw new RuntimeException(e);
         }
     }
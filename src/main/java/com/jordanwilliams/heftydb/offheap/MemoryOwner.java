@@ -0,0 +1,57 @@
+/*
+ * Copyright (c) 2014. Jordan Williams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jordanwilliams.heftydb.offheap;
+
+/**
+ * The part of a database that off-heap memory was allocated for, so that the memory in use can be broken down.
+ */
+public enum MemoryOwner {
+
+    /**
+     * Table blocks that are read through, and may be held by, the table block cache.
+     */
+    BLOCK_CACHE,
+
+    /**
+     * Index blocks, including the root blocks that every open Index keeps.
+     */
+    INDEX_CACHE,
+
+    /**
+     * Bloom filters that are being built or that are resident for open Tables.
+     */
+    FILTER,
+
+    /**
+     * The arenas of MemoryTables.
+     */
+    MEMORY_TABLE,
+
+    ROW_CACHE,
+
+    /**
+     * Table blocks that iterators read without putting them in the table block cache.
+     */
+    ITERATOR,
+
+    /**
+     * Buffers of files that are being read or written.
+     */
+    IO_BUFFER,
+
+    OTHER
+}
@@ -29,13 +29,28 @@ public class MemoryPointer {
     private final AtomicInteger retainCount = new AtomicInteger(1);
     private final int size;
     private final ByteBuffer directBuffer;
+    private final long allocationOffset;
+    private final int allocationSize;
+    private final MemoryOwner owner;
 
     private long address;
 
     MemoryPointer(long address, int size, ByteBuffer directBuffer) {
+        this(address, size, directBuffer, address, size, MemoryOwner.OTHER);
+    }
+
+    /**
+     * Creates a pointer into a larger allocation, which starts at allocationAddress and is freed along with the
+     * pointer.
+     */
+    MemoryPointer(long address, int size, ByteBuffer directBuffer, long allocationAddress, int allocationSize,
+                  MemoryOwner owner) {
         this.address = address;
         this.size = size;
         this.directBuffer = directBuffer;
+        this.allocationOffset = address - allocationAddress;
+        this.allocationSize = allocationSize;
+        this.owner = owner;
         directBuffer.rewind();
     }
 
@@ -51,12 +66,24 @@ public class MemoryPointer {
         return address == 0;
     }
 
+    public MemoryOwner owner() {
+        return owner;
+    }
+
     public void free() {
-        MemoryAllocator.deallocate(address, size);
+        MemoryAllocator.free(this, address - allocationOffset, allocationSize);
         retainCount.set(0);
         address = 0;
     }
 
+    long allocationAddress() {
+        return address - allocationOffset;
+    }
+
+    int allocationSize() {
+        return allocationSize;
+    }
+
     public int size() {
         return directBuffer.limit();
     }
@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 2014. Jordan Williams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jordanwilliams.heftydb.offheap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tracks every live MemoryPointer along with the stack trace of the code that allocated it, so that memory that is
+ * never released can be found. A MemoryPointer that is garbage collected before it is freed is a leak, which is
+ * logged with its allocation site. Leaked memory is not freed, as a buffer over it may still be in use after its
+ * MemoryPointer has become unreachable.
+ * <p/>
+ * Recording a stack trace for every allocation is expensive, so tracking is only meant for tests and for debugging.
+ */
+public class MemoryTracker {
+
+    /**
+     * A live allocation, which is enqueued once its MemoryPointer becomes unreachable.
+     */
+    public static class Allocation extends PhantomReference<MemoryPointer> {
+
+        private final long address;
+        private final int size;
+        private final MemoryOwner owner;
+        private final Throwable site;
+
+        private Allocation(MemoryPointer pointer, long address, int size, MemoryOwner owner,
+                           ReferenceQueue<MemoryPointer> queue) {
+            super(pointer, queue);
+            this.address = address;
+            this.size = size;
+            this.owner = owner;
+            this.site = new Throwable("Allocated " + size + " bytes for " + owner);
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public MemoryOwner owner() {
+            return owner;
+        }
+
+        /**
+         * Returns the stack trace of the allocation, starting at the code that called MemoryAllocator.
+         */
+        public List<StackTraceElement> site() {
+            StackTraceElement[] stackTrace = site.getStackTrace();
+            int start = 0;
+
+            while (start < stackTrace.length && isInternal(stackTrace[start])) {
+                start++;
+            }
+
+            return Arrays.asList(stackTrace).subList(start, stackTrace.length);
+        }
+
+        private static boolean isInternal(StackTraceElement element) {
+            return element.getClassName().startsWith(MemoryTracker.class.getName()) || element.getClassName().equals
+                    (MemoryAllocator.class.getName());
+        }
+
+        @Override
+        public String toString() {
+            return "Allocation{" +
+                    "address=" + address +
+                    ", size=" + size +
+                    ", owner=" + owner +
+                    '}';
+        }
+    }
+
+    private static final Logger logger = LoggerFactory.getLogger(MemoryTracker.class);
+
+    private final ConcurrentHashMap<Long, Allocation> liveAllocations = new ConcurrentHashMap<Long, Allocation>();
+    private final ReferenceQueue<MemoryPointer> collectedPointers = new ReferenceQueue<MemoryPointer>();
+    private final AtomicLong leakCount = new AtomicLong();
+    private final AtomicLong leakedBytes = new AtomicLong();
+    private final AtomicLong doubleFreeCount = new AtomicLong();
+
+    /**
+     * Starts tracking a pointer whose memory begins at address, and reports any memory that has leaked since.
+     */
+    public void track(MemoryPointer pointer, long address, int size, MemoryOwner owner) {
+        reportLeaks();
+        liveAllocations.put(address, new Allocation(pointer, address, size, owner, collectedPointers));
+    }
+
+    /**
+     * Stops tracking memory that is being freed, and returns false if the memory is not allocated.
+     */
+    public boolean untrack(long address) {
+        Allocation allocation = liveAllocations.remove(address);
+
+        if (allocation == null) {
+            doubleFreeCount.incrementAndGet();
+            logger.warn("Freeing memory at " + address + " that is not allocated", new Throwable());
+            return false;
+        }
+
+        allocation.clear();
+        return true;
+    }
+
+    /**
+     * Reports every pointer that has been garbage collected without being freed.
+     */
+    public void reportLeaks() {
+        Reference<? extends MemoryPointer> collected;
+
+        while ((collected = collectedPointers.poll()) != null) {
+            Allocation allocation = (Allocation) collected;
+
+            if (liveAllocations.remove(allocation.address, allocation)) {
+                leakCount.incrementAndGet();
+                leakedBytes.addAndGet(allocation.size);
+                logger.warn("Leaked " + allocation, allocation.site);
+            }
+        }
+    }
+
+    public List<Allocation> liveAllocations() {
+        return new ArrayList<Allocation>(liveAllocations.values());
+    }
+
+    public long leakCount() {
+        return leakCount.get();
+    }
+
+    public long leakedBytes() {
+        return leakedBytes.get();
+    }
+
+    public long doubleFreeCount() {
+        return doubleFreeCount.get();
+    }
+}
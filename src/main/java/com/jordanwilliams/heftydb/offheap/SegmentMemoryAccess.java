@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2014. Jordan Williams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jordanwilliams.heftydb.offheap;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Builds DirectByteBuffers through the Foreign Memory API, by viewing the memory as a MemorySegment and asking the
+ * segment for a buffer. The API is looked up reflectively so that the code still compiles and runs on JDKs that do
+ * not have it, which is why the constructor throws on those JDKs.
+ * <p/>
+ * The buffers are ordinary DirectByteBuffers, so their bounds checked accessors get the same JIT intrinsics as the
+ * ones built by UnsafeMemoryAccess.
+ */
+public class SegmentMemoryAccess implements MemoryAccess {
+
+    private static final String SEGMENT_CLASS = "java.lang.foreign.MemorySegment";
+
+    //(long address, long size) -> ByteBuffer
+    private final MethodHandle bufferHandle;
+
+    public SegmentMemoryAccess() throws ReflectiveOperationException {
+        this.bufferHandle = bufferHandle();
+    }
+
+    @Override
+    public ByteBuffer buffer(long address, int size) {
+        try {
+            ByteBuffer buffer = (ByteBuffer) bufferHandle.invokeExact(address, (long) size);
+            return buffer.order(ByteOrder.nativeOrder());
+        } catch (Throwable t) {
+            throw new RuntimeException(t);
+        }
+    }
+
+    /**
+     * Returns whether every method of the Foreign Memory API that is used here can be found. The early previews of
+     * the API in JDK 19 and 20 have the MemorySegment class but not MemorySegment.reinterpret.
+     */
+    public static boolean isAvailable() {
+        try {
+            bufferHandle();
+            return true;
+        } catch (ReflectiveOperationException e) {
+            return false;
+        } catch (LinkageError e) {
+            return false;
+        }
+    }
+
+    private static MethodHandle bufferHandle() throws ReflectiveOperationException {
+        Class<?> segmentClass = Class.forName(SEGMENT_CLASS);
+        //MemorySegment.reinterpret is caller sensitive, so it can not be found with a public lookup
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+
+        MethodHandle ofAddress = lookup.findStatic(segmentClass, "ofAddress", MethodType.methodType(segmentClass,
+                long.class));
+        MethodHandle reinterpret = lookup.findVirtual(segmentClass, "reinterpret", MethodType.methodType
+                (segmentClass, long.class));
+        MethodHandle asByteBuffer = lookup.findVirtual(segmentClass, "asByteBuffer", MethodType.methodType
+                (ByteBuffer.class));
+
+        MethodHandle sizedBuffer = MethodHandles.filterReturnValue(reinterpret, asByteBuffer);
+        return MethodHandles.filterArguments(sizedBuffer, 0, ofAddress);
+    }
+}
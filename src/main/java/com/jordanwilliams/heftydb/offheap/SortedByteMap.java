@@ -17,6 +17,8 @@
 package com.jordanwilliams.heftydb.offheap;
 
 import com.jordanwilliams.heftydb.data.Key;
+import com.jordanwilliams.heftydb.data.KeyComparator;
+import com.jordanwilliams.heftydb.data.KeyComparators;
 import com.jordanwilliams.heftydb.data.Value;
 import com.jordanwilliams.heftydb.util.Sizes;
 import sun.misc.Unsafe;
@@ -206,11 +208,17 @@ public class SortedByteMap implements Offheap, Iterable<SortedByteMap.Entry> {
     private final MemoryPointer pointer;
     private final ByteBuffer directBuffer;
     private final int entryCount;
+    private final KeyComparator keyComparator;
 
-    public SortedByteMap(MemoryPointer pointer) {
+    public SortedByteMap(MemoryPointer pointer, KeyComparator keyComparator) {
         this.pointer = pointer;
         this.directBuffer = pointer.directBuffer();
         this.entryCount = unsafe.getInt(pointer.address());
+        this.keyComparator = keyComparator;
+    }
+
+    public SortedByteMap(MemoryPointer pointer) {
+        this(pointer, KeyComparators.BYTEWISE);
     }
 
     public Entry get(int index) {
@@ -363,38 +371,15 @@ public class SortedByteMap implements Offheap, Iterable<SortedByteMap.Entry> {
         int keySize = unsafe.getInt(startAddress + entryOffset);
         entryOffset += Sizes.INT_SIZE;
 
-        int bufferKeyRemaining = keySize;
-        int compareKeyRemaining = compareKey.data().remaining();
-        int compareCount = Math.min(bufferKeyRemaining, compareKeyRemaining);
-        byte[] compareKeyArray = compareKey.data().array();
-
-        //Compare key bytes
-        for (int i = 0; i < compareCount; i++) {
-            byte bufferKeyVal = unsafe.getByte(startAddress + entryOffset + i);
-            byte compareKeyVal = compareKeyArray[i];
-            bufferKeyRemaining--;
-            compareKeyRemaining--;
-
-            if (bufferKeyVal == compareKeyVal) {
-                continue;
-            }
-
-            if (bufferKeyVal < compareKeyVal) {
-                return -1;
-            }
-
-            return 1;
-        }
-
-        int remainingDifference = bufferKeyRemaining - compareKeyRemaining;
+        int compared = keyComparator.compare(startAddress + entryOffset, keySize, compareKey.data());
 
         //If key bytes are equal, compare snapshot ids
-        if (remainingDifference == 0) {
-            long bufferSnapshotId = unsafe.getLong(startAddress + entryOffset + compareCount);
+        if (compared == 0) {
+            long bufferSnapshotId = unsafe.getLong(startAddress + entryOffset + keySize);
             return Long.compare(bufferSnapshotId, compareKey.snapshotId());
         }
 
-        return remainingDifference;
+        return compared;
     }
 
     private int entryOffset(int index) {
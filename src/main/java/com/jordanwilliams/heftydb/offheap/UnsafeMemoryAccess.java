@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) 2014. Jordan Williams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jordanwilliams.heftydb.offheap;
+
+import sun.misc.Unsafe;
+
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Builds DirectByteBuffers by allocating an instance with Unsafe and setting the address and capacity fields of
+ * java.nio.Buffer directly. This is cheap, but depends on JDK internals that newer runtimes may not expose.
+ */
+public class UnsafeMemoryAccess implements MemoryAccess {
+
+    private static final Unsafe unsafe = JVMUnsafe.unsafe;
+
+    private final Class<?> directByteBufferClass;
+    private final long addressOffset;
+    private final long capacityOffset;
+    private final long limitOffset;
+
+    public UnsafeMemoryAccess() throws ReflectiveOperationException {
+        Class<?> bufferClass = Class.forName("java.nio.Buffer");
+        Field address = bufferClass.getDeclaredField("address");
+        Field capacity = bufferClass.getDeclaredField("capacity");
+        Field limit = bufferClass.getDeclaredField("limit");
+
+        this.addressOffset = unsafe.objectFieldOffset(address);
+        this.capacityOffset = unsafe.objectFieldOffset(capacity);
+        this.limitOffset = unsafe.objectFieldOffset(limit);
+        this.directByteBufferClass = Class.forName("java.nio.DirectByteBuffer");
+    }
+
+    @Override
+    public ByteBuffer buffer(long address, int size) {
+        try {
+            ByteBuffer newBuffer = (ByteBuffer) unsafe.allocateInstance(directByteBufferClass);
+            unsafe.putLong(newBuffer, addressOffset, address);
+            unsafe.putInt(newBuffer, capacityOffset, size);
+            unsafe.putInt(newBuffer, limitOffset, size);
+            newBuffer.order(ByteOrder.nativeOrder());
+            return newBuffer;
+        } catch (InstantiationException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -23,5 +23,8 @@ public interface Allocator {
 
     public long allocate(long bytes);
 
-    public void deallocate(long address);
+    /**
+     * Frees memory given the size that it was allocated with, which allocators that pool memory by size need.
+     */
+    public void deallocate(long address, long bytes);
 }
@@ -0,0 +1,207 @@
+/*
+ * Copyright (c) 2014. Jordan Williams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jordanwilliams.heftydb.offheap.allocator;
+
+import com.jordanwilliams.heftydb.offheap.JVMUnsafe;
+
+import java.util.Arrays;
+
+/**
+ * An off-heap memory allocator that reserves memory in large regions aligned to 2 megabyte huge pages, and carves
+ * the slabs of a SlabAllocator out of them. With transparent huge pages enabled, the kernel can back each aligned
+ * region with huge pages, so that a large block cache needs far fewer TLB entries than it does when every slab is
+ * a separate allocation. The madvise(MADV_HUGEPAGE) hint itself can not be given without native code, so on systems
+ * where transparent huge pages are only used on request the regions get the alignment but not the huge pages.
+ * <p/>
+ * Memory is split into several arenas, each with its own regions, size class pools and thread caches. A thread
+ * allocates from the arena it is bound to, or from an arena it names, so that the threads of one NUMA node or the
+ * shards of one cache can keep their memory apart from the others. Blocks are always freed back to the arena that
+ * they were carved from.
+ */
+public class ArenaAllocator implements PoolingAllocator {
+
+    public static final int HUGE_PAGE_SHIFT = 21;
+    public static final long HUGE_PAGE_SIZE = 1L << HUGE_PAGE_SHIFT;
+    public static final long DEFAULT_REGION_SIZE = 64 * HUGE_PAGE_SIZE;
+
+    /**
+     * The regions of every arena sorted by address, which is replaced as a whole when a region is added so that
+     * frees can look up the arena of a block without locking.
+     */
+    private static class RegionTable {
+
+        private final long[] addresses;
+        private final int[] arenas;
+
+        private RegionTable(long[] addresses, int[] arenas) {
+            this.addresses = addresses;
+            this.arenas = arenas;
+        }
+    }
+
+    /**
+     * A SlabAllocator whose slabs are huge pages carved out of the regions of one arena.
+     */
+    private class Arena extends SlabAllocator {
+
+        private final int id;
+        private long nextSlab;
+        private long regionEnd;
+
+        private Arena(int id) {
+            super(HUGE_PAGE_SIZE);
+            this.id = id;
+        }
+
+        @Override
+        protected synchronized long reserveSlab(long bytes) {
+            if (nextSlab + bytes > regionEnd) {
+                long reserved = regionSize + HUGE_PAGE_SIZE - 1;
+                nextSlab = (regionAllocator.allocate(reserved) + HUGE_PAGE_SIZE - 1) & -HUGE_PAGE_SIZE;
+                regionEnd = nextSlab + regionSize;
+                addRegion(nextSlab, id);
+                reserved(reserved);
+            }
+
+            long slabAddress = nextSlab;
+            nextSlab = (nextSlab + bytes + pageSize - 1) & -pageSize;
+            return slabAddress;
+        }
+    }
+
+    private final int pageSize = JVMUnsafe.unsafe.pageSize();
+    private final UnsafeAllocator regionAllocator = new UnsafeAllocator();
+    private final long regionSize;
+    private final Arena[] arenas;
+
+    private volatile RegionTable regions = new RegionTable(new long[0], new int[0]);
+
+    public ArenaAllocator(int arenaCount) {
+        this(arenaCount, DEFAULT_REGION_SIZE);
+    }
+
+    /**
+     * @param regionSize the memory that an arena reserves at a time, which is rounded up to a multiple of the huge
+     *                   page size
+     */
+    public ArenaAllocator(int arenaCount, long regionSize) {
+        if (arenaCount < 1 || regionSize < 1) {
+            throw new IllegalArgumentException();
+        }
+
+        this.regionSize = (regionSize + HUGE_PAGE_SIZE - 1) & -HUGE_PAGE_SIZE;
+        this.arenas = new Arena[arenaCount];
+
+        for (int i = 0; i < arenas.length; i++) {
+            arenas[i] = new Arena(i);
+        }
+    }
+
+    /**
+     * Allocates from the arena that the current thread is bound to.
+     */
+    @Override
+    public long allocate(long bytes) {
+        return allocate(bytes, (int) (Thread.currentThread().getId() % arenas.length));
+    }
+
+    /**
+     * Allocates from the given arena, which callers can use to keep the memory of a NUMA node or a cache shard
+     * together.
+     */
+    public long allocate(long bytes, int arena) {
+        return arenas[arena].allocate(bytes);
+    }
+
+    @Override
+    public void deallocate(long address, long bytes) {
+        int arena = arenaOf(address);
+
+        //Allocations that are too large for a size class are not in any region, and any arena can free them
+        arenas[arena < 0 ? 0 : arena].deallocate(address, bytes);
+    }
+
+    /**
+     * Returns the arena whose regions contain the address, or -1 if no region does.
+     */
+    public int arenaOf(long address) {
+        RegionTable table = regions;
+        int index = Arrays.binarySearch(table.addresses, address);
+
+        if (index < 0) {
+            index = -index - 2;
+        }
+
+        if (index < 0 || address >= table.addresses[index] + regionSize) {
+            return -1;
+        }
+
+        return table.arenas[index];
+    }
+
+    public int arenaCount() {
+        return arenas.length;
+    }
+
+    @Override
+    public long reservedBytes() {
+        long reservedBytes = 0;
+
+        for (Arena arena : arenas) {
+            reservedBytes += arena.reservedBytes();
+        }
+
+        return reservedBytes;
+    }
+
+    @Override
+    public long pooledBytes() {
+        long pooledBytes = 0;
+
+        for (Arena arena : arenas) {
+            pooledBytes += arena.pooledBytes();
+        }
+
+        return pooledBytes;
+    }
+
+    @Override
+    public long slabBytes() {
+        long slabBytes = 0;
+
+        for (Arena arena : arenas) {
+            slabBytes += arena.slabBytes();
+        }
+
+        return slabBytes;
+    }
+
+    private synchronized void addRegion(long address, int arena) {
+        RegionTable table = regions;
+        int index = -Arrays.binarySearch(table.addresses, address) - 1;
+        long[] addresses = new long[table.addresses.length + 1];
+        int[] arenaIds = new int[addresses.length];
+
+        System.arraycopy(table.addresses, 0, addresses, 0, index);
+        System.arraycopy(table.arenas, 0, arenaIds, 0, index);
+        addresses[index] = address;
+        arenaIds[index] = arena;
+        System.arraycopy(table.addresses, index, addresses, index + 1, table.addresses.length - index);
+        System.arraycopy(table.arenas, index, arenaIds, index + 1, table.arenas.length - index);
+
+        regions = new RegionTable(addresses, arenaIds);
+    }
+}
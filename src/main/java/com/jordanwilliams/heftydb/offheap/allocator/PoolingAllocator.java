@@ -0,0 +1,37 @@
+/*
+ * Copyright (c) 2014. Jordan Williams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jordanwilliams.heftydb.offheap.allocator;
+
+/**
+ * An allocator that reserves memory from the operating system in large pieces and pools the blocks that are freed.
+ */
+public interface PoolingAllocator extends Allocator {
+
+    /**
+     * The memory reserved from the operating system, whether or not it is allocated.
+     */
+    public long reservedBytes();
+
+    /**
+     * The memory of the blocks that are free and ready to be allocated again.
+     */
+    public long pooledBytes();
+
+    /**
+     * The memory of the slabs that blocks are carved from.
+     */
+    public long slabBytes();
+}
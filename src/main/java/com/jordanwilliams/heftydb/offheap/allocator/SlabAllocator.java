@@ -0,0 +1,315 @@
+/*
+ * Copyright (c) 2014. Jordan Williams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jordanwilliams.heftydb.offheap.allocator;
+
+import com.jordanwilliams.heftydb.offheap.JVMUnsafe;
+import sun.misc.Unsafe;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * An off-heap memory allocator that rounds each allocation up to a size class and carves it out of a larger slab,
+ * so that freed blocks are reused without a call to malloc. Each thread keeps a small cache of free blocks of every
+ * size class, which it refills from and spills to a global pool of that class in batches. Slabs are never returned
+ * to the operating system.
+ * <p/>
+ * There are four size classes between each power of two from 64 bytes up to 256 kilobytes, so blocks whose size is
+ * a power of two fit exactly and other blocks waste at most a fifth of their memory. Slabs are page aligned, so the
+ * blocks of every size class that is a multiple of the page size are as well. Larger allocations go straight to an
+ * UnsafeAllocator.
+ * <p/>
+ * Each slab is allocated on its own by default. Subclasses can carve slabs out of larger regions of memory instead,
+ * see ArenaAllocator.
+ */
+public class SlabAllocator implements PoolingAllocator {
+
+    /**
+     * The free blocks of one size class that are not cached by any thread.
+     */
+    private static class Pool {
+
+        private long[] blocks = new long[64];
+        private int count;
+
+        private synchronized void push(long[] source, int offset, int length) {
+            while (count + length > blocks.length) {
+                long[] grown = new long[blocks.length * 2];
+                System.arraycopy(blocks, 0, grown, 0, count);
+                blocks = grown;
+            }
+
+            System.arraycopy(source, offset, blocks, count, length);
+            count += length;
+        }
+
+        private synchronized int pop(long[] target, int length) {
+            int popped = Math.min(count, length);
+            count -= popped;
+            System.arraycopy(blocks, count, target, 0, popped);
+            return popped;
+        }
+    }
+
+    private static class LocalCache {
+
+        private final WeakReference<Thread> owner = new WeakReference<Thread>(Thread.currentThread());
+        private final long[][] blocks = new long[CLASS_COUNT][];
+        private final int[] counts = new int[CLASS_COUNT];
+
+        private long[] blocks(int sizeClass) {
+            long[] classBlocks = blocks[sizeClass];
+
+            if (classBlocks == null) {
+                classBlocks = new long[localCapacity(sizeClass)];
+                blocks[sizeClass] = classBlocks;
+            }
+
+            return classBlocks;
+        }
+
+        private boolean isOrphaned() {
+            Thread thread = owner.get();
+            return thread == null || !thread.isAlive();
+        }
+    }
+
+    private static final Unsafe unsafe = JVMUnsafe.unsafe;
+
+    private static final int MIN_CLASS_SHIFT = 6;
+    private static final int MAX_CLASS_SHIFT = 18;
+    private static final int CLASSES_PER_POWER = 4;
+    private static final int CLASS_COUNT = 1 + (MAX_CLASS_SHIFT - MIN_CLASS_SHIFT) * CLASSES_PER_POWER;
+    private static final long MAX_CLASS_SIZE = 1L << MAX_CLASS_SHIFT;
+    private static final long[] CLASS_SIZES = new long[CLASS_COUNT];
+
+    private static final int SLAB_SIZE = 1 << 20;
+    private static final int LOCAL_CACHE_SIZE = 1 << 17;
+    private static final int MAX_LOCAL_BLOCKS = 64;
+    private static final int MIN_LOCAL_BLOCKS = 2;
+
+    static {
+        CLASS_SIZES[0] = 1L << MIN_CLASS_SHIFT;
+
+        for (int sizeClass = 1; sizeClass < CLASS_COUNT; sizeClass++) {
+            int power = MIN_CLASS_SHIFT + (sizeClass - 1) / CLASSES_PER_POWER;
+            int step = (sizeClass - 1) % CLASSES_PER_POWER + 1;
+            CLASS_SIZES[sizeClass] = (1L << power) + step * (1L << (power - 2));
+        }
+    }
+
+    private final UnsafeAllocator largeAllocator = new UnsafeAllocator();
+    private final long slabSize;
+    private final Pool[] pools = new Pool[CLASS_COUNT];
+    private final List<LocalCache> localCaches = new ArrayList<LocalCache>();
+    private final AtomicLong reservedBytes = new AtomicLong();
+    private final AtomicLong slabBytes = new AtomicLong();
+    private final LongAdder pooledBlockBytes = new LongAdder();
+    private final ThreadLocal<LocalCache> localCache = new ThreadLocal<LocalCache>() {
+        @Override
+        protected LocalCache initialValue() {
+            LocalCache cache = new LocalCache();
+
+            synchronized (localCaches) {
+                localCaches.add(cache);
+            }
+
+            return cache;
+        }
+    };
+
+    public SlabAllocator() {
+        this(SLAB_SIZE);
+    }
+
+    /**
+     * Creates an allocator that carves each size class out of slabs of about slabSize bytes.
+     */
+    protected SlabAllocator(long slabSize) {
+        this.slabSize = slabSize;
+
+        for (int i = 0; i < pools.length; i++) {
+            pools[i] = new Pool();
+        }
+    }
+
+    @Override
+    public long allocate(long bytes) {
+        if (bytes > MAX_CLASS_SIZE) {
+            reservedBytes.addAndGet(bytes);
+            return largeAllocator.allocate(bytes);
+        }
+
+        int sizeClass = sizeClass(bytes);
+        LocalCache cache = localCache.get();
+        long[] blocks = cache.blocks(sizeClass);
+
+        if (cache.counts[sizeClass] == 0) {
+            cache.counts[sizeClass] = refill(sizeClass, blocks);
+        }
+
+        pooledBlockBytes.add(-CLASS_SIZES[sizeClass]);
+        return blocks[--cache.counts[sizeClass]];
+    }
+
+    @Override
+    public void deallocate(long address, long bytes) {
+        if (bytes > MAX_CLASS_SIZE) {
+            largeAllocator.deallocate(address);
+            reservedBytes.addAndGet(-bytes);
+            return;
+        }
+
+        int sizeClass = sizeClass(bytes);
+        LocalCache cache = localCache.get();
+        long[] blocks = cache.blocks(sizeClass);
+
+        //Hand half of a full cache to the pool, so that a thread that only frees does not go to the pool every time
+        if (cache.counts[sizeClass] == blocks.length) {
+            int spilled = blocks.length / 2;
+            cache.counts[sizeClass] -= spilled;
+            pools[sizeClass].push(blocks, cache.counts[sizeClass], spilled);
+        }
+
+        blocks[cache.counts[sizeClass]++] = address;
+        pooledBlockBytes.add(CLASS_SIZES[sizeClass]);
+    }
+
+    /**
+     * The memory held by slabs and by allocations that are too large for a size class.
+     */
+    @Override
+    public long reservedBytes() {
+        return reservedBytes.get();
+    }
+
+    /**
+     * The memory of the slab blocks that are free, whether they are cached by a thread or in a global pool.
+     */
+    @Override
+    public long pooledBytes() {
+        return pooledBlockBytes.sum();
+    }
+
+    @Override
+    public long slabBytes() {
+        return slabBytes.get();
+    }
+
+    /**
+     * Returns the size of the block that an allocation of the given size is rounded up to.
+     */
+    public static long blockSize(long bytes) {
+        return bytes > MAX_CLASS_SIZE ? bytes : CLASS_SIZES[sizeClass(bytes)];
+    }
+
+    private int refill(int sizeClass, long[] blocks) {
+        int batch = Math.max(blocks.length / 2, 1);
+        int refilled = pools[sizeClass].pop(blocks, batch);
+
+        if (refilled > 0) {
+            return refilled;
+        }
+
+        synchronized (localCaches) {
+            reclaimOrphanedCaches();
+            refilled = pools[sizeClass].pop(blocks, batch);
+
+            if (refilled > 0) {
+                return refilled;
+            }
+
+            allocateSlab(sizeClass);
+            return pools[sizeClass].pop(blocks, batch);
+        }
+    }
+
+    /**
+     * Returns the page aligned address of a new slab of the given size, and counts the memory that it reserves.
+     */
+    protected long reserveSlab(long bytes) {
+        int pageSize = unsafe.pageSize();
+        long reserved = bytes + pageSize - 1;
+        long slabAddress = largeAllocator.allocate(reserved);
+        reserved(reserved);
+        return (slabAddress + pageSize - 1) & -pageSize;
+    }
+
+    protected void reserved(long bytes) {
+        reservedBytes.addAndGet(bytes);
+    }
+
+    private void allocateSlab(int sizeClass) {
+        long blockSize = CLASS_SIZES[sizeClass];
+        int blockCount = (int) Math.max(slabSize / blockSize, 1);
+        long blockAddress = reserveSlab(blockCount * blockSize);
+        long[] blocks = new long[blockCount];
+
+        for (int i = 0; i < blockCount; i++) {
+            blocks[i] = blockAddress + i * blockSize;
+        }
+
+        pools[sizeClass].push(blocks, 0, blockCount);
+        slabBytes.addAndGet(blockCount * blockSize);
+        pooledBlockBytes.add(blockCount * blockSize);
+    }
+
+    /**
+     * Moves the blocks cached by threads that have died back to the pools.
+     */
+    private void reclaimOrphanedCaches() {
+        Iterator<LocalCache> caches = localCaches.iterator();
+
+        while (caches.hasNext()) {
+            LocalCache cache = caches.next();
+
+            if (!cache.isOrphaned()) {
+                continue;
+            }
+
+            for (int sizeClass = 0; sizeClass < CLASS_COUNT; sizeClass++) {
+                if (cache.counts[sizeClass] > 0) {
+                    pools[sizeClass].push(cache.blocks[sizeClass], 0, cache.counts[sizeClass]);
+                    cache.counts[sizeClass] = 0;
+                }
+            }
+
+            caches.remove();
+        }
+    }
+
+    private static int localCapacity(int sizeClass) {
+        return (int) Math.max(Math.min(LOCAL_CACHE_SIZE / CLASS_SIZES[sizeClass], MAX_LOCAL_BLOCKS),
+                MIN_LOCAL_BLOCKS);
+    }
+
+    private static int sizeClass(long bytes) {
+        if (bytes <= CLASS_SIZES[0]) {
+            return 0;
+        }
+
+        //The largest power of two below bytes, which is followed by four classes spaced a quarter of it apart
+        int power = 63 - Long.numberOfLeadingZeros(bytes - 1);
+        int stepShift = power - 2;
+        int step = (int) ((bytes - (1L << power) + (1L << stepShift) - 1) >>> stepShift);
+        return 1 + (power - MIN_CLASS_SHIFT) * CLASSES_PER_POWER + step - 1;
+    }
+}
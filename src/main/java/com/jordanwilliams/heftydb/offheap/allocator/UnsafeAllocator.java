@@ -32,8 +32,15 @@ public class UnsafeAllocator implements Allocator {
         return unsafe.allocateMemory(size);
     }
 
-    @Override
+    /**
+     * Frees memory without its size, which malloc does not need.
+     */
     public void deallocate(long address) {
         unsafe.freeMemory(address);
     }
+
+    @Override
+    public void deallocate(long address, long bytes) {
+        deallocate(address);
+    }
 }
@@ -16,18 +16,27 @@
 
 package com.jordanwilliams.heftydb.read;
 
+import com.jordanwilliams.heftydb.data.KeyComparator;
+import com.jordanwilliams.heftydb.data.KeyComparators;
+import com.jordanwilliams.heftydb.data.RangeTombstone;
 import com.jordanwilliams.heftydb.data.Tuple;
 import com.jordanwilliams.heftydb.util.CloseableIterator;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Queue;
 import java.util.SortedSet;
 import java.util.TreeSet;
 
 /**
  * An Iterator that filters a sorted stream of Tuples, and filters out all key versions older than a minimum snapshot
- * id, or passes along a key if there is only one version of it
+ * id, or passes along a key if there is only one version of it. Key versions deleted by a RangeTombstone that every
+ * retained snapshot can see are dropped entirely.
  */
 public class CompactionTupleIterator implements CloseableIterator<Tuple> {
 
@@ -35,20 +44,32 @@ public class CompactionTupleIterator implements CloseableIterator<Tuple> {
     private final Queue<Tuple> nextTuples = new LinkedList<Tuple>();
     private final SortedSet<Tuple> currentKeyTuples = new TreeSet<Tuple>();
     private final long minSnapshotId;
+    private final List<RangeTombstone> rangeTombstones = new ArrayList<RangeTombstone>();
+    private final KeyComparator keyComparator;
 
-    public CompactionTupleIterator(long minSnapshotId, CloseableIterator<Tuple> tupleIterator) {
+    public CompactionTupleIterator(long minSnapshotId, Collection<RangeTombstone> rangeTombstones,
+                                   KeyComparator keyComparator, CloseableIterator<Tuple> tupleIterator) {
         this.minSnapshotId = minSnapshotId;
+        this.keyComparator = keyComparator;
         this.tupleIterator = tupleIterator;
+
+        for (RangeTombstone rangeTombstone : rangeTombstones) {
+            if (rangeTombstone.snapshotId() <= minSnapshotId) {
+                this.rangeTombstones.add(rangeTombstone);
+            }
+        }
+    }
+
+    public CompactionTupleIterator(long minSnapshotId, CloseableIterator<Tuple> tupleIterator) {
+        this(minSnapshotId, Collections.<RangeTombstone>emptyList(), KeyComparators.BYTEWISE, tupleIterator);
     }
 
     @Override
     public boolean hasNext() {
-        if (!nextTuples.isEmpty()) {
-            return true;
-        }
-
-        if (!fetchNextTuples()){
-            return false;
+        while (nextTuples.isEmpty()) {
+            if (!fetchNextTuples()) {
+                return false;
+            }
         }
 
         return true;
@@ -102,6 +123,14 @@ public class CompactionTupleIterator implements CloseableIterator<Tuple> {
     }
 
     private void filterCurrentKeyTuples(){
+        if (!rangeTombstones.isEmpty()) {
+            removeDeletedTuples();
+
+            if (currentKeyTuples.isEmpty()) {
+                return;
+            }
+        }
+
         int count = 0;
 
         for (Tuple tuple : currentKeyTuples){
@@ -115,4 +144,19 @@ public class CompactionTupleIterator implements CloseableIterator<Tuple> {
             nextTuples.add(currentKeyTuples.last());
         }
     }
+
+    private void removeDeletedTuples() {
+        Iterator<Tuple> tupleIterator = currentKeyTuples.iterator();
+
+        while (tupleIterator.hasNext()) {
+            Tuple tuple = tupleIterator.next();
+
+            for (RangeTombstone rangeTombstone : rangeTombstones) {
+                if (rangeTombstone.covers(tuple.key(), keyComparator)) {
+                    tupleIterator.remove();
+                    break;
+                }
+            }
+        }
+    }
 }
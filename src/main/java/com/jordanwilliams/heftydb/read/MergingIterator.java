@@ -21,7 +21,7 @@ import com.jordanwilliams.heftydb.util.PeekableIterator;
 
 import java.io.IOException;
 import java.util.Arrays;
-import java.util.Collections;
+import java.util.Comparator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.NoSuchElementException;
@@ -34,8 +34,7 @@ import java.util.Queue;
  */
 public class MergingIterator<T extends Comparable> implements CloseableIterator<T> {
 
-    private static class ComparableIterator<T extends Comparable> implements PeekableIterator<T>,
-            Comparable<ComparableIterator<T>> {
+    private static class ComparableIterator<T extends Comparable> implements PeekableIterator<T> {
 
         private final CloseableIterator<T> delegate;
         private T current;
@@ -66,10 +65,24 @@ public class MergingIterator<T extends Comparable> implements CloseableIterator<
         public void close() throws IOException {
             delegate.close();
         }
+    }
+
+    private static class IteratorComparator<T extends Comparable> implements Comparator<ComparableIterator<T>> {
+
+        private final Comparator<? super T> comparator;
+        private final boolean descending;
+
+        private IteratorComparator(Comparator<? super T> comparator, boolean descending) {
+            this.comparator = comparator;
+            this.descending = descending;
+        }
 
         @Override
-        public int compareTo(ComparableIterator<T> other) {
-            return current.compareTo(other.current);
+        @SuppressWarnings("unchecked")
+        public int compare(ComparableIterator<T> iterator1, ComparableIterator<T> iterator2) {
+            int compared = comparator == null ? iterator1.current.compareTo(iterator2.current) : comparator.compare
+                    (iterator1.current, iterator2.current);
+            return descending ? -compared : compared;
         }
     }
 
@@ -77,8 +90,7 @@ public class MergingIterator<T extends Comparable> implements CloseableIterator<
     private final PriorityQueue<ComparableIterator<T>> iteratorHeap;
 
     public MergingIterator(List<CloseableIterator<T>> iterators) {
-        this.iteratorHeap = new PriorityQueue<ComparableIterator<T>>();
-        buildIteratorHeap(iterators);
+        this(false, iterators);
     }
 
     public MergingIterator(CloseableIterator<T>... iterators) {
@@ -90,8 +102,15 @@ public class MergingIterator<T extends Comparable> implements CloseableIterator<
     }
 
     public MergingIterator(boolean descending, List<CloseableIterator<T>> iterators) {
-        this.iteratorHeap = descending ? new PriorityQueue<ComparableIterator<T>>(iterators.size(),
-                Collections.reverseOrder()) : new PriorityQueue<ComparableIterator<T>>();
+        this(null, descending, iterators);
+    }
+
+    /**
+     * Merges Iterators that are sorted by the provided Comparator rather than by the natural order of their elements.
+     */
+    public MergingIterator(Comparator<? super T> comparator, boolean descending, List<CloseableIterator<T>> iterators) {
+        this.iteratorHeap = new PriorityQueue<ComparableIterator<T>>(Math.max(iterators.size(), 1),
+                new IteratorComparator<T>(comparator, descending));
         buildIteratorHeap(iterators);
     }
 
@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2014. Jordan Williams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jordanwilliams.heftydb.read;
+
+import com.jordanwilliams.heftydb.data.KeyComparator;
+import com.jordanwilliams.heftydb.data.RangeTombstone;
+import com.jordanwilliams.heftydb.data.Tuple;
+import com.jordanwilliams.heftydb.util.CloseableIterator;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * An Iterator that filters out every Tuple in a stream of latest Tuples that has been deleted by one of the provided
+ * RangeTombstones.
+ */
+public class RangeTombstoneIterator implements CloseableIterator<Tuple> {
+
+    private final CloseableIterator<Tuple> tupleIterator;
+    private final List<RangeTombstone> rangeTombstones;
+    private final KeyComparator keyComparator;
+    private Tuple nextTuple;
+
+    public RangeTombstoneIterator(List<RangeTombstone> rangeTombstones, KeyComparator keyComparator,
+                                  CloseableIterator<Tuple> tupleIterator) {
+        this.rangeTombstones = rangeTombstones;
+        this.keyComparator = keyComparator;
+        this.tupleIterator = tupleIterator;
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (nextTuple == null && tupleIterator.hasNext()) {
+            Tuple tuple = tupleIterator.next();
+
+            if (!isDeleted(tuple)) {
+                nextTuple = tuple;
+            }
+        }
+
+        return nextTuple != null;
+    }
+
+    @Override
+    public Tuple next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+
+        Tuple tuple = nextTuple;
+        nextTuple = null;
+        return tuple;
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void close() throws IOException {
+        tupleIterator.close();
+    }
+
+    private boolean isDeleted(Tuple tuple) {
+        for (RangeTombstone rangeTombstone : rangeTombstones) {
+            if (rangeTombstone.covers(tuple.key(), keyComparator)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+}
@@ -42,10 +42,12 @@ public class TableAggregationIterator implements CloseableIterator<Tuple> {
     private final Tables.ChangeHandler tableChangeHandler;
 
     private Key lastKey;
+    private boolean returnedTuple;
     private CloseableIterator<Tuple> delegate;
 
-    public TableAggregationIterator(CloseableIterator<Tuple> initialSource, long snapshotId, Tables tables,
-                                    Source source) {
+    public TableAggregationIterator(CloseableIterator<Tuple> initialSource, Key startKey, long snapshotId,
+                                    Tables tables, Source source) {
+        this.lastKey = startKey;
         this.snapshotId = snapshotId;
         this.source = source;
         this.tables = tables;
@@ -60,6 +62,11 @@ public class TableAggregationIterator implements CloseableIterator<Tuple> {
         tables.addChangeHandler(tableChangeHandler);
     }
 
+    public TableAggregationIterator(CloseableIterator<Tuple> initialSource, long snapshotId, Tables tables,
+                                    Source source) {
+        this(initialSource, null, snapshotId, tables, source);
+    }
+
     @Override
     public boolean hasNext() {
         tables.readLock();
@@ -94,6 +101,7 @@ public class TableAggregationIterator implements CloseableIterator<Tuple> {
 
             Tuple next = delegate.next();
             this.lastKey = next.key();
+            this.returnedTuple = true;
             return next;
         } finally {
             tables.readUnlock();
@@ -117,8 +125,8 @@ public class TableAggregationIterator implements CloseableIterator<Tuple> {
                 delegate.close();
                 this.delegate = source.refresh(lastKey, snapshotId);
 
-                //Advance past the previously seen key
-                if (delegate.hasNext()) {
+                //Advance past the previously seen key, if any
+                if (returnedTuple && delegate.hasNext()) {
                     delegate.next();
                 }
 
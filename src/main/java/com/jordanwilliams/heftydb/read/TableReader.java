@@ -17,16 +17,22 @@
 package com.jordanwilliams.heftydb.read;
 
 import com.codahale.metrics.Histogram;
+import com.jordanwilliams.heftydb.cache.RowCache;
 import com.jordanwilliams.heftydb.data.Key;
+import com.jordanwilliams.heftydb.data.KeyComparator;
+import com.jordanwilliams.heftydb.data.RangeTombstone;
 import com.jordanwilliams.heftydb.data.Tuple;
+import com.jordanwilliams.heftydb.db.ReadOptions;
 import com.jordanwilliams.heftydb.metrics.CacheHitGauge;
 import com.jordanwilliams.heftydb.metrics.Metrics;
+import com.jordanwilliams.heftydb.state.RangeTombstones;
 import com.jordanwilliams.heftydb.state.Tables;
 import com.jordanwilliams.heftydb.table.Table;
 import com.jordanwilliams.heftydb.util.CloseableIterator;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
 
@@ -35,63 +41,52 @@ import java.util.List;
  */
 public class TableReader implements Iterable<Tuple> {
 
-    private final TableAggregationIterator.Source ascendingIteratorSource = new TableAggregationIterator.Source() {
-        @Override
-        public CloseableIterator<Tuple> refresh(Key key, long snapshotId) {
-            tables.readLock();
-
-            try {
-                List<CloseableIterator<Tuple>> tableIterators = new ArrayList<CloseableIterator<Tuple>>();
-
-                for (Table table : tables) {
-                    tableIterators.add(key == null ? table.ascendingIterator(snapshotId) : table.ascendingIterator(key,
-                            snapshotId));
-                }
-
-                return new LatestTupleIterator(snapshotId, new MergingIterator<Tuple>(tableIterators));
-            } finally {
-                tables.readUnlock();
-            }
-        }
-    };
-
-    private final TableAggregationIterator.Source descendingIteratorSource = new TableAggregationIterator.Source() {
-        @Override
-        public CloseableIterator<Tuple> refresh(Key key, long snapshotId) {
-            tables.readLock();
-
-            try {
-                List<CloseableIterator<Tuple>> tableIterators = new ArrayList<CloseableIterator<Tuple>>();
-
-                for (Table table : tables) {
-                    tableIterators.add(key == null ? table.descendingIterator(snapshotId) : table.descendingIterator(key,
-                            snapshotId));
-                }
-
-                return new LatestTupleIterator(snapshotId, new MergingIterator<Tuple>(true, tableIterators));
-            } finally {
-                tables.readUnlock();
-            }
-        }
-    };
-
     private final Tables tables;
+    private final RangeTombstones rangeTombstones;
+    private final RowCache rowCache;
+    private final KeyComparator keyComparator;
+    private final Comparator<Tuple> tupleComparator;
     private final Metrics metrics;
 
     private final CacheHitGauge bloomFilterFalsePositiveRate;
     private final Histogram tablesConsultedHistogram;
     private final CacheHitGauge recordNotFoundRate;
+    private final CacheHitGauge rowCacheHitRate;
 
-    public TableReader(Tables tables, Metrics metrics) {
+    public TableReader(Tables tables, RangeTombstones rangeTombstones, RowCache rowCache, KeyComparator keyComparator,
+                       Metrics metrics) {
         this.tables = tables;
+        this.rangeTombstones = rangeTombstones;
+        this.rowCache = rowCache;
+        this.keyComparator = keyComparator;
+        this.tupleComparator = Tuple.comparator(keyComparator);
         this.metrics = metrics;
 
         this.bloomFilterFalsePositiveRate = metrics.hitGauge("read.bloomFilterFalsePositiveRate");
         this.tablesConsultedHistogram = metrics.histogram("read.tablesConsulted");
         this.recordNotFoundRate = metrics.hitGauge("read.recordNotFoundRate");
+        this.rowCacheHitRate = metrics.hitGauge("read.rowCacheHitRate");
+    }
+
+    public TableReader(Tables tables, RangeTombstones rangeTombstones, KeyComparator keyComparator, Metrics metrics) {
+        this(tables, rangeTombstones, new RowCache(0), keyComparator, metrics);
     }
 
     public Tuple get(Key key) {
+        long rowCacheVersion = 0;
+
+        if (rowCache.isEnabled()) {
+            Tuple cachedTuple = rowCache.get(key);
+            rowCacheHitRate.sample(cachedTuple != null);
+
+            if (cachedTuple != null) {
+                recordNotFoundRate.sample(false);
+                return cachedTuple;
+            }
+
+            rowCacheVersion = rowCache.version(key);
+        }
+
         Tuple closestTuple = null;
 
         tables.readLock();
@@ -117,98 +112,117 @@ public class TableReader implements Iterable<Tuple> {
             tables.readUnlock();
         }
 
+        if (closestTuple != null && !rangeTombstones.isEmpty() && rangeTombstones.isDeleted(closestTuple.key(),
+                key.snapshotId(), keyComparator)) {
+            closestTuple = null;
+        }
+
         tablesConsultedHistogram.update(tablesConsulted);
         recordNotFoundRate.sample(closestTuple == null);
 
+        if (closestTuple != null && rowCache.isEnabled()) {
+            rowCache.put(key, closestTuple, rowCacheVersion);
+        }
+
         return closestTuple;
     }
 
     public CloseableIterator<Tuple> ascendingIterator(long snapshotId) {
-        tables.readLock();
-
-        try {
-            List<CloseableIterator<Tuple>> tableIterators = new ArrayList<CloseableIterator<Tuple>>();
-
-            for (Table table : tables) {
-                tableIterators.add(table.ascendingIterator(snapshotId));
-            }
+        return ascendingIterator(snapshotId, ReadOptions.DEFAULT);
+    }
 
-            TableAggregationIterator tableAggregationIterator = new TableAggregationIterator(new MergingIterator<Tuple>
-                    (tableIterators), snapshotId, tables, ascendingIteratorSource);
+    public CloseableIterator<Tuple> descendingIterator(long snapshotId) {
+        return descendingIterator(snapshotId, ReadOptions.DEFAULT);
+    }
 
-            return new LatestTupleIterator(snapshotId, tableAggregationIterator);
-        } finally {
-            tables.readUnlock();
-        }
+    public CloseableIterator<Tuple> ascendingIterator(Key key, long snapshotId) {
+        return ascendingIterator(key, snapshotId, ReadOptions.DEFAULT);
     }
 
-    public CloseableIterator<Tuple> descendingIterator(long snapshotId) {
-        tables.readLock();
+    public CloseableIterator<Tuple> descendingIterator(Key key, long snapshotId) {
+        return descendingIterator(key, snapshotId, ReadOptions.DEFAULT);
+    }
 
-        try {
-            List<CloseableIterator<Tuple>> tableIterators = new ArrayList<CloseableIterator<Tuple>>();
+    public CloseableIterator<Tuple> ascendingIterator(long snapshotId, ReadOptions options) {
+        return iterator(null, snapshotId, false, options);
+    }
 
-            for (Table table : tables) {
-                tableIterators.add(table.descendingIterator(snapshotId));
-            }
+    public CloseableIterator<Tuple> descendingIterator(long snapshotId, ReadOptions options) {
+        return iterator(null, snapshotId, true, options);
+    }
 
-            TableAggregationIterator tableAggregationIterator = new TableAggregationIterator(new MergingIterator<Tuple>
-                    (true, tableIterators), snapshotId, tables, descendingIteratorSource);
+    public CloseableIterator<Tuple> ascendingIterator(Key key, long snapshotId, ReadOptions options) {
+        return iterator(key, snapshotId, false, options);
+    }
 
-            return new LatestTupleIterator(snapshotId, tableAggregationIterator);
-        } finally {
-            tables.readUnlock();
-        }
+    public CloseableIterator<Tuple> descendingIterator(Key key, long snapshotId, ReadOptions options) {
+        return iterator(key, snapshotId, true, options);
     }
 
-    public CloseableIterator<Tuple> ascendingIterator(Key key, long snapshotId) {
+    public synchronized void close() throws IOException {
         tables.readLock();
 
         try {
-            List<CloseableIterator<Tuple>> tableIterators = new ArrayList<CloseableIterator<Tuple>>();
-
             for (Table table : tables) {
-                tableIterators.add(table.ascendingIterator(key, snapshotId));
+                table.close();
             }
-
-            TableAggregationIterator tableAggregationIterator = new TableAggregationIterator(new MergingIterator<Tuple>
-                    (tableIterators), snapshotId, tables, ascendingIteratorSource);
-
-            return new LatestTupleIterator(snapshotId, tableAggregationIterator);
         } finally {
             tables.readUnlock();
         }
+
+        //A flush holds the Manifest while it waits to swap its table in, so the Manifest is closed without the lock
+        tables.close();
     }
 
-    public CloseableIterator<Tuple> descendingIterator(Key key, long snapshotId) {
+    private CloseableIterator<Tuple> iterator(Key key, long snapshotId, boolean descending, ReadOptions options) {
         tables.readLock();
 
         try {
-            List<CloseableIterator<Tuple>> tableIterators = new ArrayList<CloseableIterator<Tuple>>();
-
-            for (Table table : tables) {
-                tableIterators.add(table.descendingIterator(key, snapshotId));
-            }
-
-            TableAggregationIterator tableAggregationIterator = new TableAggregationIterator(new MergingIterator<Tuple>
-                    (true, tableIterators), snapshotId, tables, descendingIteratorSource);
+            TableAggregationIterator tableAggregationIterator = new TableAggregationIterator(tableIterators(key,
+                    snapshotId, descending, options), key, snapshotId, tables, iteratorSource(descending, options));
 
-            return new LatestTupleIterator(snapshotId, tableAggregationIterator);
+            return filterDeleted(snapshotId, new LatestTupleIterator(snapshotId, tableAggregationIterator));
         } finally {
             tables.readUnlock();
         }
     }
 
-    public synchronized void close() throws IOException {
-        tables.readLock();
+    private TableAggregationIterator.Source iteratorSource(final boolean descending, final ReadOptions options) {
+        return new TableAggregationIterator.Source() {
+            @Override
+            public CloseableIterator<Tuple> refresh(Key key, long snapshotId) {
+                tables.readLock();
 
-        try {
-            for (Table table : tables) {
-                table.close();
+                try {
+                    return new LatestTupleIterator(snapshotId, tableIterators(key, snapshotId, descending, options));
+                } finally {
+                    tables.readUnlock();
+                }
+            }
+        };
+    }
+
+    private MergingIterator<Tuple> tableIterators(Key key, long snapshotId, boolean descending,
+                                                  ReadOptions options) {
+        List<CloseableIterator<Tuple>> tableIterators = new ArrayList<CloseableIterator<Tuple>>();
+
+        for (Table table : tables) {
+            if (descending) {
+                tableIterators.add(key == null ? table.descendingIterator(snapshotId, options) : table
+                        .descendingIterator(key, snapshotId, options));
+            } else {
+                tableIterators.add(key == null ? table.ascendingIterator(snapshotId, options) : table
+                        .ascendingIterator(key, snapshotId, options));
             }
-        } finally {
-            tables.readUnlock();
         }
+
+        return new MergingIterator<Tuple>(tupleComparator, descending, tableIterators);
+    }
+
+    private CloseableIterator<Tuple> filterDeleted(long snapshotId, CloseableIterator<Tuple> tupleIterator) {
+        List<RangeTombstone> visibleTombstones = rangeTombstones.visible(snapshotId);
+        return visibleTombstones.isEmpty() ? tupleIterator : new RangeTombstoneIterator(visibleTombstones,
+                keyComparator, tupleIterator);
     }
 
     @Override
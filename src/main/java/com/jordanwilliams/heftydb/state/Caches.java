@@ -16,20 +16,27 @@
 
 package com.jordanwilliams.heftydb.state;
 
+import com.jordanwilliams.heftydb.cache.RowCache;
 import com.jordanwilliams.heftydb.index.IndexBlock;
 import com.jordanwilliams.heftydb.table.file.TupleBlock;
 
 /**
- * Encapsulates the BlockCaches used in a database.
+ * Encapsulates the BlockCaches and the RowCache used in a database.
  */
 public class Caches {
 
     private final TupleBlock.Cache recordBlockCache;
     private final IndexBlock.Cache indexBlockCache;
+    private final RowCache rowCache;
 
-    public Caches(TupleBlock.Cache recordBlockCache, IndexBlock.Cache indexBlockCache) {
+    public Caches(TupleBlock.Cache recordBlockCache, IndexBlock.Cache indexBlockCache, RowCache rowCache) {
         this.recordBlockCache = recordBlockCache;
         this.indexBlockCache = indexBlockCache;
+        this.rowCache = rowCache;
+    }
+
+    public Caches(TupleBlock.Cache recordBlockCache, IndexBlock.Cache indexBlockCache) {
+        this(recordBlockCache, indexBlockCache, new RowCache(0));
     }
 
     public TupleBlock.Cache recordBlockCache() {
@@ -39,4 +46,8 @@ public class Caches {
     public IndexBlock.Cache indexBlockCache() {
         return indexBlockCache;
     }
+
+    public RowCache rowCache() {
+        return rowCache;
+    }
 }
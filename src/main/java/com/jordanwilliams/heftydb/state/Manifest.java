@@ -0,0 +1,411 @@
+/*
+ * Copyright (c) 2014. Jordan Williams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jordanwilliams.heftydb.state;
+
+import com.jordanwilliams.heftydb.io.ImmutableChannelFile;
+import com.jordanwilliams.heftydb.io.ImmutableFile;
+import com.jordanwilliams.heftydb.table.Table;
+import com.jordanwilliams.heftydb.util.Sizes;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only log of edits to the set of persistent tables in a database. Each edit atomically adds and removes
+ * any number of tables, and is written as a single checksummed record so that an edit torn by a crash is ignored.
+ * Replaying the log yields the level, key range and size of every live table without opening any table files, along
+ * with the ids of tables whose files are no longer needed. The file starts with the id of the KeyComparator that
+ * orders every table in the database.
+ */
+public class Manifest {
+
+    /**
+     * Describes a single persistent table.
+     */
+    public static class Entry {
+
+        private final long tableId;
+        private final int level;
+        private final long tupleCount;
+        private final long size;
+        private final long maxSnapshotId;
+        private final ByteBuffer minKey;
+        private final ByteBuffer maxKey;
+
+        public Entry(long tableId, int level, long tupleCount, long size, long maxSnapshotId, ByteBuffer minKey,
+                     ByteBuffer maxKey) {
+            this.tableId = tableId;
+            this.level = level;
+            this.tupleCount = tupleCount;
+            this.size = size;
+            this.maxSnapshotId = maxSnapshotId;
+            this.minKey = minKey;
+            this.maxKey = maxKey;
+        }
+
+        public Entry(Table table) {
+            this(table.id(), table.level(), table.tupleCount(), table.size(), table.maxSnapshotId(), table.minKey(),
+                    table.maxKey());
+        }
+
+        public long tableId() {
+            return tableId;
+        }
+
+        public int level() {
+            return level;
+        }
+
+        public long tupleCount() {
+            return tupleCount;
+        }
+
+        public long size() {
+            return size;
+        }
+
+        public long maxSnapshotId() {
+            return maxSnapshotId;
+        }
+
+        public ByteBuffer minKey() {
+            return minKey;
+        }
+
+        public ByteBuffer maxKey() {
+            return maxKey;
+        }
+
+        private int serializedSize() {
+            return Sizes.LONG_SIZE + Sizes.INT_SIZE + Sizes.LONG_SIZE * 3 + keySize(minKey) + keySize(maxKey);
+        }
+
+        private void serialize(ByteBuffer buffer) {
+            buffer.putLong(tableId);
+            buffer.putInt(level);
+            buffer.putLong(tupleCount);
+            buffer.putLong(size);
+            buffer.putLong(maxSnapshotId);
+            putKey(minKey, buffer);
+            putKey(maxKey, buffer);
+        }
+
+        private static Entry deserialize(ByteBuffer buffer) {
+            long tableId = buffer.getLong();
+            int level = buffer.getInt();
+            long tupleCount = buffer.getLong();
+            long size = buffer.getLong();
+            long maxSnapshotId = buffer.getLong();
+            ByteBuffer minKey = getKey(buffer);
+            ByteBuffer maxKey = getKey(buffer);
+            return new Entry(tableId, level, tupleCount, size, maxSnapshotId, minKey, maxKey);
+        }
+
+        private static int keySize(ByteBuffer key) {
+            return Sizes.INT_SIZE + (key == null ? 0 : key.capacity());
+        }
+
+        private static void putKey(ByteBuffer key, ByteBuffer buffer) {
+            if (key == null) {
+                buffer.putInt(-1);
+                return;
+            }
+
+            buffer.putInt(key.capacity());
+            buffer.put(key.duplicate());
+        }
+
+        private static ByteBuffer getKey(ByteBuffer buffer) {
+            int keySize = buffer.getInt();
+
+            if (keySize < 0) {
+                return null;
+            }
+
+            ByteBuffer key = ByteBuffer.allocate(keySize);
+            buffer.get(key.array());
+            return key;
+        }
+
+        @Override
+        public String toString() {
+            return "Entry{" +
+                    "tableId=" + tableId +
+                    ", level=" + level +
+                    ", tupleCount=" + tupleCount +
+                    ", size=" + size +
+                    '}';
+        }
+    }
+
+    private static final int MIN_REWRITE_SIZE = 1024 * 1024;
+    private static final int RECORD_HEADER_SIZE = Sizes.INT_SIZE * 2;
+
+    private final Paths paths;
+    private final int keyComparatorId;
+    private final SortedMap<Long, Entry> entries = new TreeMap<Long, Entry>();
+    private final Set<Long> removedIds = new TreeSet<Long>();
+    private final Set<Long> reservedIds = new TreeSet<Long>();
+    private RandomAccessFile manifestFile;
+    private long manifestSize;
+    private boolean closed;
+
+    private Manifest(Paths paths, int keyComparatorId, Collection<Entry> initialEntries) throws IOException {
+        this.paths = paths;
+        this.keyComparatorId = keyComparatorId;
+
+        for (Entry entry : initialEntries) {
+            entries.put(entry.tableId(), entry);
+        }
+
+        rewrite();
+    }
+
+    public int keyComparatorId() {
+        return keyComparatorId;
+    }
+
+    public synchronized List<Entry> entries() {
+        return new ArrayList<Entry>(entries.values());
+    }
+
+    /**
+     * Durably records a single edit that removes and then adds the provided tables.
+     */
+    public synchronized void edit(Collection<Entry> adds, Collection<Long> removes) throws IOException {
+        ensureOpen();
+        applyEdit(removes, adds, Collections.<Long>emptyList(), entries, removedIds, reservedIds);
+        appendRecord(removes, adds, Collections.<Long>emptyList());
+    }
+
+    /**
+     * Durably records that a table is about to be written under the provided id. If the table has not been added by
+     * the time the Manifest is next opened, its files are deleted.
+     */
+    public synchronized void reserve(long tableId) throws IOException {
+        ensureOpen();
+        List<Long> reserves = Collections.singletonList(tableId);
+        applyEdit(Collections.<Long>emptyList(), Collections.<Entry>emptyList(), reserves, entries, removedIds,
+                reservedIds);
+        appendRecord(Collections.<Long>emptyList(), Collections.<Entry>emptyList(), reserves);
+    }
+
+    public synchronized void close() throws IOException {
+        closed = true;
+        manifestFile.close();
+    }
+
+    /**
+     * Edits that arrive after the Manifest has been closed, such as from a compaction that was still running when the
+     * database was closed, fail without changing its state.
+     */
+    private void ensureOpen() throws ClosedChannelException {
+        if (closed) {
+            throw new ClosedChannelException();
+        }
+    }
+
+    private void appendRecord(Collection<Long> removes, Collection<Entry> adds, Collection<Long> reserves) throws
+            IOException {
+        writeRecord(removes, adds, reserves);
+
+        if (manifestSize > MIN_REWRITE_SIZE && manifestSize > recordSize(removedIds, entries.values(), reservedIds)
+                * 4) {
+            rewrite();
+        }
+    }
+
+    /**
+     * Writes and syncs a single record. The manifest is written through a RandomAccessFile rather than a FileChannel,
+     * as an interrupt sent to a flush or compaction thread while it records an edit would close a FileChannel for
+     * every later edit.
+     */
+    private void writeRecord(Collection<Long> removes, Collection<Entry> adds, Collection<Long> reserves) throws
+            IOException {
+        int recordSize = recordSize(removes, adds, reserves);
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + recordSize);
+        record.position(RECORD_HEADER_SIZE);
+        record.putInt(removes.size());
+
+        for (Long tableId : removes) {
+            record.putLong(tableId);
+        }
+
+        record.putInt(adds.size());
+
+        for (Entry entry : adds) {
+            entry.serialize(record);
+        }
+
+        record.putInt(reserves.size());
+
+        for (Long tableId : reserves) {
+            record.putLong(tableId);
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), RECORD_HEADER_SIZE, recordSize);
+        record.putInt(0, recordSize);
+        record.putInt(Sizes.INT_SIZE, (int) crc.getValue());
+
+        manifestFile.write(record.array());
+        manifestFile.getFD().sync();
+        manifestSize += record.capacity();
+    }
+
+    /**
+     * Replaces the manifest with a single record that adds every live table, and keeps the ids of tables whose files
+     * may not have been deleted yet.
+     */
+    private void rewrite() throws IOException {
+        if (manifestFile != null) {
+            manifestFile.close();
+        }
+
+        Files.deleteIfExists(paths.manifestTempPath());
+        manifestFile = new RandomAccessFile(paths.manifestTempPath().toFile(), "rw");
+        manifestFile.writeInt(keyComparatorId);
+        manifestSize = Sizes.INT_SIZE;
+
+        writeRecord(removedIds, entries.values(), reservedIds);
+
+        //The open file keeps receiving appends after it replaces the old manifest
+        Files.move(paths.manifestTempPath(), paths.manifestPath(), StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static int recordSize(Collection<Long> removes, Collection<Entry> adds, Collection<Long> reserves) {
+        int recordSize = Sizes.INT_SIZE * 3 + (removes.size() + reserves.size()) * Sizes.LONG_SIZE;
+
+        for (Entry entry : adds) {
+            recordSize += entry.serializedSize();
+        }
+
+        return recordSize;
+    }
+
+    private static void applyEdit(Collection<Long> removes, Collection<Entry> adds, Collection<Long> reserves,
+                                  SortedMap<Long, Entry> entries, Set<Long> removedIds, Set<Long> reservedIds) {
+        for (Long tableId : removes) {
+            entries.remove(tableId);
+            reservedIds.remove(tableId);
+            removedIds.add(tableId);
+        }
+
+        for (Entry entry : adds) {
+            entries.put(entry.tableId(), entry);
+            reservedIds.remove(entry.tableId());
+            removedIds.remove(entry.tableId());
+        }
+
+        reservedIds.addAll(reserves);
+    }
+
+    public static boolean exists(Paths paths) {
+        return Files.exists(paths.manifestPath());
+    }
+
+    public static Manifest create(Paths paths, int keyComparatorId, Collection<Entry> entries) throws IOException {
+        return new Manifest(paths, keyComparatorId, entries);
+    }
+
+    /**
+     * Replays an existing manifest up to its last intact record, deletes the files of tables that were removed or
+     * reserved and never added, and compacts it into a fresh manifest.
+     */
+    public static Manifest open(Paths paths) throws IOException {
+        SortedMap<Long, Entry> entries = new TreeMap<Long, Entry>();
+        Set<Long> removedIds = new TreeSet<Long>();
+        Set<Long> reservedIds = new TreeSet<Long>();
+        ImmutableFile manifestFile = ImmutableChannelFile.open(paths.manifestPath());
+        long fileSize = manifestFile.size();
+        long position = Sizes.INT_SIZE;
+        int keyComparatorId;
+
+        try {
+            keyComparatorId = manifestFile.readInt(0);
+
+            while (position + RECORD_HEADER_SIZE <= fileSize) {
+                int recordSize = manifestFile.readInt(position);
+                int checksum = manifestFile.readInt(position + Sizes.INT_SIZE);
+
+                if (recordSize < 0 || position + RECORD_HEADER_SIZE + recordSize > fileSize) {
+                    break;
+                }
+
+                ByteBuffer record = ByteBuffer.allocate(recordSize);
+                manifestFile.read(record, position + RECORD_HEADER_SIZE);
+
+                CRC32 crc = new CRC32();
+                crc.update(record.array(), 0, recordSize);
+
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+
+                record.rewind();
+                List<Long> removes = getIds(record);
+                int addCount = record.getInt();
+                List<Entry> adds = new ArrayList<Entry>(addCount);
+
+                for (int i = 0; i < addCount; i++) {
+                    adds.add(Entry.deserialize(record));
+                }
+
+                applyEdit(removes, adds, getIds(record), entries, removedIds, reservedIds);
+                position += RECORD_HEADER_SIZE + recordSize;
+            }
+        } finally {
+            manifestFile.close();
+        }
+
+        Set<Long> orphanIds = new TreeSet<Long>(removedIds);
+        orphanIds.addAll(reservedIds);
+
+        for (Long tableId : orphanIds) {
+            Files.deleteIfExists(paths.tempPath(tableId));
+            Files.deleteIfExists(paths.tablePath(tableId));
+            Files.deleteIfExists(paths.indexPath(tableId));
+            Files.deleteIfExists(paths.filterPath(tableId));
+        }
+
+        return new Manifest(paths, keyComparatorId, entries.values());
+    }
+
+    private static List<Long> getIds(ByteBuffer record) {
+        int count = record.getInt();
+        List<Long> ids = new ArrayList<Long>(count);
+
+        for (int i = 0; i < count; i++) {
+            ids.add(record.getLong());
+        }
+
+        return ids;
+    }
+}
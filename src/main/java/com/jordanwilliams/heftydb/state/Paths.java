@@ -30,9 +30,14 @@ public class Paths {
 
     private static final String TABLE_EXT = ".table";
     private static final String LOG_EXT = ".log";
+    private static final String RECYCLED_LOG_EXT = ".recycled";
     private static final String INDEX_EXT = ".index";
     private static final String FILTER_EXT = ".filter";
     private static final String TEMP_EXT = ".temp";
+    private static final String RANGE_TOMBSTONE_FILE = "range.tombstones";
+    private static final String RANGE_TOMBSTONE_TEMP_FILE = "range.tombstones.swap";
+    private static final String MANIFEST_FILE = "manifest";
+    private static final String MANIFEST_TEMP_FILE = "manifest.swap";
 
     private final Path logDirectory;
     private final Path tableDirectory;
@@ -58,10 +63,30 @@ public class Paths {
         return tableDirectory.resolve(tableId + LOG_EXT);
     }
 
+    public Path recycledLogPath(long tableId) {
+        return tableDirectory.resolve(tableId + RECYCLED_LOG_EXT);
+    }
+
     public Path tempPath(long tableId) {
         return tableDirectory.resolve(tableId + TEMP_EXT);
     }
 
+    public Path rangeTombstonePath() {
+        return tableDirectory.resolve(RANGE_TOMBSTONE_FILE);
+    }
+
+    public Path rangeTombstoneTempPath() {
+        return tableDirectory.resolve(RANGE_TOMBSTONE_TEMP_FILE);
+    }
+
+    public Path manifestPath() {
+        return tableDirectory.resolve(MANIFEST_FILE);
+    }
+
+    public Path manifestTempPath() {
+        return tableDirectory.resolve(MANIFEST_TEMP_FILE);
+    }
+
     public SortedSet<Long> tableFileIds() throws IOException {
         return fileIds(tableFilePaths());
     }
@@ -74,6 +99,10 @@ public class Paths {
         return fileIds(logFilePaths());
     }
 
+    public SortedSet<Long> recycledLogFileIds() throws IOException {
+        return fileIds(recycledLogFilePaths());
+    }
+
     public SortedSet<Path> tableFilePaths() throws IOException {
         return filePaths(tableDirectory, TABLE_EXT);
     }
@@ -82,6 +111,10 @@ public class Paths {
         return filePaths(tableDirectory, LOG_EXT);
     }
 
+    public SortedSet<Path> recycledLogFilePaths() throws IOException {
+        return filePaths(tableDirectory, RECYCLED_LOG_EXT);
+    }
+
     public SortedSet<Path> tempFilePaths() throws IOException {
         return filePaths(tableDirectory, TEMP_EXT);
     }
@@ -0,0 +1,405 @@
+/*
+ * Copyright (c) 2014. Jordan Williams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jordanwilliams.heftydb.state;
+
+import com.jordanwilliams.heftydb.data.Key;
+import com.jordanwilliams.heftydb.data.KeyComparator;
+import com.jordanwilliams.heftydb.data.RangeTombstone;
+import com.jordanwilliams.heftydb.io.ImmutableChannelFile;
+import com.jordanwilliams.heftydb.io.ImmutableFile;
+import com.jordanwilliams.heftydb.table.Table;
+import com.jordanwilliams.heftydb.util.Sizes;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.zip.CRC32;
+
+/**
+ * Tracks the live RangeTombstones in a database. The file starts with the full set of RangeTombstones, followed by a
+ * checksummed record for each later change, and every change is synced so that a RangeTombstone is durable as soon as
+ * it is added. Once the appended records outnumber the live RangeTombstones, the file is rewritten with only the full
+ * set.
+ */
+public class RangeTombstones {
+
+    private static final int RECORD_HEADER_SIZE = Sizes.INT_SIZE * 2;
+    private static final int MIN_REWRITE_RECORDS = 64;
+
+    //Adds a RangeTombstone, or replaces the one with the same snapshot id
+    private static final byte PUT_RECORD = 1;
+    private static final byte REMOVE_RECORD = 2;
+
+    private final Paths paths;
+    private final List<RangeTombstone> tombstones = new CopyOnWriteArrayList<RangeTombstone>();
+    private final NavigableSet<Long> loadSnapshotIds = new TreeSet<Long>();
+
+    //Opened by the first change, which rewrites the file so that a record torn by a crash is never appended to
+    private RandomAccessFile tombstoneFile;
+    private int appendedRecords;
+    private boolean closed;
+
+    public RangeTombstones(Paths paths, Collection<RangeTombstone> initialTombstones) {
+        this.paths = paths;
+        this.tombstones.addAll(initialTombstones);
+    }
+
+    public List<RangeTombstone> all() {
+        return tombstones;
+    }
+
+    public boolean isEmpty() {
+        return tombstones.isEmpty();
+    }
+
+    /**
+     * Returns the RangeTombstones that are visible to a reader at the provided snapshot id.
+     */
+    public List<RangeTombstone> visible(long snapshotId) {
+        if (tombstones.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        List<RangeTombstone> visible = new ArrayList<RangeTombstone>();
+
+        for (RangeTombstone tombstone : tombstones) {
+            if (tombstone.snapshotId() <= snapshotId) {
+                visible.add(tombstone);
+            }
+        }
+
+        return visible;
+    }
+
+    public boolean isDeleted(Key key, long snapshotId, KeyComparator keyComparator) {
+        for (RangeTombstone tombstone : tombstones) {
+            if (tombstone.snapshotId() <= snapshotId && tombstone.covers(key, keyComparator)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    public synchronized void add(RangeTombstone tombstone) throws IOException {
+        ensureOpen();
+        tombstones.add(tombstone);
+        append(Collections.singletonList(tombstone), Collections.<RangeTombstone>emptyList());
+    }
+
+    /**
+     * Moves the mark of each RangeTombstone that may cover Tuples in the source tables up to the id of the table
+     * those Tuples were rewritten into.
+     */
+    public synchronized void rewritten(Collection<RangeTombstone> toUpdate, long minSourceTableId,
+                                       long targetTableId) throws IOException {
+        ensureOpen();
+        Set<Long> snapshotIds = new HashSet<Long>();
+
+        for (RangeTombstone tombstone : toUpdate) {
+            snapshotIds.add(tombstone.snapshotId());
+        }
+
+        List<RangeTombstone> changed = new ArrayList<RangeTombstone>();
+
+        for (int i = 0; i < tombstones.size(); i++) {
+            RangeTombstone tombstone = tombstones.get(i);
+
+            if (snapshotIds.contains(tombstone.snapshotId()) && tombstone.mark() >= minSourceTableId && tombstone
+                    .mark() < targetTableId) {
+                tombstones.set(i, tombstone.withMark(targetTableId));
+                changed.add(tombstones.get(i));
+            }
+        }
+
+        if (!changed.isEmpty()) {
+            append(changed, Collections.<RangeTombstone>emptyList());
+        }
+    }
+
+    /**
+     * Takes the snapshot id for a bulk load. The tables of a load take ids after the marks of RangeTombstones added
+     * while it runs, so those RangeTombstones are kept until the load has finished.
+     */
+    public long startLoad(Snapshots snapshots) {
+        //Waits outside of the lock for any other load, which needs it to finish
+        long snapshotId = snapshots.startLoad();
+
+        synchronized (this) {
+            loadSnapshotIds.add(snapshotId);
+        }
+
+        return snapshotId;
+    }
+
+    /**
+     * Moves the mark of each RangeTombstone added while the bulk load ran up to the id of the newest table it loaded.
+     * Should be called once the loaded tables are visible, or with a maxTableId of 0 if the load failed.
+     */
+    public synchronized void finishLoad(long snapshotId, long maxTableId) throws IOException {
+        loadSnapshotIds.remove(snapshotId);
+        ensureOpen();
+
+        List<RangeTombstone> changed = new ArrayList<RangeTombstone>();
+
+        for (int i = 0; i < tombstones.size(); i++) {
+            RangeTombstone tombstone = tombstones.get(i);
+
+            if (tombstone.snapshotId() > snapshotId && tombstone.mark() < maxTableId) {
+                tombstones.set(i, tombstone.withMark(maxTableId));
+                changed.add(tombstones.get(i));
+            }
+        }
+
+        if (!changed.isEmpty()) {
+            append(changed, Collections.<RangeTombstone>emptyList());
+        }
+    }
+
+    /**
+     * Removes every RangeTombstone whose mark is older than all of the provided tables, as none of them can contain a
+     * Tuple it covers.
+     */
+    public synchronized void removeObsolete(Tables tables) throws IOException {
+        if (tombstones.isEmpty()) {
+            return;
+        }
+
+        ensureOpen();
+
+        long minTableId = Long.MAX_VALUE;
+
+        tables.readLock();
+
+        try {
+            for (Table table : tables) {
+                minTableId = Math.min(minTableId, table.id());
+            }
+        } finally {
+            tables.readUnlock();
+        }
+
+        List<RangeTombstone> obsolete = new ArrayList<RangeTombstone>();
+
+        for (RangeTombstone tombstone : tombstones) {
+            boolean loading = !loadSnapshotIds.isEmpty() && tombstone.snapshotId() > loadSnapshotIds.first();
+
+            if (tombstone.mark() < minTableId && !loading) {
+                obsolete.add(tombstone);
+            }
+        }
+
+        if (!obsolete.isEmpty()) {
+            tombstones.removeAll(obsolete);
+            append(Collections.<RangeTombstone>emptyList(), obsolete);
+        }
+    }
+
+    public long maxSnapshotId() {
+        long maxSnapshotId = 0;
+
+        for (RangeTombstone tombstone : tombstones) {
+            maxSnapshotId = Math.max(maxSnapshotId, tombstone.snapshotId());
+        }
+
+        return maxSnapshotId;
+    }
+
+    public synchronized void close() throws IOException {
+        closed = true;
+
+        if (tombstoneFile != null) {
+            tombstoneFile.close();
+            tombstoneFile = null;
+        }
+    }
+
+    /**
+     * Changes that arrive after close, such as from a compaction that was still running when the database was
+     * closed, fail without changing any RangeTombstones.
+     */
+    private void ensureOpen() throws ClosedChannelException {
+        if (closed) {
+            throw new ClosedChannelException();
+        }
+    }
+
+    /**
+     * Appends and syncs a single record for each change, or rewrites the file once there are too many records. The
+     * file is written through a RandomAccessFile, so that an interrupt sent to a compaction thread while it records a
+     * change does not close it for every later change.
+     */
+    private void append(List<RangeTombstone> puts, List<RangeTombstone> removes) throws IOException {
+        int recordCount = puts.size() + removes.size();
+
+        if (tombstoneFile == null || appendedRecords + recordCount > Math.max(MIN_REWRITE_RECORDS,
+                tombstones.size())) {
+            rewrite();
+            return;
+        }
+
+        int recordsSize = recordCount * (RECORD_HEADER_SIZE + 1) + removes.size() * Sizes.LONG_SIZE;
+
+        for (RangeTombstone tombstone : puts) {
+            recordsSize += RangeTombstone.SERIALIZER.size(tombstone);
+        }
+
+        ByteBuffer records = ByteBuffer.allocate(recordsSize);
+
+        for (RangeTombstone tombstone : puts) {
+            ByteBuffer payload = ByteBuffer.allocate(RangeTombstone.SERIALIZER.size(tombstone));
+            RangeTombstone.SERIALIZER.serialize(tombstone, payload);
+            putRecord(PUT_RECORD, payload, records);
+        }
+
+        for (RangeTombstone tombstone : removes) {
+            ByteBuffer payload = ByteBuffer.allocate(Sizes.LONG_SIZE);
+            payload.putLong(0, tombstone.snapshotId());
+            putRecord(REMOVE_RECORD, payload, records);
+        }
+
+        tombstoneFile.write(records.array());
+        tombstoneFile.getFD().sync();
+        appendedRecords += recordCount;
+    }
+
+    /**
+     * Replaces the file with one that holds only the live RangeTombstones.
+     */
+    private void rewrite() throws IOException {
+        if (tombstoneFile != null) {
+            tombstoneFile.close();
+        }
+
+        int fileSize = Sizes.INT_SIZE;
+
+        for (RangeTombstone tombstone : tombstones) {
+            fileSize += RangeTombstone.SERIALIZER.size(tombstone);
+        }
+
+        ByteBuffer tombstoneBuffer = ByteBuffer.allocate(fileSize);
+        tombstoneBuffer.putInt(tombstones.size());
+
+        for (RangeTombstone tombstone : tombstones) {
+            RangeTombstone.SERIALIZER.serialize(tombstone, tombstoneBuffer);
+        }
+
+        Files.deleteIfExists(paths.rangeTombstoneTempPath());
+        tombstoneFile = new RandomAccessFile(paths.rangeTombstoneTempPath().toFile(), "rw");
+        tombstoneFile.write(tombstoneBuffer.array());
+        tombstoneFile.getFD().sync();
+        appendedRecords = 0;
+
+        //The open file keeps receiving appends after it replaces the old one
+        Files.move(paths.rangeTombstoneTempPath(), paths.rangeTombstonePath(), StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void putRecord(byte type, ByteBuffer payload, ByteBuffer records) {
+        CRC32 crc = new CRC32();
+        crc.update(type);
+        crc.update(payload.array());
+
+        records.putInt(payload.capacity() + 1);
+        records.putInt((int) crc.getValue());
+        records.put(type);
+        records.put(payload.array());
+    }
+
+    /**
+     * Reads the full set of RangeTombstones at the start of the file, and then applies each record after it up to the
+     * last intact one.
+     */
+    public static RangeTombstones read(Paths paths) throws IOException {
+        List<RangeTombstone> tombstones = new ArrayList<RangeTombstone>();
+
+        if (Files.exists(paths.rangeTombstonePath())) {
+            ImmutableFile tombstoneFile = ImmutableChannelFile.open(paths.rangeTombstonePath());
+            ByteBuffer tombstoneBuffer = ByteBuffer.allocate((int) tombstoneFile.size());
+            tombstoneFile.read(tombstoneBuffer, 0);
+            tombstoneFile.close();
+            tombstoneBuffer.rewind();
+
+            int count = tombstoneBuffer.getInt();
+
+            for (int i = 0; i < count; i++) {
+                tombstones.add(RangeTombstone.SERIALIZER.deserialize(tombstoneBuffer));
+            }
+
+            while (tombstoneBuffer.remaining() >= RECORD_HEADER_SIZE) {
+                int recordSize = tombstoneBuffer.getInt();
+                int checksum = tombstoneBuffer.getInt();
+
+                if (recordSize < 1 || recordSize > tombstoneBuffer.remaining()) {
+                    break;
+                }
+
+                ByteBuffer record = tombstoneBuffer.slice();
+                record.limit(recordSize);
+                tombstoneBuffer.position(tombstoneBuffer.position() + recordSize);
+
+                CRC32 crc = new CRC32();
+                crc.update(record.duplicate());
+
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+
+                applyRecord(record, tombstones);
+            }
+        }
+
+        return new RangeTombstones(paths, tombstones);
+    }
+
+    private static void applyRecord(ByteBuffer record, List<RangeTombstone> tombstones) {
+        byte type = record.get();
+
+        if (type == PUT_RECORD) {
+            RangeTombstone tombstone = RangeTombstone.SERIALIZER.deserialize(record);
+
+            for (int i = 0; i < tombstones.size(); i++) {
+                if (tombstones.get(i).snapshotId() == tombstone.snapshotId()) {
+                    tombstones.set(i, tombstone);
+                    return;
+                }
+            }
+
+            tombstones.add(tombstone);
+        } else if (type == REMOVE_RECORD) {
+            long snapshotId = record.getLong();
+
+            for (int i = 0; i < tombstones.size(); i++) {
+                if (tombstones.get(i).snapshotId() == snapshotId) {
+                    tombstones.remove(i);
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -21,24 +21,51 @@ import java.util.TreeSet;
 import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * Keeps track of Snapshot ids in a database.
+ * Keeps track of Snapshot ids in a database. While a bulk load runs, its snapshot id stays hidden from readers and no
+ * newer snapshot id is handed out, so a snapshot never gains Records after it has been taken.
  */
 public class Snapshots {
 
     private final AtomicLong currentSnapshotId = new AtomicLong();
     private final SortedSet<Long> retainedSnapshots = new TreeSet<Long>();
 
+    private volatile long visibleSnapshotId;
+    private boolean loading;
+
     public Snapshots(long startingSnapshotId) {
         this.currentSnapshotId.set(startingSnapshotId);
+        this.visibleSnapshotId = startingSnapshotId;
         retainedSnapshots.add(Long.MAX_VALUE);
     }
 
-    public long nextId() {
-        return currentSnapshotId.incrementAndGet();
+    /**
+     * Returns a new snapshot id, waiting for a running bulk load to finish first.
+     */
+    public synchronized long nextId() {
+        awaitLoad();
+        long snapshotId = currentSnapshotId.incrementAndGet();
+        visibleSnapshotId = snapshotId;
+        return snapshotId;
     }
 
     public long currentId() {
-        return currentSnapshotId.get();
+        return visibleSnapshotId;
+    }
+
+    /**
+     * Returns the snapshot id for a bulk load, which is not visible until finishLoad is called. Only one load runs at
+     * a time.
+     */
+    public synchronized long startLoad() {
+        awaitLoad();
+        loading = true;
+        return currentSnapshotId.incrementAndGet();
+    }
+
+    public synchronized void finishLoad(long snapshotId) {
+        loading = false;
+        visibleSnapshotId = snapshotId;
+        notifyAll();
     }
 
     public long minimumRetainedId(){
@@ -52,4 +79,20 @@ public class Snapshots {
     public synchronized void release(long snapshotId){
         retainedSnapshots.remove(snapshotId);
     }
+
+    private void awaitLoad() {
+        boolean interrupted = false;
+
+        while (loading) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
 }
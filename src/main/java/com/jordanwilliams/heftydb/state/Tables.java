@@ -18,8 +18,10 @@ package com.jordanwilliams.heftydb.state;
 
 import com.jordanwilliams.heftydb.table.Table;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.NavigableSet;
@@ -30,7 +32,8 @@ import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * A collection of all of the Tables in a database. Concurrent access from multiple threads is guarded by a
- * ReentrantReadWriteLock.
+ * ReentrantReadWriteLock. If a Manifest is provided, every change to the set of persistent Tables is recorded in it
+ * before it becomes visible.
  */
 public class Tables implements Iterable<Table> {
 
@@ -42,10 +45,16 @@ public class Tables implements Iterable<Table> {
     private final NavigableSet<Table> tables = new TreeSet<Table>();
     private final ReadWriteLock tableLock = new ReentrantReadWriteLock();
     private final List<ChangeHandler> changeHandlers = new ArrayList<ChangeHandler>();
+    private final Manifest manifest;
 
-    public Tables(Collection<Table> initialTables) {
+    public Tables(Collection<Table> initialTables, Manifest manifest) {
         this.tables.addAll(initialTables);
         this.currentTableId.set(tables.isEmpty() ? 0 : tables.last().id());
+        this.manifest = manifest;
+    }
+
+    public Tables(Collection<Table> initialTables) {
+        this(initialTables, null);
     }
 
     public synchronized void addChangeHandler(ChangeHandler changeHandler) {
@@ -72,46 +81,64 @@ public class Tables implements Iterable<Table> {
         tableLock.readLock().unlock();
     }
 
-    public void add(Table toAdd) {
-        try {
-            tableLock.writeLock().lock();
-            tables.add(toAdd);
-            notifyChanged();
-        } finally {
-            tableLock.writeLock().unlock();
+    /**
+     * Takes the id for a table that is written straight to disk rather than from a MemoryTable. The id is recorded in
+     * the Manifest, so that the files of a table that never becomes live are deleted the next time it is opened.
+     */
+    public long reserveId() throws IOException {
+        long tableId = nextId();
+
+        if (manifest != null) {
+            manifest.reserve(tableId);
         }
+
+        return tableId;
     }
 
-    public void removeAll(List<Table> toRemove) {
-        try {
-            tableLock.writeLock().lock();
-            for (Table table : toRemove) {
-                tables.remove(table);
+    public void add(Table toAdd) throws IOException {
+        replace(Collections.singletonList(toAdd), Collections.<Table>emptyList());
+    }
+
+    public void removeAll(List<Table> toRemove) throws IOException {
+        replace(Collections.<Table>emptyList(), toRemove);
+    }
+
+    public void remove(Table toRemove) throws IOException {
+        replace(Collections.<Table>emptyList(), Collections.singletonList(toRemove));
+    }
+
+    public void swap(Table toAdd, Table toRemove) throws IOException {
+        replace(Collections.singletonList(toAdd), Collections.singletonList(toRemove));
+    }
+
+    /**
+     * Removes and then adds the provided Tables as a single change, so that readers and the Manifest observe either
+     * none or all of it. Changes that only involve MemoryTables are not recorded, and do not wait for the Manifest.
+     */
+    public void replace(Collection<Table> toAdd, Collection<Table> toRemove) throws IOException {
+        List<Manifest.Entry> adds = new ArrayList<Manifest.Entry>();
+        List<Long> removes = new ArrayList<Long>();
+
+        for (Table table : toRemove) {
+            if (table.isPersistent()) {
+                removes.add(table.id());
             }
-            notifyChanged();
-        } finally {
-            tableLock.writeLock().unlock();
         }
-    }
 
-    public void remove(Table toRemove) {
-        try {
-            tableLock.writeLock().lock();
-            tables.remove(toRemove);
-            notifyChanged();
-        } finally {
-            tableLock.writeLock().unlock();
+        for (Table table : toAdd) {
+            if (table.isPersistent()) {
+                adds.add(new Manifest.Entry(table));
+            }
         }
-    }
 
-    public void swap(Table toAdd, Table toRemove) {
-        try {
-            tableLock.writeLock().lock();
-            tables.remove(toRemove);
-            tables.add(toAdd);
-            notifyChanged();
-        } finally {
-            tableLock.writeLock().unlock();
+        if (manifest == null || (adds.isEmpty() && removes.isEmpty())) {
+            apply(toAdd, toRemove);
+            return;
+        }
+
+        synchronized (manifest) {
+            manifest.edit(adds, removes);
+            apply(toAdd, toRemove);
         }
     }
 
@@ -124,6 +151,26 @@ public class Tables implements Iterable<Table> {
         return tables.iterator();
     }
 
+    public void close() throws IOException {
+        if (manifest != null) {
+            manifest.close();
+        }
+    }
+
+    private void apply(Collection<Table> toAdd, Collection<Table> toRemove) {
+        try {
+            tableLock.writeLock().lock();
+            for (Table table : toRemove) {
+                tables.remove(table);
+            }
+
+            tables.addAll(toAdd);
+            notifyChanged();
+        } finally {
+            tableLock.writeLock().unlock();
+        }
+    }
+
     private synchronized void notifyChanged() {
         for (ChangeHandler changeHandler : changeHandlers) {
             changeHandler.changed();
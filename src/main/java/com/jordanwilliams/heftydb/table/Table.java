@@ -18,8 +18,11 @@ package com.jordanwilliams.heftydb.table;
 
 import com.jordanwilliams.heftydb.data.Key;
 import com.jordanwilliams.heftydb.data.Tuple;
+import com.jordanwilliams.heftydb.db.ReadOptions;
 import com.jordanwilliams.heftydb.util.CloseableIterator;
 
+import java.nio.ByteBuffer;
+
 /**
  * Represents an immutable collection of sorted record in a database.
  */
@@ -39,6 +42,14 @@ public interface Table extends Iterable<Tuple>, Comparable<Table> {
 
     public CloseableIterator<Tuple> descendingIterator(Key key, long snapshotId);
 
+    public CloseableIterator<Tuple> ascendingIterator(long snapshotId, ReadOptions options);
+
+    public CloseableIterator<Tuple> descendingIterator(long snapshotId, ReadOptions options);
+
+    public CloseableIterator<Tuple> ascendingIterator(Key key, long snapshotId, ReadOptions options);
+
+    public CloseableIterator<Tuple> descendingIterator(Key key, long snapshotId, ReadOptions options);
+
     public long tupleCount();
 
     public long size();
@@ -47,6 +58,10 @@ public interface Table extends Iterable<Tuple>, Comparable<Table> {
 
     public long maxSnapshotId();
 
+    public ByteBuffer minKey();
+
+    public ByteBuffer maxKey();
+
     public void close();
 
     public boolean isPersistent();
@@ -16,17 +16,24 @@
 
 package com.jordanwilliams.heftydb.table.file;
 
+import com.codahale.metrics.Timer;
 import com.jordanwilliams.heftydb.data.Key;
+import com.jordanwilliams.heftydb.data.KeyComparator;
+import com.jordanwilliams.heftydb.data.KeyComparators;
 import com.jordanwilliams.heftydb.data.Tuple;
+import com.jordanwilliams.heftydb.db.ReadOptions;
 import com.jordanwilliams.heftydb.index.Index;
 import com.jordanwilliams.heftydb.index.IndexBlock;
 import com.jordanwilliams.heftydb.index.IndexRecord;
-import com.jordanwilliams.heftydb.io.ImmutableChannelFile;
+import com.jordanwilliams.heftydb.io.BlockChecksum;
+import com.jordanwilliams.heftydb.io.ChecksumVerification;
 import com.jordanwilliams.heftydb.io.ImmutableFile;
+import com.jordanwilliams.heftydb.io.ReadMode;
 import com.jordanwilliams.heftydb.metrics.CacheHitGauge;
 import com.jordanwilliams.heftydb.metrics.Metrics;
 import com.jordanwilliams.heftydb.offheap.SortedByteMap;
 import com.jordanwilliams.heftydb.offheap.MemoryAllocator;
+import com.jordanwilliams.heftydb.offheap.MemoryOwner;
 import com.jordanwilliams.heftydb.offheap.MemoryPointer;
 import com.jordanwilliams.heftydb.read.LatestTupleIterator;
 import com.jordanwilliams.heftydb.state.Paths;
@@ -34,6 +41,7 @@ import com.jordanwilliams.heftydb.table.Table;
 import com.jordanwilliams.heftydb.util.CloseableIterator;
 import com.jordanwilliams.heftydb.util.Sizes;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.Collections;
@@ -49,11 +57,13 @@ public class FileTable implements Table {
     private class AscendingBlockIterator implements Iterator<TupleBlock> {
 
         private final long maxOffset;
+        private final ReadOptions options;
         private long fileOffset = 0;
 
-        public AscendingBlockIterator(long startOffset) {
+        public AscendingBlockIterator(long startOffset, ReadOptions options) {
             this.fileOffset = startOffset;
-            this.maxOffset = fileSize - TableTrailer.SIZE - Sizes.INT_SIZE;
+            this.options = options;
+            this.maxOffset = fileSize - trailer.size() - Sizes.INT_SIZE;
         }
 
         @Override
@@ -75,7 +85,7 @@ public class FileTable implements Table {
                 fileOffset += nextBlockSize;
                 fileOffset += Sizes.INT_SIZE;
 
-                return readTupleBlock(nextBlockOffset, nextBlockSize);
+                return getTupleBlock(nextBlockOffset, nextBlockSize, options);
             } catch (IOException e) {
                 throw new RuntimeException(e);
             }
@@ -89,10 +99,12 @@ public class FileTable implements Table {
 
     private class DescendingBlockIterator implements Iterator<TupleBlock> {
 
+        private final ReadOptions options;
         private long fileOffset;
 
-        public DescendingBlockIterator(long startOffset) {
+        public DescendingBlockIterator(long startOffset, ReadOptions options) {
             this.fileOffset = startOffset;
+            this.options = options;
         }
 
         @Override
@@ -114,7 +126,7 @@ public class FileTable implements Table {
                 fileOffset -= nextBlockSize;
                 fileOffset -= Sizes.INT_SIZE;
 
-                return readTupleBlock(nextBlockOffset, nextBlockSize);
+                return getTupleBlock(nextBlockOffset, nextBlockSize, options);
             } catch (IOException e) {
                 throw new RuntimeException(e);
             }
@@ -180,15 +192,15 @@ public class FileTable implements Table {
 
         @Override
         public void close() throws IOException {
-            if (tupleBlock != null && !tupleBlock.memory().isFree()) {
-                tupleBlock.memory().free();
+            releaseTupleBlock();
+
+            if (recordBlockIterator instanceof Closeable) {
+                ((Closeable) recordBlockIterator).close();
             }
         }
 
         protected boolean nextRecordBlock() throws IOException {
-            if (tupleBlock != null) {
-                tupleBlock.memory().free();
-            }
+            releaseTupleBlock();
 
             if (!recordBlockIterator.hasNext()) {
                 return false;
@@ -199,6 +211,14 @@ public class FileTable implements Table {
 
             return true;
         }
+
+        protected void releaseTupleBlock() {
+            //A block may be shared with the cache, so the iterator only gives up its own reference to it
+            if (tupleBlock != null) {
+                tupleBlock.memory().release();
+                tupleBlock = null;
+            }
+        }
     }
 
     private class DescendingIterator extends AscendingIterator {
@@ -214,9 +234,7 @@ public class FileTable implements Table {
 
         @Override
         protected boolean nextRecordBlock() throws IOException {
-            if (tupleBlock != null) {
-                tupleBlock.memory().free();
-            }
+            releaseTupleBlock();
 
             if (!recordBlockIterator.hasNext()) {
                 return false;
@@ -236,13 +254,22 @@ public class FileTable implements Table {
     private final TableTrailer trailer;
     private final TupleBlock.Cache recordCache;
     private final ImmutableFile tableFile;
+    private final KeyComparator keyComparator;
+    private final ChecksumVerification checksumVerification;
     private final Metrics metrics;
 
     private final CacheHitGauge tableCacheHitRate;
+    private final Timer checksumVerificationTimer;
+
+    private ByteBuffer minKey;
+    private ByteBuffer maxKey;
 
     private FileTable(long tableId, Index index, TableBloomFilter tableBloomFilter, ImmutableFile tableFile,
-                      TableTrailer trailer, TupleBlock.Cache recordCache, Metrics metrics) throws IOException {
+                      TableTrailer trailer, TupleBlock.Cache recordCache, KeyComparator keyComparator,
+                      ChecksumVerification checksumVerification, Metrics metrics) throws IOException {
         this.tableId = tableId;
+        this.keyComparator = keyComparator;
+        this.checksumVerification = checksumVerification;
         this.recordCache = recordCache;
         this.index = index;
         this.tableBloomFilter = tableBloomFilter;
@@ -252,6 +279,9 @@ public class FileTable implements Table {
         this.fileSize = tableFile.size();
 
         this.tableCacheHitRate = metrics.hitGauge("table.cacheHitRate");
+        this.checksumVerificationTimer = metrics.timer("table.checksumVerification");
+
+        readKeyRange();
     }
 
     @Override
@@ -280,22 +310,43 @@ public class FileTable implements Table {
 
     @Override
     public CloseableIterator<Tuple> ascendingIterator(long snapshotId) {
-        return new LatestTupleIterator(snapshotId, new AscendingIterator(new AscendingBlockIterator(0)));
+        return ascendingIterator(snapshotId, ReadOptions.DEFAULT);
     }
 
     @Override
     public CloseableIterator<Tuple> descendingIterator(long snapshotId) {
+        return descendingIterator(snapshotId, ReadOptions.DEFAULT);
+    }
+
+    @Override
+    public CloseableIterator<Tuple> ascendingIterator(Key key, long snapshotId) {
+        return ascendingIterator(key, snapshotId, ReadOptions.DEFAULT);
+    }
+
+    @Override
+    public CloseableIterator<Tuple> descendingIterator(Key key, long snapshotId) {
+        return descendingIterator(key, snapshotId, ReadOptions.DEFAULT);
+    }
+
+    @Override
+    public CloseableIterator<Tuple> ascendingIterator(long snapshotId, ReadOptions options) {
+        return new LatestTupleIterator(snapshotId, new AscendingIterator(blockIterator(new AscendingBlockIterator(0,
+                options), options)));
+    }
+
+    @Override
+    public CloseableIterator<Tuple> descendingIterator(long snapshotId, ReadOptions options) {
         try {
-            long startOffset = tableFile.size() - TableTrailer.SIZE - Sizes.INT_SIZE;
-            return new LatestTupleIterator(snapshotId, new DescendingIterator(new DescendingBlockIterator
-                    (startOffset)));
+            long startOffset = tableFile.size() - trailer.size() - Sizes.INT_SIZE;
+            return new LatestTupleIterator(snapshotId, new DescendingIterator(blockIterator(new
+                    DescendingBlockIterator(startOffset, options), options)));
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
 
     @Override
-    public CloseableIterator<Tuple> ascendingIterator(Key key, long snapshotId) {
+    public CloseableIterator<Tuple> ascendingIterator(Key key, long snapshotId, ReadOptions options) {
         try {
             IndexRecord indexRecord = index.get(key);
 
@@ -303,18 +354,18 @@ public class FileTable implements Table {
                 return new CloseableIterator.Wrapper<Tuple>(Collections.<Tuple>emptyIterator());
             }
 
-            TupleBlock startTupleBlock = readTupleBlock(indexRecord.blockOffset(), indexRecord.blockSize());
+            TupleBlock startTupleBlock = getTupleBlock(indexRecord.blockOffset(), indexRecord.blockSize(), options);
             Iterator<Tuple> startRecordIterator = startTupleBlock.ascendingIterator(key);
             long nextBlockOffset = indexRecord.blockOffset() + indexRecord.blockSize() + Sizes.INT_SIZE;
-            return new LatestTupleIterator(snapshotId, new AscendingIterator(new AscendingBlockIterator
-                    (nextBlockOffset), startRecordIterator, startTupleBlock));
+            return new LatestTupleIterator(snapshotId, new AscendingIterator(blockIterator(new AscendingBlockIterator
+                    (nextBlockOffset, options), options), startRecordIterator, startTupleBlock));
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
 
     @Override
-    public CloseableIterator<Tuple> descendingIterator(Key key, long snapshotId) {
+    public CloseableIterator<Tuple> descendingIterator(Key key, long snapshotId, ReadOptions options) {
         try {
             IndexRecord indexRecord = index.get(key);
 
@@ -322,11 +373,12 @@ public class FileTable implements Table {
                 return new CloseableIterator.Wrapper<Tuple>(Collections.<Tuple>emptyIterator());
             }
 
-            TupleBlock startTupleBlock = readTupleBlock(indexRecord.blockOffset(), indexRecord.blockSize());
+            TupleBlock startTupleBlock = getTupleBlock(indexRecord.blockOffset(), indexRecord.blockSize(), options);
             Iterator<Tuple> startRecordIterator = startTupleBlock.descendingIterator(key);
             long nextBlockOffset = indexRecord.blockOffset() - Sizes.LONG_SIZE;
-            return new LatestTupleIterator(snapshotId, new DescendingIterator(new DescendingBlockIterator
-                    (nextBlockOffset), startRecordIterator, startTupleBlock));
+            return new LatestTupleIterator(snapshotId, new DescendingIterator(blockIterator(new
+                    DescendingBlockIterator(nextBlockOffset, options), options), startRecordIterator,
+                    startTupleBlock));
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
@@ -357,6 +409,16 @@ public class FileTable implements Table {
         return trailer.maxSnapshotId();
     }
 
+    @Override
+    public ByteBuffer minKey() {
+        return minKey;
+    }
+
+    @Override
+    public ByteBuffer maxKey() {
+        return maxKey;
+    }
+
     @Override
     public void close() {
         try {
@@ -375,7 +437,7 @@ public class FileTable implements Table {
 
     @Override
     public Iterator<Tuple> iterator() {
-        return new AscendingIterator(new AscendingBlockIterator(0));
+        return new AscendingIterator(new AscendingBlockIterator(0, ReadOptions.DEFAULT));
     }
 
     @Override
@@ -408,38 +470,155 @@ public class FileTable implements Table {
                 '}';
     }
 
+    private void readKeyRange() throws IOException {
+        long lastBlockSizeOffset = fileSize - trailer.size() - Sizes.INT_SIZE;
+
+        if (lastBlockSizeOffset <= 0) {
+            return;
+        }
+
+        TupleBlock firstBlock = readTupleBlock(Sizes.INT_SIZE, tableFile.readInt(0), MemoryOwner.OTHER);
+        minKey = firstBlock.first().key().data();
+        firstBlock.memory().release();
+
+        int lastBlockSize = tableFile.readInt(lastBlockSizeOffset);
+        TupleBlock lastBlock = readTupleBlock(lastBlockSizeOffset - lastBlockSize, lastBlockSize, MemoryOwner.OTHER);
+        maxKey = lastBlock.descendingIterator().next().key().data();
+        lastBlock.memory().release();
+    }
+
+    private Iterator<TupleBlock> blockIterator(Iterator<TupleBlock> blocks, ReadOptions options) {
+        if (options.readaheadBlocks() > 0) {
+            return new ReadaheadBlockIterator(blocks, options.readaheadBlocks());
+        }
+
+        return blocks;
+    }
+
     private TupleBlock getTupleBlock(long offset, int size) throws IOException {
-        TupleBlock tupleBlock = recordCache.get(tableId, offset);
-        tableCacheHitRate.sample(tupleBlock != null);
+        return getTupleBlock(offset, size, true, true);
+    }
+
+    private TupleBlock getTupleBlock(long offset, int size, ReadOptions options) throws IOException {
+        return getTupleBlock(offset, size, options.useCache(), options.fillCache());
+    }
+
+    private TupleBlock getTupleBlock(long offset, int size, boolean useCache, boolean fillCache) throws IOException {
+        TupleBlock tupleBlock = null;
+
+        if (useCache) {
+            tupleBlock = recordCache.get(tableId, offset);
+            tableCacheHitRate.sample(tupleBlock != null);
+        }
 
         if (tupleBlock == null) {
-            tupleBlock = readTupleBlock(offset, size);
-            recordCache.put(tableId, offset, tupleBlock);
+            tupleBlock = readTupleBlock(offset, size, fillCache ? MemoryOwner.BLOCK_CACHE : MemoryOwner.ITERATOR);
+
+            if (fillCache) {
+                recordCache.put(tableId, offset, tupleBlock);
+            }
+        } else if (checksumVerification.verifyCacheHits()) {
+            try {
+                verifyChecksum(tupleBlock.memory(), offset);
+            } catch (IOException e) {
+                tupleBlock.memory().release();
+                throw e;
+            }
         }
 
         return tupleBlock;
     }
 
-    private TupleBlock readTupleBlock(long offset, int size) throws IOException {
-        MemoryPointer recordBlockPointer = MemoryAllocator.allocate(size);
+    private TupleBlock readTupleBlock(long offset, int size, MemoryOwner owner) throws IOException {
+        MemoryPointer recordBlockPointer = MemoryAllocator.allocate(size, owner);
 
         try {
             ByteBuffer recordBlockBuffer = recordBlockPointer.directBuffer();
             tableFile.read(recordBlockBuffer, offset);
             recordBlockBuffer.rewind();
-            return new TupleBlock(new SortedByteMap(recordBlockPointer));
+
+            if (checksumVerification.verifyReads()) {
+                verifyChecksum(recordBlockPointer, offset);
+            }
+
+            return new TupleBlock(new SortedByteMap(recordBlockPointer, keyComparator));
         } catch (IOException e) {
             recordBlockPointer.release();
             throw e;
         }
     }
 
+    private void verifyChecksum(MemoryPointer recordBlockPointer, long offset) throws IOException {
+        Timer.Context watch = checksumVerificationTimer.time();
+        boolean matches = BlockChecksum.matches(recordBlockPointer.directBuffer());
+        watch.stop();
+
+        if (!matches) {
+            throw new IOException("Tuple block at offset " + offset + " of table " + tableId + " failed its checksum");
+        }
+    }
+
+    public static FileTable open(long tableId, Paths paths, TupleBlock.Cache recordCache,
+                                 IndexBlock.Cache indexCache, KeyComparator keyComparator,
+                                 ChecksumVerification checksumVerification, ReadMode readMode, Metrics metrics)
+            throws IOException {
+        ImmutableFile tableFile = readMode.open(paths.tablePath(tableId));
+        TableTrailer trailer;
+
+        try {
+            trailer = TableTrailer.read(tableFile);
+        } catch (IOException e) {
+            tableFile.close();
+            throw new IOException("Table " + tableId + " cannot be opened: " + e.getMessage(), e);
+        }
+
+        //A trailer in an unknown format is read as a legacy trailer, whose table id will not match
+        if (trailer.tableId() != tableId) {
+            tableFile.close();
+            throw new IOException("Table " + tableId + " has a trailer for table " + trailer.tableId() + ", so it " +
+                    "is corrupt or was written in an unsupported format");
+        }
+
+        if (trailer.keyComparatorId() != keyComparator.id()) {
+            tableFile.close();
+            throw new IOException("Table " + tableId + " was written with key comparator " + trailer
+                    .keyComparatorId() + " but is being opened with key comparator " + keyComparator.id());
+        }
+
+        //Tables from before block checksums are read without verification
+        ChecksumVerification verification = trailer.hasBlockChecksums() ? checksumVerification :
+                ChecksumVerification.NEVER;
+
+        Index index;
+
+        try {
+            index = Index.open(tableId, paths, indexCache, keyComparator, verification, readMode, metrics);
+        } catch (IOException e) {
+            tableFile.close();
+            throw e;
+        }
+
+        TableBloomFilter tableBloomFilter = TableBloomFilter.read(tableId, paths, indexCache.budget());
+        return new FileTable(tableId, index, tableBloomFilter, tableFile, trailer, recordCache, keyComparator,
+                verification, metrics);
+    }
+
+    public static FileTable open(long tableId, Paths paths, TupleBlock.Cache recordCache,
+                                 IndexBlock.Cache indexCache, KeyComparator keyComparator,
+                                 ChecksumVerification checksumVerification, Metrics metrics) throws IOException {
+        return open(tableId, paths, recordCache, indexCache, keyComparator, checksumVerification, ReadMode.BUFFERED,
+                metrics);
+    }
+
+    public static FileTable open(long tableId, Paths paths, TupleBlock.Cache recordCache,
+                                 IndexBlock.Cache indexCache, KeyComparator keyComparator,
+                                 Metrics metrics) throws IOException {
+        return open(tableId, paths, recordCache, indexCache, keyComparator, ChecksumVerification.CACHE_MISSES,
+                metrics);
+    }
+
     public static FileTable open(long tableId, Paths paths, TupleBlock.Cache recordCache,
                                  IndexBlock.Cache indexCache, Metrics metrics) throws IOException {
-        Index index = Index.open(tableId, paths, indexCache, metrics);
-        TableBloomFilter tableBloomFilter = TableBloomFilter.read(tableId, paths);
-        ImmutableFile tableFile = ImmutableChannelFile.open(paths.tablePath(tableId));
-        TableTrailer trailer = TableTrailer.read(tableFile);
-        return new FileTable(tableId, index, tableBloomFilter, tableFile, trailer, recordCache, metrics);
+        return open(tableId, paths, recordCache, indexCache, KeyComparators.BYTEWISE, metrics);
     }
 }
@@ -16,11 +16,14 @@
 
 package com.jordanwilliams.heftydb.table.file;
 
+import com.jordanwilliams.heftydb.data.KeyComparator;
+import com.jordanwilliams.heftydb.data.KeyComparators;
 import com.jordanwilliams.heftydb.data.Tuple;
 import com.jordanwilliams.heftydb.db.Config;
 import com.jordanwilliams.heftydb.index.IndexRecord;
 import com.jordanwilliams.heftydb.index.IndexWriter;
 import com.jordanwilliams.heftydb.io.AppendChannelFile;
+import com.jordanwilliams.heftydb.io.BlockChecksum;
 import com.jordanwilliams.heftydb.io.AppendFile;
 import com.jordanwilliams.heftydb.io.Throttle;
 import com.jordanwilliams.heftydb.state.Paths;
@@ -136,7 +139,7 @@ public class FileTableWriter {
                 logger.debug("Starting table writer " + id + " for table " + tableId);
 
                 FileTableWriter tableWriter = FileTableWriter.open(tableId, paths, tupleCount,
-                        config.indexBlockSize(), config.tableBlockSize(), level);
+                        config.indexBlockSize(), config.tableBlockSize(), level, config.keyComparator());
 
                 while (tuples.hasNext()) {
                     Tuple tuple = tuples.next();
@@ -170,12 +173,13 @@ public class FileTableWriter {
     private TupleBlock.Builder recordBlockBuilder;
 
     private FileTableWriter(long tableId, IndexWriter indexWriter, TableBloomFilterWriter filterWriter,
-                            AppendFile tableDataFile, int maxRecordBlockSize, int level) throws IOException {
+                            AppendFile tableDataFile, int maxRecordBlockSize, int level,
+                            KeyComparator keyComparator) throws IOException {
         this.indexWriter = indexWriter;
         this.filterWriter = filterWriter;
         this.recordBlockBuilder = new TupleBlock.Builder();
         this.maxRecordBlockSize = maxRecordBlockSize;
-        this.trailerBuilder = new TableTrailer.Builder(tableId, level);
+        this.trailerBuilder = new TableTrailer.Builder(tableId, level, keyComparator.id());
         this.tableDataFile = tableDataFile;
     }
 
@@ -197,17 +201,36 @@ public class FileTableWriter {
         tableDataFile.close();
     }
 
+    /**
+     * Closes the files of a table that will not be finished and releases the memory held for it, without writing any
+     * more of the table.
+     */
+    public void abort() throws IOException {
+        try {
+            filterWriter.abort();
+        } finally {
+            try {
+                indexWriter.abort();
+            } finally {
+                tableDataFile.close();
+            }
+        }
+    }
+
     private void writeRecordBlock() throws IOException {
         TupleBlock tupleBlock = recordBlockBuilder.build();
         ByteBuffer recordBlockBuffer = tupleBlock.memory().directBuffer();
+        int checksum = BlockChecksum.compute(recordBlockBuffer);
+        int recordBlockSize = recordBlockBuffer.capacity() + BlockChecksum.SIZE;
 
-        tableDataFile.appendInt(recordBlockBuffer.capacity());
+        tableDataFile.appendInt(recordBlockSize);
         long recordBlockOffset = tableDataFile.append(recordBlockBuffer);
         recordBlockBuffer.rewind();
-        tableDataFile.appendInt(recordBlockBuffer.capacity());
+        tableDataFile.appendInt(checksum);
+        tableDataFile.appendInt(recordBlockSize);
 
         Tuple startTuple = tupleBlock.first();
-        indexWriter.write(new IndexRecord(startTuple.key(), recordBlockOffset, recordBlockBuffer.capacity()));
+        indexWriter.write(new IndexRecord(startTuple.key(), recordBlockOffset, recordBlockSize));
         tupleBlock.memory().release();
         recordBlockBuilder = new TupleBlock.Builder();
     }
@@ -218,11 +241,19 @@ public class FileTableWriter {
     }
 
     public static FileTableWriter open(long tableId, Paths paths, long approxRecordCount, int maxIndexBlockSize,
-                                       int maxRecordBlockSize, int level) throws IOException {
+                                       int maxRecordBlockSize, int level, KeyComparator keyComparator)
+            throws IOException {
         IndexWriter indexWriter = IndexWriter.open(tableId, paths, maxIndexBlockSize);
         TableBloomFilterWriter filterWriter = TableBloomFilterWriter.open(tableId, paths, approxRecordCount);
         AppendFile tableDataFile = AppendChannelFile.open(paths.tempPath(tableId));
 
-        return new FileTableWriter(tableId, indexWriter, filterWriter, tableDataFile, maxRecordBlockSize, level);
+        return new FileTableWriter(tableId, indexWriter, filterWriter, tableDataFile, maxRecordBlockSize, level,
+                keyComparator);
+    }
+
+    public static FileTableWriter open(long tableId, Paths paths, long approxRecordCount, int maxIndexBlockSize,
+                                       int maxRecordBlockSize, int level) throws IOException {
+        return open(tableId, paths, approxRecordCount, maxIndexBlockSize, maxRecordBlockSize, level,
+                KeyComparators.BYTEWISE);
     }
 }
@@ -0,0 +1,226 @@
+/*
+ * Copyright (c) 2014. Jordan Williams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jordanwilliams.heftydb.table.file;
+
+import com.jordanwilliams.heftydb.data.Key;
+import com.jordanwilliams.heftydb.data.KeyComparator;
+import com.jordanwilliams.heftydb.data.Tuple;
+import com.jordanwilliams.heftydb.db.ReadOptions;
+import com.jordanwilliams.heftydb.index.IndexBlock;
+import com.jordanwilliams.heftydb.io.ChecksumVerification;
+import com.jordanwilliams.heftydb.io.ReadMode;
+import com.jordanwilliams.heftydb.metrics.Metrics;
+import com.jordanwilliams.heftydb.state.Manifest;
+import com.jordanwilliams.heftydb.state.Paths;
+import com.jordanwilliams.heftydb.table.Table;
+import com.jordanwilliams.heftydb.util.CloseableIterator;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+
+/**
+ * A FileTable that is described by its Manifest entry until it is first read, so that opening a database does not
+ * need to open the files of every table in it.
+ */
+public class LazyFileTable implements Table {
+
+    private final Manifest.Entry entry;
+    private final Paths paths;
+    private final TupleBlock.Cache recordCache;
+    private final IndexBlock.Cache indexCache;
+    private final KeyComparator keyComparator;
+    private final ChecksumVerification checksumVerification;
+    private final ReadMode readMode;
+    private final Metrics metrics;
+
+    private volatile FileTable table;
+    private boolean closed;
+
+    public LazyFileTable(Manifest.Entry entry, Paths paths, TupleBlock.Cache recordCache, IndexBlock.Cache indexCache,
+                         KeyComparator keyComparator, ChecksumVerification checksumVerification, ReadMode readMode,
+                         Metrics metrics) {
+        this.entry = entry;
+        this.paths = paths;
+        this.recordCache = recordCache;
+        this.indexCache = indexCache;
+        this.keyComparator = keyComparator;
+        this.checksumVerification = checksumVerification;
+        this.readMode = readMode;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public long id() {
+        return entry.tableId();
+    }
+
+    @Override
+    public boolean mightContain(Key key) {
+        return table().mightContain(key);
+    }
+
+    @Override
+    public Tuple get(Key key) {
+        return table().get(key);
+    }
+
+    @Override
+    public CloseableIterator<Tuple> ascendingIterator(long snapshotId) {
+        return table().ascendingIterator(snapshotId);
+    }
+
+    @Override
+    public CloseableIterator<Tuple> descendingIterator(long snapshotId) {
+        return table().descendingIterator(snapshotId);
+    }
+
+    @Override
+    public CloseableIterator<Tuple> ascendingIterator(Key key, long snapshotId) {
+        return table().ascendingIterator(key, snapshotId);
+    }
+
+    @Override
+    public CloseableIterator<Tuple> descendingIterator(Key key, long snapshotId) {
+        return table().descendingIterator(key, snapshotId);
+    }
+
+    @Override
+    public CloseableIterator<Tuple> ascendingIterator(long snapshotId, ReadOptions options) {
+        return table().ascendingIterator(snapshotId, options);
+    }
+
+    @Override
+    public CloseableIterator<Tuple> descendingIterator(long snapshotId, ReadOptions options) {
+        return table().descendingIterator(snapshotId, options);
+    }
+
+    @Override
+    public CloseableIterator<Tuple> ascendingIterator(Key key, long snapshotId, ReadOptions options) {
+        return table().ascendingIterator(key, snapshotId, options);
+    }
+
+    @Override
+    public CloseableIterator<Tuple> descendingIterator(Key key, long snapshotId, ReadOptions options) {
+        return table().descendingIterator(key, snapshotId, options);
+    }
+
+    @Override
+    public long tupleCount() {
+        return entry.tupleCount();
+    }
+
+    @Override
+    public long size() {
+        return entry.size();
+    }
+
+    @Override
+    public int level() {
+        return entry.level();
+    }
+
+    @Override
+    public long maxSnapshotId() {
+        return entry.maxSnapshotId();
+    }
+
+    @Override
+    public ByteBuffer minKey() {
+        return entry.minKey();
+    }
+
+    @Override
+    public ByteBuffer maxKey() {
+        return entry.maxKey();
+    }
+
+    @Override
+    public synchronized void close() {
+        closed = true;
+
+        if (table != null) {
+            table.close();
+        }
+    }
+
+    @Override
+    public boolean isPersistent() {
+        return true;
+    }
+
+    @Override
+    public Iterator<Tuple> iterator() {
+        return table().iterator();
+    }
+
+    @Override
+    public int compareTo(Table o) {
+        return Long.compare(id(), o.id());
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        LazyFileTable that = (LazyFileTable) o;
+
+        if (id() != that.id()) return false;
+
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) (id() ^ (id() >>> 32));
+    }
+
+    @Override
+    public String toString() {
+        return "LazyFileTable{" +
+                "tableId=" + id() +
+                ", level=" + level() +
+                ", open=" + (table != null) +
+                '}';
+    }
+
+    private FileTable table() {
+        FileTable opened = table;
+
+        if (opened != null) {
+            return opened;
+        }
+
+        synchronized (this) {
+            if (closed) {
+                throw new IllegalStateException("Table " + id() + " has been closed");
+            }
+
+            if (table == null) {
+                try {
+                    table = FileTable.open(id(), paths, recordCache, indexCache, keyComparator, checksumVerification,
+                            readMode, metrics);
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+
+            return table;
+        }
+    }
+}
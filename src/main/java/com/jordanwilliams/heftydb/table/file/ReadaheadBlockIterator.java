@@ -0,0 +1,185 @@
+/*
+ * Copyright (c) 2014. Jordan Williams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jordanwilliams.heftydb.table.file;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Reads the TupleBlocks of another block iterator ahead of the caller on a small pool of I/O threads that is shared
+ * by every scan, so that a scan decodes one block while the next ones are being read.
+ * <p/>
+ * The blocks of a Table file can only be found by reading them in order, so each iterator has at most one read in
+ * flight. The number of blocks it keeps read ahead starts at one and doubles with every block the caller takes, up
+ * to a maximum, in the same way that the operating system grows the readahead window of a file that is read
+ * sequentially.
+ */
+public class ReadaheadBlockIterator implements Iterator<TupleBlock>, Closeable {
+
+    private static final String THREADS_PROPERTY = "heftydb.readaheadThreads";
+    private static final ExecutorService ioPool = Executors.newFixedThreadPool(Integer.getInteger
+            (THREADS_PROPERTY, 4), new ThreadFactoryBuilder().setNameFormat("Readahead thread %d").setDaemon(true)
+            .build());
+
+    private final Iterator<TupleBlock> source;
+    private final int maxDepth;
+    private final ArrayDeque<TupleBlock> blocks = new ArrayDeque<TupleBlock>();
+    private final Runnable readTask = new Runnable() {
+        @Override
+        public void run() {
+            readAhead();
+        }
+    };
+
+    private int depth = 1;
+    private boolean reading;
+    private boolean sourceExhausted;
+    private boolean closed;
+    private RuntimeException failure;
+
+    public ReadaheadBlockIterator(Iterator<TupleBlock> source, int maxDepth) {
+        this.source = source;
+        this.maxDepth = Math.max(maxDepth, 1);
+    }
+
+    @Override
+    public synchronized boolean hasNext() {
+        while (blocks.isEmpty()) {
+            if (failure != null) {
+                throw failure;
+            }
+
+            if (closed || (sourceExhausted && !reading)) {
+                return false;
+            }
+
+            scheduleRead();
+            awaitRead();
+        }
+
+        return true;
+    }
+
+    @Override
+    public synchronized TupleBlock next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+
+        TupleBlock block = blocks.poll();
+        depth = Math.min(depth * 2, maxDepth);
+        scheduleRead();
+        return block;
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Releases the blocks that have been read ahead, after waiting for a read in flight so that the source is not
+     * read once the scan is closed.
+     */
+    @Override
+    public synchronized void close() {
+        closed = true;
+
+        while (reading) {
+            awaitRead();
+        }
+
+        for (TupleBlock block : blocks) {
+            block.memory().release();
+        }
+
+        blocks.clear();
+    }
+
+    private void scheduleRead() {
+        if (reading || closed || sourceExhausted || failure != null || blocks.size() >= depth) {
+            return;
+        }
+
+        reading = true;
+        ioPool.execute(readTask);
+    }
+
+    private void awaitRead() {
+        try {
+            wait();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Runs on an I/O thread and reads blocks until the window is full. Only one read task of an iterator runs at a
+     * time, so the source is never read concurrently.
+     */
+    private void readAhead() {
+        while (true) {
+            synchronized (this) {
+                if (closed || blocks.size() >= depth) {
+                    finishRead();
+                    return;
+                }
+            }
+
+            TupleBlock block = null;
+            RuntimeException error = null;
+
+            try {
+                if (source.hasNext()) {
+                    block = source.next();
+                }
+            } catch (Throwable t) {
+                //The caller rethrows the failure, and must not wait forever for a read that died
+                error = t instanceof RuntimeException ? (RuntimeException) t : new RuntimeException(t);
+            }
+
+            synchronized (this) {
+                if (error != null || block == null) {
+                    failure = error;
+                    sourceExhausted = true;
+                    finishRead();
+                    return;
+                }
+
+                if (closed) {
+                    block.memory().release();
+                    finishRead();
+                    return;
+                }
+
+                blocks.add(block);
+                notifyAll();
+            }
+        }
+    }
+
+    private void finishRead() {
+        reading = false;
+        notifyAll();
+    }
+}
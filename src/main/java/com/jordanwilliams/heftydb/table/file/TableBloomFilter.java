@@ -16,48 +16,125 @@
 
 package com.jordanwilliams.heftydb.table.file;
 
+import com.jordanwilliams.heftydb.cache.MemoryBudget;
 import com.jordanwilliams.heftydb.data.Key;
 import com.jordanwilliams.heftydb.io.ImmutableChannelFile;
 import com.jordanwilliams.heftydb.io.ImmutableFile;
+import com.jordanwilliams.heftydb.offheap.BitSet;
 import com.jordanwilliams.heftydb.offheap.BloomFilter;
+import com.jordanwilliams.heftydb.offheap.JVMUnsafe;
 import com.jordanwilliams.heftydb.offheap.MemoryAllocator;
+import com.jordanwilliams.heftydb.offheap.MemoryOwner;
 import com.jordanwilliams.heftydb.offheap.MemoryPointer;
 import com.jordanwilliams.heftydb.offheap.Offheap;
 import com.jordanwilliams.heftydb.state.Paths;
+import com.jordanwilliams.heftydb.util.Sizes;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 
 /**
- * Reads an immutable BloomFilter from a file.
+ * Reads an immutable BloomFilter from a file. The filter is pinned in memory if the MemoryBudget has room for it.
+ * Otherwise the file is memory mapped, so that each lookup only pages in the words of the filter that it probes,
+ * and the operating system can evict them again.
  */
 public class TableBloomFilter implements Offheap {
 
     private final BloomFilter bloomFilter;
+    private final MappedByteBuffer mappedFilter;
+    private final MemoryBudget budget;
+    private final int hashFunctionCount;
+    private final long bitCount;
 
-    private TableBloomFilter(BloomFilter bloomFilter) throws IOException {
+    private TableBloomFilter(BloomFilter bloomFilter, MemoryBudget budget) {
         this.bloomFilter = bloomFilter;
+        this.mappedFilter = null;
+        this.budget = budget;
+        this.hashFunctionCount = 0;
+        this.bitCount = 0;
+    }
+
+    private TableBloomFilter(MappedByteBuffer mappedFilter) {
+        this.bloomFilter = null;
+        this.mappedFilter = mappedFilter;
+        this.budget = null;
+        mappedFilter.order(ByteOrder.nativeOrder());
+        int bitSetSize = mappedFilter.capacity() - Sizes.INT_SIZE;
+        this.hashFunctionCount = mappedFilter.getInt(bitSetSize);
+        this.bitCount = bitSetSize * 8L;
     }
 
     public boolean mightContain(Key key) {
-        return bloomFilter.mightContain(key);
+        if (bloomFilter != null) {
+            return bloomFilter.mightContain(key);
+        }
+
+        long hash = BloomFilter.hash(key);
+
+        for (int i = 1; i <= hashFunctionCount; i++) {
+            long bitIndex = BloomFilter.probe(hash, i, bitCount);
+
+            if (!BitSet.isSet(mappedFilter.getLong(BitSet.memoryOffset(bitIndex)), bitIndex)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    public boolean isPaged() {
+        return bloomFilter == null;
     }
 
-    public void close() {
-        bloomFilter.memory().release();
+    public void close() throws IOException {
+        if (bloomFilter != null) {
+            budget.release(MemoryBudget.Tier.FILTER, bloomFilter.memory().size());
+            bloomFilter.memory().release();
+        } else {
+            //Unmaps the file now rather than whenever the buffer is garbage collected
+            JVMUnsafe.unsafe.invokeCleaner(mappedFilter);
+        }
     }
 
+    /**
+     * @return the memory of the filter, or null if the filter is paged
+     */
     @Override
     public MemoryPointer memory() {
-        return bloomFilter.memory();
+        return bloomFilter == null ? null : bloomFilter.memory();
     }
 
-    public static TableBloomFilter read(long tableId, Paths paths) throws IOException {
+    public static TableBloomFilter read(long tableId, Paths paths, MemoryBudget budget) throws IOException {
         ImmutableFile filterFile = ImmutableChannelFile.open(paths.filterPath(tableId));
-        MemoryPointer filterPointer = MemoryAllocator.allocate((int) filterFile.size());
+        int filterSize = (int) filterFile.size();
+
+        if (!budget.tryReserve(MemoryBudget.Tier.FILTER, filterSize)) {
+            filterFile.close();
+            return new TableBloomFilter(map(paths, tableId, filterSize));
+        }
+
+        MemoryPointer filterPointer = MemoryAllocator.allocate(filterSize, MemoryOwner.FILTER);
         ByteBuffer filterBuffer = filterPointer.directBuffer();
         filterFile.read(filterBuffer, 0);
         filterFile.close();
-        return new TableBloomFilter(new BloomFilter(filterPointer));
+        return new TableBloomFilter(new BloomFilter(filterPointer), budget);
+    }
+
+    public static TableBloomFilter read(long tableId, Paths paths) throws IOException {
+        return read(tableId, paths, new MemoryBudget(0));
+    }
+
+    private static MappedByteBuffer map(Paths paths, long tableId, int filterSize) throws IOException {
+        FileChannel channel = FileChannel.open(paths.filterPath(tableId), StandardOpenOption.READ);
+
+        try {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, filterSize);
+        } finally {
+            channel.close();
+        }
     }
 }
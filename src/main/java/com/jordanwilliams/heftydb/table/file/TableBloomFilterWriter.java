@@ -52,6 +52,14 @@ public class TableBloomFilterWriter {
         filter.memory().release();
     }
 
+    public void abort() throws IOException {
+        try {
+            filterBuilder.build().memory().release();
+        } finally {
+            filterFile.close();
+        }
+    }
+
     public static TableBloomFilterWriter open(long tableId, Paths paths, long approxRecordCount) throws IOException {
         AppendFile filterFile = AppendChannelFile.open(paths.filterPath(tableId));
         return new TableBloomFilterWriter(filterFile, approxRecordCount);
@@ -16,29 +16,44 @@
 
 package com.jordanwilliams.heftydb.table.file;
 
+import com.jordanwilliams.heftydb.data.KeyComparators;
 import com.jordanwilliams.heftydb.data.Tuple;
 import com.jordanwilliams.heftydb.io.ImmutableFile;
+import com.jordanwilliams.heftydb.util.Sizes;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
 
 /**
- * Encapsulates meta data stored at the end of a Table file.
+ * Encapsulates meta data stored at the end of a Table file. The trailer ends with its format version and a magic
+ * number. Tables written before the trailer was versioned have a shorter trailer without either, and are always
+ * ordered by KeyComparators.BYTEWISE.
  */
 public class TableTrailer {
 
-    public static final int SIZE = 28;
+    public static final int LEGACY_VERSION = 0;
+    public static final int CURRENT_VERSION = 1;
+    public static final int LEGACY_SIZE = 28;
+    public static final int SIZE = 44;
+
+    private static final long MAGIC = 0x4865667479444254L;
 
     public static class Builder {
 
         private final long tableId;
         private final int level;
+        private final int keyComparatorId;
         private long recordCount;
         private long maxSnapshotId;
 
-        public Builder(long tableId, int level) {
+        public Builder(long tableId, int level, int keyComparatorId) {
             this.tableId = tableId;
             this.level = level;
+            this.keyComparatorId = keyComparatorId;
+        }
+
+        public Builder(long tableId, int level) {
+            this(tableId, level, KeyComparators.BYTEWISE.id());
         }
 
         public void put(Tuple tuple) {
@@ -56,6 +71,9 @@ public class TableTrailer {
             trailerBuffer.putInt(level);
             trailerBuffer.putLong(recordCount);
             trailerBuffer.putLong(maxSnapshotId);
+            trailerBuffer.putInt(keyComparatorId);
+            trailerBuffer.putInt(CURRENT_VERSION);
+            trailerBuffer.putLong(MAGIC);
             trailerBuffer.rewind();
             return trailerBuffer;
         }
@@ -66,12 +84,23 @@ public class TableTrailer {
     private final int level;
     private final long recordCount;
     private final long maxSnapshotId;
+    private final int keyComparatorId;
+    private final int version;
 
     public TableTrailer(ByteBuffer buffer) {
         this.tableId = buffer.getLong();
         this.level = buffer.getInt();
         this.recordCount = buffer.getLong();
         this.maxSnapshotId = buffer.getLong();
+
+        if (buffer.capacity() == LEGACY_SIZE) {
+            this.keyComparatorId = KeyComparators.BYTEWISE.id();
+            this.version = LEGACY_VERSION;
+        } else {
+            this.keyComparatorId = buffer.getInt();
+            this.version = buffer.getInt();
+        }
+
         buffer.rewind();
         this.buffer = buffer;
     }
@@ -92,13 +121,50 @@ public class TableTrailer {
         return level;
     }
 
+    public int keyComparatorId() {
+        return keyComparatorId;
+    }
+
+    public int version() {
+        return version;
+    }
+
+    /**
+     * Tables written before the trailer was versioned have no checksums after their tuple and index blocks.
+     */
+    public boolean hasBlockChecksums() {
+        return version > LEGACY_VERSION;
+    }
+
+    public int size() {
+        return buffer.capacity();
+    }
+
     public ByteBuffer buffer() {
         return buffer;
     }
 
     public static TableTrailer read(ImmutableFile tableFile) throws IOException {
-        ByteBuffer trailerBuffer = ByteBuffer.allocate(SIZE);
-        tableFile.read(trailerBuffer, tableFile.size() - SIZE);
+        long fileSize = tableFile.size();
+        int trailerSize = LEGACY_SIZE;
+
+        if (fileSize >= SIZE && tableFile.readLong(fileSize - Sizes.LONG_SIZE) == MAGIC) {
+            int version = tableFile.readInt(fileSize - Sizes.LONG_SIZE - Sizes.INT_SIZE);
+
+            if (version != CURRENT_VERSION) {
+                throw new IOException("Table trailer has format version " + version + ", but only versions up to " +
+                        CURRENT_VERSION + " are supported");
+            }
+
+            trailerSize = SIZE;
+        }
+
+        if (fileSize < trailerSize) {
+            throw new IOException("Table file of " + fileSize + " bytes is too short to hold a trailer");
+        }
+
+        ByteBuffer trailerBuffer = ByteBuffer.allocate(trailerSize);
+        tableFile.read(trailerBuffer, fileSize - trailerSize);
         trailerBuffer.rewind();
         return new TableTrailer(trailerBuffer);
     }
@@ -18,6 +18,8 @@ package com.jordanwilliams.heftydb.table.file;
 
 import com.codahale.metrics.Gauge;
 import com.googlecode.concurrentlinkedhashmap.Weigher;
+import com.jordanwilliams.heftydb.cache.CachePolicy;
+import com.jordanwilliams.heftydb.cache.MemoryBudget;
 import com.jordanwilliams.heftydb.cache.TableBlockCache;
 import com.jordanwilliams.heftydb.data.Key;
 import com.jordanwilliams.heftydb.data.Tuple;
@@ -41,12 +43,21 @@ public class TupleBlock implements Iterable<Tuple>, Offheap {
         private final TableBlockCache<TupleBlock> cache;
 
         public Cache(long maxSize, Metrics metrics) {
-            cache = new TableBlockCache<TupleBlock>(maxSize, new Weigher<TupleBlock>() {
-                @Override
-                public int weightOf(TupleBlock tuple) {
-                    return tuple.memory().size();
-                }
-            });
+            this(maxSize, 0, CachePolicy.LRU, metrics);
+        }
+
+        public Cache(long maxSize, int expectedBlockSize, CachePolicy policy, Metrics metrics) {
+            this(maxSize, expectedBlockSize, policy, new MemoryBudget(0), metrics);
+        }
+
+        public Cache(long maxSize, int expectedBlockSize, CachePolicy policy, MemoryBudget budget, Metrics metrics) {
+            cache = new TableBlockCache<TupleBlock>(maxSize, expectedBlockSize, policy, budget, MemoryBudget.Tier.DATA,
+                    new Weigher<TupleBlock>() {
+                        @Override
+                        public int weightOf(TupleBlock tuple) {
+                            return tuple.memory().size();
+                        }
+                    });
 
             metrics.gauge("cache.tupleBlock.entrySize", new Gauge<Long>() {
                 @Override
@@ -61,6 +72,20 @@ public class TupleBlock implements Iterable<Tuple>, Offheap {
                     return cache.utilizationRate();
                 }
             });
+
+            metrics.gauge("cache.tupleBlock.policy", new Gauge<String>() {
+                @Override
+                public String getValue() {
+                    return cache.policy().toString();
+                }
+            });
+
+            metrics.gauge("cache.tupleBlock.rejectedAdmissions", new Gauge<Long>() {
+                @Override
+                public Long getValue() {
+                    return cache.rejectedAdmissions();
+                }
+            });
         }
 
         public TupleBlock get(long tableId, long offset) {
@@ -75,6 +100,10 @@ public class TupleBlock implements Iterable<Tuple>, Offheap {
             cache.invalidate(tableId);
         }
 
+        public MemoryBudget budget() {
+            return cache.budget();
+        }
+
         public void clear() {
             cache.clear();
         }
@@ -0,0 +1,425 @@
+/*
+ * Copyright (c) 2014. Jordan Williams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jordanwilliams.heftydb.table.memory;
+
+import com.jordanwilliams.heftydb.data.Key;
+import com.jordanwilliams.heftydb.data.KeyComparator;
+import com.jordanwilliams.heftydb.data.KeyComparators;
+import com.jordanwilliams.heftydb.data.Tuple;
+import com.jordanwilliams.heftydb.data.Value;
+import com.jordanwilliams.heftydb.offheap.JVMUnsafe;
+import com.jordanwilliams.heftydb.offheap.MemoryAllocator;
+import com.jordanwilliams.heftydb.offheap.MemoryOwner;
+import com.jordanwilliams.heftydb.offheap.MemoryPointer;
+import com.jordanwilliams.heftydb.read.LatestTupleIterator;
+import com.jordanwilliams.heftydb.util.CloseableIterator;
+import com.jordanwilliams.heftydb.util.Sizes;
+import com.jordanwilliams.heftydb.util.XORShiftRandom;
+import sun.misc.Unsafe;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A SortedTupleMap that keeps its skip list nodes, keys and values in large blocks of off-heap memory, so that a full
+ * MemoryTable is a handful of objects to the garbage collector rather than several per Tuple. Each node is laid out
+ * as follows:
+ * <p/>
+ * [height int][key size int][value size int][padding int][snapshot id long][next node address long * height][key]
+ * [value]
+ * <p/>
+ * Reads are lock free and may run concurrently with a single writer. The memory is freed once the map is closed and
+ * every iterator over it has been closed or exhausted.
+ */
+public class ArenaTupleMap implements SortedTupleMap {
+
+    private class NodeIterator implements CloseableIterator<Tuple> {
+
+        private final boolean ascending;
+        private long node;
+        private boolean released;
+
+        private NodeIterator(Key startKey, boolean ascending) {
+            if (!retain()) {
+                throw new IllegalStateException("ArenaTupleMap has been freed");
+            }
+
+            this.ascending = ascending;
+
+            if (ascending) {
+                this.node = startKey == null ? nextNode(head, 0) : findGreaterOrEqual(startKey);
+            } else {
+                this.node = startKey == null ? findLast() : findFloor(startKey);
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (node == 0) {
+                close();
+                return false;
+            }
+
+            return true;
+        }
+
+        @Override
+        public Tuple next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+
+            Tuple tuple = tuple(node);
+            node = ascending ? nextNode(node, 0) : findLessThan(tuple.key());
+            return tuple;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void close() {
+            if (!released) {
+                released = true;
+                node = 0;
+                release();
+            }
+        }
+    }
+
+    private static final Unsafe unsafe = JVMUnsafe.unsafe;
+    private static final long BYTE_ARRAY_OFFSET = unsafe.arrayBaseOffset(byte[].class);
+
+    private static final int DEFAULT_ARENA_SIZE = 1024 * 1024;
+    private static final int MAX_HEIGHT = 12;
+    private static final int BRANCHING_FACTOR = 4;
+
+    private static final int HEIGHT_OFFSET = 0;
+    private static final int KEY_SIZE_OFFSET = HEIGHT_OFFSET + Sizes.INT_SIZE;
+    private static final int VALUE_SIZE_OFFSET = KEY_SIZE_OFFSET + Sizes.INT_SIZE;
+    private static final int SNAPSHOT_ID_OFFSET = VALUE_SIZE_OFFSET + Sizes.INT_SIZE * 2;
+    private static final int NEXT_OFFSET = SNAPSHOT_ID_OFFSET + Sizes.LONG_SIZE;
+
+    private final int arenaSize;
+    private final KeyComparator keyComparator;
+    private final List<MemoryPointer> arenas = new ArrayList<MemoryPointer>();
+    private final AtomicInteger retainCount = new AtomicInteger(1);
+    private final XORShiftRandom random = new XORShiftRandom(System.nanoTime());
+    private final long head;
+
+    private volatile int height = 1;
+    private long arenaPosition;
+    private long arenaLimit;
+
+    public ArenaTupleMap(int arenaSize, KeyComparator keyComparator) {
+        this.arenaSize = arenaSize;
+        this.keyComparator = keyComparator;
+        this.head = allocate(NEXT_OFFSET + MAX_HEIGHT * Sizes.LONG_SIZE);
+        unsafe.setMemory(head, NEXT_OFFSET + MAX_HEIGHT * Sizes.LONG_SIZE, (byte) 0);
+        unsafe.putInt(head + HEIGHT_OFFSET, MAX_HEIGHT);
+    }
+
+    public ArenaTupleMap(int arenaSize) {
+        this(arenaSize, KeyComparators.BYTEWISE);
+    }
+
+    public ArenaTupleMap(KeyComparator keyComparator) {
+        this(DEFAULT_ARENA_SIZE, keyComparator);
+    }
+
+    public ArenaTupleMap() {
+        this(DEFAULT_ARENA_SIZE);
+    }
+
+    @Override
+    public synchronized void put(Key key, Value value) {
+        long[] previous = new long[MAX_HEIGHT];
+        long node = head;
+
+        for (int level = height - 1; level >= 0; level--) {
+            long next = nextNode(node, level);
+
+            while (next != 0 && compare(next, key) < 0) {
+                node = next;
+                next = nextNode(node, level);
+            }
+
+            previous[level] = node;
+        }
+
+        int nodeHeight = randomHeight();
+
+        if (nodeHeight > height) {
+            for (int level = height; level < nodeHeight; level++) {
+                previous[level] = head;
+            }
+
+            height = nodeHeight;
+        }
+
+        long newNode = writeNode(key, value, nodeHeight);
+
+        //Link from the bottom up so that a reader never reaches a node that is missing from a lower level
+        for (int level = 0; level < nodeHeight; level++) {
+            unsafe.putLong(nextAddress(newNode, level), nextNode(previous[level], level));
+            unsafe.putLongVolatile(null, nextAddress(previous[level], level), newNode);
+        }
+    }
+
+    @Override
+    public Tuple get(Key key) {
+        if (!retain()) {
+            return null;
+        }
+
+        try {
+            long node = findFloor(key);
+
+            if (node == 0 || compareData(node, key.data()) != 0) {
+                return null;
+            }
+
+            return tuple(node);
+        } finally {
+            release();
+        }
+    }
+
+    @Override
+    public CloseableIterator<Tuple> ascendingIterator(long snapshotId) {
+        return new LatestTupleIterator(snapshotId, new NodeIterator(null, true));
+    }
+
+    @Override
+    public CloseableIterator<Tuple> descendingIterator(long snapshotId) {
+        return new LatestTupleIterator(snapshotId, new NodeIterator(null, false));
+    }
+
+    @Override
+    public CloseableIterator<Tuple> ascendingIterator(Key key, long snapshotId) {
+        return new LatestTupleIterator(snapshotId, new NodeIterator(key, true));
+    }
+
+    @Override
+    public CloseableIterator<Tuple> descendingIterator(Key key, long snapshotId) {
+        return new LatestTupleIterator(snapshotId, new NodeIterator(key, false));
+    }
+
+    @Override
+    public void close() {
+        release();
+    }
+
+    @Override
+    public Iterator<Tuple> iterator() {
+        return new NodeIterator(null, true);
+    }
+
+    private boolean retain() {
+        while (true) {
+            int retainValue = retainCount.get();
+
+            if (retainValue <= 0) {
+                return false;
+            }
+
+            if (retainCount.compareAndSet(retainValue, retainValue + 1)) {
+                return true;
+            }
+        }
+    }
+
+    private void release() {
+        if (retainCount.decrementAndGet() == 0) {
+            synchronized (this) {
+                for (MemoryPointer arena : arenas) {
+                    arena.free();
+                }
+
+                arenas.clear();
+            }
+        }
+    }
+
+    private long findGreaterOrEqual(Key key) {
+        long node = head;
+
+        for (int level = height - 1; level >= 0; level--) {
+            long next = nextNode(node, level);
+
+            while (next != 0 && compare(next, key) < 0) {
+                node = next;
+                next = nextNode(node, level);
+            }
+        }
+
+        return nextNode(node, 0);
+    }
+
+    private long findFloor(Key key) {
+        long node = head;
+
+        for (int level = height - 1; level >= 0; level--) {
+            long next = nextNode(node, level);
+
+            while (next != 0 && compare(next, key) <= 0) {
+                node = next;
+                next = nextNode(node, level);
+            }
+        }
+
+        return node == head ? 0 : node;
+    }
+
+    private long findLessThan(Key key) {
+        long node = head;
+
+        for (int level = height - 1; level >= 0; level--) {
+            long next = nextNode(node, level);
+
+            while (next != 0 && compare(next, key) < 0) {
+                node = next;
+                next = nextNode(node, level);
+            }
+        }
+
+        return node == head ? 0 : node;
+    }
+
+    private long findLast() {
+        long node = head;
+
+        for (int level = height - 1; level >= 0; level--) {
+            long next = nextNode(node, level);
+
+            while (next != 0) {
+                node = next;
+                next = nextNode(node, level);
+            }
+        }
+
+        return node == head ? 0 : node;
+    }
+
+    private int compare(long node, Key key) {
+        int compared = compareData(node, key.data());
+
+        if (compared != 0) {
+            return compared;
+        }
+
+        return Long.compare(unsafe.getLong(node + SNAPSHOT_ID_OFFSET), key.snapshotId());
+    }
+
+    private int compareData(long node, ByteBuffer data) {
+        return keyComparator.compare(keyAddress(node), unsafe.getInt(node + KEY_SIZE_OFFSET), data);
+    }
+
+    private Tuple tuple(long node) {
+        int keySize = unsafe.getInt(node + KEY_SIZE_OFFSET);
+        int valueSize = unsafe.getInt(node + VALUE_SIZE_OFFSET);
+        long snapshotId = unsafe.getLong(node + SNAPSHOT_ID_OFFSET);
+        long keyAddress = keyAddress(node);
+
+        ByteBuffer keyBuffer = ByteBuffer.allocate(keySize);
+        unsafe.copyMemory(null, keyAddress, keyBuffer.array(), BYTE_ARRAY_OFFSET, keySize);
+
+        Value value = Value.TOMBSTONE_VALUE;
+
+        if (valueSize > 0) {
+            ByteBuffer valueBuffer = ByteBuffer.allocate(valueSize);
+            unsafe.copyMemory(null, keyAddress + keySize, valueBuffer.array(), BYTE_ARRAY_OFFSET, valueSize);
+            value = new Value(valueBuffer);
+        }
+
+        return new Tuple(new Key(keyBuffer, snapshotId), value);
+    }
+
+    private long writeNode(Key key, Value value, int nodeHeight) {
+        int keySize = key.size();
+        int valueSize = value.size();
+        long node = allocate(NEXT_OFFSET + nodeHeight * Sizes.LONG_SIZE + keySize + valueSize);
+
+        unsafe.putInt(node + HEIGHT_OFFSET, nodeHeight);
+        unsafe.putInt(node + KEY_SIZE_OFFSET, keySize);
+        unsafe.putInt(node + VALUE_SIZE_OFFSET, valueSize);
+        unsafe.putLong(node + SNAPSHOT_ID_OFFSET, key.snapshotId());
+
+        long keyAddress = keyAddress(node);
+        copyToAddress(key.data(), keyAddress);
+        copyToAddress(value.data(), keyAddress + keySize);
+
+        return node;
+    }
+
+    private long allocate(int size) {
+        int alignedSize = (size + Sizes.LONG_SIZE - 1) & ~(Sizes.LONG_SIZE - 1);
+
+        if (arenaPosition + alignedSize > arenaLimit) {
+            MemoryPointer arena = MemoryAllocator.allocate(Math.max(arenaSize, alignedSize),
+                    MemoryOwner.MEMORY_TABLE);
+            arenas.add(arena);
+            arenaPosition = arena.address();
+            arenaLimit = arenaPosition + arena.size();
+        }
+
+        long address = arenaPosition;
+        arenaPosition += alignedSize;
+        return address;
+    }
+
+    private int randomHeight() {
+        int nodeHeight = 1;
+
+        while (nodeHeight < MAX_HEIGHT && random.nextInt(BRANCHING_FACTOR) == 0) {
+            nodeHeight++;
+        }
+
+        return nodeHeight;
+    }
+
+    private static long nextNode(long node, int level) {
+        return unsafe.getLongVolatile(null, nextAddress(node, level));
+    }
+
+    private static long nextAddress(long node, int level) {
+        return node + NEXT_OFFSET + level * Sizes.LONG_SIZE;
+    }
+
+    private static long keyAddress(long node) {
+        return node + NEXT_OFFSET + unsafe.getInt(node + HEIGHT_OFFSET) * Sizes.LONG_SIZE;
+    }
+
+    private static void copyToAddress(ByteBuffer buffer, long address) {
+        int size = buffer.capacity();
+
+        if (buffer.hasArray()) {
+            unsafe.copyMemory(buffer.array(), BYTE_ARRAY_OFFSET + buffer.arrayOffset(), null, address, size);
+            return;
+        }
+
+        for (int i = 0; i < size; i++) {
+            unsafe.putByte(address + i, buffer.get(i));
+        }
+    }
+}
@@ -18,10 +18,13 @@ package com.jordanwilliams.heftydb.table.memory;
 
 import com.jordanwilliams.heftydb.data.Key;
 import com.jordanwilliams.heftydb.data.Tuple;
+import com.jordanwilliams.heftydb.db.ReadOptions;
 import com.jordanwilliams.heftydb.table.MutableTable;
 import com.jordanwilliams.heftydb.table.Table;
 import com.jordanwilliams.heftydb.util.CloseableIterator;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.Iterator;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
@@ -32,13 +35,18 @@ import java.util.concurrent.atomic.AtomicLong;
 public class MemoryTable implements MutableTable {
 
     private final long id;
-    private final SortedTupleMap records = new SkipListTupleMap();
+    private final SortedTupleMap records;
     private final AtomicLong maxSnapshotId = new AtomicLong();
     private final AtomicInteger recordCount = new AtomicInteger();
     private final AtomicInteger size = new AtomicInteger();
 
-    public MemoryTable(long id) {
+    public MemoryTable(long id, SortedTupleMap records) {
         this.id = id;
+        this.records = records;
+    }
+
+    public MemoryTable(long id) {
+        this(id, new SkipListTupleMap());
     }
 
     @Override
@@ -84,6 +92,26 @@ public class MemoryTable implements MutableTable {
         return records.descendingIterator(key, snapshotId);
     }
 
+    @Override
+    public CloseableIterator<Tuple> ascendingIterator(long snapshotId, ReadOptions options) {
+        return ascendingIterator(snapshotId);
+    }
+
+    @Override
+    public CloseableIterator<Tuple> descendingIterator(long snapshotId, ReadOptions options) {
+        return descendingIterator(snapshotId);
+    }
+
+    @Override
+    public CloseableIterator<Tuple> ascendingIterator(Key key, long snapshotId, ReadOptions options) {
+        return ascendingIterator(key, snapshotId);
+    }
+
+    @Override
+    public CloseableIterator<Tuple> descendingIterator(Key key, long snapshotId, ReadOptions options) {
+        return descendingIterator(key, snapshotId);
+    }
+
     @Override
     public long tupleCount() {
         return recordCount.get();
@@ -104,8 +132,19 @@ public class MemoryTable implements MutableTable {
         return maxSnapshotId.get();
     }
 
+    @Override
+    public ByteBuffer minKey() {
+        return firstKey(records.ascendingIterator(Long.MAX_VALUE));
+    }
+
+    @Override
+    public ByteBuffer maxKey() {
+        return firstKey(records.descendingIterator(Long.MAX_VALUE));
+    }
+
     @Override
     public void close() {
+        records.close();
     }
 
     @Override
@@ -122,4 +161,16 @@ public class MemoryTable implements MutableTable {
     public int compareTo(Table o) {
         return Long.compare(id, o.id());
     }
+
+    private static ByteBuffer firstKey(CloseableIterator<Tuple> iterator) {
+        try {
+            return iterator.hasNext() ? iterator.next().key().data() : null;
+        } finally {
+            try {
+                iterator.close();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
 }
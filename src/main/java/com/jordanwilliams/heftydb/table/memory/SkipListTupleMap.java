@@ -17,6 +17,7 @@
 package com.jordanwilliams.heftydb.table.memory;
 
 import com.jordanwilliams.heftydb.data.Key;
+import com.jordanwilliams.heftydb.data.KeyComparator;
 import com.jordanwilliams.heftydb.data.Tuple;
 import com.jordanwilliams.heftydb.data.Value;
 import com.jordanwilliams.heftydb.read.LatestTupleIterator;
@@ -32,7 +33,15 @@ import java.util.concurrent.ConcurrentSkipListMap;
  */
 public class SkipListTupleMap implements SortedTupleMap {
 
-    private final ConcurrentNavigableMap<Key, Tuple> tuples = new ConcurrentSkipListMap<Key, Tuple>();
+    private final ConcurrentNavigableMap<Key, Tuple> tuples;
+
+    public SkipListTupleMap(KeyComparator keyComparator) {
+        this.tuples = new ConcurrentSkipListMap<Key, Tuple>(Key.comparator(keyComparator));
+    }
+
+    public SkipListTupleMap() {
+        this.tuples = new ConcurrentSkipListMap<Key, Tuple>();
+    }
 
     @Override
     public void put(Key key, Value value) {
@@ -73,6 +82,10 @@ public class SkipListTupleMap implements SortedTupleMap {
                 true).descendingMap().values().iterator()));
     }
 
+    @Override
+    public void close() {
+    }
+
     @Override
     public Iterator<Tuple> iterator() {
         return tuples.values().iterator();
@@ -38,4 +38,5 @@ public interface SortedTupleMap extends Iterable<Tuple> {
 
     public CloseableIterator<Tuple> descendingIterator(Key key, long snapshotId);
 
+    public void close();
 }
@@ -0,0 +1,41 @@
+/*
+ * Copyright (c) 2014. Jordan Williams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jordanwilliams.heftydb.table.memory;
+
+import com.jordanwilliams.heftydb.data.KeyComparator;
+
+/**
+ * Contains the built in SortedTupleMap implementations that can back a MemoryTable.
+ */
+public enum SortedTupleMaps {
+
+    SKIP_LIST_TUPLE_MAP {
+        @Override
+        public SortedTupleMap create(KeyComparator keyComparator) {
+            return new SkipListTupleMap(keyComparator);
+        }
+    },
+
+    ARENA_TUPLE_MAP {
+        @Override
+        public SortedTupleMap create(KeyComparator keyComparator) {
+            return new ArenaTupleMap(keyComparator);
+        }
+    };
+
+    public abstract SortedTupleMap create(KeyComparator keyComparator);
+}
@@ -198,6 +198,10 @@ public class SynchronizedTupleMap implements SortedTupleMap {
         }
     }
 
+    @Override
+    public void close() {
+    }
+
     @Override
     public Iterator<Tuple> iterator() {
         lock.lock();
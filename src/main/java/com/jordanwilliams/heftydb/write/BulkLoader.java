@@ -0,0 +1,352 @@
+/*
+ * Copyright (c) 2014. Jordan Williams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jordanwilliams.heftydb.write;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.jordanwilliams.heftydb.data.Key;
+import com.jordanwilliams.heftydb.data.KeyComparator;
+import com.jordanwilliams.heftydb.data.Tuple;
+import com.jordanwilliams.heftydb.data.Value;
+import com.jordanwilliams.heftydb.db.Config;
+import com.jordanwilliams.heftydb.db.Record;
+import com.jordanwilliams.heftydb.db.Snapshot;
+import com.jordanwilliams.heftydb.metrics.Metrics;
+import com.jordanwilliams.heftydb.state.Caches;
+import com.jordanwilliams.heftydb.state.Paths;
+import com.jordanwilliams.heftydb.state.RangeTombstones;
+import com.jordanwilliams.heftydb.state.Snapshots;
+import com.jordanwilliams.heftydb.state.Tables;
+import com.jordanwilliams.heftydb.table.Table;
+import com.jordanwilliams.heftydb.table.file.FileTable;
+import com.jordanwilliams.heftydb.table.file.FileTableWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Writes FileTables directly from sources of Records that are already sorted by key, which skips the commit log,
+ * MemoryTables and the compactions that would otherwise follow. Each source is split into tables of about
+ * Config.bulkLoadTableSize bytes. All Records from a load share a single new snapshot id, and the tables become
+ * visible together once every source has been written. The key ranges of the sources must not overlap, as their
+ * tables all share one level.
+ */
+public class BulkLoader {
+
+    private static final Logger logger = LoggerFactory.getLogger(BulkLoader.class);
+
+    private class SourceWriter implements Callable<List<Long>> {
+
+        private final Iterator<Record> records;
+        private final long snapshotId;
+        private final int level;
+        private final List<Long> tableIds = new ArrayList<Long>();
+
+        private long tupleCount;
+        private long tupleBytes;
+        private ByteBuffer firstKey;
+        private ByteBuffer lastKey;
+
+        private SourceWriter(Iterator<Record> records, long snapshotId, int level) {
+            this.records = records;
+            this.snapshotId = snapshotId;
+            this.level = level;
+        }
+
+        @Override
+        public List<Long> call() throws Exception {
+            try {
+                Tuple next = nextTuple();
+
+                while (next != null) {
+                    next = writeTable(next);
+                }
+
+                return tableIds;
+            } catch (Exception e) {
+                deleteTables(tableIds);
+                throw e;
+            }
+        }
+
+        /**
+         * Writes Tuples to a new table until it reaches the target size, and returns the first Tuple that did not
+         * fit.
+         */
+        private Tuple writeTable(Tuple next) throws IOException {
+            long tableId = tables.reserveId();
+            tableIds.add(tableId);
+
+            long averageTupleSize = tupleCount == 0 ? next.size() : tupleBytes / tupleCount;
+            long approxTupleCount = Math.max(config.bulkLoadTableSize() / Math.max(averageTupleSize, 1), 1);
+            FileTableWriter tableWriter = FileTableWriter.open(tableId, paths, approxTupleCount,
+                    config.indexBlockSize(), config.tableBlockSize(), level, keyComparator);
+            long tableSize = 0;
+            boolean written = false;
+
+            try {
+                while (next != null && tableSize < config.bulkLoadTableSize()) {
+                    tableWriter.write(next);
+
+                    if (firstKey == null) {
+                        firstKey = next.key().data();
+                    }
+
+                    lastKey = next.key().data();
+                    tableSize += next.size();
+                    tupleBytes += next.size();
+                    tupleCount++;
+
+                    Tuple following = nextTuple();
+
+                    if (following != null && keyComparator.compare(next.key().data(), following.key().data()) >= 0) {
+                        throw new IllegalArgumentException("Bulk load source is not sorted by key with unique keys");
+                    }
+
+                    next = following;
+                }
+
+                written = true;
+            } finally {
+                //Close the unfinished table before its files are deleted
+                if (!written) {
+                    tableWriter.abort();
+                }
+            }
+
+            tableWriter.finish();
+            Files.move(paths.tempPath(tableId), paths.tablePath(tableId), StandardCopyOption.ATOMIC_MOVE);
+
+            return next;
+        }
+
+        private Tuple nextTuple() {
+            if (!records.hasNext()) {
+                return null;
+            }
+
+            Record record = records.next();
+            record.key().rewind();
+
+            Value value = Value.TOMBSTONE_VALUE;
+
+            if (record.value() != null) {
+                record.value().rewind();
+                value = new Value(record.value());
+            }
+
+            return new Tuple(new Key(record.key(), snapshotId), value);
+        }
+    }
+
+    private final Config config;
+    private final Paths paths;
+    private final Tables tables;
+    private final RangeTombstones rangeTombstones;
+    private final Snapshots snapshots;
+    private final Caches caches;
+    private final KeyComparator keyComparator;
+    private final Metrics metrics;
+
+    public BulkLoader(Config config, Paths paths, Tables tables, RangeTombstones rangeTombstones, Snapshots snapshots,
+                      Caches caches, Metrics metrics) {
+        this.config = config;
+        this.paths = paths;
+        this.tables = tables;
+        this.rangeTombstones = rangeTombstones;
+        this.snapshots = snapshots;
+        this.caches = caches;
+        this.keyComparator = config.keyComparator();
+        this.metrics = metrics;
+    }
+
+    /**
+     * Loads each source on its own thread, up to Config.tableWriterThreads at once. No newer snapshot is taken until
+     * the load has finished, so writes wait for it and take precedence over loaded Records with the same key. If any
+     * source fails, nothing is loaded.
+     */
+    public Snapshot load(List<? extends Iterator<Record>> sources) throws IOException {
+        long snapshotId = rangeTombstones.startLoad(snapshots);
+        long maxTableId = 0;
+
+        try {
+            try {
+                maxTableId = load(sources, snapshotId);
+            } finally {
+                rangeTombstones.finishLoad(snapshotId, maxTableId);
+            }
+        } finally {
+            snapshots.finishLoad(snapshotId);
+        }
+
+        return new Snapshot(snapshotId);
+    }
+
+    /**
+     * Writes and publishes the tables of a load, and returns the id of the newest one.
+     */
+    private long load(List<? extends Iterator<Record>> sources, long snapshotId) throws IOException {
+        int level = loadLevel();
+        int threads = Math.max(Math.min(sources.size(), config.tableWriterThreads()), 1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads, new ThreadFactoryBuilder().setNameFormat
+                ("Bulk load thread %d").build());
+
+        List<SourceWriter> writers = new ArrayList<SourceWriter>();
+        List<Future<List<Long>>> futures = new ArrayList<Future<List<Long>>>();
+        List<Long> tableIds = new ArrayList<Long>();
+        Throwable failure = null;
+
+        try {
+            for (Iterator<Record> source : sources) {
+                SourceWriter writer = new SourceWriter(source, snapshotId, level);
+                writers.add(writer);
+                futures.add(executor.submit(writer));
+            }
+
+            for (Future<List<Long>> future : futures) {
+                try {
+                    tableIds.addAll(future.get());
+                } catch (ExecutionException e) {
+                    if (failure == null) {
+                        failure = e.getCause();
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failure = e;
+        } finally {
+            executor.shutdownNow();
+        }
+
+        if (failure == null) {
+            failure = checkKeyRanges(writers);
+        }
+
+        if (failure != null) {
+            deleteTables(tableIds);
+
+            if (failure instanceof IOException) {
+                throw (IOException) failure;
+            }
+
+            if (failure instanceof RuntimeException) {
+                throw (RuntimeException) failure;
+            }
+
+            throw new RuntimeException(failure);
+        }
+
+        tables.replace(openTables(tableIds), Collections.<Table>emptyList());
+        caches.rowCache().invalidateAll(snapshotId);
+        logger.debug("Bulk loaded " + tableIds.size() + " tables at snapshot " + snapshotId);
+
+        return tableIds.isEmpty() ? 0 : Collections.max(tableIds);
+    }
+
+    /**
+     * Returns an IllegalArgumentException if the key ranges of any two sources overlap, or null if none do.
+     */
+    private IllegalArgumentException checkKeyRanges(List<SourceWriter> writers) {
+        List<SourceWriter> written = new ArrayList<SourceWriter>();
+
+        for (SourceWriter writer : writers) {
+            if (writer.firstKey != null) {
+                written.add(writer);
+            }
+        }
+
+        Collections.sort(written, new Comparator<SourceWriter>() {
+            @Override
+            public int compare(SourceWriter writer1, SourceWriter writer2) {
+                return keyComparator.compare(writer1.firstKey, writer2.firstKey);
+            }
+        });
+
+        for (int i = 1; i < written.size(); i++) {
+            if (keyComparator.compare(written.get(i - 1).lastKey, written.get(i).firstKey) >= 0) {
+                return new IllegalArgumentException("Bulk load sources have overlapping key ranges");
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Loaded tables are much larger than flushed MemoryTables, so they start one level below the deepest existing
+     * table rather than being compacted together with new flushes.
+     */
+    private int loadLevel() {
+        int level = 1;
+
+        tables.readLock();
+
+        try {
+            for (Table table : tables) {
+                if (table.isPersistent()) {
+                    level = Math.max(level, table.level() + 1);
+                }
+            }
+        } finally {
+            tables.readUnlock();
+        }
+
+        return level;
+    }
+
+    private List<Table> openTables(List<Long> tableIds) throws IOException {
+        List<Table> opened = new ArrayList<Table>();
+
+        try {
+            for (Long tableId : tableIds) {
+                opened.add(FileTable.open(tableId, paths, caches.recordBlockCache(), caches.indexBlockCache(),
+                        keyComparator, config.checksumVerification(), config.readMode(), metrics));
+            }
+        } catch (IOException e) {
+            for (Table table : opened) {
+                table.close();
+            }
+
+            deleteTables(tableIds);
+            throw e;
+        }
+
+        return opened;
+    }
+
+    private void deleteTables(List<Long> tableIds) throws IOException {
+        for (Long tableId : tableIds) {
+            Files.deleteIfExists(paths.tempPath(tableId));
+            Files.deleteIfExists(paths.tablePath(tableId));
+            Files.deleteIfExists(paths.indexPath(tableId));
+            Files.deleteIfExists(paths.filterPath(tableId));
+        }
+    }
+}
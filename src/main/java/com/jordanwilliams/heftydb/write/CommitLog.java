@@ -14,39 +14,65 @@
  * limitations under the License.
  */
 
+
 package com.jordanwilliams.heftydb.write;
 
 import com.jordanwilliams.heftydb.data.Tuple;
 import com.jordanwilliams.heftydb.io.ImmutableChannelFile;
 import com.jordanwilliams.heftydb.io.ImmutableFile;
+import com.jordanwilliams.heftydb.io.SequentialFileReader;
 import com.jordanwilliams.heftydb.state.Paths;
 import com.jordanwilliams.heftydb.util.Sizes;
 import com.jordanwilliams.heftydb.util.XORShiftRandom;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.Closeable;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Queue;
+import java.util.zip.CRC32C;
 
 /**
- * Provides a read-only view on a CommitLog file. Commit logs are written with a predictable stream of pseudo random
- * numbers with each record to ensure consistency. A commit log file that contains corrupted records is truncated at
- * the first record that fails this consistency check.
+ * Provides a read-only view on a CommitLog file. A commit log is a header followed by fixed size blocks, and each
+ * record is written as one or more fragments that never cross a block boundary. Every fragment carries a CRC32C of its
+ * contents, so a corrupted or torn record is dropped and reading resumes at the next block without losing track of
+ * the records that follow it.
+ * <p/>
+ * A log may be written over the file of an older log that was recycled. Fragments left behind by the older log fail
+ * their checksum, so in a recycled log a fragment that fails marks the end of the log, unless a later block still
+ * starts with a fragment of this log.
  */
 public class CommitLog implements Iterable<Tuple>, Closeable {
 
-    private class LogIterator implements Iterator<Tuple> {
+    public static final long MAGIC = 0x6865667479646231L;
+    public static final long RECYCLED_MAGIC = 0x6865667479646232L;
+    public static final int HEADER_SIZE = Sizes.LONG_SIZE;
+    public static final int BLOCK_SIZE = 32768;
 
-        private final XORShiftRandom pseudoRandom;
-        private final Queue<Tuple> nextTuple = new LinkedList<Tuple>();
-        private long fileOffset = Sizes.LONG_SIZE;
+    //Fragment header: checksum, payload length and fragment type
+    public static final int FRAGMENT_HEADER_SIZE = Sizes.INT_SIZE + 2 + 1;
 
-        public LogIterator() {
-            this.pseudoRandom = new XORShiftRandom(CommitLog.this.seed);
-        }
+    //Unused space, such as the zeroed tail of a block, has no type
+    public static final byte ZERO_TYPE = 0;
+    public static final byte FULL_TYPE = 1;
+    public static final byte FIRST_TYPE = 2;
+    public static final byte MIDDLE_TYPE = 3;
+    public static final byte LAST_TYPE = 4;
+
+    //Replay fills this many blocks with each read of the file
+    private static final int READ_BUFFER_SIZE = BLOCK_SIZE * 32;
+
+    private static final Logger logger = LoggerFactory.getLogger(CommitLog.class);
+
+    private abstract class RecordIterator implements Iterator<Tuple> {
+
+        private final Queue<Tuple> nextTuple = new LinkedList<Tuple>();
 
         @Override
         public boolean hasNext() {
@@ -81,7 +107,223 @@ public class CommitLog implements Iterable<Tuple>, Closeable {
             throw new UnsupportedOperationException();
         }
 
-        private Tuple nextRecord() {
+        protected abstract Tuple nextRecord();
+    }
+
+    private class LogIterator extends RecordIterator {
+
+        private final SequentialFileReader reader;
+        private final CRC32C crc = new CRC32C();
+        private final byte[] tableIdBytes = tableIdBytes(tableId);
+        private ByteBuffer block = ByteBuffer.allocate(0);
+        private ByteBuffer fragments = ByteBuffer.allocate(BLOCK_SIZE);
+        private final boolean recycled;
+        private boolean inFragmentedRecord;
+        private boolean ended;
+        private long blockOffset = HEADER_SIZE;
+
+        public LogIterator(boolean recycled) {
+            this.recycled = recycled;
+
+            try {
+                this.reader = new SequentialFileReader(logFile, HEADER_SIZE, READ_BUFFER_SIZE);
+                readers.add(reader);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        @Override
+        protected Tuple nextRecord() {
+            try {
+                while (!ended) {
+                    if (block.remaining() < FRAGMENT_HEADER_SIZE) {
+                        if (!readBlock()) {
+                            if (inFragmentedRecord) {
+                                logger.debug("Dropping torn record at the end of commit log " + tableId);
+                            }
+
+                            return null;
+                        }
+
+                        continue;
+                    }
+
+                    int fragmentOffset = block.position();
+                    int checksum = block.getInt();
+                    int length = block.getShort() & 0xFFFF;
+                    byte type = block.get();
+
+                    if (type == ZERO_TYPE) {
+                        block.position(block.limit());
+                        continue;
+                    }
+
+                    if (length > block.remaining()) {
+                        dropCorruptFragment(fragmentOffset);
+                        continue;
+                    }
+
+                    ByteBuffer payload = block.slice();
+                    payload.limit(length);
+                    block.position(block.position() + length);
+
+                    if (checksum != checksum(type, payload)) {
+                        dropCorruptFragment(fragmentOffset);
+                        continue;
+                    }
+
+                    Tuple tuple = readFragment(type, payload, fragmentOffset);
+
+                    if (tuple != null) {
+                        return tuple;
+                    }
+                }
+
+                return null;
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        private Tuple readFragment(byte type, ByteBuffer payload, int fragmentOffset) throws IOException {
+            switch (type) {
+                case FULL_TYPE:
+                    dropFragmentedRecord(fragmentOffset);
+                    return Tuple.SERIALIZER.deserialize(payload);
+                case FIRST_TYPE:
+                    dropFragmentedRecord(fragmentOffset);
+                    fragments.clear();
+                    appendFragment(payload);
+                    inFragmentedRecord = true;
+                    return null;
+                case MIDDLE_TYPE:
+                    if (inFragmentedRecord) {
+                        appendFragment(payload);
+                    }
+                    return null;
+                case LAST_TYPE:
+                    if (!inFragmentedRecord) {
+                        return null;
+                    }
+
+                    appendFragment(payload);
+                    inFragmentedRecord = false;
+                    fragments.flip();
+                    return Tuple.SERIALIZER.deserialize(fragments);
+                default:
+                    dropCorruptFragment(fragmentOffset);
+                    return null;
+            }
+        }
+
+        /**
+         * Blocks are parsed in place in the reader's buffer, so a block is only valid until the next one is read.
+         */
+        private boolean readBlock() throws IOException {
+            if (!reader.hasRemaining()) {
+                reader.close();
+                return false;
+            }
+
+            blockOffset = reader.position();
+            block = reader.read(BLOCK_SIZE);
+
+            return true;
+        }
+
+        private int checksum(byte type, ByteBuffer payload) {
+            crc.reset();
+            crc.update(tableIdBytes);
+            crc.update(type);
+            crc.update(payload);
+            payload.rewind();
+            return (int) crc.getValue();
+        }
+
+        private void appendFragment(ByteBuffer payload) {
+            if (fragments.remaining() < payload.remaining()) {
+                ByteBuffer grown = ByteBuffer.allocate(Math.max(fragments.capacity() * 2, fragments.position() +
+                        payload.remaining()));
+                fragments.flip();
+                grown.put(fragments);
+                fragments = grown;
+            }
+
+            fragments.put(payload);
+        }
+
+        private void dropCorruptFragment(int fragmentOffset) throws IOException {
+            if (recycled && !hasLaterFragment()) {
+                logger.debug("Commit log " + tableId + " ends at offset " + (blockOffset + fragmentOffset));
+                ended = true;
+                reader.close();
+                return;
+            }
+
+            logger.warn("Dropping corrupt record at offset " + (blockOffset + fragmentOffset) + " of " +
+                    "commit log " + tableId);
+            inFragmentedRecord = false;
+            block.position(block.limit());
+        }
+
+        /**
+         * Every block that a log writes starts with one of its fragments, so a corrupt fragment in a recycled log is
+         * only its end if no later block starts with a valid fragment of the log.
+         */
+        private boolean hasLaterFragment() throws IOException {
+            ByteBuffer fragmentHeader = ByteBuffer.allocate(FRAGMENT_HEADER_SIZE);
+            long logSize = logFile.size();
+
+            for (long offset = blockOffset + BLOCK_SIZE; offset + FRAGMENT_HEADER_SIZE <= logSize; offset +=
+                    BLOCK_SIZE) {
+                fragmentHeader.clear();
+                logFile.read(fragmentHeader, offset);
+
+                int checksum = fragmentHeader.getInt(0);
+                int length = fragmentHeader.getShort(Sizes.INT_SIZE) & 0xFFFF;
+                byte type = fragmentHeader.get(Sizes.INT_SIZE + 2);
+
+                if (type == ZERO_TYPE || length > Math.min(BLOCK_SIZE, logSize - offset) - FRAGMENT_HEADER_SIZE) {
+                    continue;
+                }
+
+                ByteBuffer payload = ByteBuffer.allocate(length);
+                logFile.read(payload, offset + FRAGMENT_HEADER_SIZE);
+                payload.rewind();
+
+                if (checksum == checksum(type, payload)) {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+
+        private void dropFragmentedRecord(int fragmentOffset) {
+            if (inFragmentedRecord) {
+                logger.warn("Dropping incomplete record before offset " + (blockOffset + fragmentOffset) + " of " +
+                        "commit log " + tableId);
+                inFragmentedRecord = false;
+            }
+        }
+    }
+
+    /**
+     * Reads logs written before records were framed in checksummed blocks. Each record is followed by the next
+     * number from a pseudo random sequence, and the log is truncated at the first record that breaks the sequence.
+     */
+    private class LegacyLogIterator extends RecordIterator {
+
+        private final XORShiftRandom pseudoRandom;
+        private long fileOffset = Sizes.LONG_SIZE;
+
+        public LegacyLogIterator() {
+            this.pseudoRandom = new XORShiftRandom(CommitLog.this.header);
+        }
+
+        @Override
+        protected Tuple nextRecord() {
             try {
                 if (fileOffset >= logFile.size()) {
                     return null;
@@ -111,12 +353,13 @@ public class CommitLog implements Iterable<Tuple>, Closeable {
 
     private final long tableId;
     private final ImmutableFile logFile;
-    private final long seed;
+    private final long header;
+    private final List<SequentialFileReader> readers = new ArrayList<SequentialFileReader>();
 
     private CommitLog(long tableId, ImmutableFile logFile) throws IOException {
         this.tableId = tableId;
         this.logFile = logFile;
-        this.seed = getSeed();
+        this.header = logFile.size() >= HEADER_SIZE ? logFile.readLong(0) : MAGIC;
     }
 
     public long tableId() {
@@ -125,16 +368,36 @@ public class CommitLog implements Iterable<Tuple>, Closeable {
 
     @Override
     public void close() throws IOException {
+        for (SequentialFileReader reader : readers) {
+            reader.close();
+        }
+
         logFile.close();
     }
 
     @Override
     public Iterator<Tuple> iterator() {
-        return new LogIterator();
+        if (header == MAGIC || header == RECYCLED_MAGIC) {
+            return new LogIterator(header == RECYCLED_MAGIC);
+        }
+
+        return new LegacyLogIterator();
+    }
+
+    /**
+     * The checksum covers the id of the log as well as the fragment, so that fragments left in a file by a log with
+     * a different id are never mistaken for records of this one.
+     */
+    public static int checksum(long tableId, byte type, ByteBuffer payload) {
+        CRC32C crc = new CRC32C();
+        crc.update(tableIdBytes(tableId));
+        crc.update(type);
+        crc.update(payload.duplicate());
+        return (int) crc.getValue();
     }
 
-    private long getSeed() throws IOException {
-        return logFile.readLong(0);
+    private static byte[] tableIdBytes(long tableId) {
+        return ByteBuffer.allocate(Sizes.LONG_SIZE).putLong(tableId).array();
     }
 
     public static CommitLog open(long tableId, Paths paths) throws IOException {
@@ -14,53 +14,92 @@
  * limitations under the License.
  */
 
+
 package com.jordanwilliams.heftydb.write;
 
 import com.jordanwilliams.heftydb.data.Tuple;
 import com.jordanwilliams.heftydb.io.AppendChannelFile;
 import com.jordanwilliams.heftydb.io.AppendFile;
 import com.jordanwilliams.heftydb.state.Paths;
-import com.jordanwilliams.heftydb.util.XORShiftRandom;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 
 /**
  * Writes a CommitLog file. Each write can optionally be fsynced if required.
+ * <p/>
+ * A log can be written into a file that has already been allocated, either zero filled ahead of time or left behind
+ * by an older log, by recycling that file. While the log stays within the allocated length of its file, an fsync
+ * only has to flush data and not file metadata.
  */
 public class CommitLogWriter implements Closeable {
 
+    private static final int PREALLOCATE_BUFFER_SIZE = CommitLog.BLOCK_SIZE * 32;
+    private static final Logger logger = LoggerFactory.getLogger(CommitLogWriter.class);
+
     private final long tableId;
-    private final XORShiftRandom pseudoRandom;
     private final AppendFile logFile;
+    private final long allocatedSize;
+    private final ByteBuffer fragmentHeader = ByteBuffer.allocate(CommitLog.FRAGMENT_HEADER_SIZE);
+    private final ByteBuffer blockPadding = ByteBuffer.allocate(CommitLog.FRAGMENT_HEADER_SIZE);
+
+    private ByteBuffer recordBuffer = ByteBuffer.allocate(CommitLog.BLOCK_SIZE);
+    private int blockOffset;
+    private long logSize = CommitLog.HEADER_SIZE;
 
-    private CommitLogWriter(long tableId, AppendFile logFile) throws IOException {
-        long seed = System.nanoTime();
+    private CommitLogWriter(long tableId, AppendFile logFile, long allocatedSize, boolean recycled) throws
+            IOException {
         this.tableId = tableId;
-        this.pseudoRandom = new XORShiftRandom(seed);
         this.logFile = logFile;
+        this.allocatedSize = allocatedSize;
 
-        logFile.appendLong(seed);
+        logFile.appendLong(recycled ? CommitLog.RECYCLED_MAGIC : CommitLog.MAGIC);
     }
 
     public void append(Tuple tuple, boolean fsync) throws IOException {
-        int serializedSize = Tuple.SERIALIZER.size(tuple);
+        ByteBuffer record = serialize(tuple);
+        boolean firstFragment = true;
 
-        //Serialize in place to avoid an extra copy
-        tuple.rewind();
-        logFile.appendInt(serializedSize);
+        do {
+            int blockRemaining = CommitLog.BLOCK_SIZE - blockOffset;
 
-        logFile.appendInt(tuple.key().size());
-        logFile.append(tuple.key().data());
-        logFile.appendLong(tuple.key().snapshotId());
+            //A fragment header never spans blocks, so a tail too small to hold one is left zeroed
+            if (blockRemaining < CommitLog.FRAGMENT_HEADER_SIZE) {
+                blockPadding.clear();
+                blockPadding.limit(blockRemaining);
+                logFile.append(blockPadding);
+                logSize += blockRemaining;
 
-        logFile.appendInt(tuple.value().size());
-        logFile.append(tuple.value().data());
-        logFile.appendInt(pseudoRandom.nextInt());
-        tuple.rewind();
+                blockOffset = 0;
+                blockRemaining = CommitLog.BLOCK_SIZE;
+            }
+
+            int fragmentSize = Math.min(record.remaining(), blockRemaining - CommitLog.FRAGMENT_HEADER_SIZE);
+            boolean lastFragment = fragmentSize == record.remaining();
+
+            ByteBuffer fragment = record.slice();
+            fragment.limit(fragmentSize);
+            record.position(record.position() + fragmentSize);
+
+            appendFragment(fragmentType(firstFragment, lastFragment), fragment);
+            blockOffset += CommitLog.FRAGMENT_HEADER_SIZE + fragmentSize;
+            firstFragment = false;
+        } while (record.hasRemaining());
 
         if (fsync) {
-            logFile.sync();
+            if (logSize <= allocatedSize) {
+                logFile.syncData();
+            } else {
+                logFile.sync();
+            }
         }
     }
 
@@ -73,8 +112,100 @@ public class CommitLogWriter implements Closeable {
         logFile.close();
     }
 
+    private ByteBuffer serialize(Tuple tuple) {
+        int serializedSize = Tuple.SERIALIZER.size(tuple);
+
+        if (recordBuffer.capacity() < serializedSize) {
+            recordBuffer = ByteBuffer.allocate(serializedSize);
+        }
+
+        tuple.rewind();
+        recordBuffer.clear();
+        recordBuffer.limit(serializedSize);
+        Tuple.SERIALIZER.serialize(tuple, recordBuffer);
+        tuple.rewind();
+
+        return recordBuffer;
+    }
+
+    private void appendFragment(byte type, ByteBuffer fragment) throws IOException {
+        fragmentHeader.clear();
+        fragmentHeader.putInt(CommitLog.checksum(tableId, type, fragment));
+        fragmentHeader.putShort((short) fragment.remaining());
+        fragmentHeader.put(type);
+        fragmentHeader.flip();
+
+        logSize += CommitLog.FRAGMENT_HEADER_SIZE + fragment.remaining();
+        logFile.append(fragmentHeader);
+        logFile.append(fragment);
+    }
+
+    private static byte fragmentType(boolean firstFragment, boolean lastFragment) {
+        if (firstFragment && lastFragment) {
+            return CommitLog.FULL_TYPE;
+        }
+
+        if (firstFragment) {
+            return CommitLog.FIRST_TYPE;
+        }
+
+        return lastFragment ? CommitLog.LAST_TYPE : CommitLog.MIDDLE_TYPE;
+    }
+
+    /**
+     * Makes the creation or renaming of a log file durable, since a data only fsync of the file does not cover it.
+     */
+    private static void syncDirectory(Path path) throws IOException {
+        try {
+            FileChannel directory = FileChannel.open(path.toAbsolutePath().getParent(), StandardOpenOption.READ);
+            directory.force(true);
+            directory.close();
+        } catch (IOException e) {
+            //Some platforms can not open a directory, and persist directory entries along with the file instead
+            logger.debug("Unable to sync the directory of " + path);
+        }
+    }
+
     public static CommitLogWriter open(long tableId, Paths paths) throws IOException {
         AppendFile logFile = AppendChannelFile.open(paths.logPath(tableId));
-        return new CommitLogWriter(tableId, logFile);
+        return new CommitLogWriter(tableId, logFile, 0, false);
+    }
+
+    /**
+     * Zero fills a file of at least the given size at the recycled log path of the given id, so that a later log can
+     * be opened in it with recycle.
+     */
+    public static void preallocate(long logId, Paths paths, long size) throws IOException {
+        long allocatedSize = (size + CommitLog.BLOCK_SIZE - 1) / CommitLog.BLOCK_SIZE * CommitLog.BLOCK_SIZE;
+        Path path = paths.recycledLogPath(logId);
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.CREATE_NEW);
+        ByteBuffer zeros = ByteBuffer.allocateDirect(PREALLOCATE_BUFFER_SIZE);
+        long position = 0;
+
+        try {
+            while (position < allocatedSize) {
+                zeros.clear();
+                zeros.limit((int) Math.min(zeros.capacity(), allocatedSize - position));
+                position += channel.write(zeros, position);
+            }
+
+            channel.force(true);
+        } finally {
+            channel.close();
+        }
+
+        syncDirectory(path);
+    }
+
+    /**
+     * Opens a log in the file of an older log, which must have been moved to its recycled log path once the records
+     * it held were no longer needed.
+     */
+    public static CommitLogWriter recycle(long recycledTableId, long tableId, Paths paths) throws IOException {
+        Path logPath = paths.logPath(tableId);
+        Files.move(paths.recycledLogPath(recycledTableId), logPath, StandardCopyOption.ATOMIC_MOVE);
+        syncDirectory(logPath);
+        AppendFile logFile = AppendChannelFile.open(logPath);
+        return new CommitLogWriter(tableId, logFile, Files.size(logPath), true);
     }
 }
@@ -19,6 +19,7 @@ package com.jordanwilliams.heftydb.write;
 import com.codahale.metrics.Timer;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.jordanwilliams.heftydb.data.Key;
+import com.jordanwilliams.heftydb.data.RangeTombstone;
 import com.jordanwilliams.heftydb.data.Tuple;
 import com.jordanwilliams.heftydb.data.Value;
 import com.jordanwilliams.heftydb.db.Config;
@@ -27,6 +28,7 @@ import com.jordanwilliams.heftydb.io.Throttle;
 import com.jordanwilliams.heftydb.metrics.Metrics;
 import com.jordanwilliams.heftydb.state.Caches;
 import com.jordanwilliams.heftydb.state.Paths;
+import com.jordanwilliams.heftydb.state.RangeTombstones;
 import com.jordanwilliams.heftydb.state.Snapshots;
 import com.jordanwilliams.heftydb.state.Tables;
 import com.jordanwilliams.heftydb.table.Table;
@@ -40,14 +42,22 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.ClosedChannelException;
 import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Handles all write operations to a database. Each write first goes into a MemoryTable,
  * which is written to disk on a background thread once it is full. Writes are serialized so that only one writer
  * thread may proceed at a time.
+ * <p/>
+ * Once a MemoryTable has been written, the file of its commit log is kept for reuse by a later log rather than
+ * deleted, so that appending to a log seldom changes the size of its file. When no such file is left, a zero filled
+ * one is prepared on a background thread for a later log, so that writes never wait for it.
  */
 public class TableWriter {
 
@@ -56,19 +66,25 @@ public class TableWriter {
     private final Config config;
     private final Snapshots snapshots;
     private final ThreadPoolExecutor tableExecutor;
+    private final ThreadPoolExecutor logExecutor;
     private final Tables tables;
+    private final RangeTombstones rangeTombstones;
     private final Paths paths;
     private final Caches caches;
     private final Metrics metrics;
     private final Throttle writeThrottle;
+    private final Queue<Long> recycledLogIds = new ConcurrentLinkedQueue<Long>();
+    private final AtomicBoolean preallocationPending = new AtomicBoolean();
 
     private MemoryTable memoryTable;
     private CommitLogWriter commitLogWriter;
 
-    public TableWriter(Config config, Paths paths, Tables tables, Snapshots snapshots, Caches caches, Metrics metrics) {
+    public TableWriter(Config config, Paths paths, Tables tables, RangeTombstones rangeTombstones,
+                       Snapshots snapshots, Caches caches, Metrics metrics) {
         this.config = config;
         this.paths = paths;
         this.tables = tables;
+        this.rangeTombstones = rangeTombstones;
         this.snapshots = snapshots;
         this.caches = caches;
         this.metrics = metrics;
@@ -78,6 +94,14 @@ public class TableWriter {
                 Long.MAX_VALUE, TimeUnit.DAYS, new LinkedBlockingQueue<Runnable>(config.tableWriterThreads()),
                 new ThreadFactoryBuilder().setNameFormat("Table writer thread %d").build(),
                 new ThreadPoolExecutor.CallerRunsPolicy());
+
+        this.logExecutor = new ThreadPoolExecutor(1, 1, Long.MAX_VALUE, TimeUnit.DAYS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactoryBuilder().setNameFormat("Commit log " +
+                "preallocation thread %d").build(), new ThreadPoolExecutor.DiscardPolicy());
+
+        if (config.recycledLogCount() > 0) {
+            preallocateCommitLog();
+        }
     }
 
     public synchronized Snapshot write(ByteBuffer key, ByteBuffer value, boolean fsync) throws IOException {
@@ -101,6 +125,19 @@ public class TableWriter {
 
         commitLogWriter.append(tuple, fsync);
         memoryTable.put(tuple);
+        caches.rowCache().invalidate(recordKey);
+
+        return new Snapshot(nextSnapshotId);
+    }
+
+    public synchronized Snapshot deleteRange(ByteBuffer start, ByteBuffer end) throws IOException {
+        long nextSnapshotId = snapshots.nextId();
+
+        //Every table that exists now, or that an in-flight compaction is writing, may hold keys in the range
+        long mark = tables.currentId();
+
+        rangeTombstones.add(new RangeTombstone(copy(start), copy(end), nextSnapshotId, mark));
+        caches.rowCache().invalidateAll(nextSnapshotId);
 
         return new Snapshot(nextSnapshotId);
     }
@@ -110,7 +147,17 @@ public class TableWriter {
             commitLogWriter.close();
         }
 
-        tableExecutor.shutdownNow();
+        tableExecutor.shutdown();
+        logExecutor.shutdown();
+
+        //Flushes are left to finish rather than interrupted, so that each one records its table before the Manifest
+        //is closed
+        try {
+            tableExecutor.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+            logExecutor.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
     }
 
     private void rotateMemoryTable() throws IOException {
@@ -120,11 +167,61 @@ public class TableWriter {
         }
 
         long nextTableId = tables.nextId();
-        memoryTable = new MemoryTable(nextTableId);
-        commitLogWriter = CommitLogWriter.open(nextTableId, paths);
+        memoryTable = new MemoryTable(nextTableId, config.memoryTableMap().create(config.keyComparator()));
+        commitLogWriter = openCommitLog(nextTableId);
         tables.add(memoryTable);
     }
 
+    private CommitLogWriter openCommitLog(long tableId) throws IOException {
+        Long recycledLogId = recycledLogIds.poll();
+
+        if (config.recycledLogCount() > 0 && recycledLogIds.isEmpty()) {
+            preallocateCommitLog();
+        }
+
+        if (recycledLogId != null) {
+            return CommitLogWriter.recycle(recycledLogId, tableId, paths);
+        }
+
+        //Rather than zero fill a file here, the log grows as it is written until a prepared file is available
+        return CommitLogWriter.open(tableId, paths);
+    }
+
+    private void preallocateCommitLog() {
+        if (!preallocationPending.compareAndSet(false, true)) {
+            return;
+        }
+
+        logExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    long logId = tables.nextId();
+
+                    //Room for the framing that each record adds in the log on top of its size in the MemoryTable
+                    CommitLogWriter.preallocate(logId, paths, config.memoryTableSize() + config.memoryTableSize() / 4);
+                    recycledLogIds.add(logId);
+                } catch (IOException e) {
+                    logger.warn("Unable to preallocate a commit log", e);
+                } finally {
+                    preallocationPending.set(false);
+                }
+            }
+        });
+    }
+
+    private void recycleCommitLog(long tableId) throws IOException {
+        synchronized (recycledLogIds) {
+            if (recycledLogIds.size() < config.recycledLogCount()) {
+                Files.move(paths.logPath(tableId), paths.recycledLogPath(tableId), StandardCopyOption.ATOMIC_MOVE);
+                recycledLogIds.add(tableId);
+                return;
+            }
+        }
+
+        Files.deleteIfExists(paths.logPath(tableId));
+    }
+
     private void writeMemoryTable(final Table tableToWrite) {
         final FileTableWriter.Task task = new FileTableWriter.Task.Builder().tableId(tableToWrite.id()).level(1)
                 .paths(paths).config(config).source(tableToWrite.ascendingIterator(snapshots.minimumRetainedId())).tupleCount
@@ -134,8 +231,10 @@ public class TableWriter {
             public void finish() {
                 try {
                     tables.swap(FileTable.open(tableToWrite.id(), paths, caches.recordBlockCache(),
-                            caches.indexBlockCache(), metrics), tableToWrite);
-                    Files.deleteIfExists(paths.logPath(tableToWrite.id()));
+                            caches.indexBlockCache(), config.keyComparator(), config.checksumVerification(),
+                            config.readMode(), metrics), tableToWrite);
+                    tableToWrite.close();
+                    recycleCommitLog(tableToWrite.id());
                 } catch (ClosedChannelException e) {
                     logger.debug("File table was only partially written " + tableToWrite.id());
                 } catch (IOException e) {
@@ -155,4 +254,13 @@ public class TableWriter {
 
         metrics.histogram("write.concurrentMemoryTableSerializers").update(tableExecutor.getActiveCount());
     }
+
+    private static ByteBuffer copy(ByteBuffer buffer) {
+        ByteBuffer copy = ByteBuffer.allocate(buffer.capacity());
+        buffer.rewind();
+        copy.put(buffer);
+        buffer.rewind();
+        copy.rewind();
+        return copy;
+    }
 }
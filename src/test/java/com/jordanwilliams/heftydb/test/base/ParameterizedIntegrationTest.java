@@ -20,11 +20,14 @@ import com.jordanwilliams.heftydb.data.Tuple;
 import com.jordanwilliams.heftydb.db.Config;
 import com.jordanwilliams.heftydb.db.DB;
 import com.jordanwilliams.heftydb.db.HeftyDB;
+import com.jordanwilliams.heftydb.io.ReadMode;
+import com.jordanwilliams.heftydb.table.memory.SortedTupleMaps;
 import com.jordanwilliams.heftydb.test.generator.ConfigGenerator;
 import com.jordanwilliams.heftydb.test.generator.TupleGenerator;
 import com.jordanwilliams.heftydb.test.helper.TestFileHelper;
 import org.junit.After;
 import org.junit.AfterClass;
+import org.junit.Assume;
 import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.runner.RunWith;
@@ -69,7 +72,9 @@ public abstract class ParameterizedIntegrationTest {
         for (int i = 0; i < 100; i++) {
             Object[] params = new Object[2];
 
-            Config config = ConfigGenerator.testConfig();
+            Config config = ConfigGenerator.testConfig(i % 2 == 0 ? SortedTupleMaps.SKIP_LIST_TUPLE_MAP :
+                    SortedTupleMaps.ARENA_TUPLE_MAP, i % 4 < 2 ? ReadMode.BUFFERED : ReadMode.DIRECT, i % 8 < 4 ? 0 :
+                    256000, i % 16 < 8 ? 0 : 8192);
             List<Tuple> tuples = tupleGenerator.testRecords(1, 1000, 20, new TupleGenerator.Function<Integer>() {
                         @Override
                         public Integer apply() {
@@ -96,6 +101,8 @@ public abstract class ParameterizedIntegrationTest {
     protected final Config config;
 
     public ParameterizedIntegrationTest(List<Tuple> tuples, Config config) throws IOException {
+        Assume.assumeTrue("File system supports direct reads", config.readMode() != ReadMode.DIRECT ||
+                TestFileHelper.isDirectReadSupported());
         this.db = HeftyDB.open(config);
         this.tuples = tuples;
         this.config = config;
@@ -20,11 +20,13 @@ import com.jordanwilliams.heftydb.compact.CompactionStrategies;
 import com.jordanwilliams.heftydb.db.Config;
 import com.jordanwilliams.heftydb.db.DBState;
 import com.jordanwilliams.heftydb.index.IndexBlock;
+import com.jordanwilliams.heftydb.io.ReadMode;
 import com.jordanwilliams.heftydb.metrics.Metrics;
 import com.jordanwilliams.heftydb.state.Caches;
 import com.jordanwilliams.heftydb.state.Paths;
 import com.jordanwilliams.heftydb.table.Table;
 import com.jordanwilliams.heftydb.table.file.TupleBlock;
+import com.jordanwilliams.heftydb.table.memory.SortedTupleMaps;
 import com.jordanwilliams.heftydb.test.helper.TestFileHelper;
 
 import java.util.Collections;
@@ -55,11 +57,29 @@ public class ConfigGenerator {
     }
 
     public static Config testConfig() {
+        return testConfig(SortedTupleMaps.SKIP_LIST_TUPLE_MAP);
+    }
+
+    public static Config testConfig(SortedTupleMaps memoryTableMap) {
+        return testConfig(memoryTableMap, ReadMode.BUFFERED);
+    }
+
+    public static Config testConfig(SortedTupleMaps memoryTableMap, ReadMode readMode) {
+        return testConfig(memoryTableMap, readMode, 0);
+    }
+
+    public static Config testConfig(SortedTupleMaps memoryTableMap, ReadMode readMode, long rowCacheSize) {
+        return testConfig(memoryTableMap, readMode, rowCacheSize, 0);
+    }
+
+    public static Config testConfig(SortedTupleMaps memoryTableMap, ReadMode readMode, long rowCacheSize,
+                                    long memoryBudget) {
         Config.Builder builder = new Config.Builder();
 
         return builder.compactionStrategy(CompactionStrategies.NULL_COMPACTION_STRATEGY).memoryTableSize(16384)
-                .tableBlockSize(4096).indexBlockSize(4096).tableCacheSize(1024000).indexCacheSize(1024000)
-                .tableDirectory(TestFileHelper.TEMP_PATH).build();
+                .memoryTableMap(memoryTableMap).tableBlockSize(4096).indexBlockSize(4096).tableCacheSize(1024000)
+                .indexCacheSize(1024000).bulkLoadTableSize(4096).readMode(readMode).rowCacheSize(rowCacheSize)
+                .memoryBudget(memoryBudget).tableDirectory(TestFileHelper.TEMP_PATH).build();
     }
 
     public static DBState perfState() {
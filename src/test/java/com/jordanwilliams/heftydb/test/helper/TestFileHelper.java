@@ -16,6 +16,9 @@
 
 package com.jordanwilliams.heftydb.test.helper;
 
+import com.jordanwilliams.heftydb.io.ImmutableFile;
+import com.jordanwilliams.heftydb.io.ReadMode;
+
 import java.io.IOException;
 import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
@@ -26,6 +29,8 @@ public class TestFileHelper {
 
     public static final Path TEMP_PATH = Paths.get("/tmp/heftytest");
 
+    private static Boolean directReadSupported;
+
     public static void cleanUpTestFiles() throws IOException {
         DirectoryStream<Path> filePaths = Files.newDirectoryStream(TEMP_PATH);
 
@@ -41,4 +46,35 @@ public class TestFileHelper {
             Files.createDirectory(TEMP_PATH);
         }
     }
+
+    /**
+     * Returns whether the file system of the test directory supports ReadMode.DIRECT. The check is only made once.
+     */
+    public static synchronized boolean isDirectReadSupported() throws IOException {
+        if (directReadSupported == null) {
+            createTestDirectory();
+            Path probePath = Files.createTempFile(TEMP_PATH, "direct", ".probe");
+
+            try {
+                Files.write(probePath, new byte[(int) Files.getFileStore(probePath).getBlockSize()]);
+                ImmutableFile probeFile = ReadMode.DIRECT.open(probePath);
+
+                try {
+                    probeFile.readInt(0);
+                } finally {
+                    probeFile.close();
+                }
+
+                directReadSupported = true;
+            } catch (IOException e) {
+                directReadSupported = false;
+            } catch (UnsupportedOperationException e) {
+                directReadSupported = false;
+            } finally {
+                Files.deleteIfExists(probePath);
+            }
+        }
+
+        return directReadSupported;
+    }
 }
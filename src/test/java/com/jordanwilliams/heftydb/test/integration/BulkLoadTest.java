@@ -0,0 +1,180 @@
+/*
+ * Copyright (c) 2014. Jordan Williams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jordanwilliams.heftydb.test.integration;
+
+import com.jordanwilliams.heftydb.data.Key;
+import com.jordanwilliams.heftydb.data.Tuple;
+import com.jordanwilliams.heftydb.data.Value;
+import com.jordanwilliams.heftydb.db.Config;
+import com.jordanwilliams.heftydb.db.HeftyDB;
+import com.jordanwilliams.heftydb.db.Record;
+import com.jordanwilliams.heftydb.db.Snapshot;
+import com.jordanwilliams.heftydb.test.base.ParameterizedIntegrationTest;
+import com.jordanwilliams.heftydb.test.generator.TupleGenerator;
+import com.jordanwilliams.heftydb.test.helper.CompareHelper;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+public class BulkLoadTest extends ParameterizedIntegrationTest {
+
+    private static final int SOURCE_COUNT = 3;
+
+    public BulkLoadTest(List<Tuple> tuples, Config config) throws IOException {
+        super(tuples, config);
+    }
+
+    @Test
+    public void bulkLoadTest() throws Exception {
+        writeRecords();
+
+        List<Tuple> loaded = new ArrayList<Tuple>();
+        List<List<Record>> sources = new ArrayList<List<Record>>();
+
+        for (int i = 0; i < SOURCE_COUNT; i++) {
+            sources.add(new ArrayList<Record>());
+        }
+
+        //Each source holds a contiguous range of keys
+        List<Tuple> latest = TupleGenerator.latest(tuples, Long.MAX_VALUE);
+
+        for (int i = 0; i < latest.size(); i++) {
+            ByteBuffer key = latest.get(i).key().data();
+            ByteBuffer value = ByteBuffer.wrap(("loaded" + i).getBytes());
+            loaded.add(new Tuple(new Key(key, 0), new Value(value)));
+            sources.get(i * SOURCE_COUNT / latest.size()).add(new Record(key, value, Snapshot.MAX));
+        }
+
+        List<Iterator<Record>> sourceIterators = new ArrayList<Iterator<Record>>();
+
+        for (List<Record> source : sources) {
+            sourceIterators.add(source.iterator());
+        }
+
+        db = HeftyDB.open(config);
+        db.bulkLoad(sourceIterators);
+
+        compareLoaded(loaded);
+        db.close();
+
+        db = HeftyDB.open(config);
+        compareLoaded(loaded);
+        db.close();
+    }
+
+    @Test
+    public void unsortedSourceTest() throws Exception {
+        writeRecords();
+
+        List<Tuple> latest = TupleGenerator.latest(tuples, Long.MAX_VALUE);
+        List<Record> records = new ArrayList<Record>();
+
+        for (Tuple tuple : latest) {
+            records.add(new Record(tuple.key().data(), ByteBuffer.wrap("loaded".getBytes()), Snapshot.MAX));
+        }
+
+        Collections.reverse(records);
+
+        db = HeftyDB.open(config);
+        Set<Path> files = tableFiles();
+
+        try {
+            db.bulkLoad(records.iterator());
+            Assert.fail("Unsorted source was loaded");
+        } catch (IllegalArgumentException e) {
+            CompareHelper.compareKeyValue(latest.iterator(), db.ascendingIterator(Snapshot.MAX));
+            Assert.assertEquals("Partial tables are deleted", files, tableFiles());
+        }
+
+        db.close();
+    }
+
+    @Test
+    public void overlappingSourcesTest() throws Exception {
+        writeRecords();
+
+        List<Tuple> latest = TupleGenerator.latest(tuples, Long.MAX_VALUE);
+        List<List<Record>> sources = new ArrayList<List<Record>>();
+
+        for (int i = 0; i < SOURCE_COUNT; i++) {
+            sources.add(new ArrayList<Record>());
+        }
+
+        //Every source is sorted, but their key ranges overlap
+        for (int i = 0; i < latest.size(); i++) {
+            sources.get(i % SOURCE_COUNT).add(new Record(latest.get(i).key().data(), ByteBuffer.wrap("loaded"
+                    .getBytes()), Snapshot.MAX));
+        }
+
+        List<Iterator<Record>> sourceIterators = new ArrayList<Iterator<Record>>();
+
+        for (List<Record> source : sources) {
+            sourceIterators.add(source.iterator());
+        }
+
+        db = HeftyDB.open(config);
+        Set<Path> files = tableFiles();
+
+        try {
+            db.bulkLoad(sourceIterators);
+            Assert.fail("Overlapping sources were loaded");
+        } catch (IllegalArgumentException e) {
+            CompareHelper.compareKeyValue(latest.iterator(), db.ascendingIterator(Snapshot.MAX));
+            Assert.assertEquals("Tables are deleted", files, tableFiles());
+        }
+
+        db.close();
+    }
+
+    private Set<Path> tableFiles() throws IOException {
+        Set<Path> files = new TreeSet<Path>();
+
+        DirectoryStream<Path> directory = Files.newDirectoryStream(config.tableDirectory());
+
+        try {
+            for (Path file : directory) {
+                //Spare commit logs are prepared in the background
+                if (!file.getFileName().toString().endsWith(".recycled")) {
+                    files.add(file);
+                }
+            }
+        } finally {
+            directory.close();
+        }
+
+        return files;
+    }
+
+    private void compareLoaded(List<Tuple> loaded) throws IOException {
+        for (Tuple tuple : loaded) {
+            CompareHelper.compareKeyValue(tuple, db.get(tuple.key().data()));
+        }
+
+        CompareHelper.compareKeyValue(loaded.iterator(), db.ascendingIterator(Snapshot.MAX));
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2014. Jordan Williams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jordanwilliams.heftydb.test.integration;
+
+import com.jordanwilliams.heftydb.compact.CompactionStats;
+import com.jordanwilliams.heftydb.data.Tuple;
+import com.jordanwilliams.heftydb.db.Config;
+import com.jordanwilliams.heftydb.db.HeftyDB;
+import com.jordanwilliams.heftydb.db.Record;
+import com.jordanwilliams.heftydb.db.Snapshot;
+import com.jordanwilliams.heftydb.test.base.ParameterizedIntegrationTest;
+import com.jordanwilliams.heftydb.test.generator.TupleGenerator;
+import com.jordanwilliams.heftydb.test.helper.CompareHelper;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class CompactRangeTest extends ParameterizedIntegrationTest {
+
+    public CompactRangeTest(List<Tuple> tuples, Config config) throws IOException {
+        super(tuples, config);
+    }
+
+    @Test
+    public void compactRangeTest() throws Exception {
+        writeRecords();
+        Random random = new Random(System.nanoTime());
+
+        List<Tuple> latest = TupleGenerator.latest(tuples, Long.MAX_VALUE);
+        int startIndex = random.nextInt(latest.size() - 1);
+        int endIndex = startIndex + 1 + random.nextInt(latest.size() - startIndex - 1);
+        ByteBuffer start = latest.get(startIndex).key().data();
+        ByteBuffer end = latest.get(endIndex).key().data();
+
+        db = HeftyDB.open(config);
+        db.deleteRange(start, end);
+
+        List<CompactionStats> compactionStats = db.compactRange(start, end).get();
+        Assert.assertFalse("Tables were compacted", compactionStats.isEmpty());
+
+        for (CompactionStats stats : compactionStats) {
+            Assert.assertTrue("Tables were read", stats.bytesIn() > 0);
+            Assert.assertTrue("Output is not larger than input", stats.tuplesOut() <= stats.tuplesIn());
+            Assert.assertTrue("Deleted tuples were dropped", stats.tuplesDropped() >= endIndex - startIndex);
+        }
+
+        List<Tuple> remaining = new ArrayList<Tuple>(latest.subList(0, startIndex));
+        remaining.addAll(latest.subList(endIndex, latest.size()));
+
+        for (Tuple tuple : remaining) {
+            Record record = db.get(tuple.key().data());
+            CompareHelper.compareKeyValue(tuple, record);
+        }
+
+        CompareHelper.compareKeyValue(remaining.iterator(), db.ascendingIterator(Snapshot.MAX));
+
+        db.close();
+    }
+}
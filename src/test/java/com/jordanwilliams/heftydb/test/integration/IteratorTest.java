@@ -19,6 +19,7 @@ package com.jordanwilliams.heftydb.test.integration;
 import com.jordanwilliams.heftydb.data.Tuple;
 import com.jordanwilliams.heftydb.db.Config;
 import com.jordanwilliams.heftydb.db.HeftyDB;
+import com.jordanwilliams.heftydb.db.ReadOptions;
 import com.jordanwilliams.heftydb.db.Record;
 import com.jordanwilliams.heftydb.db.Snapshot;
 import com.jordanwilliams.heftydb.test.base.ParameterizedIntegrationTest;
@@ -63,4 +64,22 @@ public class IteratorTest extends ParameterizedIntegrationTest {
 
         db.close();
     }
+
+    @Test
+    public void cachedIteratorTest() throws Exception {
+        db = HeftyDB.open(config);
+
+        ReadOptions options = new ReadOptions.Builder().useCache(true).fillCache(true).build();
+        List<Tuple> latest = TupleGenerator.latest(tuples, Long.MAX_VALUE);
+
+        for (int i = 0; i < 2; i++) {
+            CompareHelper.compareKeyValue(latest.iterator(), db.ascendingIterator(Snapshot.MAX, options));
+        }
+
+        List<Tuple> reversed = TupleGenerator.latest(tuples, Long.MAX_VALUE);
+        Collections.reverse(reversed);
+        CompareHelper.compareKeyValue(reversed.iterator(), db.descendingIterator(Snapshot.MAX, options));
+
+        db.close();
+    }
 }
@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2014. Jordan Williams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jordanwilliams.heftydb.test.integration;
+
+import com.jordanwilliams.heftydb.compact.CompactionStrategies;
+import com.jordanwilliams.heftydb.data.KeyComparators;
+import com.jordanwilliams.heftydb.db.Config;
+import com.jordanwilliams.heftydb.db.DB;
+import com.jordanwilliams.heftydb.db.HeftyDB;
+import com.jordanwilliams.heftydb.db.Record;
+import com.jordanwilliams.heftydb.db.Snapshot;
+import com.jordanwilliams.heftydb.table.memory.SortedTupleMaps;
+import com.jordanwilliams.heftydb.test.helper.TestFileHelper;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+
+public class KeyComparatorTest {
+
+    private static final int RECORD_COUNT = 2000;
+
+    @Before
+    public void beforeTest() throws IOException {
+        TestFileHelper.createTestDirectory();
+        TestFileHelper.cleanUpTestFiles();
+    }
+
+    @After
+    public void afterTest() throws IOException {
+        TestFileHelper.cleanUpTestFiles();
+    }
+
+    @Test
+    public void skipListUnsignedOrderTest() throws Exception {
+        unsignedOrderTest(SortedTupleMaps.SKIP_LIST_TUPLE_MAP);
+    }
+
+    @Test
+    public void arenaUnsignedOrderTest() throws Exception {
+        unsignedOrderTest(SortedTupleMaps.ARENA_TUPLE_MAP);
+    }
+
+    @Test(expected = IOException.class)
+    public void mismatchedComparatorTest() throws Exception {
+        Config config = config(SortedTupleMaps.SKIP_LIST_TUPLE_MAP, KeyComparators.UNSIGNED_LEXICOGRAPHIC);
+        DB db = HeftyDB.open(config);
+        writeRecords(db);
+        db.close();
+
+        //Reopening replays the commit logs into tables
+        HeftyDB.open(config).close();
+
+        HeftyDB.open(config(SortedTupleMaps.SKIP_LIST_TUPLE_MAP, KeyComparators.BYTEWISE));
+    }
+
+    private void unsignedOrderTest(SortedTupleMaps memoryTableMap) throws Exception {
+        Config config = config(memoryTableMap, KeyComparators.UNSIGNED_LEXICOGRAPHIC);
+        DB db = HeftyDB.open(config);
+        writeRecords(db);
+
+        //Read from the MemoryTable and FileTables, then again after replaying the commit log
+        for (int i = 0; i < 2; i++) {
+            Iterator<Record> ascending = db.ascendingIterator(Snapshot.MAX);
+
+            for (int key = 0; key < RECORD_COUNT; key++) {
+                Assert.assertEquals("Keys are in unsigned order", key(key).getInt(0), ascending.next().key()
+                        .getInt(0));
+            }
+
+            Assert.assertFalse("All keys were read", ascending.hasNext());
+
+            Iterator<Record> descending = db.descendingIterator(key(RECORD_COUNT / 2), Snapshot.MAX);
+
+            for (int key = RECORD_COUNT / 2; key >= 0; key--) {
+                Assert.assertEquals("Keys are in descending unsigned order", key(key).getInt(0), descending.next().key()
+                        .getInt(0));
+            }
+
+            Assert.assertFalse("All keys were read", descending.hasNext());
+
+            for (int key = 0; key < RECORD_COUNT; key++) {
+                Assert.assertNotNull("Key is found", db.get(key(key)));
+            }
+
+            db.close();
+            db = HeftyDB.open(config);
+        }
+
+        db.close();
+    }
+
+    private static void writeRecords(DB db) throws IOException {
+        for (int i = 0; i < RECORD_COUNT; i++) {
+            db.put(key(i), ByteBuffer.wrap(("value" + i).getBytes()));
+        }
+    }
+
+    /**
+     * Keys in the upper half of the range have their high bit set, so they sort first under signed byte order.
+     */
+    private static ByteBuffer key(int i) {
+        ByteBuffer key = ByteBuffer.allocate(4);
+        key.putInt(i * (Integer.MAX_VALUE / RECORD_COUNT) * 2);
+        key.rewind();
+        return key;
+    }
+
+    private static Config config(SortedTupleMaps memoryTableMap, KeyComparators keyComparator) {
+        return new Config.Builder().compactionStrategy(CompactionStrategies.NULL_COMPACTION_STRATEGY)
+                .memoryTableSize(16384).memoryTableMap(memoryTableMap).keyComparator(keyComparator)
+                .tableBlockSize(4096).indexBlockSize(4096).tableCacheSize(1024000).indexCacheSize(1024000)
+                .tableDirectory(TestFileHelper.TEMP_PATH).build();
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2014. Jordan Williams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jordanwilliams.heftydb.test.performance.cache;
+
+import com.googlecode.concurrentlinkedhashmap.Weigher;
+import com.jordanwilliams.heftydb.cache.CachePolicy;
+import com.jordanwilliams.heftydb.cache.TableBlockCache;
+import com.jordanwilliams.heftydb.offheap.MemoryAllocator;
+import com.jordanwilliams.heftydb.offheap.MemoryPointer;
+import com.jordanwilliams.heftydb.offheap.Offheap;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures the throughput and heap allocation of concurrent block cache hits, and the time taken to invalidate the
+ * blocks of one table in a full cache.
+ */
+public class BlockCachePerformance {
+
+    private static final int BLOCK_SIZE = 64;
+    private static final int TABLE_COUNT = 64;
+    private static final int BLOCKS_PER_TABLE = 8192;
+    private static final int READ_THREADS = 8;
+    private static final int READS_PER_THREAD = 10000000;
+
+    private static class Block implements Offheap {
+
+        private final MemoryPointer memory = MemoryAllocator.allocate(BLOCK_SIZE);
+
+        @Override
+        public MemoryPointer memory() {
+            return memory;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        //Twice the size of the blocks, so that no segment of the cache fills up and every read is a hit
+        final TableBlockCache<Block> cache = new TableBlockCache<Block>(2L * BLOCK_SIZE * TABLE_COUNT *
+                BLOCKS_PER_TABLE, BLOCK_SIZE, CachePolicy.TINY_LFU, new Weigher<Block>() {
+            @Override
+            public int weightOf(Block block) {
+                return block.memory().size();
+            }
+        });
+
+        for (int tableId = 0; tableId < TABLE_COUNT; tableId++) {
+            for (int offset = 0; offset < BLOCKS_PER_TABLE; offset++) {
+                Block block = new Block();
+                cache.put(tableId, offset, block);
+                block.memory().release();
+            }
+        }
+
+        for (int round = 0; round < 3; round++) {
+            final AtomicLong allocatedBytes = new AtomicLong();
+            Thread[] threads = new Thread[READ_THREADS];
+            long startTime = System.nanoTime();
+
+            for (int i = 0; i < READ_THREADS; i++) {
+                final int seed = i;
+                threads[i] = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean)
+                                ManagementFactory.getThreadMXBean();
+                        long threadId = Thread.currentThread().getId();
+                        Random random = new Random(seed);
+                        long startAllocated = threadBean.getThreadAllocatedBytes(threadId);
+
+                        for (int j = 0; j < READS_PER_THREAD; j++) {
+                            Block block = cache.get(random.nextInt(TABLE_COUNT), random.nextInt(BLOCKS_PER_TABLE));
+                            block.memory().release();
+                        }
+
+                        allocatedBytes.addAndGet(threadBean.getThreadAllocatedBytes(threadId) - startAllocated);
+                    }
+                });
+                threads[i].start();
+            }
+
+            for (Thread thread : threads) {
+                thread.join();
+            }
+
+            long elapsedNanos = System.nanoTime() - startTime;
+            long reads = (long) READ_THREADS * READS_PER_THREAD;
+            System.out.println("Cache hits per second " + reads * 1000000000L / elapsedNanos + ", allocated bytes " +
+                    "per hit " + (double) allocatedBytes.get() / reads);
+        }
+
+        long startTime = System.nanoTime();
+        cache.invalidate(TABLE_COUNT / 2);
+        System.out.println("Invalidated a table in " + (System.nanoTime() - startTime) / 1000 + " microseconds");
+
+        cache.clear();
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2014. Jordan Williams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.jordanwilliams.heftydb.test.performance.cache;
+
+import com.googlecode.concurrentlinkedhashmap.Weigher;
+import com.jordanwilliams.heftydb.cache.CachePolicy;
+import com.jordanwilliams.heftydb.cache.TableBlockCache;
+import com.jordanwilliams.heftydb.offheap.MemoryAllocator;
+import com.jordanwilliams.heftydb.offheap.MemoryPointer;
+import com.jordanwilliams.heftydb.offheap.Offheap;
+
+import java.util.Random;
+
+/**
+ * Compares the hit rate of each CachePolicy for skewed point reads that are interleaved with scans of blocks that
+ * are never read again.
+ */
+public class CachePolicyPerformance {
+
+    private static final int BLOCK_SIZE = 4096;
+    private static final int CACHE_BLOCKS = 1000;
+    private static final int HOT_BLOCKS = 10000;
+    private static final int READ_COUNT = 2000000;
+    private static final int SCAN_INTERVAL = 10000;
+    private static final int SCAN_LENGTH = 2000;
+
+    private static class Block implements Offheap {
+
+        private final MemoryPointer memory = MemoryAllocator.allocate(BLOCK_SIZE);
+
+        @Override
+        public MemoryPointer memory() {
+            return memory;
+        }
+    }
+
+    public static void main(String[] args) {
+        for (CachePolicy policy : CachePolicy.values()) {
+            TableBlockCache<Block> cache = new TableBlockCache<Block>(BLOCK_SIZE * CACHE_BLOCKS, BLOCK_SIZE, policy,
+                    new Weigher<Block>() {
+                @Override
+                public int weightOf(Block block) {
+                    return block.memory().size();
+                }
+            });
+
+            Random random = new Random(42);
+            long scanOffset = HOT_BLOCKS;
+            int hits = 0;
+
+            for (int i = 0; i < READ_COUNT; i++) {
+                if (read(cache, skewedOffset(random))) {
+                    hits++;
+                }
+
+                if (i % SCAN_INTERVAL == 0) {
+                    for (int j = 0; j < SCAN_LENGTH; j++) {
+                        read(cache, scanOffset++);
+                    }
+                }
+            }
+
+            System.out.println(policy + " point read hit rate " + (double) hits / READ_COUNT + ", rejected " +
+                    "admissions " + cache.rejectedAdmissions());
+            cache.clear();
+        }
+    }
+
+    /**
+     * Offsets follow a power law, so a small number of blocks receive most of the reads.
+     */
+    private static long skewedOffset(Random random) {
+        return (long) (HOT_BLOCKS * Math.pow(random.nextDouble(), 3));
+    }
+
+    private static boolean read(TableBlockCache<Block> cache, long offset) {
+        Block block = cache.get(1, offset);
+
+        if (block != null) {
+            block.memory().release();
+            return true;
+        }
+
+        block = new Block();
+        cache.put(1, offset, block);
+        block.memory().release();
+        return false;
+    }
+}
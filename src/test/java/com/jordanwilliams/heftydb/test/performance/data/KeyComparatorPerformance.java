@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2014. Jordan Williams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jordanwilliams.heftydb.test.performance.data;
+
+import com.codahale.metrics.ConsoleReporter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.jordanwilliams.heftydb.data.Key;
+import com.jordanwilliams.heftydb.data.KeyComparator;
+import com.jordanwilliams.heftydb.data.KeyComparators;
+import com.jordanwilliams.heftydb.data.Value;
+import com.jordanwilliams.heftydb.offheap.JVMUnsafe;
+import com.jordanwilliams.heftydb.offheap.SortedByteMap;
+import com.jordanwilliams.heftydb.test.helper.PerformanceHelper;
+import sun.misc.Unsafe;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Times binary searches over a SortedByteMap of keys that share a long common prefix, which is the case that makes
+ * key comparison dominate a block search.
+ */
+public class KeyComparatorPerformance {
+
+    private static final Unsafe unsafe = JVMUnsafe.unsafe;
+    private static final int KEY_COUNT = 512;
+    private static final int ITERATIONS = 1000000;
+    private static final int[] KEY_SIZES = {8, 16, 32, 64, 128, 256};
+
+    /**
+     * The byte at a time comparison that block searches used before keys were compared a word at a time.
+     */
+    private static final KeyComparator BYTE_AT_A_TIME = new KeyComparator() {
+        @Override
+        public int id() {
+            return -1;
+        }
+
+        @Override
+        public int compare(ByteBuffer key1, ByteBuffer key2) {
+            return key1.compareTo(key2);
+        }
+
+        @Override
+        public int compare(long address, int size, ByteBuffer key) {
+            int compareCount = Math.min(size, key.remaining());
+
+            for (int i = 0; i < compareCount; i++) {
+                byte bufferKeyVal = unsafe.getByte(address + i);
+                byte compareKeyVal = key.get(i);
+
+                if (bufferKeyVal != compareKeyVal) {
+                    return bufferKeyVal < compareKeyVal ? -1 : 1;
+                }
+            }
+
+            return size - key.remaining();
+        }
+    };
+
+    public static void main(String[] args) {
+        MetricRegistry metrics = new MetricRegistry();
+        ConsoleReporter reporter = PerformanceHelper.consoleReporter(metrics);
+        Random random = new Random(System.nanoTime());
+
+        for (int keySize : KEY_SIZES) {
+            List<Key> keys = keys(keySize, random);
+            SortedByteMap.Builder builder = new SortedByteMap.Builder();
+
+            for (Key key : keys) {
+                builder.add(key, new Value(ByteBuffer.allocate(0)));
+            }
+
+            SortedByteMap built = builder.build();
+
+            search(metrics.timer(keySize + ".byteAtATime"), new SortedByteMap(built.memory(), BYTE_AT_A_TIME),
+                    keys, random);
+            search(metrics.timer(keySize + ".bytewise"), new SortedByteMap(built.memory(), KeyComparators.BYTEWISE),
+                    keys, random);
+            search(metrics.timer(keySize + ".unsignedLexicographic"), new SortedByteMap(built.memory(),
+                    KeyComparators.UNSIGNED_LEXICOGRAPHIC), keys, random);
+
+            built.memory().release();
+        }
+
+        reporter.report();
+    }
+
+    private static void search(Timer timer, SortedByteMap sortedByteMap, List<Key> keys, Random random) {
+        //Warm up before timing
+        for (int i = 0; i < ITERATIONS / 10; i++) {
+            sortedByteMap.floorIndex(keys.get(random.nextInt(keys.size())));
+        }
+
+        for (int i = 0; i < ITERATIONS; i++) {
+            Key key = keys.get(random.nextInt(keys.size()));
+            Timer.Context watch = timer.time();
+            sortedByteMap.floorIndex(key);
+            watch.stop();
+        }
+    }
+
+    /**
+     * Keys only differ in their last 4 bytes, and those bytes stay below 0x80 so that signed and unsigned order
+     * agree.
+     */
+    private static List<Key> keys(int keySize, Random random) {
+        byte[] prefix = new byte[keySize];
+        random.nextBytes(prefix);
+        List<Key> keys = new ArrayList<Key>();
+
+        for (int i = 0; i < KEY_COUNT; i++) {
+            ByteBuffer data = ByteBuffer.allocate(keySize);
+            data.put(prefix, 0, keySize - 4);
+            data.putInt(random.nextInt(Integer.MAX_VALUE) & 0x7F7F7F7F);
+            data.rewind();
+            keys.add(new Key(data, 0));
+        }
+
+        Collections.sort(keys);
+        return keys;
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 2014. Jordan Williams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.jordanwilliams.heftydb.test.performance.db;
+
+import com.codahale.metrics.ConsoleReporter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.jordanwilliams.heftydb.db.Config;
+import com.jordanwilliams.heftydb.db.DB;
+import com.jordanwilliams.heftydb.db.HeftyDB;
+import com.jordanwilliams.heftydb.test.generator.KeyValueGenerator;
+import com.jordanwilliams.heftydb.test.helper.PerformanceHelper;
+import com.jordanwilliams.heftydb.test.helper.TestFileHelper;
+import com.jordanwilliams.heftydb.util.ByteBuffers;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Measures the latency of writes that are fsynced to the commit log, with every log written to a new file and with
+ * log files recycled.
+ */
+public class DurableWritePerformance {
+
+    private static final int RECORD_COUNT = 50000;
+
+    public static void main(String[] args) throws Exception {
+        TestFileHelper.createTestDirectory();
+        KeyValueGenerator keyValueGenerator = new KeyValueGenerator();
+        ByteBuffer testValueBuffer = keyValueGenerator.testValue(100);
+
+        MetricRegistry metrics = new MetricRegistry();
+        ConsoleReporter reporter = PerformanceHelper.consoleReporter(metrics);
+
+        for (int recycledLogCount : new int[]{0, 4}) {
+            TestFileHelper.cleanUpTestFiles();
+
+            //A small MemoryTable so that the benchmark rotates through many commit logs
+            Config config = new Config.Builder().directory(TestFileHelper.TEMP_PATH).memoryTableSize(1024000)
+                    .recycledLogCount(recycledLogCount).maxWriteRate(Integer.MAX_VALUE).build();
+
+            DB db = HeftyDB.open(config);
+            Timer writeTimer = metrics.timer("writes.recycledLogs." + recycledLogCount);
+
+            for (int i = 0; i < RECORD_COUNT; i++) {
+                Timer.Context watch = writeTimer.time();
+                db.put(ByteBuffers.fromString(i + ""), testValueBuffer.slice(), true);
+                watch.stop();
+            }
+
+            db.close();
+        }
+
+        reporter.report();
+        TestFileHelper.cleanUpTestFiles();
+        System.exit(0);
+    }
+}
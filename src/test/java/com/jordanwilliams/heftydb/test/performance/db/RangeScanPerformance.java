@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2014. Jordan Williams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jordanwilliams.heftydb.test.performance.db;
+
+import com.codahale.metrics.ConsoleReporter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.jordanwilliams.heftydb.data.Value;
+import com.jordanwilliams.heftydb.db.Config;
+import com.jordanwilliams.heftydb.db.DB;
+import com.jordanwilliams.heftydb.db.HeftyDB;
+import com.jordanwilliams.heftydb.db.ReadOptions;
+import com.jordanwilliams.heftydb.db.Snapshot;
+import com.jordanwilliams.heftydb.test.generator.KeyValueGenerator;
+import com.jordanwilliams.heftydb.test.helper.PerformanceHelper;
+import com.jordanwilliams.heftydb.test.helper.TestFileHelper;
+import com.jordanwilliams.heftydb.util.ByteBuffers;
+import com.jordanwilliams.heftydb.util.CloseableIterator;
+
+import java.util.Random;
+
+/**
+ * Measures repeated short range scans over a small hot range of a database, with and without the table block cache.
+ */
+public class RangeScanPerformance {
+
+    private static final int RECORD_COUNT = 1000000;
+    private static final int HOT_RANGE_SIZE = 10000;
+    private static final int SCAN_LENGTH = 100;
+    private static final int SCAN_COUNT = 100000;
+
+    public static void main(String[] args) throws Exception {
+        MetricRegistry metrics = new MetricRegistry();
+        ConsoleReporter reporter = PerformanceHelper.consoleReporter(metrics);
+
+        TestFileHelper.createTestDirectory();
+        KeyValueGenerator keyValueGenerator = new KeyValueGenerator();
+        Value value = new Value(keyValueGenerator.testValue(100));
+
+        Config config = new Config.Builder().directory(TestFileHelper.TEMP_PATH).maxWriteRate(Integer.MAX_VALUE)
+                .build();
+
+        DB db = HeftyDB.open(config);
+
+        for (int i = 0; i < RECORD_COUNT; i++) {
+            value.data().rewind();
+            db.put(ByteBuffers.fromString(String.format("%010d", i)), value.data());
+        }
+
+        db.close();
+
+        scan("uncachedScans", ReadOptions.DEFAULT, config, metrics);
+        scan("cachedScans", new ReadOptions.Builder().useCache(true).fillCache(true).build(), config, metrics);
+
+        reporter.report();
+
+        TestFileHelper.cleanUpTestFiles();
+    }
+
+    private static void scan(String name, ReadOptions options, Config config, MetricRegistry metrics)
+            throws Exception {
+        Random random = new Random(1);
+        Timer scanTimer = metrics.timer(name);
+        DB db = HeftyDB.open(config);
+
+        for (int i = 0; i < SCAN_COUNT; i++) {
+            String startKey = String.format("%010d", random.nextInt(HOT_RANGE_SIZE));
+            Timer.Context watch = scanTimer.time();
+            CloseableIterator<?> iterator = db.ascendingIterator(ByteBuffers.fromString(startKey), Snapshot.MAX,
+                    options);
+
+            for (int j = 0; j < SCAN_LENGTH && iterator.hasNext(); j++) {
+                iterator.next();
+            }
+
+            iterator.close();
+            watch.stop();
+        }
+
+        db.close();
+    }
+}
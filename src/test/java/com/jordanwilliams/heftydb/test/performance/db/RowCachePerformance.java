@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2014. Jordan Williams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jordanwilliams.heftydb.test.performance.db;
+
+import com.codahale.metrics.ConsoleReporter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.jordanwilliams.heftydb.data.Value;
+import com.jordanwilliams.heftydb.db.Config;
+import com.jordanwilliams.heftydb.db.DB;
+import com.jordanwilliams.heftydb.db.HeftyDB;
+import com.jordanwilliams.heftydb.test.generator.KeyValueGenerator;
+import com.jordanwilliams.heftydb.test.helper.PerformanceHelper;
+import com.jordanwilliams.heftydb.test.helper.TestFileHelper;
+import com.jordanwilliams.heftydb.util.ByteBuffers;
+
+import java.util.Random;
+
+/**
+ * Measures skewed point reads of a database with and without the row cache.
+ */
+public class RowCachePerformance {
+
+    private static final int RECORD_COUNT = 1000000;
+    private static final int READ_COUNT = 2000000;
+
+    public static void main(String[] args) throws Exception {
+        MetricRegistry metrics = new MetricRegistry();
+        ConsoleReporter reporter = PerformanceHelper.consoleReporter(metrics);
+
+        TestFileHelper.createTestDirectory();
+        KeyValueGenerator keyValueGenerator = new KeyValueGenerator();
+        Value value = new Value(keyValueGenerator.testValue(100));
+
+        Config.Builder builder = new Config.Builder().directory(TestFileHelper.TEMP_PATH).maxWriteRate(Integer
+                .MAX_VALUE);
+        DB db = HeftyDB.open(builder.build());
+
+        for (int i = 0; i < RECORD_COUNT; i++) {
+            value.data().rewind();
+            db.put(ByteBuffers.fromString(i + ""), value.data());
+        }
+
+        db.close();
+
+        read("uncachedReads", builder.rowCacheSize(0).build(), metrics);
+        read("rowCacheReads", builder.rowCacheSize(16000000).build(), metrics);
+
+        reporter.report();
+
+        TestFileHelper.cleanUpTestFiles();
+    }
+
+    private static void read(String name, Config config, MetricRegistry metrics) throws Exception {
+        Random random = new Random(1);
+        Timer readTimer = metrics.timer(name);
+        DB db = HeftyDB.open(config);
+
+        for (int i = 0; i < READ_COUNT; i++) {
+            String key = skewedKey(random) + "";
+            Timer.Context watch = readTimer.time();
+            db.get(ByteBuffers.fromString(key));
+            watch.stop();
+        }
+
+        db.close();
+    }
+
+    /**
+     * Keys follow a power law, so a small number of keys receive most of the reads.
+     */
+    private static int skewedKey(Random random) {
+        return (int) (RECORD_COUNT * Math.pow(random.nextDouble(), 4));
+    }
+}
@@ -23,19 +23,27 @@ import com.jordanwilliams.heftydb.data.Value;
 import com.jordanwilliams.heftydb.db.Config;
 import com.jordanwilliams.heftydb.db.DB;
 import com.jordanwilliams.heftydb.db.HeftyDB;
+import com.jordanwilliams.heftydb.db.ReadOptions;
 import com.jordanwilliams.heftydb.db.Record;
 import com.jordanwilliams.heftydb.db.Snapshot;
+import com.jordanwilliams.heftydb.io.ReadMode;
 import com.jordanwilliams.heftydb.test.generator.ConfigGenerator;
 import com.jordanwilliams.heftydb.test.generator.KeyValueGenerator;
 import com.jordanwilliams.heftydb.test.helper.PerformanceHelper;
 import com.jordanwilliams.heftydb.test.helper.TestFileHelper;
 import com.jordanwilliams.heftydb.util.ByteBuffers;
+import com.jordanwilliams.heftydb.util.CloseableIterator;
 
 import java.util.Iterator;
 
+/**
+ * Scans a database, then scans it again with direct I/O so that every block is read from disk, comparing the
+ * throughput of ascending and descending scans with and without readahead.
+ */
 public class ScanPerformance {
 
     private static final int RECORD_COUNT = 5 * 1000000;
+    private static final int READAHEAD_BLOCKS = 16;
 
     public static void main(String[] args) throws Exception {
         MetricRegistry metrics = new MetricRegistry();
@@ -49,7 +57,7 @@ public class ScanPerformance {
         Config config = ConfigGenerator.defaultConfig();
 
         //Write
-        final DB db = HeftyDB.open(config);
+        DB db = HeftyDB.open(config);
 
         for (int i = 0; i < RECORD_COUNT; i++) {
             value.data().rewind();
@@ -69,7 +77,38 @@ public class ScanPerformance {
 
         reporter.report();
 
+        //Cold scans
+        Config directConfig = new Config.Builder().tableDirectory(TestFileHelper.TEMP_PATH).readMode(ReadMode.DIRECT)
+                .build();
+        db = HeftyDB.open(directConfig);
+        ReadOptions readahead = new ReadOptions.Builder().readaheadBlocks(READAHEAD_BLOCKS).build();
+
+        for (int i = 0; i < 2; i++) {
+            coldScan(db, false, ReadOptions.DEFAULT, "Ascending scan");
+            coldScan(db, false, readahead, "Ascending scan with readahead");
+            coldScan(db, true, ReadOptions.DEFAULT, "Descending scan");
+            coldScan(db, true, readahead, "Descending scan with readahead");
+        }
+
+        db.close();
+
         TestFileHelper.cleanUpTestFiles();
     }
 
+    private static void coldScan(DB db, boolean descending, ReadOptions options, String name) throws Exception {
+        long start = System.nanoTime();
+        long count = 0;
+        CloseableIterator<Record> iterator = descending ? db.descendingIterator(Snapshot.MAX, options) : db
+                .ascendingIterator(Snapshot.MAX, options);
+
+        while (iterator.hasNext()) {
+            iterator.next();
+            count++;
+        }
+
+        iterator.close();
+
+        double seconds = (System.nanoTime() - start) / 1000000000D;
+        System.out.println(name + ": " + (long) (count / seconds) + " records per second");
+    }
 }
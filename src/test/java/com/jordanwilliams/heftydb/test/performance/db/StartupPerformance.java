@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2014. Jordan Williams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.jordanwilliams.heftydb.test.performance.db;
+
+import com.codahale.metrics.ConsoleReporter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.jordanwilliams.heftydb.data.Tuple;
+import com.jordanwilliams.heftydb.db.Config;
+import com.jordanwilliams.heftydb.db.DB;
+import com.jordanwilliams.heftydb.db.HeftyDB;
+import com.jordanwilliams.heftydb.state.Paths;
+import com.jordanwilliams.heftydb.test.generator.KeyValueGenerator;
+import com.jordanwilliams.heftydb.test.helper.PerformanceHelper;
+import com.jordanwilliams.heftydb.test.helper.TestFileHelper;
+import com.jordanwilliams.heftydb.util.ByteBuffers;
+import com.jordanwilliams.heftydb.write.CommitLog;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Measures how long a database takes to recover a full MemoryTable from its commit log, both for the log replay
+ * alone and for a complete open that also writes the replayed records to a table file.
+ */
+public class StartupPerformance {
+
+    private static final int RECORD_COUNT = 300000;
+    private static final int REPLAY_ITERATIONS = 20;
+
+    public static void main(String[] args) throws Exception {
+        TestFileHelper.createTestDirectory();
+        TestFileHelper.cleanUpTestFiles();
+        KeyValueGenerator keyValueGenerator = new KeyValueGenerator();
+        ByteBuffer testValueBuffer = keyValueGenerator.testValue(100);
+
+        //A MemoryTable large enough that every record stays in a single commit log
+        Config config = new Config.Builder().directory(TestFileHelper.TEMP_PATH).memoryTableSize(64000000)
+                .maxWriteRate(Integer.MAX_VALUE).build();
+        Paths paths = new Paths(config.tableDirectory(), config.logDirectory());
+
+        DB db = HeftyDB.open(config);
+
+        for (int i = 0; i < RECORD_COUNT; i++) {
+            db.put(ByteBuffers.fromString(i + ""), testValueBuffer.slice());
+        }
+
+        db.close();
+
+        MetricRegistry metrics = new MetricRegistry();
+        ConsoleReporter reporter = PerformanceHelper.consoleReporter(metrics);
+        Timer replayTimer = metrics.timer("replay");
+        Timer startupTimer = metrics.timer("startup");
+
+        long logId = paths.logFileIds().last();
+        System.out.println("Replaying a " + paths.logPath(logId).toFile().length() / 1000000 + " MB commit log");
+
+        for (int i = 0; i < REPLAY_ITERATIONS; i++) {
+            Timer.Context watch = replayTimer.time();
+            CommitLog log = CommitLog.open(logId, paths);
+            int count = 0;
+
+            for (Tuple tuple : log) {
+                count++;
+            }
+
+            log.close();
+            watch.stop();
+
+            if (count != RECORD_COUNT) {
+                throw new IllegalStateException("Replayed " + count + " of " + RECORD_COUNT + " records");
+            }
+        }
+
+        Timer.Context watch = startupTimer.time();
+        db = HeftyDB.open(config);
+        watch.stop();
+
+        reporter.report();
+        db.close();
+
+        TestFileHelper.cleanUpTestFiles();
+        System.exit(0);
+    }
+}
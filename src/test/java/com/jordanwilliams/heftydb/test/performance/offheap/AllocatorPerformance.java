@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2014. Jordan Williams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jordanwilliams.heftydb.test.performance.offheap;
+
+import com.codahale.metrics.ConsoleReporter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.jordanwilliams.heftydb.offheap.allocator.Allocator;
+import com.jordanwilliams.heftydb.offheap.allocator.ArenaAllocator;
+import com.jordanwilliams.heftydb.offheap.allocator.SlabAllocator;
+import com.jordanwilliams.heftydb.offheap.allocator.UnsafeAllocator;
+import com.jordanwilliams.heftydb.test.helper.PerformanceHelper;
+
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Allocates and frees blocks of typical table and index block sizes from several threads at once, the way that
+ * concurrent reads do, with the UnsafeAllocator, the SlabAllocator and an ArenaAllocator with an arena per thread.
+ */
+public class AllocatorPerformance {
+
+    private static final int THREAD_COUNT = 4;
+    private static final int ITERATIONS = 2000000;
+    private static final int LIVE_BLOCKS = 256;
+    private static final int[] BLOCK_SIZES = {100, 4096, 16384, 16500, 65536};
+
+    public static void main(String[] args) throws Exception {
+        MetricRegistry metrics = new MetricRegistry();
+        ConsoleReporter reporter = PerformanceHelper.consoleReporter(metrics);
+
+        SlabAllocator slabAllocator = new SlabAllocator();
+        ArenaAllocator arenaAllocator = new ArenaAllocator(THREAD_COUNT);
+
+        for (int i = 0; i < 2; i++) {
+            run(new UnsafeAllocator(), metrics.timer("unsafeAllocator"));
+            run(slabAllocator, metrics.timer("slabAllocator"));
+            run(arenaAllocator, metrics.timer("arenaAllocator"));
+        }
+
+        reporter.report();
+        System.out.println("Slab allocator reserved " + slabAllocator.reservedBytes() + " bytes");
+        System.out.println("Arena allocator reserved " + arenaAllocator.reservedBytes() + " bytes");
+    }
+
+    private static void run(final Allocator allocator, final Timer timer) throws Exception {
+        final CountDownLatch finished = new CountDownLatch(THREAD_COUNT);
+
+        for (int t = 0; t < THREAD_COUNT; t++) {
+            new Thread() {
+                @Override
+                public void run() {
+                    Random random = new Random(getId());
+                    long[] addresses = new long[LIVE_BLOCKS];
+                    int[] sizes = new int[LIVE_BLOCKS];
+
+                    for (int i = 0; i < ITERATIONS; i++) {
+                        int slot = random.nextInt(LIVE_BLOCKS);
+                        Timer.Context watch = timer.time();
+
+                        if (addresses[slot] != 0) {
+                            allocator.deallocate(addresses[slot], sizes[slot]);
+                        }
+
+                        sizes[slot] = BLOCK_SIZES[random.nextInt(BLOCK_SIZES.length)];
+                        addresses[slot] = allocator.allocate(sizes[slot]);
+                        watch.stop();
+                    }
+
+                    for (int slot = 0; slot < LIVE_BLOCKS; slot++) {
+                        allocator.deallocate(addresses[slot], sizes[slot]);
+                    }
+
+                    finished.countDown();
+                }
+            }.start();
+        }
+
+        finished.await();
+    }
+}
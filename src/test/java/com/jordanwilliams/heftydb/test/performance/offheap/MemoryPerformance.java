@@ -19,14 +19,25 @@ package com.jordanwilliams.heftydb.test.performance.offheap;
 import com.codahale.metrics.ConsoleReporter;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.Timer;
+import com.jordanwilliams.heftydb.offheap.MemoryAccess;
 import com.jordanwilliams.heftydb.offheap.MemoryAllocator;
 import com.jordanwilliams.heftydb.offheap.MemoryPointer;
+import com.jordanwilliams.heftydb.offheap.SegmentMemoryAccess;
+import com.jordanwilliams.heftydb.offheap.UnsafeMemoryAccess;
 import com.jordanwilliams.heftydb.test.helper.PerformanceHelper;
 
+import java.nio.ByteBuffer;
 import java.util.Random;
 
+/**
+ * Times allocations, and compares the cost of building buffers over off-heap memory and of reading through them for
+ * the Unsafe and the Foreign Memory API backends.
+ */
 public class MemoryPerformance {
 
+    private static final int BLOCK_SIZE = 16384;
+    private static final int BUFFER_ITERATIONS = 1000000;
+
     public static void main(String[] args) throws Exception {
         MetricRegistry metrics = new MetricRegistry();
         ConsoleReporter reporter = PerformanceHelper.consoleReporter(metrics);
@@ -42,6 +53,48 @@ public class MemoryPerformance {
             watch.stop();
         }
 
+        for (MemoryPointer pointer : pointerArray) {
+            pointer.release();
+        }
+
+        MemoryPointer block = MemoryAllocator.allocateAndZero(BLOCK_SIZE);
+
+        for (int i = 0; i < 2; i++) {
+            run(new UnsafeMemoryAccess(), block, metrics, "unsafe");
+
+            if (SegmentMemoryAccess.isAvailable()) {
+                run(new SegmentMemoryAccess(), block, metrics, "segment");
+            }
+        }
+
+        block.release();
         reporter.report();
     }
+
+    private static void run(MemoryAccess access, MemoryPointer block, MetricRegistry metrics, String name) {
+        Timer bufferTimer = metrics.timer(name + ".buffers");
+        Timer readTimer = metrics.timer(name + ".blockReads");
+        long sum = 0;
+
+        for (int i = 0; i < BUFFER_ITERATIONS; i++) {
+            Timer.Context watch = bufferTimer.time();
+            ByteBuffer buffer = access.buffer(block.address(), BLOCK_SIZE);
+            watch.stop();
+            sum += buffer.capacity();
+        }
+
+        ByteBuffer buffer = access.buffer(block.address(), BLOCK_SIZE);
+
+        for (int i = 0; i < BUFFER_ITERATIONS / 100; i++) {
+            Timer.Context watch = readTimer.time();
+
+            for (int offset = 0; offset < BLOCK_SIZE; offset += 8) {
+                sum += buffer.getLong(offset);
+            }
+
+            watch.stop();
+        }
+
+        System.out.println(name + " checksum " + sum);
+    }
 }
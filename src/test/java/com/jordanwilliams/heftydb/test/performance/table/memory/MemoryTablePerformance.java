@@ -20,51 +20,90 @@ import com.codahale.metrics.ConsoleReporter;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.Timer;
 import com.jordanwilliams.heftydb.data.Key;
+import com.jordanwilliams.heftydb.data.KeyComparators;
 import com.jordanwilliams.heftydb.data.Tuple;
 import com.jordanwilliams.heftydb.data.Value;
 import com.jordanwilliams.heftydb.table.memory.MemoryTable;
+import com.jordanwilliams.heftydb.table.memory.SortedTupleMaps;
 import com.jordanwilliams.heftydb.test.generator.KeyValueGenerator;
 import com.jordanwilliams.heftydb.test.helper.PerformanceHelper;
 import com.jordanwilliams.heftydb.test.helper.TestFileHelper;
 import com.jordanwilliams.heftydb.util.ByteBuffers;
 
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
 import java.util.Random;
 
 public class MemoryTablePerformance {
 
     private static final int RECORD_COUNT = 1000000;
+    private static final int TABLE_COUNT = 8;
 
     public static void main(String[] args) throws Exception {
         MetricRegistry metrics = new MetricRegistry();
         ConsoleReporter reporter = PerformanceHelper.consoleReporter(metrics);
-        Timer writeTimer = metrics.timer("writes");
-        Timer readTimer = metrics.timer("reads");
 
         TestFileHelper.createTestDirectory();
         KeyValueGenerator keyValueGenerator = new KeyValueGenerator();
         Value value = new Value(keyValueGenerator.testValue(100));
 
-        MemoryTable memTable = new MemoryTable(1);
+        for (SortedTupleMaps tupleMap : SortedTupleMaps.values()) {
+            String name = tupleMap.name().toLowerCase();
+            Timer writeTimer = metrics.timer(name + ".writes");
+            Timer readTimer = metrics.timer(name + ".reads");
 
-        for (int i = 0; i < RECORD_COUNT; i++) {
-            Timer.Context watch = writeTimer.time();
-            memTable.put(new Tuple(new Key(ByteBuffers.fromString(i + ""), i), value));
-            watch.stop();
-        }
+            System.gc();
+            long gcCount = gcCount();
+            long gcTime = gcTime();
 
-        TestFileHelper.cleanUpTestFiles();
+            //Fill several tables in turn so that each one is promoted and then dies, like a MemoryTable that is
+            // written to disk
+            for (int table = 0; table < TABLE_COUNT; table++) {
+                MemoryTable memTable = new MemoryTable(table, tupleMap.create(KeyComparators.BYTEWISE));
+
+                for (int i = 0; i < RECORD_COUNT; i++) {
+                    Timer.Context watch = writeTimer.time();
+                    memTable.put(new Tuple(new Key(ByteBuffers.fromString(i + ""), i), value));
+                    watch.stop();
+                }
+
+                Random random = new Random(System.nanoTime());
 
-        Random random = new Random(System.nanoTime());
-        int iterations = 10000000;
+                for (int i = 0; i < RECORD_COUNT; i++) {
+                    Timer.Context watch = readTimer.time();
+                    memTable.get(new Key(ByteBuffers.fromString(random.nextInt(RECORD_COUNT) + ""), Long.MAX_VALUE));
+                    watch.stop();
+                }
 
-        for (int i = 0; i < iterations; i++) {
-            Timer.Context watch = readTimer.time();
-            memTable.get(new Key(ByteBuffers.fromString(random.nextInt(RECORD_COUNT) + ""), Long.MAX_VALUE));
-            watch.stop();
+                memTable.close();
+            }
+
+            metrics.counter(name + ".gcCount").inc(gcCount() - gcCount);
+            metrics.counter(name + ".gcTimeMillis").inc(gcTime() - gcTime);
         }
 
         reporter.report();
 
         TestFileHelper.cleanUpTestFiles();
     }
+
+    private static long gcCount() {
+        long count = 0;
+
+        for (GarbageCollectorMXBean gcBean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += gcBean.getCollectionCount();
+        }
+
+        return count;
+    }
+
+    private static long gcTime() {
+        long time = 0;
+
+        for (GarbageCollectorMXBean gcBean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            time += gcBean.getCollectionTime();
+        }
+
+        return time;
+    }
 }
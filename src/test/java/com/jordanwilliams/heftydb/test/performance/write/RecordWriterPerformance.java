@@ -43,8 +43,8 @@ public class RecordWriterPerformance {
         Value value = new Value(keyValueGenerator.testValue(100));
 
         DBState state = ConfigGenerator.perfState();
-        TableWriter tableWriter = new TableWriter(state.config(), state.paths(), state.tables(), state.snapshots(),
-                state.caches(), new Metrics(state.config()));
+        TableWriter tableWriter = new TableWriter(state.config(), state.paths(), state.tables(),
+                state.rangeTombstones(), state.snapshots(), state.caches(), new Metrics(state.config()));
 
         for (int i = 0; i < RECORD_COUNT; i++) {
             value.data().rewind();
@@ -0,0 +1,57 @@
+/*
+ * Copyright (c) 2014. Jordan Williams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.jordanwilliams.heftydb.test.unit.cache;
+
+import com.jordanwilliams.heftydb.cache.FrequencySketch;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class FrequencySketchTest {
+
+    @Test
+    public void frequencyTest() {
+        FrequencySketch sketch = new FrequencySketch(1024);
+
+        for (int i = 0; i < 5; i++) {
+            sketch.increment(42);
+        }
+
+        sketch.increment(43);
+
+        Assert.assertEquals("Frequent key is counted", 5, sketch.frequency(42));
+        Assert.assertEquals("Key seen once is only in the doorkeeper", 1, sketch.frequency(43));
+        Assert.assertTrue("Unseen key has a low count", sketch.frequency(44) <= 1);
+    }
+
+    @Test
+    public void agingTest() {
+        FrequencySketch sketch = new FrequencySketch(1024);
+
+        for (int i = 0; i < 15; i++) {
+            sketch.increment(42);
+        }
+
+        int frequency = sketch.frequency(42);
+
+        for (long key = 100; key < 100 + 1024 * 10; key++) {
+            sketch.increment(key);
+        }
+
+        Assert.assertTrue("Counts are halved over time", sketch.frequency(42) < frequency);
+    }
+}
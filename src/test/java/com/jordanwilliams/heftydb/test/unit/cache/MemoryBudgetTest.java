@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) 2014. Jordan Williams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jordanwilliams.heftydb.test.unit.cache;
+
+import com.jordanwilliams.heftydb.cache.MemoryBudget;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MemoryBudgetTest {
+
+    @Test
+    public void tierLimitTest() {
+        MemoryBudget budget = new MemoryBudget(1000);
+        budget.reserve(MemoryBudget.Tier.FILTER, 100);
+        budget.reserve(MemoryBudget.Tier.INDEX, 200);
+        budget.reserve(MemoryBudget.Tier.DATA, 300);
+
+        Assert.assertEquals("Filters may use the whole budget", 1000, budget.limit(MemoryBudget.Tier.FILTER));
+        Assert.assertEquals("Index blocks may use what filters leave", 900, budget.limit(MemoryBudget.Tier.INDEX));
+        Assert.assertEquals("Data blocks may use what the others leave", 700, budget.limit(MemoryBudget.Tier.DATA));
+        Assert.assertEquals("Sizes add up", 600, budget.totalSize());
+
+        budget.release(MemoryBudget.Tier.FILTER, 100);
+        Assert.assertEquals("Released memory is available again", 800, budget.limit(MemoryBudget.Tier.DATA));
+    }
+
+    @Test
+    public void tryReserveTest() {
+        MemoryBudget budget = new MemoryBudget(1000);
+        budget.reserve(MemoryBudget.Tier.FILTER, 600);
+
+        Assert.assertFalse("Index block does not fit", budget.tryReserve(MemoryBudget.Tier.INDEX, 500));
+        Assert.assertTrue("Index block fits", budget.tryReserve(MemoryBudget.Tier.INDEX, 400));
+        Assert.assertFalse("Filter does not fit", budget.tryReserve(MemoryBudget.Tier.FILTER, 401));
+        Assert.assertEquals("Only reservations that fit are counted", 400, budget.size(MemoryBudget.Tier.INDEX));
+    }
+
+    @Test
+    public void unlimitedTest() {
+        MemoryBudget budget = new MemoryBudget(0);
+
+        Assert.assertFalse("Budget is not limited", budget.isLimited());
+        Assert.assertTrue("Everything fits", budget.tryReserve(MemoryBudget.Tier.FILTER, Integer.MAX_VALUE));
+        Assert.assertEquals("Data blocks are not limited", Long.MAX_VALUE, budget.limit(MemoryBudget.Tier.DATA));
+    }
+}
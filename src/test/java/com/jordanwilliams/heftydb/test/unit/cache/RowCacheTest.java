@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2014. Jordan Williams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jordanwilliams.heftydb.test.unit.cache;
+
+import com.jordanwilliams.heftydb.cache.RowCache;
+import com.jordanwilliams.heftydb.data.Key;
+import com.jordanwilliams.heftydb.data.Tuple;
+import com.jordanwilliams.heftydb.data.Value;
+import com.jordanwilliams.heftydb.util.ByteBuffers;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class RowCacheTest {
+
+    @Test
+    public void readWriteTest() {
+        RowCache cache = new RowCache(1024000);
+        Tuple tuple = tuple("key", "value", 5);
+
+        long version = cache.version(key("key", 10));
+        cache.put(key("key", 10), tuple, version);
+
+        Assert.assertEquals("Row is cached", tuple, cache.get(key("key", 10)));
+        Assert.assertEquals("Row is visible at its own snapshot", tuple, cache.get(key("key", 5)));
+        Assert.assertNull("Row is not visible at an older snapshot", cache.get(key("key", 4)));
+        Assert.assertNull("Other key is not cached", cache.get(key("other", 10)));
+
+        cache.invalidate(key("key", 11));
+        Assert.assertNull("Written key is invalidated", cache.get(key("key", 12)));
+        cache.clear();
+    }
+
+    @Test
+    public void stalePutTest() {
+        RowCache cache = new RowCache(1024000);
+
+        //A write that lands while the read is in progress
+        long version = cache.version(key("key", 10));
+        cache.invalidate(key("key", 11));
+        cache.put(key("key", 10), tuple("key", "value", 5), version);
+        Assert.assertNull("Read that raced a write is not cached", cache.get(key("key", 12)));
+
+        //A read at a snapshot older than a write that has already landed
+        version = cache.version(key("key", 10));
+        cache.put(key("key", 10), tuple("key", "value", 5), version);
+        Assert.assertNull("Read at an older snapshot is not cached", cache.get(key("key", 12)));
+
+        cache.invalidateAll(20);
+        version = cache.version(key("key", 15));
+        cache.put(key("key", 15), tuple("key", "value", 5), version);
+        Assert.assertNull("Read older than an invalidation of every row is not cached", cache.get(key("key", 30)));
+
+        version = cache.version(key("key", 25));
+        cache.put(key("key", 25), tuple("key", "value", 5), version);
+        Assert.assertNotNull("Read newer than every write is cached", cache.get(key("key", 30)));
+        cache.clear();
+    }
+
+    @Test
+    public void evictionTest() {
+        RowCache cache = new RowCache(16 * 1024);
+
+        for (int i = 0; i < 1000; i++) {
+            Key key = key("key" + i, 1);
+            cache.put(key, tuple("key" + i, "value" + i, 1), cache.version(key));
+        }
+
+        Assert.assertTrue("Cache is bounded", cache.totalEntrySize() <= 16 * 1024);
+        Assert.assertNotNull("Recent row is cached", cache.get(key("key999", 1)));
+
+        cache.clear();
+        Assert.assertEquals("Cache is empty", 0, cache.totalEntrySize());
+    }
+
+    @Test
+    public void disabledTest() {
+        RowCache cache = new RowCache(0);
+        Key key = key("key", 1);
+
+        cache.put(key, tuple("key", "value", 1), cache.version(key));
+        cache.invalidate(key);
+
+        Assert.assertFalse("Cache is disabled", cache.isEnabled());
+        Assert.assertNull("Nothing is cached", cache.get(key));
+    }
+
+    private static Key key(String key, long snapshotId) {
+        return new Key(ByteBuffers.fromString(key), snapshotId);
+    }
+
+    private static Tuple tuple(String key, String value, long snapshotId) {
+        return new Tuple(key(key, snapshotId), new Value(ByteBuffers.fromString(value)));
+    }
+}
@@ -0,0 +1,261 @@
+/*
+ * Copyright (c) 2014. Jordan Williams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.jordanwilliams.heftydb.test.unit.cache;
+
+import com.googlecode.concurrentlinkedhashmap.Weigher;
+import com.jordanwilliams.heftydb.cache.CachePolicy;
+import com.jordanwilliams.heftydb.cache.MemoryBudget;
+import com.jordanwilliams.heftydb.cache.TableBlockCache;
+import com.jordanwilliams.heftydb.offheap.MemoryAllocator;
+import com.jordanwilliams.heftydb.offheap.MemoryPointer;
+import com.jordanwilliams.heftydb.offheap.Offheap;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TableBlockCacheTest {
+
+    private static final int BLOCK_SIZE = 1024;
+    private static final int CACHE_BLOCKS = 16;
+    private static final int HOT_BLOCKS = 8;
+
+    private static class Block implements Offheap {
+
+        private final MemoryPointer memory = MemoryAllocator.allocate(BLOCK_SIZE);
+
+        @Override
+        public MemoryPointer memory() {
+            return memory;
+        }
+    }
+
+    @Test
+    public void lruScanTest() {
+        TableBlockCache<Block> cache = cache(CachePolicy.LRU);
+        scanAfterHotReads(cache);
+
+        Assert.assertEquals("Scan evicts the hot blocks", 0, cachedHotBlocks(cache));
+        Assert.assertEquals("No admissions are rejected", 0, cache.rejectedAdmissions());
+        cache.clear();
+    }
+
+    @Test
+    public void tinyLfuScanTest() {
+        TableBlockCache<Block> cache = cache(CachePolicy.TINY_LFU);
+        scanAfterHotReads(cache);
+
+        Assert.assertEquals("Hot blocks survive the scan", HOT_BLOCKS, cachedHotBlocks(cache));
+        Assert.assertTrue("Scanned blocks are rejected", cache.rejectedAdmissions() > 0);
+        cache.clear();
+    }
+
+    @Test
+    public void tinyLfuAdmitsWhileNotFullTest() {
+        TableBlockCache<Block> cache = cache(CachePolicy.TINY_LFU);
+
+        for (int i = 0; i < CACHE_BLOCKS; i++) {
+            read(cache, i);
+        }
+
+        for (int i = 0; i < CACHE_BLOCKS; i++) {
+            Assert.assertTrue("Block is cached", read(cache, i));
+        }
+
+        Assert.assertEquals("No admissions are rejected", 0, cache.rejectedAdmissions());
+        cache.clear();
+    }
+
+    @Test
+    public void invalidateTest() {
+        TableBlockCache<Block> cache = cache(CachePolicy.LRU);
+
+        for (int offset = 0; offset < CACHE_BLOCKS / 2; offset++) {
+            put(cache, 1, offset);
+            put(cache, 2, offset);
+        }
+
+        cache.invalidate(1);
+
+        Assert.assertEquals("Only the blocks of the other table remain", BLOCK_SIZE * CACHE_BLOCKS / 2,
+                cache.totalEntrySize());
+
+        for (int offset = 0; offset < CACHE_BLOCKS / 2; offset++) {
+            Assert.assertNull("Invalidated block is gone", cache.get(1, offset));
+            Block block = cache.get(2, offset);
+            Assert.assertNotNull("Block of other table is cached", block);
+            block.memory().release();
+        }
+
+        //A table whose blocks were all invalidated can be cached and invalidated again
+        put(cache, 1, 0);
+        cache.invalidate(1);
+        Assert.assertNull("Invalidated block is gone", cache.get(1, 0));
+
+        cache.clear();
+        Assert.assertEquals("Cache is empty", 0, cache.totalEntrySize());
+    }
+
+    @Test
+    public void segmentedCacheTest() {
+        int cacheBlocks = CACHE_BLOCKS * 1024;
+        TableBlockCache<Block> cache = new TableBlockCache<Block>(BLOCK_SIZE * cacheBlocks, BLOCK_SIZE,
+                CachePolicy.LRU, weigher());
+
+        for (long tableId = 0; tableId < 8; tableId++) {
+            for (int offset = 0; offset < cacheBlocks / 16; offset++) {
+                put(cache, tableId, offset);
+            }
+        }
+
+        //Putting a block again replaces the cached one
+        for (int offset = 0; offset < cacheBlocks / 16; offset++) {
+            put(cache, 0, offset);
+        }
+
+        Assert.assertEquals("Every block is cached once", (long) BLOCK_SIZE * cacheBlocks / 2, cache.totalEntrySize());
+
+        for (long tableId = 0; tableId < 8; tableId += 2) {
+            cache.invalidate(tableId);
+        }
+
+        for (long tableId = 0; tableId < 8; tableId++) {
+            for (int offset = 0; offset < cacheBlocks / 16; offset++) {
+                Block block = cache.get(tableId, offset);
+                Assert.assertEquals("Only blocks of valid tables are cached", tableId % 2 == 1, block != null);
+
+                if (block != null) {
+                    block.memory().release();
+                }
+            }
+        }
+
+        Assert.assertEquals("Invalidated blocks are no longer counted", (long) BLOCK_SIZE * cacheBlocks / 4,
+                cache.totalEntrySize());
+        cache.clear();
+    }
+
+    @Test
+    public void budgetTest() {
+        MemoryBudget budget = new MemoryBudget(BLOCK_SIZE * CACHE_BLOCKS);
+        TableBlockCache<Block> cache = new TableBlockCache<Block>(BLOCK_SIZE * CACHE_BLOCKS, BLOCK_SIZE,
+                CachePolicy.LRU, budget, MemoryBudget.Tier.DATA, weigher());
+
+        for (int offset = 0; offset < CACHE_BLOCKS; offset++) {
+            put(cache, 1, offset);
+        }
+
+        Assert.assertEquals("Blocks count against the budget", BLOCK_SIZE * CACHE_BLOCKS,
+                budget.size(MemoryBudget.Tier.DATA));
+
+        //Pinned filters take priority, so the data blocks make room for them
+        budget.reserve(MemoryBudget.Tier.FILTER, BLOCK_SIZE * HOT_BLOCKS);
+        put(cache, 1, CACHE_BLOCKS);
+
+        Assert.assertEquals("Blocks are evicted down to what is left of the budget", BLOCK_SIZE * (CACHE_BLOCKS -
+                HOT_BLOCKS), cache.totalEntrySize());
+        Assert.assertEquals("Budget tracks the evictions", cache.totalEntrySize(), budget.size(MemoryBudget.Tier
+                .DATA));
+
+        cache.clear();
+        Assert.assertEquals("Cleared blocks are released from the budget", 0, budget.size(MemoryBudget.Tier.DATA));
+    }
+
+    @Test
+    public void pinnedBudgetTest() {
+        MemoryBudget budget = new MemoryBudget(BLOCK_SIZE * CACHE_BLOCKS);
+        TableBlockCache<Block> cache = new TableBlockCache<Block>(BLOCK_SIZE * CACHE_BLOCKS, BLOCK_SIZE,
+                CachePolicy.LRU, budget, MemoryBudget.Tier.INDEX, weigher());
+
+        //Memory pinned in the same tier, as the root index blocks are, leaves less room for the cache
+        budget.reserve(MemoryBudget.Tier.INDEX, BLOCK_SIZE * HOT_BLOCKS);
+
+        for (int offset = 0; offset < CACHE_BLOCKS; offset++) {
+            put(cache, 1, offset);
+        }
+
+        Assert.assertEquals("Cache leaves room for the pinned memory", BLOCK_SIZE * (CACHE_BLOCKS - HOT_BLOCKS),
+                cache.totalEntrySize());
+        Assert.assertEquals("Tier stays within its limit", budget.limit(MemoryBudget.Tier.INDEX), budget.size
+                (MemoryBudget.Tier.INDEX));
+
+        cache.clear();
+        budget.release(MemoryBudget.Tier.INDEX, BLOCK_SIZE * HOT_BLOCKS);
+    }
+
+    private static void put(TableBlockCache<Block> cache, long tableId, long offset) {
+        Block block = new Block();
+        cache.put(tableId, offset, block);
+        block.memory().release();
+    }
+
+    private static void scanAfterHotReads(TableBlockCache<Block> cache) {
+        for (int i = 0; i < 4; i++) {
+            for (int offset = 0; offset < HOT_BLOCKS; offset++) {
+                read(cache, offset);
+            }
+        }
+
+        for (int offset = HOT_BLOCKS; offset < HOT_BLOCKS + CACHE_BLOCKS * 4; offset++) {
+            read(cache, offset);
+        }
+    }
+
+    private static int cachedHotBlocks(TableBlockCache<Block> cache) {
+        int cached = 0;
+
+        for (int offset = 0; offset < HOT_BLOCKS; offset++) {
+            Block block = cache.get(1, offset);
+
+            if (block != null) {
+                block.memory().release();
+                cached++;
+            }
+        }
+
+        return cached;
+    }
+
+    /**
+     * Reads a block through the cache the way a FileTable does, and returns whether it was a cache hit.
+     */
+    private static boolean read(TableBlockCache<Block> cache, long offset) {
+        Block block = cache.get(1, offset);
+
+        if (block != null) {
+            block.memory().release();
+            return true;
+        }
+
+        block = new Block();
+        cache.put(1, offset, block);
+        block.memory().release();
+        return false;
+    }
+
+    private static TableBlockCache<Block> cache(CachePolicy policy) {
+        return new TableBlockCache<Block>(BLOCK_SIZE * CACHE_BLOCKS, BLOCK_SIZE, policy, weigher());
+    }
+
+    private static Weigher<Block> weigher() {
+        return new Weigher<Block>() {
+            @Override
+            public int weightOf(Block block) {
+                return block.memory().size();
+            }
+        };
+    }
+}
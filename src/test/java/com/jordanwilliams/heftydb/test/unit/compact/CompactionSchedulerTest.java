@@ -0,0 +1,254 @@
+/*
+ * Copyright (c) 2014. Jordan Williams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.jordanwilliams.heftydb.test.unit.compact;
+
+import com.codahale.metrics.Meter;
+import com.jordanwilliams.heftydb.compact.CompactionScheduler;
+import com.jordanwilliams.heftydb.compact.CompactionStats;
+import com.jordanwilliams.heftydb.compact.CompactionTask;
+import com.jordanwilliams.heftydb.table.Table;
+import com.jordanwilliams.heftydb.table.memory.MemoryTable;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+
+public class CompactionSchedulerTest {
+
+    private final Meter preemptions = new Meter();
+    private final CompactionScheduler scheduler = new CompactionScheduler(1, preemptions);
+    private final List<String> events = Collections.synchronizedList(new ArrayList<String>());
+
+    @After
+    public void closeScheduler() {
+        scheduler.close();
+    }
+
+    @Test
+    public void scoreOrderTest() throws Exception {
+        final CountDownLatch blockerStarted = new CountDownLatch(1);
+        final CountDownLatch releaseBlocker = new CountDownLatch(1);
+
+        Future<CompactionStats> blocker = scheduler.submit(task(1), new Callable<CompactionStats>() {
+            @Override
+            public CompactionStats call() throws Exception {
+                blockerStarted.countDown();
+                releaseBlocker.await();
+                return stats();
+            }
+        });
+
+        blockerStarted.await();
+
+        //Queued while the only worker is busy, so they run in order of score rather than submission
+        List<Future<CompactionStats>> futures = new ArrayList<Future<CompactionStats>>();
+        futures.add(scheduler.submit(task(2), recording("low")));
+        futures.add(scheduler.submit(task(4), recording("high")));
+        futures.add(scheduler.submit(task(3), recording("medium")));
+
+        releaseBlocker.countDown();
+        blocker.get();
+
+        for (Future<CompactionStats> future : futures) {
+            future.get();
+        }
+
+        Assert.assertEquals("Tasks run in order of score", Arrays.asList("high", "medium", "low"), events);
+        Assert.assertEquals("No task is preempted", 0, preemptions.getCount());
+    }
+
+    @Test
+    public void checkpointPreemptionTest() throws Exception {
+        final CountDownLatch lowStarted = new CountDownLatch(1);
+        final CountDownLatch highSubmitted = new CountDownLatch(1);
+        final List<Thread> threads = Collections.synchronizedList(new ArrayList<Thread>());
+
+        Future<CompactionStats> low = scheduler.submit(task(2), new Callable<CompactionStats>() {
+            @Override
+            public CompactionStats call() throws Exception {
+                threads.add(Thread.currentThread());
+                lowStarted.countDown();
+                highSubmitted.await();
+                events.add("low started");
+
+                Iterator<Integer> iterator = scheduler.checkpointed(counting(10000));
+
+                while (iterator.hasNext()) {
+                    iterator.next();
+                }
+
+                events.add("low finished");
+                return stats();
+            }
+        });
+
+        lowStarted.await();
+
+        Future<CompactionStats> high = scheduler.submit(task(4), new Callable<CompactionStats>() {
+            @Override
+            public CompactionStats call() throws Exception {
+                threads.add(Thread.currentThread());
+                events.add("high");
+                return stats();
+            }
+        });
+
+        highSubmitted.countDown();
+        low.get();
+        high.get();
+
+        Assert.assertEquals("Higher scoring task runs at the checkpoint", Arrays.asList("low started", "high",
+                "low finished"), events);
+        Assert.assertEquals("Preemption is counted", 1, preemptions.getCount());
+        Assert.assertSame("Preempting task runs on the preempted task's worker", threads.get(0), threads.get(1));
+    }
+
+    @Test
+    public void nestedPreemptionTest() throws Exception {
+        final CountDownLatch lowStarted = new CountDownLatch(1);
+        final CountDownLatch mediumSubmitted = new CountDownLatch(1);
+        final List<Future<CompactionStats>> futures = Collections.synchronizedList(
+                new ArrayList<Future<CompactionStats>>());
+
+        Future<CompactionStats> low = scheduler.submit(task(2), new Callable<CompactionStats>() {
+            @Override
+            public CompactionStats call() throws Exception {
+                lowStarted.countDown();
+                mediumSubmitted.await();
+                events.add("low started");
+
+                Iterator<Integer> iterator = scheduler.checkpointed(counting(10000));
+
+                while (iterator.hasNext()) {
+                    iterator.next();
+                }
+
+                events.add("low finished");
+                return stats();
+            }
+        });
+
+        lowStarted.await();
+
+        futures.add(scheduler.submit(task(3), new Callable<CompactionStats>() {
+            @Override
+            public CompactionStats call() throws Exception {
+                events.add("medium started");
+                futures.add(scheduler.submit(task(4), recording("high")));
+
+                Iterator<Integer> iterator = scheduler.checkpointed(counting(10000));
+
+                while (iterator.hasNext()) {
+                    iterator.next();
+                }
+
+                events.add("medium finished");
+                return stats();
+            }
+        }));
+
+        mediumSubmitted.countDown();
+        low.get();
+
+        for (Future<CompactionStats> future : new ArrayList<Future<CompactionStats>>(futures)) {
+            future.get();
+        }
+
+        //The higher scoring task waits for the preempting task, and then preempts the original task again
+        Assert.assertEquals("Preempting task is not preempted", Arrays.asList("low started", "medium started",
+                "medium finished", "high", "low finished"), events);
+        Assert.assertEquals("Both preemptions are counted", 2, preemptions.getCount());
+    }
+
+    @Test
+    public void checkpointWithoutHigherScoreTest() throws Exception {
+        final CountDownLatch firstStarted = new CountDownLatch(1);
+        final CountDownLatch secondSubmitted = new CountDownLatch(1);
+
+        Future<CompactionStats> first = scheduler.submit(task(3), new Callable<CompactionStats>() {
+            @Override
+            public CompactionStats call() throws Exception {
+                firstStarted.countDown();
+                secondSubmitted.await();
+
+                Iterator<Integer> iterator = scheduler.checkpointed(counting(10000));
+
+                while (iterator.hasNext()) {
+                    iterator.next();
+                }
+
+                events.add("first");
+                return stats();
+            }
+        });
+
+        firstStarted.await();
+        Future<CompactionStats> second = scheduler.submit(task(2), recording("second"));
+        secondSubmitted.countDown();
+        first.get();
+        second.get();
+
+        Assert.assertEquals("Lower scoring task waits", Arrays.asList("first", "second"), events);
+        Assert.assertEquals("No task is preempted", 0, preemptions.getCount());
+    }
+
+    private Callable<CompactionStats> recording(final String event) {
+        return new Callable<CompactionStats>() {
+            @Override
+            public CompactionStats call() {
+                events.add(event);
+                return stats();
+            }
+        };
+    }
+
+    /**
+     * Empty tables make the task's score one less than its table count.
+     */
+    private static CompactionTask task(int tableCount) {
+        List<Table> tables = new ArrayList<Table>();
+
+        for (int i = 0; i < tableCount; i++) {
+            tables.add(new MemoryTable(i));
+        }
+
+        return new CompactionTask(tables, 1);
+    }
+
+    private static Iterator<Integer> counting(int count) {
+        List<Integer> values = new ArrayList<Integer>(count);
+
+        for (int i = 0; i < count; i++) {
+            values.add(i);
+        }
+
+        return values.iterator();
+    }
+
+    private static CompactionStats stats() {
+        return new CompactionStats(0, 0, 0, 0);
+    }
+}
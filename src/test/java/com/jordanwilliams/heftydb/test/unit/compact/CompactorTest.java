@@ -0,0 +1,197 @@
+/*
+ * Copyright (c) 2014. Jordan Williams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.jordanwilliams.heftydb.test.unit.compact;
+
+import com.jordanwilliams.heftydb.compact.CompactionPlan;
+import com.jordanwilliams.heftydb.compact.CompactionStrategies;
+import com.jordanwilliams.heftydb.compact.CompactionStrategy;
+import com.jordanwilliams.heftydb.compact.CompactionTables;
+import com.jordanwilliams.heftydb.compact.CompactionTask;
+import com.jordanwilliams.heftydb.compact.Compactor;
+import com.jordanwilliams.heftydb.compact.planner.CompactionPlanner;
+import com.jordanwilliams.heftydb.data.RangeTombstone;
+import com.jordanwilliams.heftydb.data.Tuple;
+import com.jordanwilliams.heftydb.db.Config;
+import com.jordanwilliams.heftydb.io.Throttle;
+import com.jordanwilliams.heftydb.metrics.Metrics;
+import com.jordanwilliams.heftydb.state.Caches;
+import com.jordanwilliams.heftydb.state.Manifest;
+import com.jordanwilliams.heftydb.state.Paths;
+import com.jordanwilliams.heftydb.state.RangeTombstones;
+import com.jordanwilliams.heftydb.state.Snapshots;
+import com.jordanwilliams.heftydb.state.Tables;
+import com.jordanwilliams.heftydb.table.Table;
+import com.jordanwilliams.heftydb.table.file.FileTable;
+import com.jordanwilliams.heftydb.table.file.FileTableWriter;
+import com.jordanwilliams.heftydb.table.memory.MemoryTable;
+import com.jordanwilliams.heftydb.test.base.FileTest;
+import com.jordanwilliams.heftydb.test.generator.ConfigGenerator;
+import com.jordanwilliams.heftydb.test.generator.TupleGenerator;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class CompactorTest extends FileTest {
+
+    private static final int OVERLAPPING_TABLES = 4;
+    private static final long DISJOINT_TABLE_ID = OVERLAPPING_TABLES + 1;
+
+    private final Paths paths = ConfigGenerator.testPaths();
+    private final Config config = ConfigGenerator.testConfig();
+    private final Caches caches = ConfigGenerator.testCaches();
+    private final Metrics metrics = new Metrics(config);
+    private final List<Tuple> tuples = new TupleGenerator().testRecords(1000, 0);
+
+    @Test
+    public void trivialMoveTest() throws Exception {
+        //The first tables share a key range, and the last table holds keys past all of theirs
+        List<Table> initialTables = new ArrayList<Table>();
+        int overlappingTuples = tuples.size() - tuples.size() / 5;
+
+        for (int i = 0; i < OVERLAPPING_TABLES; i++) {
+            List<Tuple> tableTuples = new ArrayList<Tuple>();
+
+            for (int j = i; j < overlappingTuples; j += OVERLAPPING_TABLES) {
+                tableTuples.add(tuples.get(j));
+            }
+
+            initialTables.add(writeTable(i + 1, tableTuples));
+        }
+
+        initialTables.add(writeTable(DISJOINT_TABLE_ID, tuples.subList(overlappingTuples, tuples.size())));
+        byte[] disjointTable = Files.readAllBytes(paths.tablePath(DISJOINT_TABLE_ID));
+
+        List<Manifest.Entry> entries = new ArrayList<Manifest.Entry>();
+
+        for (Table table : initialTables) {
+            entries.add(new Manifest.Entry(table));
+        }
+
+        Tables tables = new Tables(initialTables, Manifest.create(paths, config.keyComparator().id(), entries));
+        RangeTombstones rangeTombstones = new RangeTombstones(paths, Collections.<RangeTombstone>emptyList());
+        Compactor compactor = new Compactor(config, paths, tables, rangeTombstones, caches,
+                CompactionStrategies.SIZE_TIERED_COMPACTION_STRATEGY, metrics, new Snapshots(tuples.size()));
+
+        compactor.scheduleCompaction().get();
+        compactor.close();
+
+        Assert.assertEquals("One table is moved", 1, metrics.meter("compactor.trivialMoves").getCount());
+        Assert.assertEquals("Overlapping tables are merged and the disjoint table is kept", 2, tables.count());
+
+        Table movedTable = null;
+
+        for (Table table : tables) {
+            Assert.assertEquals("Tables are at the next level", 1, table.level());
+
+            if (table.id() == DISJOINT_TABLE_ID) {
+                movedTable = table;
+            }
+        }
+
+        Assert.assertNotNull("Moved table keeps its id", movedTable);
+
+        //Only the Manifest records the new level, so the table file is not changed
+        Assert.assertArrayEquals("Moved table file is unchanged", disjointTable, Files.readAllBytes(paths.tablePath
+                (DISJOINT_TABLE_ID)));
+
+        for (Tuple tuple : tuples) {
+            boolean found = false;
+
+            for (Table table : tables) {
+                if (tuple.equals(table.get(tuple.key()))) {
+                    found = true;
+                }
+            }
+
+            Assert.assertTrue("Tuple is readable after compaction", found);
+        }
+
+        tables.close();
+
+        Manifest manifest = Manifest.open(paths);
+        Assert.assertEquals("Manifest holds the merged and the moved table", 2, manifest.entries().size());
+
+        for (Manifest.Entry entry : manifest.entries()) {
+            Assert.assertEquals("Manifest records the new level", 1, entry.level());
+        }
+
+        manifest.close();
+    }
+
+    @Test
+    public void evaluationThreadTest() throws Exception {
+        final List<Thread> evaluationThreads = Collections.synchronizedList(new ArrayList<Thread>());
+        final CountDownLatch firstEvaluation = new CountDownLatch(1);
+        final CountDownLatch evaluated = new CountDownLatch(2);
+
+        CompactionStrategy recordingStrategy = new CompactionStrategy() {
+            @Override
+            public CompactionPlanner initialize(CompactionTables tables) {
+                return new CompactionPlanner() {
+                    @Override
+                    public CompactionPlan planCompaction() {
+                        return new CompactionPlan(Collections.<CompactionTask>emptyList());
+                    }
+
+                    @Override
+                    public boolean needsCompaction() {
+                        evaluationThreads.add(Thread.currentThread());
+                        firstEvaluation.countDown();
+                        evaluated.countDown();
+                        return false;
+                    }
+                };
+            }
+        };
+
+        Tables tables = new Tables(Collections.<Table>emptyList());
+        RangeTombstones rangeTombstones = new RangeTombstones(paths, Collections.<RangeTombstone>emptyList());
+        Compactor compactor = new Compactor(config, paths, tables, rangeTombstones, caches, recordingStrategy,
+                metrics, new Snapshots(0));
+
+        compactor.evaluateCompaction();
+        Assert.assertTrue("Compaction is evaluated", firstEvaluation.await(10, TimeUnit.SECONDS));
+
+        //The change handler runs on the thread that changes the tables
+        tables.add(new MemoryTable(1));
+        Assert.assertTrue("Compaction is evaluated", evaluated.await(10, TimeUnit.SECONDS));
+        compactor.close();
+
+        for (Thread thread : evaluationThreads) {
+            Assert.assertNotSame("Compaction is not evaluated on the calling thread", Thread.currentThread(),
+                    thread);
+        }
+    }
+
+    private FileTable writeTable(long tableId, List<Tuple> tableTuples) throws Exception {
+        new FileTableWriter.Task(tableId, 0, paths, config, tableTuples.iterator(), tableTuples.size(), null,
+                Throttle.MAX).run();
+        return openTable(tableId);
+    }
+
+    private FileTable openTable(long tableId) throws Exception {
+        return FileTable.open(tableId, paths, caches.recordBlockCache(), caches.indexBlockCache(),
+                config.keyComparator(), config.checksumVerification(), config.readMode(), metrics);
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright (c) 2014. Jordan Williams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.jordanwilliams.heftydb.test.unit.compact;
+
+import com.jordanwilliams.heftydb.compact.CompactionPlan;
+import com.jordanwilliams.heftydb.compact.CompactionTables;
+import com.jordanwilliams.heftydb.compact.CompactionTask;
+import com.jordanwilliams.heftydb.compact.Compactor;
+import com.jordanwilliams.heftydb.compact.TimeWindowCompactionStrategy;
+import com.jordanwilliams.heftydb.compact.planner.TimeWindowCompactionPlanner;
+import com.jordanwilliams.heftydb.data.RangeTombstone;
+import com.jordanwilliams.heftydb.data.Tuple;
+import com.jordanwilliams.heftydb.db.Config;
+import com.jordanwilliams.heftydb.io.Throttle;
+import com.jordanwilliams.heftydb.metrics.Metrics;
+import com.jordanwilliams.heftydb.state.Caches;
+import com.jordanwilliams.heftydb.state.Paths;
+import com.jordanwilliams.heftydb.state.RangeTombstones;
+import com.jordanwilliams.heftydb.state.Snapshots;
+import com.jordanwilliams.heftydb.state.Tables;
+import com.jordanwilliams.heftydb.table.Table;
+import com.jordanwilliams.heftydb.table.file.FileTable;
+import com.jordanwilliams.heftydb.table.file.FileTableWriter;
+import com.jordanwilliams.heftydb.test.base.FileTest;
+import com.jordanwilliams.heftydb.test.generator.ConfigGenerator;
+import com.jordanwilliams.heftydb.test.generator.TupleGenerator;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+public class TimeWindowCompactionPlannerTest extends FileTest {
+
+    private static final long WINDOW_SIZE = 1000;
+    private static final int TABLE_TUPLES = 100;
+
+    private final Paths paths = ConfigGenerator.testPaths();
+    private final Config config = ConfigGenerator.testConfig();
+    private final Caches caches = ConfigGenerator.testCaches();
+    private final Metrics metrics = new Metrics(config);
+    private final List<Tuple> tuples = new ArrayList<Tuple>();
+
+    @Test
+    public void windowsAreNotGroupedTest() throws Exception {
+        List<Table> initialTables = new ArrayList<Table>();
+        long tableId = 1;
+
+        //Three windows of two tables each, all at the same level
+        for (int window = 0; window < 3; window++) {
+            for (int i = 0; i < 2; i++) {
+                initialTables.add(writeTable(tableId++, 1, window * WINDOW_SIZE + i * TABLE_TUPLES));
+            }
+        }
+
+        CompactionPlan plan = planner(initialTables).planCompaction();
+        Assert.assertEquals("Only old windows are compacted", 2, plan.tasks().size());
+
+        for (CompactionTask task : plan) {
+            Set<Long> windows = new HashSet<Long>();
+
+            for (Table table : task.allTables()) {
+                windows.add(table.maxSnapshotId() / WINDOW_SIZE);
+            }
+
+            Assert.assertEquals("Task only contains tables from one window", 1, windows.size());
+            Assert.assertEquals("Task contains the whole window", 2, task.allTables().size());
+        }
+
+        closeTables(initialTables);
+    }
+
+    @Test
+    public void newestWindowTest() throws Exception {
+        List<Table> initialTables = new ArrayList<Table>();
+
+        for (int i = 0; i < 4; i++) {
+            initialTables.add(writeTable(i + 1, 0, i * TABLE_TUPLES));
+        }
+
+        initialTables.add(writeTable(5, 1, 4 * TABLE_TUPLES));
+
+        //Four tables at one level do not trigger a size-tiered compaction
+        TimeWindowCompactionPlanner planner = planner(initialTables);
+        Assert.assertFalse("Newest window is not compacted", planner.needsCompaction());
+        Assert.assertTrue("Newest window has no tasks", planner.planCompaction().tasks().isEmpty());
+
+        initialTables.add(writeTable(6, 0, 5 * TABLE_TUPLES));
+        planner = planner(initialTables);
+        Assert.assertTrue("Newest window is compacted", planner.needsCompaction());
+
+        CompactionPlan plan = planner.planCompaction();
+        Assert.assertEquals("One level is compacted", 1, plan.tasks().size());
+
+        CompactionTask task = plan.tasks().get(0);
+        Assert.assertEquals("Tables are compacted into the next level", 1, task.level());
+        Assert.assertEquals("Every table at the full level is compacted", 5, task.allTables().size());
+
+        for (Table table : task.allTables()) {
+            Assert.assertEquals("Only the full level is compacted", 0, table.level());
+        }
+
+        closeTables(initialTables);
+    }
+
+    @Test
+    public void oldWindowCollapsesTest() throws Exception {
+        List<Table> initialTables = new ArrayList<Table>();
+
+        initialTables.add(writeTable(1, 0, 0));
+        initialTables.add(writeTable(2, 2, TABLE_TUPLES));
+        initialTables.add(writeTable(3, 0, 2 * TABLE_TUPLES));
+        initialTables.add(writeTable(4, 0, 2 * WINDOW_SIZE));
+
+        Tables tables = new Tables(initialTables);
+        RangeTombstones rangeTombstones = new RangeTombstones(paths, Collections.<RangeTombstone>emptyList());
+        Compactor compactor = new Compactor(config, paths, tables, rangeTombstones, caches,
+                new TimeWindowCompactionStrategy(WINDOW_SIZE), metrics, new Snapshots(3 * WINDOW_SIZE));
+
+        compactor.scheduleCompaction().get();
+        compactor.close();
+
+        Assert.assertEquals("Old window is one table, and the newest window is unchanged", 2, tables.count());
+
+        for (Table table : tables) {
+            if (table.maxSnapshotId() / WINDOW_SIZE == 0) {
+                Assert.assertEquals("Old window is compacted past its highest level", 3, table.level());
+                Assert.assertEquals("Old window keeps every tuple", 3 * TABLE_TUPLES, table.tupleCount());
+            } else {
+                Assert.assertEquals("Newest window is not rewritten", 4, table.id());
+            }
+        }
+
+        for (Tuple tuple : tuples) {
+            boolean found = false;
+
+            for (Table table : tables) {
+                if (tuple.equals(table.get(tuple.key()))) {
+                    found = true;
+                }
+            }
+
+            Assert.assertTrue("Tuple is readable after compaction", found);
+        }
+
+        tables.close();
+    }
+
+    private TimeWindowCompactionPlanner planner(List<Table> initialTables) {
+        return new TimeWindowCompactionPlanner(new CompactionTables(new Tables(initialTables),
+                config.keyComparator()), WINDOW_SIZE);
+    }
+
+    private static void closeTables(List<Table> tables) throws Exception {
+        for (Table table : tables) {
+            table.close();
+        }
+    }
+
+    private FileTable writeTable(long tableId, int level, long startingSnapshotId) throws Exception {
+        List<Tuple> tableTuples = new TupleGenerator().testRecords((int) startingSnapshotId, TABLE_TUPLES, 0, 16,
+                100);
+        tuples.addAll(tableTuples);
+
+        new FileTableWriter.Task(tableId, level, paths, config, tableTuples.iterator(), tableTuples.size(), null,
+                Throttle.MAX).run();
+        return FileTable.open(tableId, paths, caches.recordBlockCache(), caches.indexBlockCache(),
+                config.keyComparator(), config.checksumVerification(), config.readMode(), metrics);
+    }
+}
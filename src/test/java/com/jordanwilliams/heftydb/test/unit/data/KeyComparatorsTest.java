@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2014. Jordan Williams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jordanwilliams.heftydb.test.unit.data;
+
+import com.jordanwilliams.heftydb.data.KeyComparators;
+import com.jordanwilliams.heftydb.offheap.MemoryAllocator;
+import com.jordanwilliams.heftydb.offheap.MemoryPointer;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+public class KeyComparatorsTest {
+
+    private static final int ITERATIONS = 100000;
+
+    private final Random random = new Random(System.nanoTime());
+
+    @Test
+    public void bytewiseTest() {
+        for (int i = 0; i < ITERATIONS; i++) {
+            ByteBuffer key1 = randomKey();
+            ByteBuffer key2 = similarKey(key1);
+            int expected = Integer.signum(key1.compareTo(key2));
+
+            Assert.assertEquals("Heap keys compare in signed order", expected, Integer.signum(KeyComparators
+                    .BYTEWISE.compare(key1, key2)));
+            Assert.assertEquals("Off-heap keys compare in signed order", expected, compareOffheap(KeyComparators
+                    .BYTEWISE, key1, key2));
+        }
+    }
+
+    @Test
+    public void unsignedLexicographicTest() {
+        for (int i = 0; i < ITERATIONS; i++) {
+            ByteBuffer key1 = randomKey();
+            ByteBuffer key2 = similarKey(key1);
+            int expected = Integer.signum(compareUnsigned(key1, key2));
+
+            Assert.assertEquals("Heap keys compare in unsigned order", expected, Integer.signum(KeyComparators
+                    .UNSIGNED_LEXICOGRAPHIC.compare(key1, key2)));
+            Assert.assertEquals("Off-heap keys compare in unsigned order", expected, compareOffheap(KeyComparators
+                    .UNSIGNED_LEXICOGRAPHIC, key1, key2));
+        }
+    }
+
+    @Test
+    public void directBufferTest() {
+        for (int i = 0; i < ITERATIONS / 10; i++) {
+            ByteBuffer key1 = randomKey();
+            ByteBuffer key2 = similarKey(key1);
+            ByteBuffer direct1 = ByteBuffer.allocateDirect(key1.remaining());
+            direct1.put(key1.duplicate());
+            direct1.flip();
+
+            for (KeyComparators comparator : KeyComparators.values()) {
+                Assert.assertEquals("Direct keys compare like heap keys", Integer.signum(comparator.compare(key1,
+                        key2)), Integer.signum(comparator.compare(direct1, key2)));
+            }
+        }
+    }
+
+    /**
+     * Returns a key whose data starts at a random offset of its backing array.
+     */
+    private ByteBuffer randomKey() {
+        int size = random.nextInt(40);
+        int offset = random.nextInt(8);
+        byte[] array = new byte[offset + size];
+        random.nextBytes(array);
+        ByteBuffer key = ByteBuffer.wrap(array);
+        key.position(offset);
+        return key.slice();
+    }
+
+    /**
+     * Returns a key that shares a random length prefix with the given key, so that comparisons reach every word
+     * and tail byte.
+     */
+    private ByteBuffer similarKey(ByteBuffer key) {
+        ByteBuffer other = randomKey();
+
+        if (random.nextBoolean()) {
+            int prefix = Math.min(random.nextInt(key.remaining() + 1), other.remaining());
+
+            for (int i = 0; i < prefix; i++) {
+                other.put(i, key.get(i));
+            }
+        }
+
+        return other;
+    }
+
+    private static int compareOffheap(KeyComparators comparator, ByteBuffer key1, ByteBuffer key2) {
+        MemoryPointer pointer = MemoryAllocator.allocate(Math.max(key1.remaining(), 1));
+
+        try {
+            for (int i = 0; i < key1.remaining(); i++) {
+                pointer.directBuffer().put(i, key1.get(i));
+            }
+
+            return Integer.signum(comparator.compare(pointer.address(), key1.remaining(), key2));
+        } finally {
+            pointer.release();
+        }
+    }
+
+    private static int compareUnsigned(ByteBuffer key1, ByteBuffer key2) {
+        int compareCount = Math.min(key1.remaining(), key2.remaining());
+
+        for (int i = 0; i < compareCount; i++) {
+            int compared = (key1.get(i) & 0xFF) - (key2.get(i) & 0xFF);
+
+            if (compared != 0) {
+                return compared;
+            }
+        }
+
+        return key1.remaining() - key2.remaining();
+    }
+}
@@ -23,6 +23,7 @@ import com.jordanwilliams.heftydb.db.DBState;
 import com.jordanwilliams.heftydb.io.Throttle;
 import com.jordanwilliams.heftydb.metrics.Metrics;
 import com.jordanwilliams.heftydb.state.Paths;
+import com.jordanwilliams.heftydb.table.Table;
 import com.jordanwilliams.heftydb.table.file.FileTableWriter;
 import com.jordanwilliams.heftydb.test.base.TupleTest;
 import com.jordanwilliams.heftydb.test.generator.ConfigGenerator;
@@ -30,6 +31,8 @@ import com.jordanwilliams.heftydb.write.CommitLogWriter;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
 import java.util.List;
 
 public class DBInitializerTest extends TupleTest {
@@ -75,4 +78,85 @@ public class DBInitializerTest extends TupleTest {
         Assert.assertEquals("Should be 2 tables", 2, state.tables().count());
         Assert.assertEquals("Should be 200 as the max snapshot id", 200, state.snapshots().currentId());
     }
+
+    @Test
+    public void orphanTableTest() throws Exception {
+        Paths paths = ConfigGenerator.testPaths();
+        Config config = ConfigGenerator.testConfig();
+        new FileTableWriter.Task(1, 1, paths, config, tuples.iterator(), tuples.size(), null, Throttle.MAX).run();
+
+        DBState state = new DBInitializer(config, new Metrics(config)).initialize();
+        Assert.assertEquals("Should be 1 table", 1, state.tables().count());
+
+        long reservedId = state.tables().reserveId();
+        new FileTableWriter.Task(reservedId, 1, paths, config, tuples.iterator(), tuples.size(), null,
+                Throttle.MAX).run();
+        close(state);
+
+        state = new DBInitializer(config, new Metrics(config)).initialize();
+        Assert.assertEquals("Should be 1 table", 1, state.tables().count());
+        Assert.assertFalse("Orphan table was deleted", Files.exists(paths.tablePath(reservedId)));
+        Assert.assertFalse("Orphan index was deleted", Files.exists(paths.indexPath(reservedId)));
+        close(state);
+    }
+
+    @Test
+    public void removedTableTest() throws Exception {
+        Paths paths = ConfigGenerator.testPaths();
+        Config config = ConfigGenerator.testConfig();
+        new FileTableWriter.Task(1, 1, paths, config, tuples.iterator(), tuples.size(), null, Throttle.MAX).run();
+
+        DBState state = new DBInitializer(config, new Metrics(config)).initialize();
+        state.tables().remove(state.tables().iterator().next());
+        close(state);
+
+        state = new DBInitializer(config, new Metrics(config)).initialize();
+        Assert.assertEquals("Should be no tables", 0, state.tables().count());
+        Assert.assertFalse("Removed table was deleted", Files.exists(paths.tablePath(1)));
+        close(state);
+    }
+
+    @Test
+    public void manifestTableTest() throws Exception {
+        Paths paths = ConfigGenerator.testPaths();
+        Config config = ConfigGenerator.testConfig();
+        new FileTableWriter.Task(1, 2, paths, config, tuples.iterator(), tuples.size(), null, Throttle.MAX).run();
+
+        DBState state = new DBInitializer(config, new Metrics(config)).initialize();
+        close(state);
+
+        state = new DBInitializer(config, new Metrics(config)).initialize();
+        Table table = state.tables().iterator().next();
+        Assert.assertEquals("Level comes from the manifest", 2, table.level());
+        Assert.assertEquals("Min key comes from the manifest", tuples.get(0).key().data(), table.minKey());
+        Assert.assertEquals("Max key comes from the manifest", tuples.get(tuples.size() - 1).key().data(),
+                table.maxKey());
+        Assert.assertEquals("Table is opened when read", tuples.get(0), table.get(tuples.get(0).key()));
+        close(state);
+    }
+
+    @Test
+    public void tornManifestTest() throws Exception {
+        Paths paths = ConfigGenerator.testPaths();
+        Config config = ConfigGenerator.testConfig();
+        new FileTableWriter.Task(1, 1, paths, config, tuples.iterator(), tuples.size(), null, Throttle.MAX).run();
+
+        DBState state = new DBInitializer(config, new Metrics(config)).initialize();
+        close(state);
+
+        Files.write(paths.manifestPath(), new byte[]{0, 0, 0, 64, 1, 2, 3}, StandardOpenOption.APPEND);
+
+        state = new DBInitializer(config, new Metrics(config)).initialize();
+        Assert.assertEquals("Should be 1 table", 1, state.tables().count());
+        Assert.assertEquals("Should be 100 as the max snapshot id", 100, state.snapshots().currentId());
+        close(state);
+    }
+
+    private static void close(DBState state) throws Exception {
+        for (Table table : state.tables()) {
+            table.close();
+        }
+
+        state.tables().close();
+    }
 }
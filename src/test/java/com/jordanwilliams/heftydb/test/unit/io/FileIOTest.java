@@ -19,11 +19,13 @@ package com.jordanwilliams.heftydb.test.unit.io;
 
 import com.jordanwilliams.heftydb.io.AppendChannelFile;
 import com.jordanwilliams.heftydb.io.AppendFile;
+import com.jordanwilliams.heftydb.io.DirectChannelFile;
 import com.jordanwilliams.heftydb.io.ImmutableChannelFile;
 import com.jordanwilliams.heftydb.io.ImmutableFile;
 import com.jordanwilliams.heftydb.test.base.FileTest;
 import com.jordanwilliams.heftydb.test.helper.TestFileHelper;
 import org.junit.Assert;
+import org.junit.Assume;
 import org.junit.Test;
 
 import java.io.IOException;
@@ -92,4 +94,53 @@ public class FileIOTest extends FileTest {
         Assert.assertEquals("Values match", 4, readFile.readInt(0));
         Assert.assertEquals("Values match", 8, readFile.readLong(4));
     }
+
+    @Test
+    public void directReadTest() throws IOException {
+        Assume.assumeTrue(TestFileHelper.isDirectReadSupported());
+        AppendFile file = AppendChannelFile.open(testFile);
+
+        //Spans several file system blocks so that reads cross block boundaries, and is larger than a read buffer
+        for (int i = 0; i < 10000; i++) {
+            TEST_BYTES.rewind();
+            file.appendInt(i);
+            file.append(TEST_BYTES);
+        }
+
+        file.close();
+
+        ImmutableFile bufferedFile = ImmutableChannelFile.open(testFile);
+        ImmutableFile directFile = DirectChannelFile.open(testFile);
+        int recordSize = 4 + TEST_BYTES.capacity();
+
+        for (int i = 0; i < 10000; i++) {
+            long offset = (long) i * recordSize;
+            Assert.assertEquals("Values match", i, directFile.readInt(offset));
+
+            ByteBuffer expected = ByteBuffer.allocate(recordSize * 3);
+            ByteBuffer read = ByteBuffer.allocate(recordSize * 3);
+            bufferedFile.read(expected, offset);
+            directFile.read(read, offset);
+
+            Assert.assertEquals("Read lengths match", expected.position(), read.position());
+            expected.flip();
+            read.flip();
+            Assert.assertEquals("Read bytes match", expected, read);
+        }
+
+        ByteBuffer expected = ByteBuffer.allocate((int) bufferedFile.size());
+        ByteBuffer read = ByteBuffer.allocate((int) directFile.size());
+        bufferedFile.read(expected, 0);
+        directFile.read(read, 0);
+        expected.flip();
+        read.flip();
+        Assert.assertEquals("Whole file matches", expected, read);
+
+        Assert.assertEquals("File size", bufferedFile.size(), directFile.size());
+        Assert.assertEquals("Read at the end of the file", -1, directFile.read(ByteBuffer.allocate(1), directFile
+                .size()));
+
+        bufferedFile.close();
+        directFile.close();
+    }
 }
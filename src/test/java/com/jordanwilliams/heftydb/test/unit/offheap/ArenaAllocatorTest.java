@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2014. Jordan Williams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jordanwilliams.heftydb.test.unit.offheap;
+
+import com.jordanwilliams.heftydb.offheap.JVMUnsafe;
+import com.jordanwilliams.heftydb.offheap.allocator.ArenaAllocator;
+import org.junit.Assert;
+import org.junit.Test;
+import sun.misc.Unsafe;
+
+import java.util.HashSet;
+import java.util.Set;
+
+public class ArenaAllocatorTest {
+
+    private static final Unsafe unsafe = JVMUnsafe.unsafe;
+    private static final long REGION_SIZE = 2 * ArenaAllocator.HUGE_PAGE_SIZE;
+
+    @Test
+    public void hugePageAlignmentTest() {
+        ArenaAllocator allocator = new ArenaAllocator(1, REGION_SIZE);
+        long firstBlock = Long.MAX_VALUE;
+
+        //One slab of the largest size class fills a huge page
+        for (int i = 0; i < 8; i++) {
+            firstBlock = Math.min(firstBlock, allocator.allocate(1 << 18));
+        }
+
+        Assert.assertEquals("Regions are huge page aligned", 0, firstBlock % ArenaAllocator.HUGE_PAGE_SIZE);
+        Assert.assertEquals("Region is reserved", REGION_SIZE + ArenaAllocator.HUGE_PAGE_SIZE - 1,
+                allocator.reservedBytes());
+    }
+
+    @Test
+    public void arenaTest() {
+        ArenaAllocator allocator = new ArenaAllocator(2, REGION_SIZE);
+        Set<Long> addresses = new HashSet<Long>();
+        long[] blocks = new long[1000];
+
+        for (int i = 0; i < blocks.length; i++) {
+            blocks[i] = allocator.allocate(4096, i % 2);
+            Assert.assertTrue("Blocks do not overlap", addresses.add(blocks[i]));
+            Assert.assertEquals("Block comes from the requested arena", i % 2, allocator.arenaOf(blocks[i]));
+            unsafe.setMemory(blocks[i], 4096, (byte) i);
+        }
+
+        for (int i = 0; i < blocks.length; i++) {
+            Assert.assertEquals("Block keeps its contents", (byte) i, unsafe.getByte(blocks[i] + 4095));
+            Assert.assertEquals("Page sized blocks are page aligned", 0, blocks[i] % unsafe.pageSize());
+        }
+
+        long reserved = allocator.reservedBytes();
+
+        for (long block : blocks) {
+            allocator.deallocate(block, 4096);
+        }
+
+        for (int i = 0; i < blocks.length; i++) {
+            long block = allocator.allocate(4000, 1);
+            Assert.assertEquals("Block comes from the requested arena", 1, allocator.arenaOf(block));
+        }
+
+        Assert.assertEquals("Freed blocks go back to their arena", reserved, allocator.reservedBytes());
+    }
+
+    @Test
+    public void largeAllocationTest() {
+        ArenaAllocator allocator = new ArenaAllocator(2, REGION_SIZE);
+        long address = allocator.allocate(1 << 20, 1);
+        Assert.assertEquals("Large allocation is not in a region", -1, allocator.arenaOf(address));
+        Assert.assertEquals("Large allocation is reserved as is", 1 << 20, allocator.reservedBytes());
+        allocator.deallocate(address, 1 << 20);
+        Assert.assertEquals("Large allocation is released", 0, allocator.reservedBytes());
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2014. Jordan Williams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jordanwilliams.heftydb.test.unit.offheap;
+
+import com.jordanwilliams.heftydb.offheap.JVMUnsafe;
+import com.jordanwilliams.heftydb.offheap.MemoryAccess;
+import com.jordanwilliams.heftydb.offheap.MemoryAllocator;
+import com.jordanwilliams.heftydb.offheap.MemoryPointer;
+import com.jordanwilliams.heftydb.offheap.SegmentMemoryAccess;
+import com.jordanwilliams.heftydb.offheap.UnsafeMemoryAccess;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+public class MemoryAccessTest {
+
+    @Test
+    public void unsafeAccessTest() throws Exception {
+        accessTest(new UnsafeMemoryAccess());
+    }
+
+    @Test
+    public void segmentAccessTest() throws Exception {
+        //Only runs on JDKs with MemorySegment.reinterpret, from JDK 21 on, so it is skipped when building on JDK 17
+        Assume.assumeTrue(SegmentMemoryAccess.isAvailable());
+        accessTest(new SegmentMemoryAccess());
+    }
+
+    @Test
+    public void segmentAvailabilityTest() {
+        boolean constructed;
+
+        try {
+            new SegmentMemoryAccess();
+            constructed = true;
+        } catch (ReflectiveOperationException e) {
+            constructed = false;
+        }
+
+        Assert.assertEquals("Segments are only available if they can be used", constructed, SegmentMemoryAccess
+                .isAvailable());
+    }
+
+    @Test
+    public void allocatorAccessTest() {
+        MemoryPointer pointer = MemoryAllocator.allocate(64);
+        pointer.directBuffer().putLong(8, 42);
+
+        Assert.assertEquals("Buffer writes to the allocated memory", 42, JVMUnsafe.unsafe.getLong(pointer.address()
+                + 8));
+        Assert.assertEquals("Buffer is native order", ByteOrder.nativeOrder(), pointer.directBuffer().order());
+
+        pointer.release();
+    }
+
+    private static void accessTest(MemoryAccess access) {
+        MemoryPointer pointer = MemoryAllocator.allocate(64);
+        ByteBuffer buffer = access.buffer(pointer.address(), 64);
+
+        Assert.assertTrue("Buffer is direct", buffer.isDirect());
+        Assert.assertEquals("Buffer has the requested capacity", 64, buffer.capacity());
+        Assert.assertEquals("Buffer is native order", ByteOrder.nativeOrder(), buffer.order());
+
+        buffer.putInt(60, 7);
+        Assert.assertEquals("Buffer writes to the memory", 7, JVMUnsafe.unsafe.getInt(pointer.address() + 60));
+
+        JVMUnsafe.unsafe.putLong(pointer.address(), 11);
+        Assert.assertEquals("Buffer reads from the memory", 11, buffer.getLong(0));
+
+        try {
+            buffer.getInt(61);
+            Assert.fail("Reads past the end of the memory are rejected");
+        } catch (IndexOutOfBoundsException e) {
+            //Expected
+        }
+
+        pointer.release();
+    }
+}
@@ -36,4 +36,16 @@ public class MemoryPointerTest {
 
         Assert.assertTrue("MemoryPointer has been freed", pointer.isFree());
     }
+
+    @Test
+    public void alignedAllocationTest() {
+        MemoryPointer pointer = MemoryAllocator.allocateAligned(1000, 4096);
+
+        Assert.assertEquals("Address is aligned", 0, pointer.address() % 4096);
+        Assert.assertEquals("Size matches", 1000, pointer.size());
+
+        pointer.release();
+
+        Assert.assertTrue("MemoryPointer has been freed", pointer.isFree());
+    }
 }
@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2014. Jordan Williams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jordanwilliams.heftydb.test.unit.offheap;
+
+import com.jordanwilliams.heftydb.offheap.MemoryAllocator;
+import com.jordanwilliams.heftydb.offheap.MemoryOwner;
+import com.jordanwilliams.heftydb.offheap.MemoryPointer;
+import com.jordanwilliams.heftydb.offheap.MemoryTracker;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MemoryTrackerTest {
+
+    @Test
+    public void trackFreeTest() {
+        MemoryTracker tracker = new MemoryTracker();
+        MemoryPointer pointer = MemoryAllocator.allocate(128, MemoryOwner.ROW_CACHE);
+        tracker.track(pointer, pointer.address(), pointer.size(), pointer.owner());
+
+        Assert.assertEquals("Pointer is live", 1, tracker.liveAllocations().size());
+        MemoryTracker.Allocation allocation = tracker.liveAllocations().get(0);
+        Assert.assertEquals("Owner is recorded", MemoryOwner.ROW_CACHE, allocation.owner());
+        Assert.assertEquals("Allocation site is recorded", MemoryTrackerTest.class.getName(), allocation.site().get(0)
+                .getClassName());
+
+        Assert.assertTrue("Pointer is untracked", tracker.untrack(pointer.address()));
+        Assert.assertFalse("Double free is detected", tracker.untrack(pointer.address()));
+        Assert.assertEquals("Double free is counted", 1, tracker.doubleFreeCount());
+        Assert.assertEquals("No pointers are live", 0, tracker.liveAllocations().size());
+
+        pointer.release();
+    }
+
+    @Test
+    public void leakTest() throws Exception {
+        MemoryTracker tracker = new MemoryTracker();
+        long ownedMemory = MemoryAllocator.ownedMemory(MemoryOwner.ITERATOR);
+        track(tracker, MemoryAllocator.allocate(256, MemoryOwner.ITERATOR));
+
+        Assert.assertEquals("Memory is counted for its owner", ownedMemory + 256, MemoryAllocator.ownedMemory
+                (MemoryOwner.ITERATOR));
+
+        for (int i = 0; i < 100 && tracker.leakCount() == 0; i++) {
+            System.gc();
+            Thread.sleep(10);
+            tracker.reportLeaks();
+        }
+
+        Assert.assertEquals("Leak is detected", 1, tracker.leakCount());
+        Assert.assertEquals("Leaked bytes are counted", 256, tracker.leakedBytes());
+        Assert.assertEquals("No pointers are live", 0, tracker.liveAllocations().size());
+    }
+
+    private static void track(MemoryTracker tracker, MemoryPointer pointer) {
+        tracker.track(pointer, pointer.address(), pointer.size(), pointer.owner());
+    }
+}
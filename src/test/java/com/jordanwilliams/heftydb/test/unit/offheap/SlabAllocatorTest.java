@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2014. Jordan Williams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jordanwilliams.heftydb.test.unit.offheap;
+
+import com.jordanwilliams.heftydb.offheap.JVMUnsafe;
+import com.jordanwilliams.heftydb.offheap.allocator.SlabAllocator;
+import org.junit.Assert;
+import org.junit.Test;
+import sun.misc.Unsafe;
+
+import java.util.HashSet;
+import java.util.Set;
+
+public class SlabAllocatorTest {
+
+    private static final Unsafe unsafe = JVMUnsafe.unsafe;
+
+    @Test
+    public void blockSizeTest() {
+        Assert.assertEquals("Small allocations use the smallest class", 64, SlabAllocator.blockSize(1));
+        Assert.assertEquals("Powers of two fit exactly", 4096, SlabAllocator.blockSize(4096));
+        Assert.assertEquals("Powers of two fit exactly", 16384, SlabAllocator.blockSize(16384));
+        Assert.assertEquals("Sizes round up to the next quarter step", 20480, SlabAllocator.blockSize(16385));
+        Assert.assertEquals("Large allocations are not rounded", 1000000, SlabAllocator.blockSize(1000000));
+
+        for (long size = 1; size < 300000; size += 97) {
+            long blockSize = SlabAllocator.blockSize(size);
+            Assert.assertTrue("Block fits the allocation", blockSize >= size);
+            Assert.assertTrue("Block wastes little memory", size <= 64 || blockSize - size < size / 4);
+        }
+    }
+
+    @Test
+    public void allocateFreeTest() {
+        SlabAllocator allocator = new SlabAllocator();
+        Set<Long> addresses = new HashSet<Long>();
+        long[] blocks = new long[1000];
+
+        for (int i = 0; i < blocks.length; i++) {
+            blocks[i] = allocator.allocate(4096);
+            Assert.assertTrue("Blocks do not overlap", addresses.add(blocks[i]));
+            unsafe.setMemory(blocks[i], 4096, (byte) i);
+        }
+
+        for (int i = 0; i < blocks.length; i++) {
+            Assert.assertEquals("Block keeps its contents", (byte) i, unsafe.getByte(blocks[i] + 4095));
+            Assert.assertEquals("Page sized blocks are page aligned", 0, blocks[i] % unsafe.pageSize());
+        }
+
+        long reserved = allocator.reservedBytes();
+        long pooled = allocator.pooledBytes();
+
+        for (long block : blocks) {
+            allocator.deallocate(block, 4096);
+        }
+
+        Assert.assertEquals("Freed blocks are pooled", pooled + 4096 * blocks.length, allocator.pooledBytes());
+
+        for (int i = 0; i < blocks.length; i++) {
+            allocator.allocate(4000);
+        }
+
+        Assert.assertEquals("Freed blocks are reused instead of new slabs", reserved, allocator.reservedBytes());
+    }
+
+    @Test
+    public void largeAllocationTest() {
+        SlabAllocator allocator = new SlabAllocator();
+        long address = allocator.allocate(1 << 20);
+        Assert.assertEquals("Large allocation is reserved as is", 1 << 20, allocator.reservedBytes());
+        allocator.deallocate(address, 1 << 20);
+        Assert.assertEquals("Large allocation is released", 0, allocator.reservedBytes());
+    }
+
+    @Test
+    public void crossThreadFreeTest() throws Exception {
+        final SlabAllocator allocator = new SlabAllocator();
+        final long[] blocks = new long[500];
+
+        Thread allocatingThread = new Thread() {
+            @Override
+            public void run() {
+                for (int i = 0; i < blocks.length; i++) {
+                    blocks[i] = allocator.allocate(100);
+                }
+            }
+        };
+
+        allocatingThread.start();
+        allocatingThread.join();
+
+        for (long block : blocks) {
+            allocator.deallocate(block, 100);
+        }
+
+        long reserved = allocator.reservedBytes();
+        Set<Long> addresses = new HashSet<Long>();
+
+        for (int i = 0; i < blocks.length; i++) {
+            Assert.assertTrue("Blocks do not overlap", addresses.add(allocator.allocate(100)));
+        }
+
+        Assert.assertEquals("Blocks freed by another thread are reused", reserved, allocator.reservedBytes());
+    }
+}
@@ -86,6 +86,27 @@ public class TableAggregationIteratorTest {
         }
     }
 
+    @Test
+    public void changeTablesBeforeStartTest() throws Exception {
+        Tables tables = testTables();
+        List<Tuple> tuples = new ArrayList<Tuple>();
+        CloseableIterator<Tuple> tableReaderTuples = ascendingTupleIterator(tables);
+
+        while (tableReaderTuples.hasNext()) {
+            tuples.add(tableReaderTuples.next());
+        }
+
+        Key startKey = tuples.get(tuples.size() / 2).key();
+        TableAggregationIterator tableAggregationIterator = new TableAggregationIterator(ascendingTupleIterator
+                (tables, startKey, Long.MAX_VALUE), startKey, Long.MAX_VALUE, tables, ascendingIteratorSource(tables));
+
+        //The iterator is refreshed before it has returned anything
+        tables.add(merge(tables));
+
+        Assert.assertEquals("Iteration starts at the start key", tuples.get(tuples.size() / 2),
+                tableAggregationIterator.next());
+    }
+
     private Table merge(Tables tables) {
         MemoryTable merged = new MemoryTable(255);
 
@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2014. Jordan Williams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jordanwilliams.heftydb.test.unit.state;
+
+import com.jordanwilliams.heftydb.data.KeyComparators;
+import com.jordanwilliams.heftydb.state.Manifest;
+import com.jordanwilliams.heftydb.state.Paths;
+import com.jordanwilliams.heftydb.test.base.FileTest;
+import com.jordanwilliams.heftydb.test.generator.ConfigGenerator;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.file.Files;
+import java.util.Collections;
+
+public class ManifestTest extends FileTest {
+
+    private final Paths paths = ConfigGenerator.testPaths();
+
+    @Test
+    public void interruptedEditTest() throws Exception {
+        Manifest manifest = Manifest.create(paths, KeyComparators.BYTEWISE.id(), Collections.<Manifest.Entry>emptyList());
+
+        Thread.currentThread().interrupt();
+
+        try {
+            manifest.edit(Collections.singletonList(entry(1)), Collections.<Long>emptyList());
+        } finally {
+            Assert.assertTrue("Interrupt is kept", Thread.interrupted());
+        }
+
+        manifest.edit(Collections.singletonList(entry(2)), Collections.<Long>emptyList());
+        manifest.close();
+
+        manifest = Manifest.open(paths);
+        Assert.assertEquals("Both edits are recorded", 2, manifest.entries().size());
+        manifest.close();
+    }
+
+    @Test(expected = ClosedChannelException.class)
+    public void closedEditTest() throws Exception {
+        Manifest manifest = Manifest.create(paths, KeyComparators.BYTEWISE.id(), Collections.<Manifest.Entry>emptyList());
+        manifest.close();
+        manifest.edit(Collections.singletonList(entry(1)), Collections.<Long>emptyList());
+    }
+
+    @Test
+    public void reservedTableTest() throws Exception {
+        Manifest manifest = Manifest.create(paths, KeyComparators.BYTEWISE.id(), Collections.<Manifest.Entry>emptyList());
+        manifest.reserve(1);
+        manifest.reserve(2);
+        manifest.edit(Collections.singletonList(entry(2)), Collections.<Long>emptyList());
+        manifest.close();
+
+        Files.createFile(paths.tablePath(1));
+        Files.createFile(paths.tablePath(2));
+
+        manifest = Manifest.open(paths);
+        Assert.assertFalse("Reserved table is deleted", Files.exists(paths.tablePath(1)));
+        Assert.assertTrue("Added table is kept", Files.exists(paths.tablePath(2)));
+        manifest.close();
+    }
+
+    private static Manifest.Entry entry(long tableId) {
+        return new Manifest.Entry(tableId, 1, 1, 1, 1, ByteBuffer.wrap("a".getBytes()), ByteBuffer.wrap("b"
+                .getBytes()));
+    }
+}
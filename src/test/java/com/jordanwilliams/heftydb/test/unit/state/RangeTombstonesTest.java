@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2014. Jordan Williams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jordanwilliams.heftydb.test.unit.state;
+
+import com.jordanwilliams.heftydb.data.RangeTombstone;
+import com.jordanwilliams.heftydb.state.Paths;
+import com.jordanwilliams.heftydb.state.RangeTombstones;
+import com.jordanwilliams.heftydb.state.Snapshots;
+import com.jordanwilliams.heftydb.state.Tables;
+import com.jordanwilliams.heftydb.table.Table;
+import com.jordanwilliams.heftydb.table.memory.MemoryTable;
+import com.jordanwilliams.heftydb.test.base.FileTest;
+import com.jordanwilliams.heftydb.test.generator.ConfigGenerator;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class RangeTombstonesTest extends FileTest {
+
+    private final Paths paths = ConfigGenerator.testPaths();
+
+    @Test
+    public void loadKeepsTombstoneTest() throws Exception {
+        RangeTombstones rangeTombstones = new RangeTombstones(paths, Collections.<RangeTombstone>emptyList());
+        Tables tables = new Tables(Collections.<Table>singletonList(new MemoryTable(4)));
+
+        long loadSnapshotId = rangeTombstones.startLoad(new Snapshots(1));
+        rangeTombstones.add(new RangeTombstone(ByteBuffer.wrap("a".getBytes()), ByteBuffer.wrap("z".getBytes()),
+                loadSnapshotId + 1, 3));
+
+        rangeTombstones.removeObsolete(tables);
+        Assert.assertEquals("Tombstone is kept while the load runs", 1, rangeTombstones.all().size());
+
+        rangeTombstones.finishLoad(loadSnapshotId, 6);
+        Assert.assertEquals("Mark covers the loaded tables", 6, rangeTombstones.all().get(0).mark());
+
+        rangeTombstones.removeObsolete(tables);
+        Assert.assertEquals("Tombstone is kept for the loaded tables", 1, rangeTombstones.all().size());
+    }
+
+    @Test
+    public void failedLoadTest() throws Exception {
+        RangeTombstones rangeTombstones = new RangeTombstones(paths, Collections.<RangeTombstone>emptyList());
+        Tables tables = new Tables(Collections.<Table>singletonList(new MemoryTable(4)));
+
+        long loadSnapshotId = rangeTombstones.startLoad(new Snapshots(1));
+        rangeTombstones.add(new RangeTombstone(ByteBuffer.wrap("a".getBytes()), ByteBuffer.wrap("z".getBytes()),
+                loadSnapshotId + 1, 3));
+        rangeTombstones.finishLoad(loadSnapshotId, 0);
+
+        rangeTombstones.removeObsolete(tables);
+        Assert.assertTrue("Tombstone is removed once the load has failed", rangeTombstones.isEmpty());
+    }
+
+    @Test
+    public void appendedChangesTest() throws Exception {
+        RangeTombstones rangeTombstones = new RangeTombstones(paths, Collections.<RangeTombstone>emptyList());
+
+        for (int i = 1; i <= 10; i++) {
+            rangeTombstones.add(tombstone(i, i));
+        }
+
+        rangeTombstones.rewritten(rangeTombstones.all().subList(0, 5), 1, 10);
+        rangeTombstones.removeObsolete(new Tables(Collections.<Table>singletonList(new MemoryTable(9))));
+        List<RangeTombstone> live = new ArrayList<RangeTombstone>(rangeTombstones.all());
+        rangeTombstones.close();
+
+        Assert.assertEquals("Tombstones are removed", 7, live.size());
+        Assert.assertEquals("Changes are read back", live, RangeTombstones.read(paths).all());
+    }
+
+    @Test
+    public void tornChangeTest() throws Exception {
+        RangeTombstones rangeTombstones = new RangeTombstones(paths, Collections.<RangeTombstone>emptyList());
+
+        for (int i = 1; i <= 3; i++) {
+            rangeTombstones.add(tombstone(i, i));
+        }
+
+        rangeTombstones.close();
+
+        FileChannel channel = FileChannel.open(paths.rangeTombstonePath(), StandardOpenOption.WRITE);
+        channel.truncate(channel.size() - 1);
+        channel.close();
+
+        RangeTombstones read = RangeTombstones.read(paths);
+        Assert.assertEquals("Torn change is dropped", Arrays.asList(tombstone(1, 1), tombstone(2, 2)), read.all());
+
+        //The next change rewrites the file rather than appending after the torn change
+        read.add(tombstone(4, 4));
+        read.close();
+        Assert.assertEquals("Changes are read back", Arrays.asList(tombstone(1, 1), tombstone(2, 2),
+                tombstone(4, 4)), RangeTombstones.read(paths).all());
+    }
+
+    @Test
+    public void rewriteTest() throws Exception {
+        RangeTombstones rangeTombstones = new RangeTombstones(paths, Collections.<RangeTombstone>emptyList());
+
+        for (int i = 1; i <= 500; i++) {
+            rangeTombstones.add(tombstone(i, 1));
+        }
+
+        rangeTombstones.removeObsolete(new Tables(Collections.<Table>singletonList(new MemoryTable(2))));
+        rangeTombstones.add(tombstone(501, 1));
+        rangeTombstones.close();
+
+        Assert.assertTrue("Removed tombstones are compacted out of the file", Files.size(paths.rangeTombstonePath())
+                < RangeTombstone.SERIALIZER.size(tombstone(501, 1)) * 4);
+        Assert.assertEquals("Live tombstone is read back", Collections.singletonList(tombstone(501, 1)),
+                RangeTombstones.read(paths).all());
+    }
+
+    private static RangeTombstone tombstone(long snapshotId, long mark) {
+        return new RangeTombstone(ByteBuffer.wrap(("start" + snapshotId).getBytes()), ByteBuffer.wrap(("end" +
+                snapshotId).getBytes()), snapshotId, mark);
+    }
+}
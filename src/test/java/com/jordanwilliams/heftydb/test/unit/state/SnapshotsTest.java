@@ -0,0 +1,58 @@
+/*
+ * Copyright (c) 2014. Jordan Williams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.jordanwilliams.heftydb.test.unit.state;
+
+import com.jordanwilliams.heftydb.state.Snapshots;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class SnapshotsTest {
+
+    @Test
+    public void loadHidesSnapshotTest() throws Exception {
+        final Snapshots snapshots = new Snapshots(4);
+
+        long loadSnapshotId = snapshots.startLoad();
+        Assert.assertEquals("Load takes the next id", 5, loadSnapshotId);
+        Assert.assertEquals("Load is not visible while it runs", 4, snapshots.currentId());
+
+        final AtomicLong nextId = new AtomicLong();
+        final CountDownLatch taken = new CountDownLatch(1);
+
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                nextId.set(snapshots.nextId());
+                taken.countDown();
+            }
+        });
+
+        writer.start();
+        Assert.assertFalse("No newer snapshot is taken while the load runs", taken.await(100, TimeUnit.MILLISECONDS));
+
+        snapshots.finishLoad(loadSnapshotId);
+        writer.join();
+
+        Assert.assertEquals("Snapshot is taken after the load", 6, nextId.get());
+        Assert.assertEquals("Snapshot is visible", 6, snapshots.currentId());
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright (c) 2014. Jordan Williams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.jordanwilliams.heftydb.test.unit.table.file;
+
+import com.jordanwilliams.heftydb.data.KeyComparators;
+import com.jordanwilliams.heftydb.data.Tuple;
+import com.jordanwilliams.heftydb.db.Config;
+import com.jordanwilliams.heftydb.index.Index;
+import com.jordanwilliams.heftydb.index.IndexBlock;
+import com.jordanwilliams.heftydb.index.IndexRecord;
+import com.jordanwilliams.heftydb.index.IndexWriter;
+import com.jordanwilliams.heftydb.io.ChecksumVerification;
+import com.jordanwilliams.heftydb.io.Throttle;
+import com.jordanwilliams.heftydb.metrics.Metrics;
+import com.jordanwilliams.heftydb.state.Paths;
+import com.jordanwilliams.heftydb.table.file.FileTable;
+import com.jordanwilliams.heftydb.table.file.FileTableWriter;
+import com.jordanwilliams.heftydb.table.file.TableTrailer;
+import com.jordanwilliams.heftydb.table.file.TupleBlock;
+import com.jordanwilliams.heftydb.test.base.FileTest;
+import com.jordanwilliams.heftydb.test.generator.ConfigGenerator;
+import com.jordanwilliams.heftydb.test.generator.TupleGenerator;
+import com.jordanwilliams.heftydb.util.Sizes;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+public class BlockChecksumTest extends FileTest {
+
+    private final Paths paths = ConfigGenerator.testPaths();
+    private final Config config = ConfigGenerator.testConfig();
+    private final List<Tuple> tuples = new TupleGenerator().testRecords(1000, 0);
+
+    @Test
+    public void verifiedReadTest() throws IOException {
+        writeTable();
+
+        FileTable fileTable = openTable(ChecksumVerification.ALWAYS);
+
+        //The second pass is served from the cache
+        for (int i = 0; i < 2; i++) {
+            for (Tuple tuple : tuples) {
+                Assert.assertEquals("Records match", tuple, fileTable.get(tuple.key()));
+            }
+        }
+
+        fileTable.close();
+    }
+
+    @Test
+    public void corruptTupleBlockTest() throws IOException {
+        writeTable();
+        corruptByte(paths.tablePath(1), Sizes.INT_SIZE + 16);
+
+        try {
+            openTable(ChecksumVerification.CACHE_MISSES);
+            Assert.fail("Corrupt tuple block was read");
+        } catch (IOException e) {
+            Assert.assertTrue("Checksum failure is reported", e.getMessage().contains("checksum"));
+        }
+
+        openTable(ChecksumVerification.NEVER).close();
+    }
+
+    @Test
+    public void corruptIndexBlockTest() throws IOException {
+        IndexWriter indexWriter = IndexWriter.open(1, paths, 4096);
+
+        for (int i = 0; i < 10; i++) {
+            indexWriter.write(new IndexRecord(tuples.get(i).key(), i, 128));
+        }
+
+        indexWriter.finish();
+        corruptByte(paths.indexPath(1), 0);
+
+        try {
+            openIndex(ChecksumVerification.CACHE_MISSES);
+            Assert.fail("Corrupt index block was read");
+        } catch (IOException e) {
+            Assert.assertTrue("Checksum failure is reported", e.getMessage().contains("checksum"));
+        }
+
+        openIndex(ChecksumVerification.NEVER).close();
+    }
+
+    @Test
+    public void legacyTableTest() throws IOException {
+        writeTable();
+
+        FileChannel channel = FileChannel.open(paths.tablePath(1), StandardOpenOption.READ, StandardOpenOption.WRITE);
+        ByteBuffer blockSize = ByteBuffer.allocate(Sizes.INT_SIZE);
+        channel.read(blockSize, 0);
+        channel.close();
+
+        //A table from before the trailer was versioned has no block checksums, so a bad checksum goes unnoticed
+        corruptByte(paths.tablePath(1), blockSize.getInt(0));
+        writeLegacyTrailer(paths.tablePath(1));
+
+        FileTable fileTable = openTable(ChecksumVerification.ALWAYS);
+
+        for (Tuple tuple : tuples) {
+            Assert.assertEquals("Records match", tuple, fileTable.get(tuple.key()));
+        }
+
+        fileTable.close();
+    }
+
+    private void writeTable() {
+        new FileTableWriter.Task(1, 1, paths, config, tuples.iterator(), tuples.size(), null, Throttle.MAX).run();
+    }
+
+    private FileTable openTable(ChecksumVerification checksumVerification) throws IOException {
+        Metrics metrics = new Metrics(config);
+        return FileTable.open(1, paths, new TupleBlock.Cache(1024000, metrics), new IndexBlock.Cache(1024000,
+                metrics), KeyComparators.BYTEWISE, checksumVerification, metrics);
+    }
+
+    private Index openIndex(ChecksumVerification checksumVerification) throws IOException {
+        Metrics metrics = new Metrics(config);
+        return Index.open(1, paths, new IndexBlock.Cache(1024000, metrics), KeyComparators.BYTEWISE,
+                checksumVerification, metrics);
+    }
+
+    private static void writeLegacyTrailer(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        ByteBuffer trailer = ByteBuffer.allocate(TableTrailer.LEGACY_SIZE);
+        channel.read(trailer, channel.size() - TableTrailer.SIZE);
+        trailer.rewind();
+        channel.truncate(channel.size() - TableTrailer.SIZE);
+        channel.write(trailer, channel.size());
+        channel.close();
+    }
+
+    private static void corruptByte(Path path, long position) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        ByteBuffer buffer = ByteBuffer.allocate(1);
+        channel.read(buffer, position);
+        buffer.put(0, (byte) ~buffer.get(0));
+        buffer.rewind();
+        channel.write(buffer, position);
+        channel.close();
+    }
+}
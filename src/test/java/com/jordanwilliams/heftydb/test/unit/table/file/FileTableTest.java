@@ -19,15 +19,20 @@ package com.jordanwilliams.heftydb.test.unit.table.file;
 import com.jordanwilliams.heftydb.data.Key;
 import com.jordanwilliams.heftydb.data.Tuple;
 import com.jordanwilliams.heftydb.db.Config;
+import com.jordanwilliams.heftydb.db.ReadOptions;
 import com.jordanwilliams.heftydb.index.IndexBlock;
 import com.jordanwilliams.heftydb.io.Throttle;
 import com.jordanwilliams.heftydb.metrics.Metrics;
+import com.jordanwilliams.heftydb.offheap.MemoryAllocator;
+import com.jordanwilliams.heftydb.offheap.MemoryOwner;
 import com.jordanwilliams.heftydb.state.Paths;
 import com.jordanwilliams.heftydb.table.file.FileTable;
 import com.jordanwilliams.heftydb.table.file.FileTableWriter;
 import com.jordanwilliams.heftydb.table.file.TupleBlock;
 import com.jordanwilliams.heftydb.test.base.ParameterizedTupleTest;
 import com.jordanwilliams.heftydb.test.generator.ConfigGenerator;
+import com.jordanwilliams.heftydb.util.CloseableIterator;
+import com.jordanwilliams.heftydb.util.Sizes;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -40,6 +45,7 @@ import java.util.Random;
 public class FileTableTest extends ParameterizedTupleTest {
 
     private final FileTable fileTable;
+    private TupleBlock.Cache tupleBlockCache;
     private final Random random = new Random(System.nanoTime());
 
     public FileTableTest(List<Tuple> testTuples) throws IOException {
@@ -120,6 +126,97 @@ public class FileTableTest extends ParameterizedTupleTest {
         }
     }
 
+    @Test
+    public void uncachedIteratorTest() throws IOException {
+        CloseableIterator<Tuple> tableRecordIterator = fileTable.ascendingIterator(Long.MAX_VALUE);
+
+        while (tableRecordIterator.hasNext()) {
+            tableRecordIterator.next();
+        }
+
+        tableRecordIterator.close();
+
+        Assert.assertNull("Scanned block is not cached", tupleBlockCache.get(1, Sizes.INT_SIZE));
+    }
+
+    @Test
+    public void cachedIteratorTest() throws IOException {
+        ReadOptions options = new ReadOptions.Builder().useCache(true).fillCache(true).build();
+        List<Tuple> latestTuples = tupleGenerator.latest(tuples, Long.MAX_VALUE);
+
+        for (int i = 0; i < 2; i++) {
+            CloseableIterator<Tuple> tableRecordIterator = fileTable.ascendingIterator(Long.MAX_VALUE, options);
+            Iterator<Tuple> recordIterator = latestTuples.iterator();
+
+            while (tableRecordIterator.hasNext()) {
+                Assert.assertEquals("Records match", recordIterator.next(), tableRecordIterator.next());
+            }
+
+            tableRecordIterator.close();
+
+            CloseableIterator<Tuple> descendingIterator = fileTable.descendingIterator(Long.MAX_VALUE, options);
+            ListIterator<Tuple> descendingRecordIterator = latestTuples.listIterator(latestTuples.size());
+
+            while (descendingIterator.hasNext()) {
+                Assert.assertEquals("Records match", descendingRecordIterator.previous(), descendingIterator.next());
+            }
+
+            descendingIterator.close();
+        }
+
+        TupleBlock cachedBlock = tupleBlockCache.get(1, Sizes.INT_SIZE);
+        Assert.assertNotNull("Scanned block is cached", cachedBlock);
+        cachedBlock.memory().release();
+
+        //An iterator that is closed part way through leaves the cached blocks it shared intact
+        int medianKeyIndex = random.nextInt(latestTuples.size());
+        Key medianKey = latestTuples.get(medianKeyIndex).key();
+        CloseableIterator<Tuple> rangeIterator = fileTable.ascendingIterator(medianKey, Long.MAX_VALUE, options);
+        Assert.assertEquals("Records match", latestTuples.get(medianKeyIndex), rangeIterator.next());
+        rangeIterator.close();
+
+        for (Tuple tuple : tuples) {
+            Assert.assertEquals("Records match", tuple, fileTable.get(tuple.key()));
+        }
+    }
+
+    @Test
+    public void readaheadIteratorTest() throws IOException {
+        ReadOptions options = new ReadOptions.Builder().readaheadBlocks(4).build();
+        List<Tuple> latestTuples = tupleGenerator.latest(tuples, Long.MAX_VALUE);
+        long iteratorMemory = MemoryAllocator.ownedMemory(MemoryOwner.ITERATOR);
+
+        CloseableIterator<Tuple> tableRecordIterator = fileTable.ascendingIterator(Long.MAX_VALUE, options);
+        Iterator<Tuple> recordIterator = latestTuples.iterator();
+
+        while (tableRecordIterator.hasNext()) {
+            Assert.assertEquals("Records match", recordIterator.next(), tableRecordIterator.next());
+        }
+
+        Assert.assertFalse("All records are read", recordIterator.hasNext());
+        tableRecordIterator.close();
+
+        CloseableIterator<Tuple> descendingIterator = fileTable.descendingIterator(Long.MAX_VALUE, options);
+        ListIterator<Tuple> descendingRecordIterator = latestTuples.listIterator(latestTuples.size());
+
+        while (descendingIterator.hasNext()) {
+            Assert.assertEquals("Records match", descendingRecordIterator.previous(), descendingIterator.next());
+        }
+
+        Assert.assertFalse("All records are read", descendingRecordIterator.hasPrevious());
+        descendingIterator.close();
+
+        //Closing a scan part way through releases the blocks that it read ahead
+        int medianKeyIndex = random.nextInt(latestTuples.size());
+        Key medianKey = latestTuples.get(medianKeyIndex).key();
+        CloseableIterator<Tuple> rangeIterator = fileTable.descendingIterator(medianKey, Long.MAX_VALUE, options);
+        Assert.assertEquals("Records match", latestTuples.get(medianKeyIndex), rangeIterator.next());
+        rangeIterator.close();
+
+        Assert.assertEquals("Blocks read ahead are released", iteratorMemory, MemoryAllocator.ownedMemory
+                (MemoryOwner.ITERATOR));
+    }
+
     private FileTable openFileTable() throws IOException {
         Paths paths = ConfigGenerator.testPaths();
         Config config = ConfigGenerator.testConfig();
@@ -130,7 +227,8 @@ public class FileTableTest extends ParameterizedTupleTest {
 
         Metrics metrics = new Metrics(config);
 
-        return FileTable.open(1, paths, new TupleBlock.Cache(1024000, metrics),
-                new IndexBlock.Cache(1024000, metrics), metrics);
+        tupleBlockCache = new TupleBlock.Cache(1024000, metrics);
+
+        return FileTable.open(1, paths, tupleBlockCache, new IndexBlock.Cache(1024000, metrics), metrics);
     }
 }
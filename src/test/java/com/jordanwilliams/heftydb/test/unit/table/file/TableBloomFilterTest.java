@@ -16,12 +16,15 @@
 
 package com.jordanwilliams.heftydb.test.unit.table.file;
 
+import com.jordanwilliams.heftydb.cache.MemoryBudget;
+import com.jordanwilliams.heftydb.data.Key;
 import com.jordanwilliams.heftydb.data.Tuple;
 import com.jordanwilliams.heftydb.state.Paths;
 import com.jordanwilliams.heftydb.table.file.TableBloomFilter;
 import com.jordanwilliams.heftydb.table.file.TableBloomFilterWriter;
 import com.jordanwilliams.heftydb.test.base.ParameterizedTupleTest;
 import com.jordanwilliams.heftydb.test.generator.ConfigGenerator;
+import com.jordanwilliams.heftydb.util.ByteBuffers;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -29,12 +32,13 @@ import java.util.List;
 
 public class TableBloomFilterTest extends ParameterizedTupleTest {
 
+    private final Paths paths;
     private final TableBloomFilter bloomFilter;
 
     public TableBloomFilterTest(List<Tuple> testTuples) throws Exception {
         super(testTuples);
 
-        Paths paths = ConfigGenerator.testPaths();
+        this.paths = ConfigGenerator.testPaths();
         TableBloomFilterWriter filterWriter = TableBloomFilterWriter.open(1, paths, tuples.size());
 
         for (Tuple tuple : tuples) {
@@ -52,4 +56,38 @@ public class TableBloomFilterTest extends ParameterizedTupleTest {
             Assert.assertTrue("Filter contains the key", bloomFilter.mightContain(tuple.key()));
         }
     }
+
+    @Test
+    public void pagedFilterTest() throws Exception {
+        MemoryBudget budget = new MemoryBudget(1);
+        TableBloomFilter pagedFilter = TableBloomFilter.read(1, paths, budget);
+
+        Assert.assertTrue("Filter does not fit in the budget", pagedFilter.isPaged());
+        Assert.assertEquals("Paged filter uses no memory", 0, budget.size(MemoryBudget.Tier.FILTER));
+
+        for (Tuple tuple : tuples) {
+            Assert.assertTrue("Filter contains the key", pagedFilter.mightContain(tuple.key()));
+        }
+
+        for (int i = 0; i < 1000; i++) {
+            Key key = new Key(ByteBuffers.fromString("absent" + i), 0);
+            Assert.assertEquals("Paged filter matches the resident one", bloomFilter.mightContain(key),
+                    pagedFilter.mightContain(key));
+        }
+
+        pagedFilter.close();
+    }
+
+    @Test
+    public void budgetTest() throws Exception {
+        MemoryBudget budget = new MemoryBudget(0);
+        TableBloomFilter residentFilter = TableBloomFilter.read(1, paths, budget);
+
+        Assert.assertFalse("Filter is resident", residentFilter.isPaged());
+        Assert.assertEquals("Filter counts against the budget", residentFilter.memory().size(), budget.size
+                (MemoryBudget.Tier.FILTER));
+
+        residentFilter.close();
+        Assert.assertEquals("Closed filter is released", 0, budget.size(MemoryBudget.Tier.FILTER));
+    }
 }
@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2014. Jordan Williams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jordanwilliams.heftydb.test.unit.table.file;
+
+import com.jordanwilliams.heftydb.data.KeyComparator;
+import com.jordanwilliams.heftydb.data.KeyComparators;
+import com.jordanwilliams.heftydb.data.Tuple;
+import com.jordanwilliams.heftydb.db.Config;
+import com.jordanwilliams.heftydb.index.IndexBlock;
+import com.jordanwilliams.heftydb.io.ChecksumVerification;
+import com.jordanwilliams.heftydb.io.Throttle;
+import com.jordanwilliams.heftydb.metrics.Metrics;
+import com.jordanwilliams.heftydb.state.Paths;
+import com.jordanwilliams.heftydb.table.file.FileTable;
+import com.jordanwilliams.heftydb.table.file.FileTableWriter;
+import com.jordanwilliams.heftydb.table.file.TableTrailer;
+import com.jordanwilliams.heftydb.table.file.TupleBlock;
+import com.jordanwilliams.heftydb.test.base.FileTest;
+import com.jordanwilliams.heftydb.test.generator.ConfigGenerator;
+import com.jordanwilliams.heftydb.test.generator.TupleGenerator;
+import com.jordanwilliams.heftydb.util.Sizes;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+public class TableTrailerTest extends FileTest {
+
+    private final Paths paths = ConfigGenerator.testPaths();
+    private final Config config = ConfigGenerator.testConfig();
+    private final List<Tuple> tuples = new TupleGenerator().testRecords(1000, 0);
+
+    @Test
+    public void legacyTrailerTest() throws IOException {
+        writeTable(2);
+
+        //Replace the trailer with one in the format used before trailers were versioned
+        FileChannel channel = FileChannel.open(paths.tablePath(1), StandardOpenOption.READ, StandardOpenOption.WRITE);
+        ByteBuffer trailer = ByteBuffer.allocate(TableTrailer.SIZE);
+        channel.read(trailer, channel.size() - TableTrailer.SIZE);
+        trailer.rewind();
+        ByteBuffer legacyTrailer = ByteBuffer.allocate(TableTrailer.LEGACY_SIZE);
+        legacyTrailer.put(trailer.array(), 0, TableTrailer.LEGACY_SIZE);
+        legacyTrailer.rewind();
+        channel.truncate(channel.size() - TableTrailer.SIZE);
+        channel.write(legacyTrailer, channel.size());
+        channel.close();
+
+        FileTable fileTable = openTable(KeyComparators.BYTEWISE);
+        Assert.assertEquals("Level is read", 2, fileTable.level());
+        Assert.assertEquals("Tuple count is read", tuples.size(), fileTable.tupleCount());
+
+        for (Tuple tuple : tuples) {
+            Assert.assertEquals("Records match", tuple, fileTable.get(tuple.key()));
+        }
+
+        fileTable.close();
+
+        try {
+            openTable(KeyComparators.UNSIGNED_LEXICOGRAPHIC);
+            Assert.fail("Legacy table was opened with another key comparator");
+        } catch (IOException e) {
+            Assert.assertTrue("Comparator mismatch is reported", e.getMessage().contains("key comparator"));
+        }
+    }
+
+    @Test
+    public void unsupportedVersionTest() throws IOException {
+        writeTable(1);
+
+        FileChannel channel = FileChannel.open(paths.tablePath(1), StandardOpenOption.READ, StandardOpenOption.WRITE);
+        ByteBuffer version = ByteBuffer.allocate(Sizes.INT_SIZE);
+        version.putInt(TableTrailer.CURRENT_VERSION + 1);
+        version.rewind();
+        channel.write(version, channel.size() - Sizes.LONG_SIZE - Sizes.INT_SIZE);
+        channel.close();
+
+        try {
+            openTable(KeyComparators.BYTEWISE);
+            Assert.fail("Table with a newer trailer was opened");
+        } catch (IOException e) {
+            Assert.assertTrue("Version is reported", e.getMessage().contains("version"));
+        }
+    }
+
+    @Test
+    public void unknownFormatTest() throws IOException {
+        writeTable(1);
+
+        //Drops the version and magic number, which leaves a trailer that matches no format
+        FileChannel channel = FileChannel.open(paths.tablePath(1), StandardOpenOption.WRITE);
+        channel.truncate(channel.size() - Sizes.LONG_SIZE - Sizes.INT_SIZE);
+        channel.close();
+
+        try {
+            openTable(KeyComparators.BYTEWISE);
+            Assert.fail("Table in an unknown format was opened");
+        } catch (IOException e) {
+            Assert.assertTrue("Unsupported format is reported", e.getMessage().contains("unsupported format"));
+        }
+    }
+
+    private void writeTable(int level) {
+        new FileTableWriter.Task(1, level, paths, config, tuples.iterator(), tuples.size(), null, Throttle.MAX)
+                .run();
+    }
+
+    private FileTable openTable(KeyComparator keyComparator) throws IOException {
+        Metrics metrics = new Metrics(config);
+        return FileTable.open(1, paths, new TupleBlock.Cache(1024000, metrics), new IndexBlock.Cache(1024000,
+                metrics), keyComparator, ChecksumVerification.NEVER, metrics);
+    }
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright (c) 2014. Jordan Williams
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jordanwilliams.heftydb.test.unit.table.memory;
+
+import com.jordanwilliams.heftydb.data.Tuple;
+import com.jordanwilliams.heftydb.table.memory.ArenaTupleMap;
+import com.jordanwilliams.heftydb.table.memory.SortedTupleMap;
+
+import java.io.IOException;
+import java.util.List;
+
+public class ArenaMemoryTableTest extends MemoryTableTest {
+
+    public ArenaMemoryTableTest(List<Tuple> testTuples) throws IOException {
+        super(testTuples);
+    }
+
+    @Override
+    protected SortedTupleMap createTupleMap() {
+        return new ArenaTupleMap(4096);
+    }
+}
@@ -19,6 +19,8 @@ package com.jordanwilliams.heftydb.test.unit.table.memory;
 import com.jordanwilliams.heftydb.data.Key;
 import com.jordanwilliams.heftydb.data.Tuple;
 import com.jordanwilliams.heftydb.table.memory.MemoryTable;
+import com.jordanwilliams.heftydb.table.memory.SkipListTupleMap;
+import com.jordanwilliams.heftydb.table.memory.SortedTupleMap;
 import com.jordanwilliams.heftydb.test.base.ParameterizedTupleTest;
 import org.junit.Assert;
 import org.junit.Test;
@@ -112,8 +114,12 @@ public class MemoryTableTest extends ParameterizedTupleTest {
         }
     }
 
+    protected SortedTupleMap createTupleMap() {
+        return new SkipListTupleMap();
+    }
+
     private MemoryTable createMemoryTable() {
-        MemoryTable memoryTable = new MemoryTable(1);
+        MemoryTable memoryTable = new MemoryTable(1, createTupleMap());
 
         for (Tuple tuple : tuples) {
             memoryTable.put(tuple);
@@ -14,30 +14,139 @@
  * limitations under the License.
  */
 
+
 package com.jordanwilliams.heftydb.test.unit.write;
 
+import com.jordanwilliams.heftydb.data.Key;
 import com.jordanwilliams.heftydb.data.Tuple;
+import com.jordanwilliams.heftydb.data.Value;
+import com.jordanwilliams.heftydb.io.AppendChannelFile;
+import com.jordanwilliams.heftydb.io.AppendFile;
 import com.jordanwilliams.heftydb.state.Paths;
 import com.jordanwilliams.heftydb.test.base.ParameterizedTupleTest;
 import com.jordanwilliams.heftydb.test.generator.ConfigGenerator;
+import com.jordanwilliams.heftydb.util.XORShiftRandom;
 import com.jordanwilliams.heftydb.write.CommitLog;
 import com.jordanwilliams.heftydb.write.CommitLogWriter;
+import org.junit.Assert;
 import org.junit.Test;
 
 import java.io.IOException;
-import java.util.Iterator;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 public class CommitLogTest extends ParameterizedTupleTest {
 
+    private final Paths paths = ConfigGenerator.testPaths();
+
     public CommitLogTest(List<Tuple> testTuples) throws Exception {
         super(testTuples);
     }
 
     @Test
     public void readWriteTest() throws IOException {
-        Paths paths = ConfigGenerator.testPaths();
-        CommitLogWriter log = CommitLogWriter.open(1, paths);
+        writeLog(tuples);
+        Assert.assertEquals("Records match", tuples, readLog());
+    }
+
+    @Test
+    public void fragmentedRecordTest() throws IOException {
+        List<Tuple> largeTuples = new ArrayList<Tuple>(tuples.subList(0, 10));
+        ByteBuffer largeValue = ByteBuffer.allocate(CommitLog.BLOCK_SIZE * 3);
+        largeTuples.add(5, new Tuple(new Key(ByteBuffer.wrap("large".getBytes()), 0), new Value(largeValue)));
+
+        writeLog(largeTuples);
+        Assert.assertEquals("Records match", largeTuples, readLog());
+    }
+
+    @Test
+    public void tornRecordTest() throws IOException {
+        writeLog(tuples);
+
+        FileChannel channel = FileChannel.open(paths.logPath(1), StandardOpenOption.WRITE);
+        channel.truncate(channel.size() - 1);
+        channel.close();
+
+        Assert.assertEquals("Torn record is dropped", tuples.subList(0, tuples.size() - 1), readLog());
+    }
+
+    @Test
+    public void corruptRecordTest() throws IOException {
+        writeLog(tuples);
+
+        //Corrupt the payload of the first record
+        FileChannel channel = FileChannel.open(paths.logPath(1), StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long corruptOffset = CommitLog.HEADER_SIZE + CommitLog.FRAGMENT_HEADER_SIZE + 1;
+        ByteBuffer corruptByte = ByteBuffer.allocate(1);
+        channel.read(corruptByte, corruptOffset);
+        corruptByte.put(0, (byte) ~corruptByte.get(0));
+        corruptByte.rewind();
+        channel.write(corruptByte, corruptOffset);
+        long logSize = channel.size();
+        channel.close();
+
+        List<Tuple> read = readLog();
+
+        Assert.assertFalse("Corrupt record is dropped", read.contains(tuples.get(0)));
+
+        if (logSize > CommitLog.HEADER_SIZE + CommitLog.BLOCK_SIZE) {
+            Assert.assertFalse("Records after the corrupt block are read", read.isEmpty());
+            Assert.assertEquals("Records after the corrupt block are read", tuples.subList(tuples.size() - read
+                    .size(), tuples.size()), read);
+        } else {
+            Assert.assertEquals("Rest of the block is dropped", Collections.<Tuple>emptyList(), read);
+        }
+    }
+
+    @Test
+    public void preallocatedLogTest() throws IOException {
+        CommitLogWriter.preallocate(1, paths, CommitLog.BLOCK_SIZE * 4);
+        Assert.assertEquals("Log is preallocated", CommitLog.BLOCK_SIZE * 4, Files.size(paths.recycledLogPath(1)));
+
+        CommitLogWriter log = CommitLogWriter.recycle(1, 2, paths);
+
+        for (Tuple tuple : tuples) {
+            log.append(tuple, true);
+        }
+
+        log.close();
+
+        Assert.assertTrue("Log is written into the preallocated file", Files.size(paths.logPath(2)) >=
+                CommitLog.BLOCK_SIZE * 4);
+        Assert.assertEquals("Records match", tuples, readLog(2));
+    }
+
+    @Test
+    public void recycledLogTest() throws IOException {
+        writeLog(tuples);
+        Files.move(paths.logPath(1), paths.recycledLogPath(1));
+
+        List<Tuple> newTuples = tuples.subList(0, tuples.size() / 2);
+        CommitLogWriter log = CommitLogWriter.recycle(1, 2, paths);
+
+        for (Tuple tuple : newTuples) {
+            log.append(tuple, true);
+        }
+
+        log.close();
+
+        Assert.assertFalse("Recycled log is reused", Files.exists(paths.recycledLogPath(1)));
+        Assert.assertEquals("Records of the older log are not read", newTuples, readLog(2));
+    }
+
+    @Test
+    public void corruptRecycledLogTest() throws IOException {
+        List<Tuple> olderTuples = new ArrayList<Tuple>(tuples);
+        olderTuples.addAll(tuples);
+        writeLog(olderTuples);
+        Files.move(paths.logPath(1), paths.recycledLogPath(1));
+
+        CommitLogWriter log = CommitLogWriter.recycle(1, 2, paths);
 
         for (Tuple tuple : tuples) {
             log.append(tuple, false);
@@ -45,18 +154,77 @@ public class CommitLogTest extends ParameterizedTupleTest {
 
         log.close();
 
-        CommitLog commitLog = CommitLog.open(1, paths);
-        Iterator<Tuple> logIterator = commitLog.iterator();
-        Iterator<Tuple> recordIterator = tuples.iterator();
+        //Corrupt the payload of the first record
+        FileChannel channel = FileChannel.open(paths.logPath(2), StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long corruptOffset = CommitLog.HEADER_SIZE + CommitLog.FRAGMENT_HEADER_SIZE + 1;
+        ByteBuffer corruptByte = ByteBuffer.allocate(1);
+        channel.read(corruptByte, corruptOffset);
+        corruptByte.put(0, (byte) ~corruptByte.get(0));
+        corruptByte.rewind();
+        channel.write(corruptByte, corruptOffset);
+        channel.close();
 
-        while (logIterator.hasNext()) {
-            Tuple next = recordIterator.next();
-            Tuple logNext = logIterator.next();
-            //Assert.assertEquals("Records match", recordIterator.next(), logIterator.next());
-            int x = 1;
+        List<Tuple> read = readLog(2);
+        long newLogSize = CommitLog.HEADER_SIZE;
+
+        for (Tuple tuple : tuples) {
+            newLogSize += Tuple.SERIALIZER.size(tuple) + CommitLog.FRAGMENT_HEADER_SIZE;
         }
 
-        commitLog.close();
+        Assert.assertFalse("Corrupt record is dropped", read.contains(tuples.get(0)));
+
+        if (newLogSize > CommitLog.HEADER_SIZE + CommitLog.BLOCK_SIZE) {
+            Assert.assertFalse("Records after the corrupt block are read", read.isEmpty());
+            Assert.assertEquals("Records after the corrupt block are read", tuples.subList(tuples.size() - read
+                    .size(), tuples.size()), read);
+        } else {
+            Assert.assertEquals("Log ends at the corrupt record", Collections.<Tuple>emptyList(), read);
+        }
     }
 
+    @Test
+    public void legacyLogTest() throws IOException {
+        long seed = 42;
+        XORShiftRandom pseudoRandom = new XORShiftRandom(seed);
+        AppendFile logFile = AppendChannelFile.open(paths.logPath(1));
+        logFile.appendLong(seed);
+
+        for (Tuple tuple : tuples) {
+            ByteBuffer record = ByteBuffer.allocate(Tuple.SERIALIZER.size(tuple));
+            Tuple.SERIALIZER.serialize(tuple, record);
+            logFile.appendInt(record.capacity());
+            logFile.append(record);
+            logFile.appendInt(pseudoRandom.nextInt());
+        }
+
+        logFile.close();
+
+        Assert.assertEquals("Records match", tuples, readLog());
+    }
+
+    private void writeLog(List<Tuple> tuplesToWrite) throws IOException {
+        CommitLogWriter log = CommitLogWriter.open(1, paths);
+
+        for (Tuple tuple : tuplesToWrite) {
+            log.append(tuple, false);
+        }
+
+        log.close();
+    }
+
+    private List<Tuple> readLog() throws IOException {
+        return readLog(1);
+    }
+
+    private List<Tuple> readLog(long tableId) throws IOException {
+        List<Tuple> read = new ArrayList<Tuple>();
+        CommitLog commitLog = CommitLog.open(tableId, paths);
+
+        for (Tuple tuple : commitLog) {
+            read.add(tuple);
+        }
+
+        commitLog.close();
+        return read;
+    }
 }